@@ -0,0 +1,67 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.performance.CacheManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheManager 查询结果缓存基准，命中与未命中分别计时，多线程下可观察争用
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CacheManagerBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private CacheManager cacheManager;
+    private String[] hitKeys;
+    private String[] missKeys;
+
+    @Setup
+    public void setUp() {
+        cacheManager = new CacheManager();
+        hitKeys = new String[KEY_COUNT];
+        missKeys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            hitKeys[i] = "query:" + i + ":claude-sonnet-4-20250514";
+            missKeys[i] = "absent:" + i;
+            cacheManager.putQueryResult(hitKeys[i], "result-" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        int next() {
+            index = (index + 1) & (KEY_COUNT - 1);
+            return index;
+        }
+    }
+
+    @Benchmark
+    public Object getHit(Cursor cursor) {
+        return cacheManager.getQueryResult(hitKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    public Object getMiss(Cursor cursor) {
+        return cacheManager.getQueryResult(missKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        int i = cursor.next();
+        cacheManager.putQueryResult(hitKeys[i], "result-" + i);
+    }
+}
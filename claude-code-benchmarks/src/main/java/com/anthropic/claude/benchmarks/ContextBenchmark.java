@@ -0,0 +1,85 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.context.ContextCompressor;
+import com.anthropic.claude.context.ContextConfig;
+import com.anthropic.claude.context.ContextManager;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageParser;
+import com.anthropic.claude.messages.MessageType;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上下文管理基准：压缩整段历史，以及持续追加消息时的单次开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ContextBenchmark {
+
+    @Param({"100", "1000"})
+    public int historySize;
+
+    private ContextCompressor compressor;
+    private ContextManager contextManager;
+    private List<Message> history;
+    private int nextMessage;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        ContextConfig config = ContextConfig.builder()
+                .maxWindowSize(historySize * 50)
+                .compressionThreshold(historySize * 40)
+                .build();
+        compressor = new ContextCompressor(config);
+
+        // 以夹具中的消息为模板，按时间顺序铺出指定长度的历史
+        // stream-json 的正文嵌套在 message 字段中，这里以整行作为内容，保持真实的消息体量
+        MessageParser parser = new MessageParser();
+        List<String> lines = Fixtures.lines(Fixtures.STREAM_JSON_SESSION);
+        List<MessageType> types = new ArrayList<>();
+        for (String line : lines) {
+            types.add(parser.parseMessage(line).getType());
+        }
+
+        LocalDateTime start = LocalDateTime.now().minusMinutes(historySize);
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            int t = i % lines.size();
+            history.add(new Message(types.get(t), lines.get(t), start.plusMinutes(i)));
+        }
+
+        contextManager = new ContextManager(config);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        contextManager.clearContext("bench");
+        for (Message message : history) {
+            contextManager.addMessage("bench", message);
+        }
+        nextMessage = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        contextManager.shutdown();
+    }
+
+    @Benchmark
+    public List<Message> compress() {
+        return compressor.compress(history);
+    }
+
+    @Benchmark
+    public void addMessage() {
+        contextManager.addMessage("bench", history.get(nextMessage++ % historySize));
+    }
+}
@@ -0,0 +1,58 @@
+package com.anthropic.claude.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试夹具加载工具
+ *
+ * 夹具位于 classpath 的 fixtures 目录下：
+ * stream-json-session.jsonl 为一次完整会话的 stream-json 输出，
+ * pty-transcript.txt 为交互模式下的终端输出
+ */
+final class Fixtures {
+
+    static final String STREAM_JSON_SESSION = "stream-json-session.jsonl";
+    static final String PTY_TRANSCRIPT = "pty-transcript.txt";
+
+    private Fixtures() {
+    }
+
+    /**
+     * 读取夹具全文
+     */
+    static String load(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("夹具不存在: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取夹具失败: " + name, e);
+        }
+    }
+
+    /**
+     * 读取夹具的非空行
+     */
+    static List<String> lines(String name) {
+        List<String> lines = new ArrayList<>();
+        for (String line : load(name).split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 将 stream-json 行拼接为 JSON 数组
+     */
+    static String toJsonArray(List<String> lines) {
+        return "[" + String.join(",", lines) + "]";
+    }
+}
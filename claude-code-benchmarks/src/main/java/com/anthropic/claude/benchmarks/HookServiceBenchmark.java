@@ -0,0 +1,57 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.hooks.HookContext;
+import com.anthropic.claude.hooks.HookResult;
+import com.anthropic.claude.hooks.HookService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HookService 派发基准，每个事件挂载若干只读与改写数据的回调
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class HookServiceBenchmark {
+
+    private static final String EVENT = "PreToolUse";
+
+    @Param({"1", "8"})
+    public int callbackCount;
+
+    private HookService hookService;
+    private Map<String, Object> eventData;
+
+    @Setup
+    public void setUp() {
+        hookService = new HookService();
+        for (int i = 0; i < callbackCount; i++) {
+            if (i % 2 == 0) {
+                hookService.addHook(EVENT, context -> HookResult.proceed());
+            } else {
+                String key = "hook-" + i;
+                hookService.addHook(EVENT, context -> HookResult.proceed(Map.of(key, context.getEventType())));
+            }
+        }
+
+        eventData = new HashMap<>();
+        eventData.put("tool_name", "Bash");
+        eventData.put("command", "mvn -q test -Dtest=OrderServiceTest");
+    }
+
+    @Benchmark
+    public HookResult executeHooks() {
+        return hookService.executeHooks(EVENT, new HookContext(EVENT, eventData, "bench-session"));
+    }
+
+    @Benchmark
+    public HookResult executeHooksWithoutRegistration() {
+        return hookService.executeHooks("PostToolUse", new HookContext("PostToolUse", eventData, "bench-session"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.MessageParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageParser 解码基准，每次调用解码一整段会话输出
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MessageParserBenchmark {
+
+    private MessageParser parser;
+    private String[] lines;
+    private String jsonArray;
+    private String streamContent;
+    private byte[] streamBytes;
+
+    @Setup
+    public void setUp() {
+        parser = new MessageParser();
+        List<String> fixtureLines = Fixtures.lines(Fixtures.STREAM_JSON_SESSION);
+        lines = fixtureLines.toArray(new String[0]);
+        jsonArray = Fixtures.toJsonArray(fixtureLines);
+        streamContent = Fixtures.load(Fixtures.STREAM_JSON_SESSION);
+        streamBytes = streamContent.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void parseMessage(Blackhole bh) throws ClaudeCodeException {
+        for (String line : lines) {
+            bh.consume(parser.parseMessage(line));
+        }
+    }
+
+    @Benchmark
+    public void parseStreamingLine(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(parser.parseStreamingLine(line));
+        }
+    }
+
+    @Benchmark
+    public void parseMessages(Blackhole bh) throws ClaudeCodeException {
+        bh.consume(parser.parseMessages(jsonArray));
+    }
+
+    @Benchmark
+    public void parseStreamingMessages(Blackhole bh) {
+        parser.parseStreamingMessages(streamContent).forEach(bh::consume);
+    }
+
+    @Benchmark
+    public int parseMessageStream(Blackhole bh) throws ClaudeCodeException {
+        return parser.parseMessageStream(new ByteArrayInputStream(streamBytes), bh::consume);
+    }
+}
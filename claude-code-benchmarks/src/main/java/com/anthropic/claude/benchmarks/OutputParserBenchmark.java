@@ -0,0 +1,62 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.pty.LineFramer;
+import com.anthropic.claude.pty.OutputParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OutputParser 基准，按固定大小分块回放终端输出，模拟PTY的读取粒度
+ * parseOutput 为按字符串分块的入口，frameAndParse 为 PtyManager 使用的字节分帧路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OutputParserBenchmark {
+
+    @Param({"64", "4096"})
+    public int chunkSize;
+
+    private OutputParser parser;
+    private String[] chunks;
+    private byte[] transcriptBytes;
+    private LineFramer framer;
+
+    @Setup
+    public void setUp() {
+        parser = new OutputParser();
+        String transcript = Fixtures.load(Fixtures.PTY_TRANSCRIPT);
+
+        int count = (transcript.length() + chunkSize - 1) / chunkSize;
+        chunks = new String[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = transcript.substring(i * chunkSize, Math.min(transcript.length(), (i + 1) * chunkSize));
+        }
+
+        transcriptBytes = transcript.getBytes(StandardCharsets.UTF_8);
+        framer = new LineFramer(parser::parseCompleteLine);
+    }
+
+    @Benchmark
+    public void parseOutput(Blackhole bh) {
+        parser.reset();
+        for (String chunk : chunks) {
+            bh.consume(parser.parseOutput(chunk));
+        }
+    }
+
+    @Benchmark
+    public void frameAndParse() {
+        parser.reset();
+        for (int offset = 0; offset < transcriptBytes.length; offset += chunkSize) {
+            framer.feed(transcriptBytes, offset, Math.min(chunkSize, transcriptBytes.length - offset));
+        }
+        framer.flush();
+    }
+}
@@ -0,0 +1,70 @@
+package com.anthropic.claude.benchmarks;
+
+import com.anthropic.claude.tools.Param;
+import com.anthropic.claude.tools.ToolDefinition;
+import com.anthropic.claude.tools.ToolExecutionResult;
+import com.anthropic.claude.tools.ToolExecutor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ToolExecutor 调用基准，覆盖参数绑定、反射调用与线程池往返
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ToolExecutorBenchmark {
+
+    private ToolExecutor toolExecutor;
+    private ToolDefinition addTool;
+    private ToolDefinition formatTool;
+    private JsonNode addArguments;
+    private JsonNode formatArguments;
+
+    @Setup
+    public void setUp() throws Exception {
+        toolExecutor = new ToolExecutor();
+        BenchTools tools = new BenchTools();
+
+        addTool = new ToolDefinition("add", "两数相加",
+                BenchTools.class.getMethod("add", int.class, int.class), tools, false, 30000, 100);
+        formatTool = new ToolDefinition("format", "格式化订单摘要",
+                BenchTools.class.getMethod("format", String.class, double.class), tools, false, 30000, 100);
+
+        ObjectMapper mapper = new ObjectMapper();
+        addArguments = mapper.readTree("{\"a\":17,\"b\":25}");
+        formatArguments = mapper.readTree("{\"orderId\":\"ORD-20250101-0042\",\"amount\":1299.5}");
+    }
+
+    @TearDown
+    public void tearDown() {
+        toolExecutor.shutdown();
+    }
+
+    @Benchmark
+    public ToolExecutionResult invokePrimitiveTool() throws Exception {
+        return toolExecutor.executeAsync(addTool, addArguments).get();
+    }
+
+    @Benchmark
+    public ToolExecutionResult invokeObjectTool() throws Exception {
+        return toolExecutor.executeAsync(formatTool, formatArguments).get();
+    }
+
+    public static class BenchTools {
+
+        public int add(@Param("a") int a, @Param("b") int b) {
+            return a + b;
+        }
+
+        public String format(@Param("orderId") String orderId, @Param("amount") double amount) {
+            return orderId + ":" + amount;
+        }
+    }
+}
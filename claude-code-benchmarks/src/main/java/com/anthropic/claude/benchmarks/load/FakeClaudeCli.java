@@ -0,0 +1,201 @@
+package com.anthropic.claude.benchmarks.load;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 模拟Claude CLI的可脚本化替身，用于在没有真实CLI和网络的情况下压测SDK层
+ *
+ * 识别SDK使用的三种调用方式：
+ * <ul>
+ *   <li>--print：一次性输出消息JSON数组（批处理模式）</li>
+ *   <li>--output-format stream-json/json-stream：逐行输出消息（批处理流式模式）</li>
+ *   <li>--input-format stream-json：常驻进程，stdin每收到一行输出一轮消息，以result行结束（进程池模式）</li>
+ * </ul>
+ *
+ * 行为通过环境变量控制：
+ * <ul>
+ *   <li>FAKE_CLI_LATENCY_MS：首个token前的延迟，默认200</li>
+ *   <li>FAKE_CLI_TOKENS_PER_SEC：token输出速率，0表示不限速，默认50</li>
+ *   <li>FAKE_CLI_OUTPUT_TOKENS：每轮输出的token数，默认100</li>
+ *   <li>FAKE_CLI_CHUNK_TOKENS：每条assistant消息包含的token数，默认10</li>
+ *   <li>FAKE_CLI_FAILURE_RATE：每轮注入故障的概率，默认0</li>
+ *   <li>FAKE_CLI_FAILURE_MODE：exit（非0退出）、garbage（输出非JSON行后中断）、hang（不再输出），默认exit</li>
+ * </ul>
+ */
+public final class FakeClaudeCli {
+
+    static final String ENV_LATENCY_MS = "FAKE_CLI_LATENCY_MS";
+    static final String ENV_TOKENS_PER_SEC = "FAKE_CLI_TOKENS_PER_SEC";
+    static final String ENV_OUTPUT_TOKENS = "FAKE_CLI_OUTPUT_TOKENS";
+    static final String ENV_CHUNK_TOKENS = "FAKE_CLI_CHUNK_TOKENS";
+    static final String ENV_FAILURE_RATE = "FAKE_CLI_FAILURE_RATE";
+    static final String ENV_FAILURE_MODE = "FAKE_CLI_FAILURE_MODE";
+
+    private static final String[] VOCABULARY = {
+        "the", "order", "service", "total", "skips", "null", "items", "and", "tests", "pass",
+        "我", "先", "查看", "项目", "结构", "然后", "修改", "文件", "。", "，"
+    };
+
+    private final long latencyMs;
+    private final double tokensPerSec;
+    private final int outputTokens;
+    private final int chunkTokens;
+    private final double failureRate;
+    private final String failureMode;
+    private final String sessionId = UUID.randomUUID().toString();
+    private final PrintStream out;
+
+    private FakeClaudeCli(PrintStream out) {
+        this.latencyMs = Long.parseLong(env(ENV_LATENCY_MS, "200"));
+        this.tokensPerSec = Double.parseDouble(env(ENV_TOKENS_PER_SEC, "50"));
+        this.outputTokens = Integer.parseInt(env(ENV_OUTPUT_TOKENS, "100"));
+        this.chunkTokens = Math.max(1, Integer.parseInt(env(ENV_CHUNK_TOKENS, "10")));
+        this.failureRate = Double.parseDouble(env(ENV_FAILURE_RATE, "0"));
+        this.failureMode = env(ENV_FAILURE_MODE, "exit");
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 8192), false, StandardCharsets.UTF_8);
+        FakeClaudeCli cli = new FakeClaudeCli(out);
+
+        if ("stream-json".equals(option(args, "--input-format"))) {
+            cli.serveStdin();
+        } else {
+            String outputFormat = option(args, "--output-format");
+            boolean streaming = "stream-json".equals(outputFormat) || "json-stream".equals(outputFormat);
+            cli.answerOnce(streaming);
+        }
+        out.flush();
+    }
+
+    /**
+     * 常驻模式：stdin每行视为一轮用户输入
+     */
+    private void serveStdin() throws Exception {
+        emitLine(systemInit());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            injectFailureIfDrawn();
+            produceTurn(this::emitLine);
+        }
+    }
+
+    /**
+     * 单次模式：输出一轮后退出
+     */
+    private void answerOnce(boolean streaming) {
+        injectFailureIfDrawn();
+        if (streaming) {
+            emitLine(systemInit());
+            produceTurn(this::emitLine);
+            return;
+        }
+
+        List<String> messages = new ArrayList<>();
+        messages.add(systemInit());
+        produceTurn(messages::add);
+        out.print('[');
+        out.print(String.join(",", messages));
+        out.println(']');
+    }
+
+    /**
+     * 按配置的延迟与速率产生一轮消息，每产生一条调用一次sink
+     */
+    private void produceTurn(Consumer<String> sink) {
+        long startNanos = System.nanoTime();
+        pauseUntil(startNanos + TimeUnit.MILLISECONDS.toNanos(latencyMs));
+
+        long firstTokenNanos = System.nanoTime();
+        StringBuilder fullText = new StringBuilder();
+        int emitted = 0;
+        while (emitted < outputTokens) {
+            int count = Math.min(chunkTokens, outputTokens - emitted);
+            StringBuilder chunk = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                chunk.append(VOCABULARY[(emitted + i) % VOCABULARY.length]).append(' ');
+            }
+            emitted += count;
+
+            if (tokensPerSec > 0) {
+                pauseUntil(firstTokenNanos + (long) (emitted / tokensPerSec * 1_000_000_000L));
+            }
+            fullText.append(chunk);
+            sink.accept("{\"type\":\"assistant\",\"content\":\"" + chunk + "\",\"session_id\":\"" + sessionId + "\"}");
+        }
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        sink.accept("{\"type\":\"result\",\"subtype\":\"success\",\"is_error\":false,\"duration_ms\":" + durationMs
+            + ",\"result\":\"" + fullText.toString().trim() + "\",\"session_id\":\"" + sessionId
+            + "\",\"usage\":{\"output_tokens\":" + outputTokens + "}}");
+    }
+
+    private String systemInit() {
+        return "{\"type\":\"system\",\"subtype\":\"init\",\"session_id\":\"" + sessionId
+            + "\",\"model\":\"fake-cli\",\"tools\":[]}";
+    }
+
+    private void emitLine(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    private void injectFailureIfDrawn() {
+        if (failureRate <= 0 || ThreadLocalRandom.current().nextDouble() >= failureRate) {
+            return;
+        }
+
+        switch (failureMode) {
+            case "hang":
+                out.flush();
+                while (true) {
+                    LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(60));
+                }
+            case "garbage":
+                emitLine("<<< fake-cli: injected garbage output >>>");
+                System.exit(0);
+                break;
+            default:
+                out.flush();
+                System.err.println("fake-cli: injected failure");
+                System.exit(1);
+        }
+    }
+
+    private static void pauseUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static String option(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isBlank() ? value : defaultValue;
+    }
+}
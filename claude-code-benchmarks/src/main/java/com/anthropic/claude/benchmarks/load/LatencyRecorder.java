@@ -0,0 +1,53 @@
+package com.anthropic.claude.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个阶段的耗时记录，支持并发写入，结束后统计分位数
+ */
+final class LatencyRecorder {
+
+    private final String stage;
+    private final long[] samples;
+    private int count;
+
+    LatencyRecorder(String stage, int capacity) {
+        this.stage = stage;
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        if (nanos >= 0 && count < samples.length) {
+            samples[count++] = nanos;
+        }
+    }
+
+    /**
+     * 生成一行统计，耗时单位为毫秒
+     */
+    synchronized String summarize() {
+        if (count == 0) {
+            return String.format("%-14s %8s %9s %9s %9s %9s", stage, 0, "-", "-", "-", "-");
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%-14s %8d %9.1f %9.1f %9.1f %9.1f", stage, count,
+            millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.90)),
+            millis(percentile(sorted, 0.99)), millis(sorted[sorted.length - 1]));
+    }
+
+    static String header() {
+        return String.format("%-14s %8s %9s %9s %9s %9s", "stage", "count", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)");
+    }
+
+    static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
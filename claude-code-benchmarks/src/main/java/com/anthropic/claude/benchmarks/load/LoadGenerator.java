@@ -0,0 +1,314 @@
+package com.anthropic.claude.benchmarks.load;
+
+import com.anthropic.claude.client.ClaudeCodeSDK;
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.config.CliMode;
+import com.anthropic.claude.config.ExecutorMode;
+import com.anthropic.claude.hooks.HookResult;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.query.QueryRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * SDK端到端压测工具
+ *
+ * 以固定并发的闭环方式驱动 {@link ClaudeCodeSDK#query} 或 {@link ClaudeCodeSDK#queryStream}，
+ * 输出吞吐量以及各阶段耗时的p50/p90/p99。默认使用 {@link FakeClaudeCli} 作为CLI，
+ * 也可以通过 --cli 指向真实CLI。
+ *
+ * 阶段划分：
+ * <ul>
+ *   <li>queue：调用SDK到pre_query Hook触发，即在SDK内部排队的时间</li>
+ *   <li>first-message：pre_query Hook到收到第一条消息（仅stream）</li>
+ *   <li>transfer：第一条消息到流结束（仅stream）</li>
+ *   <li>total：调用SDK到拿到全部结果</li>
+ * </ul>
+ *
+ * 用法示例：
+ * <pre>
+ * java -cp benchmarks.jar com.anthropic.claude.benchmarks.load.LoadGenerator \
+ *     --api stream --mode BATCH --concurrency 16 --requests 500 --latency-ms 300 --tokens-per-sec 80
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final String REQUEST_INDEX_KEY = "load_request_index";
+
+    private final Settings settings;
+    private final Sample[] samples;
+
+    private LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.samples = new Sample[settings.warmup + settings.requests];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new Sample();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        new LoadGenerator(settings).run();
+    }
+
+    private void run() throws Exception {
+        String cliPath = settings.cliPath != null ? settings.cliPath : createFakeCliLauncher().toString();
+
+        ClaudeCodeOptions.Builder builder = ClaudeCodeOptions.builder()
+            .cliPath(cliPath)
+            .cliEnabled(true)
+            .cliMode(settings.mode)
+            .executorMode(settings.executorMode)
+            .timeout(settings.timeout)
+            .minPoolSize(Math.min(2, settings.concurrency))
+            .maxPoolSize(settings.concurrency);
+        settings.fakeEnvironment.forEach(builder::addEnvironment);
+
+        ClaudeCodeSDK sdk = new ClaudeCodeSDK(builder.build());
+        sdk.addHook("pre_query", context -> {
+            sampleOf(context.getData("request", QueryRequest.class)).dispatchNanos = System.nanoTime();
+            return HookResult.proceed();
+        });
+        sdk.addHook("query_error", context -> {
+            sampleOf(context.getData("request", QueryRequest.class)).failed = true;
+            return HookResult.proceed();
+        });
+
+        System.out.println("压测配置: " + settings);
+        try {
+            if (settings.warmup > 0) {
+                runPhase(sdk, 0, settings.warmup);
+            }
+            long wallStart = System.nanoTime();
+            runPhase(sdk, settings.warmup, samples.length);
+            long wallNanos = System.nanoTime() - wallStart;
+            report(wallNanos);
+        } finally {
+            sdk.shutdown();
+        }
+    }
+
+    /**
+     * 以配置的并发执行下标在[from, to)内的请求
+     */
+    private void runPhase(ClaudeCodeSDK sdk, int from, int to) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger(from);
+        ExecutorService workers = Executors.newFixedThreadPool(settings.concurrency);
+        for (int w = 0; w < settings.concurrency; w++) {
+            workers.execute(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < to) {
+                    execute(sdk, index);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.DAYS);
+    }
+
+    private void execute(ClaudeCodeSDK sdk, int index) {
+        Sample sample = samples[index];
+        QueryRequest request = QueryRequest.builder("load test request #" + index)
+            .withTimeout(settings.timeout)
+            .addMetadata(REQUEST_INDEX_KEY, index)
+            .build();
+
+        sample.submitNanos = System.nanoTime();
+        try {
+            if (settings.streaming) {
+                // 在发射线程上直接记录时间戳；blockingSubscribe会把同步源的消息攒到结束后才回放
+                CountDownLatch done = new CountDownLatch(1);
+                sdk.queryStream(request).subscribe(message -> {
+                    if (sample.firstMessageNanos == 0) {
+                        sample.firstMessageNanos = System.nanoTime();
+                    }
+                    sample.messages++;
+                }, error -> {
+                    sample.failed = true;
+                    done.countDown();
+                }, done::countDown);
+                if (!done.await(settings.timeout.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                    sample.failed = true;
+                }
+            } else {
+                List<Message> messages = sdk.query(request)
+                    .get(settings.timeout.toMillis() * 2, TimeUnit.MILLISECONDS)
+                    .collect(Collectors.toList());
+                sample.messages = messages.size();
+            }
+        } catch (Exception e) {
+            sample.failed = true;
+        }
+        sample.endNanos = System.nanoTime();
+
+        // SDK在失败时可能降级为空结果，没有任何消息同样视为失败
+        if (sample.messages == 0) {
+            sample.failed = true;
+        }
+    }
+
+    private void report(long wallNanos) {
+        int measured = settings.requests;
+        LatencyRecorder queue = new LatencyRecorder("queue", measured);
+        LatencyRecorder firstMessage = new LatencyRecorder("first-message", measured);
+        LatencyRecorder transfer = new LatencyRecorder("transfer", measured);
+        LatencyRecorder total = new LatencyRecorder("total", measured);
+
+        int failed = 0;
+        for (int i = settings.warmup; i < samples.length; i++) {
+            Sample sample = samples[i];
+            if (sample.failed) {
+                failed++;
+                continue;
+            }
+            if (sample.dispatchNanos != 0) {
+                queue.record(sample.dispatchNanos - sample.submitNanos);
+                if (sample.firstMessageNanos != 0) {
+                    firstMessage.record(sample.firstMessageNanos - sample.dispatchNanos);
+                }
+            }
+            if (sample.firstMessageNanos != 0) {
+                transfer.record(sample.endNanos - sample.firstMessageNanos);
+            }
+            total.record(sample.endNanos - sample.submitNanos);
+        }
+
+        double wallSeconds = wallNanos / 1_000_000_000.0;
+        System.out.printf("请求数: %d, 成功: %d, 失败: %d, 耗时: %.2fs, 吞吐量: %.1f req/s%n",
+            measured, measured - failed, failed, wallSeconds, (measured - failed) / wallSeconds);
+        System.out.println(LatencyRecorder.header());
+        System.out.println(queue.summarize());
+        System.out.println(firstMessage.summarize());
+        System.out.println(transfer.summarize());
+        System.out.println(total.summarize());
+    }
+
+    private Sample sampleOf(QueryRequest request) {
+        Object index = request != null ? request.getMetadata().get(REQUEST_INDEX_KEY) : null;
+        return index instanceof Integer ? samples[(Integer) index] : new Sample();
+    }
+
+    /**
+     * 生成调用 {@link FakeClaudeCli} 的启动脚本，复用当前JVM与classpath
+     */
+    private static Path createFakeCliLauncher() throws IOException {
+        Path dir = Files.createTempDirectory("fake-claude-cli");
+        Path launcher = dir.resolve("claude");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String script = "#!/bin/sh\n"
+            + "exec \"" + java + "\" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xshare:auto"
+            + " -cp \"" + System.getProperty("java.class.path") + "\" "
+            + FakeClaudeCli.class.getName() + " \"$@\"\n";
+        Files.writeString(launcher, script);
+        Files.setPosixFilePermissions(launcher, PosixFilePermissions.fromString("rwxr-xr-x"));
+        launcher.toFile().deleteOnExit();
+        dir.toFile().deleteOnExit();
+        return launcher;
+    }
+
+    /**
+     * 单个请求的时间戳，由发起线程与Hook回调线程写入
+     */
+    private static final class Sample {
+        volatile long submitNanos;
+        volatile long dispatchNanos;
+        volatile long firstMessageNanos;
+        volatile long endNanos;
+        volatile int messages;
+        volatile boolean failed;
+    }
+
+    /**
+     * 命令行参数
+     */
+    private static final class Settings {
+        boolean streaming = true;
+        CliMode mode = CliMode.BATCH;
+        ExecutorMode executorMode = ExecutorMode.getDefault();
+        int concurrency = 8;
+        int requests = 200;
+        int warmup = 20;
+        Duration timeout = Duration.ofSeconds(60);
+        String cliPath;
+        final Map<String, String> fakeEnvironment = new HashMap<>();
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("参数缺少取值: " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--api":
+                        settings.streaming = !"query".equals(value);
+                        break;
+                    case "--mode":
+                        settings.mode = CliMode.valueOf(value.toUpperCase());
+                        break;
+                    case "--executor":
+                        settings.executorMode = ExecutorMode.valueOf(value.toUpperCase());
+                        break;
+                    case "--concurrency":
+                        settings.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--requests":
+                        settings.requests = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        settings.warmup = Integer.parseInt(value);
+                        break;
+                    case "--timeout-sec":
+                        settings.timeout = Duration.ofSeconds(Long.parseLong(value));
+                        break;
+                    case "--cli":
+                        settings.cliPath = value;
+                        break;
+                    case "--latency-ms":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_LATENCY_MS, value);
+                        break;
+                    case "--tokens-per-sec":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_TOKENS_PER_SEC, value);
+                        break;
+                    case "--output-tokens":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_OUTPUT_TOKENS, value);
+                        break;
+                    case "--chunk-tokens":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_CHUNK_TOKENS, value);
+                        break;
+                    case "--failure-rate":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_FAILURE_RATE, value);
+                        break;
+                    case "--failure-mode":
+                        settings.fakeEnvironment.put(FakeClaudeCli.ENV_FAILURE_MODE, value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + name);
+                }
+            }
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("api=%s, mode=%s, executor=%s, concurrency=%d, requests=%d, warmup=%d, timeout=%s, "
+                    + "cli=%s, fake=%s",
+                streaming ? "stream" : "query", mode, executorMode, concurrency, requests, warmup, timeout,
+                cliPath != null ? cliPath : "fake", fakeEnvironment);
+        }
+    }
+}
@@ -8,17 +8,24 @@ import com.anthropic.claude.config.ConfigLoader;
 import com.anthropic.claude.hooks.HookCallback;
 import com.anthropic.claude.hooks.HookService;
 import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.performance.AdaptiveConcurrencyLimiter;
+import com.anthropic.claude.performance.CacheManager;
+import com.anthropic.claude.performance.RequestScheduler;
 import com.anthropic.claude.process.ProcessManager;
 import com.anthropic.claude.query.QueryBuilder;
 import com.anthropic.claude.query.QueryRequest;
 import com.anthropic.claude.query.QueryService;
 import com.anthropic.claude.pty.PtyManager;
 import com.anthropic.claude.subagents.SubagentManager;
+import com.anthropic.claude.streaming.PublisherAsyncIterator;
+import com.anthropic.claude.streaming.StreamStateManager;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Observable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.stream.Stream;
 
 public class ClaudeCodeSDK {
@@ -50,12 +57,16 @@ public class ClaudeCodeSDK {
                 ? options.getAuthProvider()
                 : new DefaultAuthenticationProvider(options.getApiKey());
 
-        this.processManager = new ProcessManager(options.getTimeout(), options.getEnvironment());
+        this.processManager = new ProcessManager(options.getTimeout(), options.getEnvironment(),
+            options.getBlockingExecutor());
         this.hookService = new HookService();
-        // 根据配置选择执行模式：默认批处理；PTY 模式注入 PtyManager
+        // 根据配置选择执行模式：默认批处理；PTY 模式注入 PtyManager；进程池模式由策略工厂创建连接池
         if (options.getCliMode() == CliMode.PTY_INTERACTIVE) {
             logger.info("初始化 QueryService（PTY 交互模式）");
             this.queryService = new QueryService(processManager, new PtyManager(), hookService, options);
+        } else if (options.getCliMode() == CliMode.POOLED) {
+            logger.info("初始化 QueryService（进程池模式）");
+            this.queryService = new QueryService(processManager, hookService, options);
         } else {
             logger.info("初始化 QueryService（批处理模式）");
             this.queryService = new QueryService(processManager, hookService, options);
@@ -83,6 +94,41 @@ public class ClaudeCodeSDK {
         return queryService.queryStream(request);
     }
 
+    /**
+     * 支持背压的流式查询，下游消费慢时暂停读取CLI输出
+     */
+    public Flowable<Message> queryFlowable(QueryRequest request) {
+        logger.debug("执行背压流式查询: {}", request.getPrompt());
+        return queryService.queryFlowable(request);
+    }
+
+    public Flow.Publisher<Message> queryPublisher(QueryRequest request) {
+        logger.debug("执行背压流式查询: {}", request.getPrompt());
+        return queryService.queryPublisher(request);
+    }
+
+    /**
+     * 以异步迭代器逐批拉取流式查询结果
+     */
+    public PublisherAsyncIterator<Message> queryIterator(QueryRequest request) {
+        logger.debug("执行背压流式查询: {}", request.getPrompt());
+        return queryService.queryIterator(request);
+    }
+
+    /**
+     * 可恢复的流式查询，出错时从检查点恢复会话并跳过已交付的消息
+     *
+     * @param streamId 由 {@link #getStreamStateManager()} 创建的流ID
+     */
+    public Flowable<Message> queryResumable(String streamId, QueryRequest request) {
+        logger.debug("执行可恢复流式查询 {}: {}", streamId, request.getPrompt());
+        return queryService.queryResumable(streamId, request);
+    }
+
+    public StreamStateManager getStreamStateManager() {
+        return queryService.getStreamStateManager();
+    }
+
     public QueryBuilder queryBuilder(String prompt) {
         return new QueryBuilder(prompt, queryService);
     }
@@ -101,6 +147,27 @@ public class ClaudeCodeSDK {
         return subagentManager;
     }
 
+    /**
+     * 查询结果缓存统计，未启用缓存时返回null
+     */
+    public CacheManager.CacheManagerStats getQueryCacheStats() {
+        return queryService.getCacheStats();
+    }
+
+    /**
+     * CLI执行并发限制统计，未启用并发限制时返回null
+     */
+    public AdaptiveConcurrencyLimiter.LimiterStats getConcurrencyStats() {
+        return queryService.getConcurrencyStats();
+    }
+
+    /**
+     * 请求调度统计，未启用请求调度时返回null
+     */
+    public RequestScheduler.SchedulerStats getSchedulerStats() {
+        return queryService.getSchedulerStats();
+    }
+
     public void configure(ClaudeCodeOptions newOptions) {
         logger.warn("运行时配置更改尚未实现");
         throw new UnsupportedOperationException("运行时配置更改尚未实现");
@@ -126,6 +193,7 @@ public class ClaudeCodeSDK {
     public void shutdown() {
         try {
             subagentManager.shutdown();
+            queryService.shutdown();
             logger.info("Claude Code SDK 已关闭");
         } catch (Exception e) {
             logger.error("关闭SDK时出错", e);
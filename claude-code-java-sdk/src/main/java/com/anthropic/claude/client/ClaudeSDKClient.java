@@ -37,7 +37,7 @@ public class ClaudeSDKClient {
         this.options = options;
         this.sessionManager = new SessionManager(options);
         this.messageReceiver = new MessageReceiver(messageSubject);
-        this.interruptHandler = new InterruptHandler();
+        this.interruptHandler = new InterruptHandler(options.getBlockingExecutor());
 
         logger.info("双向交互客户端已创建");
     }
@@ -79,7 +79,7 @@ public class ClaudeSDKClient {
                 logger.error("连接失败", e);
                 throw new ClaudeCodeException("连接到Claude服务失败: " + e.getMessage(), e);
             }
-        });
+        }, options.getBlockingExecutor());
     }
 
     /**
@@ -115,7 +115,7 @@ public class ClaudeSDKClient {
                 logger.error("断开连接时出错", e);
                 throw new ClaudeCodeException("断开连接失败: " + e.getMessage(), e);
             }
-        });
+        }, options.getBlockingExecutor());
     }
 
     /**
@@ -203,7 +203,7 @@ public class ClaudeSDKClient {
                 logger.error("中断操作失败", e);
                 throw new ClaudeCodeException("中断失败: " + e.getMessage(), e);
             }
-        });
+        }, options.getBlockingExecutor());
     }
 
     /**
@@ -6,6 +6,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -21,8 +23,17 @@ public class InterruptHandler {
 
     private final ConcurrentHashMap<String, InterruptContext> activeInterrupts = new ConcurrentHashMap<>();
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
+    private final Executor executor;
 
     public InterruptHandler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor 批量中断时执行各会话中断的执行器
+     */
+    public InterruptHandler(Executor executor) {
+        this.executor = executor;
         logger.debug("中断处理器已创建");
     }
 
@@ -119,7 +130,7 @@ public class InterruptHandler {
 
         @SuppressWarnings("unchecked")
         CompletableFuture<Void>[] futures = activeInterrupts.keySet().stream()
-                .map(sessionId -> CompletableFuture.runAsync(() -> performInterrupt(sessionId)))
+                .map(sessionId -> CompletableFuture.runAsync(() -> performInterrupt(sessionId), executor))
                 .toArray(size -> new CompletableFuture[size]);
 
         try {
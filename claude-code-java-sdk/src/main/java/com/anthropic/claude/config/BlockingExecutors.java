@@ -0,0 +1,135 @@
+package com.anthropic.claude.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 阻塞任务执行器工厂
+ *
+ * 项目以Java 17为编译目标，虚拟线程执行器通过反射获取，运行在JDK 21以下时回退到有界平台线程池。
+ * 创建的线程均为守护线程，空闲后自动回收，无需显式关闭。
+ *
+ * @author Claude Code SDK
+ */
+public final class BlockingExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(BlockingExecutors.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final Method VIRTUAL_FACTORY = findVirtualThreadFactory();
+
+    private BlockingExecutors() {
+    }
+
+    /**
+     * 按模式创建执行器
+     *
+     * @param mode 执行器模式
+     * @param poolSize 平台线程池的线程上限
+     * @return 执行器
+     */
+    public static Executor create(ExecutorMode mode, int poolSize) {
+        switch (mode) {
+            case PLATFORM:
+                return boundedPlatformPool(poolSize);
+
+            case VIRTUAL:
+                ExecutorService virtual = virtualThreadPerTask();
+                if (virtual != null) {
+                    return virtual;
+                }
+                logger.info("当前JDK不支持虚拟线程，回退到有界平台线程池: {}", poolSize);
+                return boundedPlatformPool(poolSize);
+
+            case COMMON_POOL:
+            default:
+                return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     *
+     * @return 执行器，当前JDK不支持时返回null
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        if (VIRTUAL_FACTORY == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) VIRTUAL_FACTORY.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("创建虚拟线程执行器失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 每个任务一个线程的执行器：支持时使用虚拟线程，否则使用不限线程数、空闲回收的守护线程池
+     *
+     * 用于在整个生命周期内阻塞、且不能与其他阻塞任务争用有界线程的任务
+     *
+     * @param prefix 平台线程的名称前缀
+     * @return 执行器
+     */
+    public static ExecutorService threadPerTask(String prefix) {
+        ExecutorService virtual = virtualThreadPerTask();
+        if (virtual != null) {
+            return virtual;
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), daemonThreadFactory(prefix));
+    }
+
+    /**
+     * 线程数有上限的平台线程池，任务超出上限时排队
+     *
+     * @param poolSize 线程上限
+     * @return 执行器
+     */
+    public static ExecutorService boundedPlatformPool(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("线程池大小必须大于0");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreadFactory("claude-blocking-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Method findVirtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package com.anthropic.claude.config;
 
 import com.anthropic.claude.auth.AuthenticationProvider;
+import com.anthropic.claude.performance.AdaptiveConcurrencyLimiter;
+import com.anthropic.claude.query.QueryPriority;
+import com.anthropic.claude.query.QueryResultCache;
+import com.anthropic.claude.streaming.StreamStateManager;
 import com.anthropic.claude.utils.ClaudePathResolver;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class ClaudeCodeOptions {
     private final String apiKey;
@@ -23,6 +30,7 @@ public class ClaudeCodeOptions {
     // CLI模式配置
     private final CliMode cliMode;
     private final Duration ptyReadyTimeout;
+    private final int ptySessionCount;
     private final String promptPattern;
     private final List<String> additionalArgs;
 
@@ -31,6 +39,37 @@ public class ClaudeCodeOptions {
     private final int maxPoolSize;
     private final long connectionTimeout;
     private final long healthCheckInterval;
+    private final int maxConnectionUses;
+    private final Duration maxConnectionAge;
+
+    // 并发限制配置
+    private final boolean concurrencyLimitEnabled;
+    private final int maxConcurrency;
+    private final int concurrencyQueueSize;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    // 请求调度配置
+    private final boolean requestSchedulingEnabled;
+    private final Map<QueryPriority, Integer> priorityConcurrencyCaps;
+    private final Map<String, Integer> tenantWeights;
+    private final Duration starvationThreshold;
+
+    // 可恢复流配置
+    private final int streamReplayBufferSize;
+
+    // 阻塞任务执行器配置
+    private final ExecutorMode executorMode;
+    private final int blockingPoolSize;
+    private final Executor blockingExecutor;
+
+    // 查询结果缓存配置
+    private final boolean queryCacheEnabled;
+    private final Duration queryCacheTtl;
+    private final long queryCacheMaxBytes;
+    private final QueryResultCache queryResultCache;
+    private final Path queryCacheDirectory;
+    private final boolean queryCoalescingEnabled;
+    private final long queryDiskCacheMaxBytes;
 
     private ClaudeCodeOptions(Builder builder) {
         this.apiKey = builder.apiKey;
@@ -44,12 +83,36 @@ public class ClaudeCodeOptions {
         this.authProvider = builder.authProvider;
         this.cliMode = builder.cliMode;
         this.ptyReadyTimeout = builder.ptyReadyTimeout;
+        this.ptySessionCount = builder.ptySessionCount;
         this.promptPattern = builder.promptPattern;
         this.additionalArgs = builder.additionalArgs;
         this.minPoolSize = builder.minPoolSize;
         this.maxPoolSize = builder.maxPoolSize;
         this.connectionTimeout = builder.connectionTimeout;
         this.healthCheckInterval = builder.healthCheckInterval;
+        this.maxConnectionUses = builder.maxConnectionUses;
+        this.maxConnectionAge = builder.maxConnectionAge;
+        this.concurrencyLimitEnabled = builder.concurrencyLimitEnabled;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.concurrencyQueueSize = builder.concurrencyQueueSize;
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.requestSchedulingEnabled = builder.requestSchedulingEnabled;
+        this.priorityConcurrencyCaps = new EnumMap<>(builder.priorityConcurrencyCaps);
+        this.tenantWeights = new HashMap<>(builder.tenantWeights);
+        this.starvationThreshold = builder.starvationThreshold;
+        this.streamReplayBufferSize = builder.streamReplayBufferSize;
+        this.executorMode = builder.executorMode;
+        this.blockingPoolSize = builder.blockingPoolSize;
+        this.blockingExecutor = builder.blockingExecutor != null
+            ? builder.blockingExecutor
+            : BlockingExecutors.create(builder.executorMode, builder.blockingPoolSize);
+        this.queryCacheEnabled = builder.queryCacheEnabled;
+        this.queryCacheTtl = builder.queryCacheTtl;
+        this.queryCacheMaxBytes = builder.queryCacheMaxBytes;
+        this.queryResultCache = builder.queryResultCache;
+        this.queryCacheDirectory = builder.queryCacheDirectory;
+        this.queryCoalescingEnabled = builder.queryCoalescingEnabled;
+        this.queryDiskCacheMaxBytes = builder.queryDiskCacheMaxBytes;
     }
 
     public String getApiKey() {
@@ -104,6 +167,108 @@ public class ClaudeCodeOptions {
         return healthCheckInterval;
     }
 
+    public int getMaxConnectionUses() {
+        return maxConnectionUses;
+    }
+
+    public Duration getMaxConnectionAge() {
+        return maxConnectionAge;
+    }
+
+    /**
+     * 是否限制CLI执行并发，指定了自定义限制器时视为启用
+     */
+    public boolean isConcurrencyLimitEnabled() {
+        return concurrencyLimitEnabled || concurrencyLimiter != null;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getConcurrencyQueueSize() {
+        return concurrencyQueueSize;
+    }
+
+    /**
+     * 自定义并发限制器，未指定时返回null，由QueryService按最大并发数和排队长度创建
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public boolean isRequestSchedulingEnabled() {
+        return requestSchedulingEnabled;
+    }
+
+    public Map<QueryPriority, Integer> getPriorityConcurrencyCaps() {
+        return new EnumMap<>(priorityConcurrencyCaps);
+    }
+
+    public Map<String, Integer> getTenantWeights() {
+        return new HashMap<>(tenantWeights);
+    }
+
+    public Duration getStarvationThreshold() {
+        return starvationThreshold;
+    }
+
+    public int getStreamReplayBufferSize() {
+        return streamReplayBufferSize;
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getBlockingPoolSize() {
+        return blockingPoolSize;
+    }
+
+    /**
+     * 承载异步查询、进程执行、连接获取等阻塞任务的执行器
+     */
+    public Executor getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * 是否启用查询结果缓存，指定了自定义缓存实现时视为启用
+     */
+    public boolean isQueryCacheEnabled() {
+        return queryCacheEnabled || queryResultCache != null;
+    }
+
+    public Duration getQueryCacheTtl() {
+        return queryCacheTtl;
+    }
+
+    public long getQueryCacheMaxBytes() {
+        return queryCacheMaxBytes;
+    }
+
+    /**
+     * 自定义查询结果缓存实现，未指定时返回null，由QueryService创建默认实现
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * 查询结果磁盘缓存目录，未指定时只使用内存缓存
+     */
+    public Path getQueryCacheDirectory() {
+        return queryCacheDirectory;
+    }
+
+    public long getQueryDiskCacheMaxBytes() {
+        return queryDiskCacheMaxBytes;
+    }
+
+    public boolean isQueryCoalescingEnabled() {
+        return queryCoalescingEnabled;
+    }
+
     public CliMode getCliMode() {
         return cliMode;
     }
@@ -112,6 +277,10 @@ public class ClaudeCodeOptions {
         return ptyReadyTimeout;
     }
 
+    public int getPtySessionCount() {
+        return ptySessionCount;
+    }
+
     public String getPromptPattern() {
         return promptPattern;
     }
@@ -138,6 +307,7 @@ public class ClaudeCodeOptions {
         // CLI模式配置默认值
         private CliMode cliMode = CliMode.getDefault();
         private Duration ptyReadyTimeout = Duration.ofSeconds(10);
+        private int ptySessionCount = 1;
         private String promptPattern;
         private List<String> additionalArgs = new ArrayList<>();
 
@@ -146,6 +316,37 @@ public class ClaudeCodeOptions {
         private int maxPoolSize = 10;
         private long connectionTimeout = 5000; // 5秒
         private long healthCheckInterval = 30000; // 30秒
+        private int maxConnectionUses = 20;
+        private Duration maxConnectionAge = Duration.ofHours(1);
+
+        // 并发限制默认值
+        private boolean concurrencyLimitEnabled = true;
+        private int maxConcurrency = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+        private int concurrencyQueueSize = 1024;
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+        // 请求调度默认值
+        private boolean requestSchedulingEnabled = false;
+        private final Map<QueryPriority, Integer> priorityConcurrencyCaps = new EnumMap<>(QueryPriority.class);
+        private final Map<String, Integer> tenantWeights = new HashMap<>();
+        private Duration starvationThreshold = Duration.ofSeconds(10);
+
+        // 可恢复流默认值
+        private int streamReplayBufferSize = StreamStateManager.DEFAULT_REPLAY_BUFFER_SIZE;
+
+        // 阻塞任务执行器默认值
+        private ExecutorMode executorMode = ExecutorMode.getDefault();
+        private int blockingPoolSize = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+        private Executor blockingExecutor;
+
+        // 查询结果缓存默认值
+        private boolean queryCacheEnabled = false;
+        private Duration queryCacheTtl = Duration.ofMinutes(30);
+        private long queryCacheMaxBytes = 64L * 1024 * 1024;
+        private QueryResultCache queryResultCache;
+        private Path queryCacheDirectory;
+        private boolean queryCoalescingEnabled = false;
+        private long queryDiskCacheMaxBytes = 512L * 1024 * 1024;
 
         public Builder() {
             // 动态获取Claude CLI路径作为默认值
@@ -222,6 +423,158 @@ public class ClaudeCodeOptions {
             return this;
         }
 
+        public Builder maxConnectionUses(int maxConnectionUses) {
+            this.maxConnectionUses = maxConnectionUses;
+            return this;
+        }
+
+        public Builder maxConnectionAge(Duration maxConnectionAge) {
+            this.maxConnectionAge = maxConnectionAge;
+            return this;
+        }
+
+        /**
+         * 按观测到的延迟和限流信号自适应限制同时执行的CLI请求数，超出的请求排队，默认启用
+         */
+        public Builder concurrencyLimitEnabled(boolean concurrencyLimitEnabled) {
+            this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+            return this;
+        }
+
+        /**
+         * 自适应并发上限的最大值
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * 超出并发上限时允许排队的请求数，超过后立即拒绝
+         */
+        public Builder concurrencyQueueSize(int concurrencyQueueSize) {
+            this.concurrencyQueueSize = concurrencyQueueSize;
+            return this;
+        }
+
+        public Builder concurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * 按请求的优先级和租户调度排队请求，而不是按到达顺序，默认关闭
+         */
+        public Builder requestSchedulingEnabled(boolean requestSchedulingEnabled) {
+            this.requestSchedulingEnabled = requestSchedulingEnabled;
+            return this;
+        }
+
+        /**
+         * 限制某个优先级同时执行的请求数，仅在启用请求调度时生效
+         */
+        public Builder priorityConcurrencyCap(QueryPriority priority, int cap) {
+            this.priorityConcurrencyCaps.put(priority, cap);
+            return this;
+        }
+
+        /**
+         * 设置租户在同一优先级内的调度权重，未设置的租户权重为1
+         */
+        public Builder tenantWeight(String tenant, int weight) {
+            this.tenantWeights.put(tenant, weight);
+            return this;
+        }
+
+        /**
+         * 排队超过该时间的请求不再受优先级约束，按等待先后调度，防止低优先级请求饿死
+         */
+        public Builder starvationThreshold(Duration starvationThreshold) {
+            this.starvationThreshold = starvationThreshold;
+            return this;
+        }
+
+        /**
+         * 可恢复流为每个流保留的最近交付消息数量，供消费者重新连接时回放
+         */
+        public Builder streamReplayBufferSize(int streamReplayBufferSize) {
+            this.streamReplayBufferSize = streamReplayBufferSize;
+            return this;
+        }
+
+        public Builder executorMode(ExecutorMode executorMode) {
+            this.executorMode = executorMode;
+            return this;
+        }
+
+        /**
+         * 平台线程池的线程上限，用于 {@link ExecutorMode#PLATFORM} 以及虚拟线程不可用时的回退
+         */
+        public Builder blockingPoolSize(int blockingPoolSize) {
+            this.blockingPoolSize = blockingPoolSize;
+            return this;
+        }
+
+        /**
+         * 直接指定阻塞任务执行器，优先于 executorMode，生命周期由调用方管理
+         */
+        public Builder blockingExecutor(Executor blockingExecutor) {
+            this.blockingExecutor = blockingExecutor;
+            return this;
+        }
+
+        /**
+         * 启用查询结果缓存，相同请求在有效期内直接返回缓存结果，单个请求可通过
+         * {@link com.anthropic.claude.query.QueryRequest.Builder#withCacheable(boolean)} 跳过
+         */
+        public Builder queryCacheEnabled(boolean queryCacheEnabled) {
+            this.queryCacheEnabled = queryCacheEnabled;
+            return this;
+        }
+
+        public Builder queryCacheTtl(Duration queryCacheTtl) {
+            this.queryCacheTtl = queryCacheTtl;
+            return this;
+        }
+
+        /**
+         * 查询结果缓存的字节上限，按消息内容估算
+         */
+        public Builder queryCacheMaxBytes(long queryCacheMaxBytes) {
+            this.queryCacheMaxBytes = queryCacheMaxBytes;
+            return this;
+        }
+
+        public Builder queryResultCache(QueryResultCache queryResultCache) {
+            this.queryResultCache = queryResultCache;
+            return this;
+        }
+
+        /**
+         * 启用磁盘缓存层，内存缓存未命中时从该目录读取，进程重启后仍然有效
+         */
+        public Builder queryCacheDirectory(Path queryCacheDirectory) {
+            this.queryCacheDirectory = queryCacheDirectory;
+            return this;
+        }
+
+        /**
+         * 磁盘缓存段文件的字节上限，超过时压缩并淘汰最早写入的结果
+         */
+        public Builder queryDiskCacheMaxBytes(long queryDiskCacheMaxBytes) {
+            this.queryDiskCacheMaxBytes = queryDiskCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * 合并相同的在途请求：执行期间到达的相同请求共享同一次CLI调用的结果，
+         * 单个请求可通过 {@link com.anthropic.claude.query.QueryRequest.Builder#withCacheable(boolean)} 跳过
+         */
+        public Builder queryCoalescingEnabled(boolean queryCoalescingEnabled) {
+            this.queryCoalescingEnabled = queryCoalescingEnabled;
+            return this;
+        }
+
         public Builder cliMode(CliMode cliMode) {
             this.cliMode = cliMode;
             return this;
@@ -232,6 +585,14 @@ public class ClaudeCodeOptions {
             return this;
         }
 
+        /**
+         * PTY交互模式下并行的会话数，每个会话同一时刻执行一个请求
+         */
+        public Builder ptySessionCount(int ptySessionCount) {
+            this.ptySessionCount = ptySessionCount;
+            return this;
+        }
+
         public Builder promptPattern(String promptPattern) {
             this.promptPattern = promptPattern;
             return this;
@@ -18,7 +18,14 @@ public enum CliMode {
      * 维护常驻会话，向stdin写入，按行监听stdout
      * 异常时自动回退至批处理模式
      */
-    PTY_INTERACTIVE("PTY交互模式");
+    PTY_INTERACTIVE("PTY交互模式"),
+
+    /**
+     * 进程池模式（可选）
+     * 预先启动stream-json模式的常驻CLI进程并在请求间复用
+     * 携带逐次命令行参数的请求回退至批处理模式
+     */
+    POOLED("进程池模式");
 
     private final String description;
 
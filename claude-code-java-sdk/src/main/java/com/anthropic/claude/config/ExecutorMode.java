@@ -0,0 +1,47 @@
+package com.anthropic.claude.config;
+
+/**
+ * 阻塞任务执行器模式
+ *
+ * 异步查询、进程执行、连接获取等操作会在任务线程上阻塞等待进程I/O，
+ * 通过该模式选择承载这些任务的执行器
+ *
+ * @author Claude Code SDK
+ */
+public enum ExecutorMode {
+    /**
+     * 公共ForkJoinPool（默认）
+     * 与此前行为一致，并发阻塞任务数受CPU核数限制；
+     * 背压流（queryFlowable、queryPublisher）的读取线程会随消费速度长时间阻塞，此模式下改用独立线程
+     */
+    COMMON_POOL("公共ForkJoinPool"),
+
+    /**
+     * 有界平台线程池
+     * 线程数由 blockingPoolSize 决定，空闲线程自动回收
+     */
+    PLATFORM("有界平台线程池"),
+
+    /**
+     * 虚拟线程（可选）
+     * JDK 21及以上每个任务一个虚拟线程，低版本回退到有界平台线程池
+     */
+    VIRTUAL("虚拟线程");
+
+    private final String description;
+
+    ExecutorMode(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 获取默认执行器模式
+     */
+    public static ExecutorMode getDefault() {
+        return COMMON_POOL;
+    }
+}
@@ -0,0 +1,121 @@
+package com.anthropic.claude.context;
+
+/**
+ * 本地BPE风格的token计数器
+ *
+ * 不加载词表，按BPE分词器的预切分规则单遍扫描文本并近似计数：
+ * <ul>
+ *   <li>字母组成的单词每6个字符计1个token，前面的单个空格并入单词</li>
+ *   <li>数字每3位计1个token</li>
+ *   <li>中日韩文字及全角标点每个字符计1个token</li>
+ *   <li>连续的空白、连续的换行各计1个token</li>
+ *   <li>其他符号每个计1个token，连续相同的符号每4个计1个，补充平面字符（如emoji）计2个</li>
+ * </ul>
+ * 与按字符数除以4相比，中文等文本的估算不会偏小数倍。无状态，可在线程间共享。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class BpeTokenCounter implements TokenCounter {
+
+    private static final int WORD_CHARS_PER_TOKEN = 6;
+    private static final int DIGITS_PER_TOKEN = 3;
+    private static final int REPEATED_SYMBOLS_PER_TOKEN = 4;
+
+    private static final int NONE = 0;
+    private static final int LETTER = 1;
+    private static final int DIGIT = 2;
+    private static final int CJK = 3;
+    private static final int SPACE = 4;
+    private static final int NEWLINE = 5;
+    private static final int SYMBOL = 6;
+
+    @Override
+    public int countTokens(CharSequence text) {
+        int tokens = 0;
+        int previous = NONE;
+        int runLength = 0;
+        int previousCodePoint = -1;
+        int length = text.length();
+
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            int category = categorize(codePoint);
+            int previousRun = runLength;
+            runLength = category == previous ? runLength + 1 : 1;
+
+            switch (category) {
+                case LETTER:
+                case DIGIT:
+                    int perToken = category == LETTER ? WORD_CHARS_PER_TOKEN : DIGITS_PER_TOKEN;
+                    boolean joinsSpace = runLength == 1 && previous == SPACE && previousRun == 1;
+                    if ((runLength - 1) % perToken == 0 && !joinsSpace) {
+                        tokens++;
+                    }
+                    break;
+                case CJK:
+                    tokens++;
+                    break;
+                case SPACE:
+                case NEWLINE:
+                    if (runLength == 1) {
+                        tokens++;
+                    }
+                    break;
+                default:
+                    if (runLength > 1 && codePoint == previousCodePoint) {
+                        if ((runLength - 1) % REPEATED_SYMBOLS_PER_TOKEN == 0) {
+                            tokens++;
+                        }
+                    } else {
+                        runLength = 1;
+                        tokens += Character.isSupplementaryCodePoint(codePoint) ? 2 : 1;
+                    }
+                    break;
+            }
+            previous = category;
+            previousCodePoint = codePoint;
+        }
+        return tokens;
+    }
+
+    private static int categorize(int codePoint) {
+        if (codePoint < 0x80) {
+            if ((codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')) {
+                return LETTER;
+            }
+            if (codePoint >= '0' && codePoint <= '9') {
+                return DIGIT;
+            }
+            if (codePoint == '\n' || codePoint == '\r') {
+                return NEWLINE;
+            }
+            return Character.isWhitespace(codePoint) ? SPACE : SYMBOL;
+        }
+        if (Character.isWhitespace(codePoint)) {
+            return SPACE;
+        }
+        if (Character.isDigit(codePoint)) {
+            return DIGIT;
+        }
+        if (isCjk(codePoint)) {
+            return CJK;
+        }
+        return Character.isLetter(codePoint) ? LETTER : SYMBOL;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        if (codePoint < 0x2E80) {
+            return false;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+            return true;
+        }
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(codePoint);
+        return block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS;
+    }
+}
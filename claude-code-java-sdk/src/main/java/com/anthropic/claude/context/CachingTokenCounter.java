@@ -0,0 +1,95 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * 按消息ID缓存计数结果的token计数器
+ *
+ * 消息内容不可变，同一条消息在追加、压缩、截断时只计数一次。缓存项同时记录内容的长度和哈希，
+ * 从 {@link ContextStore} 还原的消息副本仍能命中，ID相同但内容不同的消息（如压缩后重建的消息）会重新计数；
+ * 缓存不持有消息内容。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class CachingTokenCounter implements TokenCounter {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final TokenCounter delegate;
+    private final Cache<String, CachedCount> counts;
+
+    public CachingTokenCounter(TokenCounter delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize 缓存的消息数上限
+     */
+    public CachingTokenCounter(TokenCounter delegate, long maximumSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("token计数器不能为null");
+        }
+        this.delegate = delegate;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * 为计数器加上缓存，已带缓存的计数器原样返回
+     */
+    public static CachingTokenCounter wrap(TokenCounter counter) {
+        return counter instanceof CachingTokenCounter
+                ? (CachingTokenCounter) counter
+                : new CachingTokenCounter(counter);
+    }
+
+    @Override
+    public int countTokens(CharSequence text) {
+        return delegate.countTokens(text);
+    }
+
+    @Override
+    public int countTokens(Message message) {
+        String content = message.getContent();
+        CachedCount cached = counts.getIfPresent(message.getId());
+        if (cached != null && cached.matches(content)) {
+            return cached.tokens;
+        }
+        int tokens = delegate.countTokens(message);
+        counts.put(message.getId(), new CachedCount(content, tokens));
+        return tokens;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        counts.invalidateAll();
+    }
+
+    public TokenCounter getDelegate() {
+        return delegate;
+    }
+
+    private static final class CachedCount {
+        private final int length;
+        private final int hash;
+        private final int tokens;
+
+        CachedCount(String content, int tokens) {
+            this.length = content != null ? content.length() : -1;
+            this.hash = content != null ? content.hashCode() : 0;
+            this.tokens = tokens;
+        }
+
+        boolean matches(String content) {
+            return content != null
+                    ? length == content.length() && hash == content.hashCode()
+                    : length == -1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.anthropic.claude.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台上下文压缩服务
+ *
+ * 在专用线程上压缩超过阈值的窗口，同一窗口同时只排队一次；按固定间隔清理空闲窗口。
+ * 由 {@link ContextManager} 在 {@link ContextConfig#isBackgroundCompaction()} 启用时创建。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+final class ContextCompactionService {
+    private static final Logger logger = LoggerFactory.getLogger(ContextCompactionService.class);
+
+    private final ContextManager manager;
+    private final ScheduledExecutorService executor;
+    private final Set<ContextManager.ContextWindow> pending = ConcurrentHashMap.newKeySet();
+
+    ContextCompactionService(ContextManager manager, Duration expirationCheckInterval) {
+        this.manager = manager;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "context-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long intervalMillis = expirationCheckInterval.toMillis();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                manager.expireIdleContexts();
+            } catch (Exception e) {
+                logger.error("清理空闲上下文失败", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.debug("后台上下文压缩已启动 - 空闲检查间隔: {}ms", intervalMillis);
+    }
+
+    /**
+     * 登记待压缩的窗口，已在排队的窗口不重复登记
+     */
+    void schedule(ContextManager.ContextWindow window) {
+        if (!pending.add(window)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    manager.compactIfNeeded(window);
+                } catch (Exception e) {
+                    logger.error("后台压缩上下文 {} 失败", window.getContextId(), e);
+                } finally {
+                    pending.remove(window);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(window);
+            logger.debug("后台压缩已停止，忽略上下文 {}", window.getContextId());
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        pending.clear();
+    }
+}
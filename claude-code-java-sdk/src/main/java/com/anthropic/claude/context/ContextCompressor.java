@@ -5,8 +5,8 @@ import com.anthropic.claude.messages.MessageType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 上下文压缩器
@@ -18,18 +18,31 @@ import java.util.stream.Collectors;
 public class ContextCompressor {
     private static final Logger logger = LoggerFactory.getLogger(ContextCompressor.class);
 
+    private static final double IMPORTANCE_THRESHOLD = 0.7; // 重要性阈值
+
+    // 消息在压缩过程中的状态，非负值为已选入，时间相同时按该值排列
+    private static final byte DROPPED = -2;
+    private static final byte CANDIDATE = -1;
+    private static final byte RANK_SYSTEM = 0;
+    private static final byte RANK_IMPORTANT = 1;
+    private static final byte RANK_REGULAR = 2;
+    private static final byte RANK_FILLED = 3;
+
     private final ContextConfig config;
-    private final MessageImportanceCalculator importanceCalculator;
 
     public ContextCompressor(ContextConfig config) {
         this.config = config;
-        this.importanceCalculator = new MessageImportanceCalculator();
         logger.debug("上下文压缩器已初始化");
     }
 
     /**
      * 压缩消息列表
      *
+     * 单遍计算每条消息的时间、大小和重要性，之后只按下标选择和排序：
+     * 保留系统消息和（按配置）重要消息，常规消息从最新开始在剩余预算内依次选入放得下的，
+     * 不足最少保留数时用未选中的最新消息补足。结果按时间排序，时间相同时依次为系统、重要、常规、补足的消息，
+     * 同类按原顺序。
+     *
      * @param messages 原始消息列表
      * @return 压缩后的消息列表
      */
@@ -40,39 +53,59 @@ public class ContextCompressor {
 
         logger.debug("开始压缩上下文，原始消息数: {}", messages.size());
 
-        // 1. 计算目标大小
-        int currentSize = estimateTotalSize(messages);
-        int targetSize = (int) (currentSize * config.getCompressionRatio());
-
-        // 2. 分类消息
-        List<Message> importantMessages = new ArrayList<>();
-        List<Message> regularMessages = new ArrayList<>();
-        List<Message> systemMessages = new ArrayList<>();
-
-        classifyMessages(messages, importantMessages, regularMessages, systemMessages);
-
-        // 3. 构建压缩结果
-        List<Message> compressedMessages = new ArrayList<>();
+        // 1. 单遍计算时间、大小和分类
+        int count = messages.size();
+        LocalDateTime[] times = new LocalDateTime[count];
+        int[] sizes = new int[count];
+        byte[] ranks = new byte[count];
+        ImportanceScorer scorer = new ImportanceScorer(LocalDateTime.now());
+        boolean preserveImportant = config.isPreserveImportantMessages();
+        boolean ordered = true;
+        int currentSize = 0;
+        int usedSize = 0;
+        int systemCount = 0;
+        int importantCount = 0;
+        int regularCount = 0;
 
-        // 始终保留系统消息
-        compressedMessages.addAll(systemMessages);
+        for (int i = 0; i < count; i++) {
+            Message message = messages.get(i);
+            times[i] = message.getTimestamp();
+            sizes[i] = estimateMessageSize(message);
+            currentSize += sizes[i];
+            if (i > 0 && times[i - 1].compareTo(times[i]) > 0) {
+                ordered = false;
+            }
 
-        // 保留重要消息（如果配置了）
-        if (config.isPreserveImportantMessages()) {
-            compressedMessages.addAll(importantMessages);
+            if (message.getType() == MessageType.SYSTEM) {
+                ranks[i] = RANK_SYSTEM;
+                usedSize += sizes[i];
+                systemCount++;
+            } else if (scorer.score(message, times[i]) > IMPORTANCE_THRESHOLD) {
+                ranks[i] = preserveImportant ? RANK_IMPORTANT : DROPPED;
+                usedSize += preserveImportant ? sizes[i] : 0;
+                importantCount++;
+            } else {
+                ranks[i] = CANDIDATE;
+                regularCount++;
+            }
         }
 
-        // 从最新的常规消息开始选择
-        List<Message> selectedRegular = selectRecentMessages(regularMessages, targetSize,
-                estimateTotalSize(compressedMessages));
+        logger.debug("消息分类完成 - 重要: {}, 常规: {}, 系统: {}",
+                importantCount, regularCount, systemCount);
 
-        compressedMessages.addAll(selectedRegular);
+        // 2. 从最新的常规消息开始，在剩余预算内选入放得下的消息
+        int targetSize = (int) (currentSize * config.getCompressionRatio());
+        int selectedCount = systemCount + (preserveImportant ? importantCount : 0);
+        selectedCount += selectRecentMessages(times, sizes, ranks, regularCount, targetSize - usedSize);
 
-        // 4. 按时间顺序排序
-        compressedMessages.sort(Comparator.comparing(Message::getTimestamp));
+        // 3. 确保满足最小消息数要求
+        int needed = config.getMinRetainedMessages() - selectedCount;
+        if (needed > 0) {
+            fillMinimumMessages(messages, times, ranks, needed);
+        }
 
-        // 5. 确保满足最小消息数要求
-        ensureMinimumMessages(compressedMessages, messages);
+        // 4. 按时间顺序输出
+        List<Message> compressedMessages = collectInOrder(messages, times, ranks, ordered);
 
         logger.debug("压缩完成 - 原始: {} 消息, 压缩后: {} 消息",
                 messages.size(), compressedMessages.size());
@@ -123,99 +156,141 @@ public class ContextCompressor {
     }
 
     /**
-     * 分类消息
+     * 选择最近的常规消息
+     *
+     * 候选消息建堆后按从新到旧弹出，放得下的选入；剩余预算小于最小的候选消息时停止，不对全部候选排序。
+     *
+     * @return 选入的消息数
      */
-    private void classifyMessages(List<Message> messages,
-                                List<Message> importantMessages,
-                                List<Message> regularMessages,
-                                List<Message> systemMessages) {
-        for (Message message : messages) {
-            if (message.getType() == MessageType.SYSTEM) {
-                systemMessages.add(message);
-            } else if (isImportantMessage(message)) {
-                importantMessages.add(message);
-            } else {
-                regularMessages.add(message);
-            }
+    private int selectRecentMessages(LocalDateTime[] times, int[] sizes, byte[] ranks,
+                                     int candidateCount, int remainingSize) {
+        if (remainingSize <= 0 || candidateCount == 0) {
+            return 0;
         }
 
-        logger.debug("消息分类完成 - 重要: {}, 常规: {}, 系统: {}",
-                importantMessages.size(), regularMessages.size(), systemMessages.size());
+        // 超过全部剩余预算的消息不可能选入，不进堆
+        NewestFirstHeap heap = new NewestFirstHeap(times, candidateCount);
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] == CANDIDATE && sizes[i] <= remainingSize) {
+                heap.add(i);
+                smallest = Math.min(smallest, sizes[i]);
+            }
+        }
+        heap.heapify();
+
+        int selected = 0;
+        while (remainingSize >= smallest && !heap.isEmpty()) {
+            int index = heap.poll();
+            if (sizes[index] <= remainingSize) {
+                ranks[index] = RANK_REGULAR;
+                remainingSize -= sizes[index];
+                selected++;
+            }
+        }
+        return selected;
     }
 
     /**
-     * 选择最近的消息
+     * 用未选中的最新消息补足最小消息数
      */
-    private List<Message> selectRecentMessages(List<Message> messages, int targetSize, int usedSize) {
-        List<Message> selected = new ArrayList<>();
-        int remainingSize = targetSize - usedSize;
-
-        if (remainingSize <= 0) {
-            return selected;
+    private void fillMinimumMessages(List<Message> messages, LocalDateTime[] times, byte[] ranks, int needed) {
+        // 同一消息对象在列表中出现多次时，已选入其一即视为已保留
+        Set<Message> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] >= 0) {
+                existing.add(messages.get(i));
+            }
         }
 
-        // 按时间倒序排序（最新的优先）
-        List<Message> sortedMessages = messages.stream()
-                .sorted(Comparator.comparing(Message::getTimestamp).reversed())
-                .collect(Collectors.toList());
-
-        int currentSize = 0;
-        for (Message message : sortedMessages) {
-            int messageSize = estimateMessageSize(message);
-            if (currentSize + messageSize <= remainingSize) {
-                selected.add(message);
-                currentSize += messageSize;
+        NewestFirstHeap heap = new NewestFirstHeap(times, ranks.length - existing.size());
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] < 0 && !existing.contains(messages.get(i))) {
+                heap.add(i);
             }
         }
+        heap.heapify();
 
-        return selected;
+        for (int filled = 0; filled < needed && !heap.isEmpty(); filled++) {
+            ranks[heap.poll()] = RANK_FILLED;
+        }
+
+        logger.debug("补充消息以满足最小数量要求: {}", needed);
     }
 
     /**
-     * 确保满足最小消息数要求
+     * 按时间、选入顺序、原下标输出已选入的消息
+     *
+     * 原列表已按时间排序时（常见情况）线性输出，只在时间相同的区间内按选入顺序调整
      */
-    private void ensureMinimumMessages(List<Message> compressedMessages, List<Message> originalMessages) {
-        if (compressedMessages.size() >= config.getMinRetainedMessages()) {
-            return;
+    private List<Message> collectInOrder(List<Message> messages, LocalDateTime[] times, byte[] ranks,
+                                         boolean ordered) {
+        List<Message> result = new ArrayList<>();
+        int count = ranks.length;
+        if (!ordered) {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (ranks[i] >= 0) {
+                    indexes.add(i);
+                }
+            }
+            indexes.sort((a, b) -> {
+                int byTime = times[a].compareTo(times[b]);
+                if (byTime != 0) {
+                    return byTime;
+                }
+                return ranks[a] != ranks[b] ? Byte.compare(ranks[a], ranks[b]) : Integer.compare(a, b);
+            });
+            for (int index : indexes) {
+                result.add(messages.get(index));
+            }
+            return result;
         }
 
-        int needed = config.getMinRetainedMessages() - compressedMessages.size();
-        Set<Message> existing = new HashSet<>(compressedMessages);
-
-        // 从原消息中选择最新的消息补充
-        List<Message> candidates = originalMessages.stream()
-                .filter(msg -> !existing.contains(msg))
-                .sorted(Comparator.comparing(Message::getTimestamp).reversed())
-                .limit(needed)
-                .collect(Collectors.toList());
-
-        compressedMessages.addAll(candidates);
-        compressedMessages.sort(Comparator.comparing(Message::getTimestamp));
-
-        logger.debug("补充消息以满足最小数量要求: {}", needed);
+        int start = 0;
+        while (start < count) {
+            int end = start + 1;
+            while (end < count && times[end].compareTo(times[start]) == 0) {
+                end++;
+            }
+            if (end - start == 1) {
+                if (ranks[start] >= 0) {
+                    result.add(messages.get(start));
+                }
+            } else {
+                for (byte rank = RANK_SYSTEM; rank <= RANK_FILLED; rank++) {
+                    for (int i = start; i < end; i++) {
+                        if (ranks[i] == rank) {
+                            result.add(messages.get(i));
+                        }
+                    }
+                }
+            }
+            start = end;
+        }
+        return result;
     }
 
     /**
      * 判断是否为重要消息
      */
     private boolean isImportantMessage(Message message) {
-        return importanceCalculator.calculateImportance(message) > 0.7; // 重要性阈值
+        return new ImportanceScorer(LocalDateTime.now()).score(message, message.getTimestamp())
+                > IMPORTANCE_THRESHOLD;
     }
 
     /**
      * 压缩单个消息
      */
     private Message compressMessage(Message message, int maxSize) {
-        String content = message.getContent();
-        if (content.length() <= maxSize * 4) { // 粗略估算
+        int messageSize = estimateMessageSize(message);
+        if (messageSize <= maxSize) {
             return message;
         }
 
-        // 简单截断策略：保留开头和结尾
-        int keepSize = maxSize * 2; // 保留字符数
-        if (content.length() <= keepSize) {
-            return message;
-        }
+        // 简单截断策略：保留开头和结尾，保留字符数按token占比折算，约占可用大小的一半
+        String content = message.getContent();
+        int keepSize = (int) ((long) content.length() * maxSize / (2L * messageSize));
 
         int halfSize = keepSize / 2;
         String compressed = content.substring(0, halfSize) +
@@ -226,10 +301,10 @@ public class ContextCompressor {
     }
 
     /**
-     * 估算消息大小（token数）
+     * 估算消息大小（token数），按消息ID缓存
      */
     private int estimateMessageSize(Message message) {
-        return Math.max(1, message.getContent().length() / 4);
+        return config.getTokenCounter().countTokens(message);
     }
 
     /**
@@ -243,13 +318,24 @@ public class ContextCompressor {
 
     /**
      * 消息重要性计算器
+     *
+     * 一次压缩共用同一个当前时间，按截止时间比较消息时间，不再为每条消息计算时长
      */
-    private static class MessageImportanceCalculator {
+    private static final class ImportanceScorer {
+        private final LocalDateTime recentCutoff;
+        private final LocalDateTime activeCutoff;
+
+        ImportanceScorer(LocalDateTime now) {
+            this.recentCutoff = now.minusMinutes(10);
+            this.activeCutoff = now.minusMinutes(30);
+        }
 
         /**
          * 计算消息重要性分数 (0.0 - 1.0)
+         *
+         * @param timestamp 消息时间，由调用方预先取出
          */
-        public double calculateImportance(Message message) {
+        double score(Message message, LocalDateTime timestamp) {
             double score = 0.0;
 
             // 系统消息通常很重要
@@ -276,19 +362,74 @@ public class ContextCompressor {
                 score += 0.1;
             }
 
-            // 最近的消息相对重要
-            long ageMinutes = java.time.Duration.between(
-                    message.getTimestamp(),
-                    java.time.LocalDateTime.now()
-            ).toMinutes();
-
-            if (ageMinutes < 10) {
+            // 最近的消息相对重要：与距今不足10分钟、30分钟等价
+            if (timestamp.isAfter(recentCutoff)) {
                 score += 0.2;
-            } else if (ageMinutes < 30) {
+            } else if (timestamp.isAfter(activeCutoff)) {
                 score += 0.1;
             }
 
             return Math.min(1.0, score);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 按消息时间从新到旧弹出下标的二叉堆，时间相同时下标小的先出
+     */
+    private static final class NewestFirstHeap {
+        private final LocalDateTime[] times;
+        private final int[] heap;
+        private int size;
+
+        NewestFirstHeap(LocalDateTime[] times, int capacity) {
+            this.times = times;
+            this.heap = new int[capacity];
+        }
+
+        void add(int index) {
+            heap[size++] = index;
+        }
+
+        void heapify() {
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int poll() {
+            int top = heap[0];
+            heap[0] = heap[--size];
+            if (size > 0) {
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftDown(int position) {
+            int index = heap[position];
+            int half = size / 2;
+            while (position < half) {
+                int child = 2 * position + 1;
+                int right = child + 1;
+                if (right < size && before(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!before(heap[child], index)) {
+                    break;
+                }
+                heap[position] = heap[child];
+                position = child;
+            }
+            heap[position] = index;
+        }
+
+        private boolean before(int a, int b) {
+            int byTime = times[a].compareTo(times[b]);
+            return byTime > 0 || (byTime == 0 && a < b);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.anthropic.claude.context;
 
+import java.time.Duration;
+
 /**
  * 上下文配置
  * 定义上下文管理的各种参数
@@ -9,6 +11,8 @@ package com.anthropic.claude.context;
  */
 public class ContextConfig {
 
+    private static final CachingTokenCounter DEFAULT_TOKEN_COUNTER = new CachingTokenCounter(TokenCounter.loadDefault());
+
     private final int maxWindowSize;
     private final int compressionThreshold;
     private final int minRetainedMessages;
@@ -16,6 +20,10 @@ public class ContextConfig {
     private final boolean enableSmartTruncation;
     private final boolean preserveImportantMessages;
     private final int maxContextAge; // 分钟
+    private final CachingTokenCounter tokenCounter;
+    private final boolean backgroundCompaction;
+    private final Duration expirationCheckInterval;
+    private final ContextStore contextStore;
 
     private ContextConfig(Builder builder) {
         this.maxWindowSize = builder.maxWindowSize;
@@ -25,6 +33,12 @@ public class ContextConfig {
         this.enableSmartTruncation = builder.enableSmartTruncation;
         this.preserveImportantMessages = builder.preserveImportantMessages;
         this.maxContextAge = builder.maxContextAge;
+        this.backgroundCompaction = builder.backgroundCompaction;
+        this.expirationCheckInterval = builder.expirationCheckInterval;
+        this.contextStore = builder.contextStore;
+        this.tokenCounter = builder.tokenCounter != null
+                ? CachingTokenCounter.wrap(builder.tokenCounter)
+                : DEFAULT_TOKEN_COUNTER;
     }
 
     public static Builder builder() {
@@ -44,6 +58,22 @@ public class ContextConfig {
     public boolean isPreserveImportantMessages() { return preserveImportantMessages; }
     public int getMaxContextAge() { return maxContextAge; }
 
+    /**
+     * 计算消息大小使用的token计数器，按消息ID缓存计数结果
+     */
+    public TokenCounter getTokenCounter() { return tokenCounter; }
+
+    /**
+     * 是否在后台线程压缩窗口并清理空闲窗口，关闭时在添加消息的线程上同步压缩
+     */
+    public boolean isBackgroundCompaction() { return backgroundCompaction; }
+    public Duration getExpirationCheckInterval() { return expirationCheckInterval; }
+
+    /**
+     * 保存窗口消息的存储，为null时消息直接保存在堆上
+     */
+    public ContextStore getContextStore() { return contextStore; }
+
     public static class Builder {
         private int maxWindowSize = 8000; // Claude-3的默认上下文窗口
         private int compressionThreshold = 6000; // 75%时开始压缩
@@ -52,6 +82,10 @@ public class ContextConfig {
         private boolean enableSmartTruncation = true; // 启用智能截断
         private boolean preserveImportantMessages = true; // 保留重要消息
         private int maxContextAge = 60; // 60分钟后清理
+        private TokenCounter tokenCounter; // 为null时使用默认计数器
+        private boolean backgroundCompaction = false; // 默认同步压缩
+        private Duration expirationCheckInterval = Duration.ofMinutes(1); // 后台清理空闲窗口的间隔
+        private ContextStore contextStore; // 为null时消息保存在堆上
 
         public Builder maxWindowSize(int maxWindowSize) {
             this.maxWindowSize = maxWindowSize;
@@ -88,6 +122,32 @@ public class ContextConfig {
             return this;
         }
 
+        /**
+         * 指定token计数器，未带缓存时自动按消息ID缓存计数结果
+         */
+        public Builder tokenCounter(TokenCounter tokenCounter) {
+            this.tokenCounter = tokenCounter;
+            return this;
+        }
+
+        public Builder backgroundCompaction(boolean backgroundCompaction) {
+            this.backgroundCompaction = backgroundCompaction;
+            return this;
+        }
+
+        public Builder expirationCheckInterval(Duration expirationCheckInterval) {
+            this.expirationCheckInterval = expirationCheckInterval;
+            return this;
+        }
+
+        /**
+         * 指定保存窗口消息的存储，如 {@link OffHeapContextStore}，存储由调用方关闭
+         */
+        public Builder contextStore(ContextStore contextStore) {
+            this.contextStore = contextStore;
+            return this;
+        }
+
         public ContextConfig build() {
             validate();
             return new ContextConfig(this);
@@ -109,6 +169,9 @@ public class ContextConfig {
             if (maxContextAge <= 0) {
                 throw new IllegalArgumentException("最大上下文年龄必须大于0");
             }
+            if (expirationCheckInterval == null || expirationCheckInterval.toMillis() <= 0) {
+                throw new IllegalArgumentException("空闲检查间隔必须大于0");
+            }
         }
     }
 
@@ -116,8 +179,9 @@ public class ContextConfig {
     public String toString() {
         return String.format("ContextConfig{maxWindowSize=%d, compressionThreshold=%d, " +
                         "minRetainedMessages=%d, compressionRatio=%.2f, enableSmartTruncation=%s, " +
-                        "preserveImportantMessages=%s, maxContextAge=%d}",
+                        "preserveImportantMessages=%s, maxContextAge=%d, backgroundCompaction=%s, contextStore=%s}",
                 maxWindowSize, compressionThreshold, minRetainedMessages,
-                compressionRatio, enableSmartTruncation, preserveImportantMessages, maxContextAge);
+                compressionRatio, enableSmartTruncation, preserveImportantMessages, maxContextAge,
+                backgroundCompaction, contextStore != null ? contextStore.getClass().getSimpleName() : "heap");
     }
 }
\ No newline at end of file
@@ -7,13 +7,17 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
  * 上下文管理器
  * 负责管理对话上下文，包括自动压缩、大小监控和智能截断
  *
+ * 每个窗口维护自身的token总数，变化量同步累加到全局总数，添加消息的开销与上下文数量无关。
+ * 启用后台压缩时，添加消息只登记超过压缩阈值的窗口，由 {@link ContextCompactionService} 在专用线程上压缩，
+ * 并清理超过 {@link ContextConfig#getMaxContextAge()} 未访问的窗口。
+ *
  * @author Claude Code Java SDK
  * @version 1.0.0
  */
@@ -24,12 +28,16 @@ public class ContextManager {
     private final Map<String, ContextWindow> contexts = new ConcurrentHashMap<>();
     private final ContextCompressor compressor;
     private final ContextAnalyzer analyzer;
-    private final AtomicLong totalContextSize = new AtomicLong(0);
+    private final LongAdder totalContextSize = new LongAdder();
+    private final ContextCompactionService compactionService;
 
     public ContextManager(ContextConfig config) {
         this.config = config;
         this.compressor = new ContextCompressor(config);
         this.analyzer = new ContextAnalyzer(config);
+        this.compactionService = config.isBackgroundCompaction()
+                ? new ContextCompactionService(this, config.getExpirationCheckInterval())
+                : null;
         logger.info("上下文管理器已初始化 - 最大窗口大小: {} tokens", config.getMaxWindowSize());
     }
 
@@ -40,8 +48,11 @@ public class ContextManager {
      * @return 上下文窗口
      */
     public ContextWindow createContext(String contextId) {
-        ContextWindow window = new ContextWindow(contextId, config);
-        contexts.put(contextId, window);
+        ContextWindow window = new ContextWindow(contextId, config, totalContextSize);
+        ContextWindow previous = contexts.put(contextId, window);
+        if (previous != null) {
+            previous.detach();
+        }
         logger.debug("创建上下文窗口: {}", contextId);
         return window;
     }
@@ -63,18 +74,26 @@ public class ContextManager {
      * @param message 消息
      */
     public void addMessage(String contextId, Message message) {
-        ContextWindow window = contexts.get(contextId);
-        if (window == null) {
-            window = createContext(contextId);
-        }
+        ContextWindow window;
+        while (true) {
+            window = contexts.computeIfAbsent(contextId,
+                    id -> new ContextWindow(id, config, totalContextSize));
+
+            // 同步模式下，添加消息前检查是否需要压缩
+            if (compactionService == null && shouldCompress(window)) {
+                compressContext(window);
+            }
 
-        // 添加消息前检查是否需要压缩
-        if (shouldCompress(window)) {
-            compressContext(window);
+            if (window.appendIfAttached(message)) {
+                break;
+            }
+            // 窗口已被清理或过期，换用新窗口
+            contexts.remove(contextId, window);
         }
 
-        window.addMessage(message);
-        updateTotalSize();
+        if (compactionService != null && shouldCompress(window)) {
+            compactionService.schedule(window);
+        }
 
         logger.debug("添加消息到上下文 {} - 当前大小: {} tokens",
                 contextId, window.getCurrentSize());
@@ -115,7 +134,7 @@ public class ContextManager {
     public boolean clearContext(String contextId) {
         ContextWindow window = contexts.remove(contextId);
         if (window != null) {
-            updateTotalSize();
+            window.detach();
             logger.info("清理上下文: {}", contextId);
             return true;
         }
@@ -129,7 +148,7 @@ public class ContextManager {
      */
     public ContextStats getStats() {
         int totalContexts = contexts.size();
-        long totalSize = totalContextSize.get();
+        long totalSize = totalContextSize.sum();
         long averageSize = totalContexts > 0 ? totalSize / totalContexts : 0;
 
         Map<String, Long> contextSizes = contexts.entrySet().stream()
@@ -187,6 +206,39 @@ public class ContextManager {
         return analyzer.prioritizeMessages(window.getMessages());
     }
 
+    /**
+     * 清理超过最大上下文年龄未访问的窗口
+     *
+     * @return 清理的窗口数
+     */
+    public int expireIdleContexts() {
+        return expireIdleContexts(LocalDateTime.now());
+    }
+
+    int expireIdleContexts(LocalDateTime now) {
+        LocalDateTime cutoff = now.minusMinutes(config.getMaxContextAge());
+        int expired = 0;
+        for (ContextWindow window : contexts.values()) {
+            if (window.detachIfIdle(cutoff)) {
+                contexts.remove(window.getContextId(), window);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.info("清理空闲上下文: {} 个", expired);
+        }
+        return expired;
+    }
+
+    /**
+     * 后台压缩入口：窗口仍在管理中且超过压缩阈值时压缩
+     */
+    void compactIfNeeded(ContextWindow window) {
+        if (!window.isDetached() && shouldCompress(window)) {
+            compressContext(window);
+        }
+    }
+
     /**
      * 检查是否需要压缩
      */
@@ -196,12 +248,18 @@ public class ContextManager {
 
     /**
      * 执行上下文压缩
+     *
+     * 在快照上压缩，完成后仅当窗口期间未被截断或替换时换入结果，期间追加的消息接在压缩结果之后
      */
     private int compressContext(ContextWindow window) {
         int originalSize = window.getCurrentSize();
 
-        List<Message> compressedMessages = compressor.compress(window.getMessages());
-        window.setMessages(compressedMessages);
+        WindowSnapshot snapshot = window.snapshot();
+        List<Message> compressedMessages = compressor.compress(snapshot.getMessages());
+        if (!window.replaceIfUnchanged(snapshot, compressedMessages)) {
+            logger.debug("上下文 {} 在压缩期间被截断或替换，放弃本次压缩结果", window.getContextId());
+            return 0;
+        }
 
         int newSize = window.getCurrentSize();
         int saved = originalSize - newSize;
@@ -209,27 +267,19 @@ public class ContextManager {
         logger.info("压缩上下文 {} - 原始: {} tokens, 压缩后: {} tokens, 节省: {} tokens",
                 window.getContextId(), originalSize, newSize, saved);
 
-        updateTotalSize();
         return saved;
     }
 
-    /**
-     * 更新总大小统计
-     */
-    private void updateTotalSize() {
-        long total = contexts.values().stream()
-                .mapToLong(window -> window.getCurrentSize())
-                .sum();
-        totalContextSize.set(total);
-    }
-
     /**
      * 关闭上下文管理器
      */
     public void shutdown() {
         logger.info("正在关闭上下文管理器...");
+        if (compactionService != null) {
+            compactionService.shutdown();
+        }
+        contexts.values().forEach(ContextWindow::detach);
         contexts.clear();
-        totalContextSize.set(0);
         logger.info("上下文管理器已关闭");
     }
 
@@ -264,27 +314,87 @@ public class ContextManager {
 
     /**
      * 上下文窗口内部类
+     *
+     * 消息按追加顺序存放在数组的 [head, tail) 区间，并记录每条消息的token数和窗口总数：
+     * 追加和从头部截断都只调整区间与总数。区间内已写入的槽位不再修改，
+     * {@link #getMessages()} 直接返回该区间上的只读快照，不复制消息列表。
+     *
+     * 配置了 {@link ContextStore} 时数组只存放消息句柄，截断、替换和移除窗口时释放对应句柄，
+     * 快照在读取时还原为消息列表。
      */
     public static class ContextWindow {
+        private static final int INITIAL_CAPACITY = 16;
+
         private final String contextId;
         private final ContextConfig config;
         private final LocalDateTime createdAt;
-        private volatile List<Message> messages;
+        private final LongAdder totalSize;
+        private final ContextStore store;
+        private Message[] messages;
+        private long[] handles;
+        private int[] tokens;
+        private int head;
+        private int tail;
+        private int version; // 截断或替换时递增
+        private long appendCount;
         private volatile int currentSize;
+        private volatile boolean detached;
         private volatile LocalDateTime lastAccess;
 
         public ContextWindow(String contextId, ContextConfig config) {
+            this(contextId, config, null);
+        }
+
+        /**
+         * @param totalSize 所属管理器的全局token总数，窗口大小变化时按差值累加，可为null
+         */
+        ContextWindow(String contextId, ContextConfig config, LongAdder totalSize) {
             this.contextId = contextId;
             this.config = config;
+            this.totalSize = totalSize;
+            this.store = config.getContextStore();
             this.createdAt = LocalDateTime.now();
-            this.messages = new ArrayList<>();
+            if (store == null) {
+                this.messages = new Message[INITIAL_CAPACITY];
+            } else {
+                this.handles = new long[INITIAL_CAPACITY];
+            }
+            this.tokens = new int[INITIAL_CAPACITY];
             this.currentSize = 0;
             this.lastAccess = LocalDateTime.now();
         }
 
-        public void addMessage(Message message) {
-            messages.add(message);
-            currentSize += estimateTokenCount(message);
+        public synchronized void addMessage(Message message) {
+            append(message);
+        }
+
+        /**
+         * 窗口仍在管理中时添加消息
+         *
+         * @return 窗口已被移除时返回false，消息未添加
+         */
+        synchronized boolean appendIfAttached(Message message) {
+            if (detached) {
+                return false;
+            }
+            append(message);
+            return true;
+        }
+
+        private void append(Message message) {
+            int messageTokens = estimateTokenCount(message);
+            if (tail == tokens.length) {
+                reallocate(Math.max(INITIAL_CAPACITY, (tail - head) * 2));
+            }
+            if (store == null) {
+                messages[tail] = message;
+            } else {
+                handles[tail] = store.store(message);
+            }
+            tokens[tail] = messageTokens;
+            tail++;
+            appendCount++;
+            resize(currentSize + messageTokens);
             lastAccess = LocalDateTime.now();
 
             // 检查是否超过最大窗口大小
@@ -293,55 +403,236 @@ public class ContextManager {
             }
         }
 
-        public List<Message> getMessages() {
+        /**
+         * 获取当前消息的只读快照，之后的追加、截断和替换不影响已返回的快照
+         */
+        public synchronized List<Message> getMessages() {
             lastAccess = LocalDateTime.now();
-            return new ArrayList<>(messages);
+            return view();
         }
 
-        public void setMessages(List<Message> messages) {
-            this.messages = new ArrayList<>(messages);
-            this.currentSize = messages.stream()
-                    .mapToInt(this::estimateTokenCount)
-                    .sum();
+        /**
+         * 获取用于压缩的快照，不更新访问时间
+         */
+        synchronized WindowSnapshot snapshot() {
+            return new WindowSnapshot(view(), version, appendCount);
+        }
+
+        /**
+         * 快照之后窗口未被截断或替换时，换入压缩结果并保留快照之后追加的消息
+         *
+         * @return 窗口已变化或已移除时返回false，窗口保持不变
+         */
+        synchronized boolean replaceIfUnchanged(WindowSnapshot snapshot, List<Message> compressed) {
+            if (detached || version != snapshot.version) {
+                return false;
+            }
+            int appended = (int) (appendCount - snapshot.appendCount);
+            if (appended == 0) {
+                setMessages(compressed);
+            } else {
+                List<Message> merged = new ArrayList<>(compressed.size() + appended);
+                merged.addAll(compressed);
+                for (int i = tail - appended; i < tail; i++) {
+                    merged.add(messageAt(i));
+                }
+                setMessages(merged);
+            }
+            return true;
+        }
+
+        public synchronized void setMessages(List<Message> messages) {
+            int count = messages.size();
+            int capacity = Math.max(INITIAL_CAPACITY, count * 2);
+            Message[] replacement = store == null ? new Message[capacity] : null;
+            long[] replacementHandles = store == null ? null : new long[capacity];
+            int[] replacementTokens = new int[capacity];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                Message message = messages.get(i);
+                if (store == null) {
+                    replacement[i] = message;
+                } else {
+                    replacementHandles[i] = store.store(message);
+                }
+                replacementTokens[i] = estimateTokenCount(message);
+                size += replacementTokens[i];
+            }
+            // 新消息可能来自旧句柄还原的快照，先保存再释放
+            releaseRange(head, tail);
+            this.messages = replacement;
+            this.handles = replacementHandles;
+            this.tokens = replacementTokens;
+            this.head = 0;
+            this.tail = count;
+            this.version++;
+            resize(size);
             this.lastAccess = LocalDateTime.now();
         }
 
         public String getContextId() { return contextId; }
         public int getCurrentSize() { return currentSize; }
+        public synchronized int getMessageCount() { return tail - head; }
         public LocalDateTime getCreatedAt() { return createdAt; }
         public LocalDateTime getLastAccess() { return lastAccess; }
+        boolean isDetached() { return detached; }
+
+        /**
+         * 从所属管理器移除时调用：扣除窗口大小，之后的变化不再计入全局总数
+         *
+         * 使用 {@link ContextStore} 时同时释放全部消息，窗口变为空
+         */
+        synchronized void detach() {
+            if (!detached) {
+                detached = true;
+                if (totalSize != null) {
+                    totalSize.add(-currentSize);
+                }
+                if (store != null) {
+                    releaseRange(head, tail);
+                    head = tail;
+                    currentSize = 0;
+                }
+            }
+        }
+
+        /**
+         * 自 cutoff 起未被访问时从所属管理器移除
+         */
+        synchronized boolean detachIfIdle(LocalDateTime cutoff) {
+            if (detached || !lastAccess.isBefore(cutoff)) {
+                return false;
+            }
+            detach();
+            return true;
+        }
 
         /**
          * 截断消息以适应窗口大小
+         *
+         * 从最旧的消息开始移除，直到不超过目标大小，结果与从最新消息开始保留的最长后缀一致
          */
         private void truncateToFit() {
             int targetSize = (int) (config.getMaxWindowSize() * 0.8); // 保留80%空间
-            List<Message> newMessages = new ArrayList<>();
-            int totalSize = 0;
+            int size = currentSize;
+            int from = head;
+            while (head < tail && size > targetSize) {
+                size -= tokens[head];
+                head++;
+            }
+            releaseRange(from, head);
+            version++;
+            resize(size);
+        }
 
-            // 从最新消息开始保留
-            for (int i = messages.size() - 1; i >= 0; i--) {
-                Message message = messages.get(i);
-                int messageSize = estimateTokenCount(message);
+        private void resize(int newSize) {
+            int delta = newSize - currentSize;
+            currentSize = newSize;
+            if (delta != 0 && totalSize != null && !detached) {
+                totalSize.add(delta);
+            }
+        }
 
-                if (totalSize + messageSize <= targetSize) {
-                    newMessages.add(0, message);
-                    totalSize += messageSize;
-                } else {
-                    break;
-                }
+        /**
+         * 换用新数组存放 [head, tail) 区间，已返回的快照仍引用旧数组
+         */
+        private void reallocate(int capacity) {
+            int count = tail - head;
+            int[] newTokens = new int[capacity];
+            System.arraycopy(tokens, head, newTokens, 0, count);
+            if (store == null) {
+                Message[] newMessages = new Message[capacity];
+                System.arraycopy(messages, head, newMessages, 0, count);
+                messages = newMessages;
+            } else {
+                long[] newHandles = new long[capacity];
+                System.arraycopy(handles, head, newHandles, 0, count);
+                handles = newHandles;
             }
+            tokens = newTokens;
+            head = 0;
+            tail = count;
+        }
+
+        /**
+         * 当前区间的只读快照：堆上存储时直接引用数组，否则还原为消息列表
+         */
+        private List<Message> view() {
+            if (head == tail) {
+                return Collections.emptyList();
+            }
+            if (store == null) {
+                return new SnapshotView(messages, head, tail);
+            }
+            List<Message> loaded = new ArrayList<>(tail - head);
+            for (int i = head; i < tail; i++) {
+                loaded.add(store.load(handles[i]));
+            }
+            return Collections.unmodifiableList(loaded);
+        }
 
-            this.messages = newMessages;
-            this.currentSize = totalSize;
+        private Message messageAt(int index) {
+            return store == null ? messages[index] : store.load(handles[index]);
+        }
+
+        private void releaseRange(int from, int to) {
+            if (store != null) {
+                for (int i = from; i < to; i++) {
+                    store.release(handles[i]);
+                }
+            }
         }
 
         /**
-         * 估算消息token数量
+         * 按配置的计数器计算消息token数量
          */
         private int estimateTokenCount(Message message) {
-            // 简单估算：平均每4个字符为1个token
-            return Math.max(1, message.getContent().length() / 4);
+            return config.getTokenCounter().countTokens(message);
+        }
+    }
+
+    /**
+     * 压缩用的窗口快照，记录截取时的版本和追加计数
+     */
+    static final class WindowSnapshot {
+        private final List<Message> messages;
+        private final int version;
+        private final long appendCount;
+
+        WindowSnapshot(List<Message> messages, int version, long appendCount) {
+            this.messages = messages;
+            this.version = version;
+            this.appendCount = appendCount;
+        }
+
+        List<Message> getMessages() {
+            return messages;
+        }
+    }
+
+    /**
+     * 窗口消息区间上的只读视图
+     */
+    private static final class SnapshotView extends AbstractList<Message> implements RandomAccess {
+        private final Message[] messages;
+        private final int from;
+        private final int size;
+
+        SnapshotView(Message[] messages, int from, int to) {
+            this.messages = messages;
+            this.from = from;
+            this.size = to - from;
+        }
+
+        @Override
+        public Message get(int index) {
+            Objects.checkIndex(index, size);
+            return messages[from + index];
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+
+/**
+ * 上下文消息存储
+ *
+ * 上下文窗口在堆上只保留每条消息的句柄和token数，消息本身交给存储保管，读取时按句柄还原。
+ * 通过 {@link ContextConfig.Builder#contextStore(ContextStore)} 指定；未指定时窗口直接在堆上持有消息对象。
+ * 实现必须线程安全，存储由创建方负责关闭。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public interface ContextStore extends AutoCloseable {
+
+    /**
+     * 保存消息
+     *
+     * @return 读取和释放消息使用的句柄
+     */
+    long store(Message message);
+
+    /**
+     * 按句柄还原消息，每次调用返回新的消息对象
+     */
+    Message load(long handle);
+
+    /**
+     * 释放句柄对应的消息，之后句柄不可再使用
+     */
+    void release(long handle);
+
+    /**
+     * 仍在使用的消息占用的字节数
+     */
+    long getUsedBytes();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,328 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 堆外上下文存储
+ *
+ * 消息编码为紧凑的二进制记录，追加写入固定大小的段：段为直接内存，或映射到文件，由操作系统决定驻留与换出。
+ * 句柄由段序号和段内偏移组成，堆上只有段表。段内记录全部释放后整段回收复用；超过段大小的消息单独成段，
+ * 释放后不复用（映射文件中对应区域不再使用）。
+ *
+ * 元数据以JSON保存，还原后的值为Map、List等基本结构；{@code Instant}、{@code LocalDateTime} 等时间值保存为ISO-8601字符串。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class OffHeapContextStore implements ContextStore {
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapContextStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final ObjectMapper METADATA_MAPPER = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() { };
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final int RECORD_HEADER = Integer.BYTES;
+    private static final int ABSENT = -1;
+
+    private final int segmentSize;
+    private final FileChannel channel;
+    private final Path file;
+    private final ArrayDeque<Segment> freeSegments = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private volatile Segment[] segments = new Segment[16];
+    private int segmentCount;
+    private Segment active;
+    private long fileEnd;
+    private long usedBytes;
+    private volatile boolean closed;
+
+    private OffHeapContextStore(int segmentSize, FileChannel channel, Path file) {
+        if (segmentSize <= RECORD_HEADER) {
+            throw new IllegalArgumentException("段大小过小: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        this.channel = channel;
+        this.file = file;
+    }
+
+    /**
+     * 使用直接内存的存储
+     */
+    public static OffHeapContextStore direct() {
+        return direct(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static OffHeapContextStore direct(int segmentSize) {
+        return new OffHeapContextStore(segmentSize, null, null);
+    }
+
+    /**
+     * 使用内存映射文件的存储，文件在关闭时删除
+     *
+     * @param file 映射的文件，已存在时清空
+     */
+    public static OffHeapContextStore mapped(Path file) {
+        return mapped(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static OffHeapContextStore mapped(Path file, int segmentSize) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new OffHeapContextStore(segmentSize, channel, file);
+        } catch (IOException e) {
+            throw new ClaudeCodeException("CONTEXT_STORE_ERROR", "打开上下文存储文件失败: " + file, e);
+        }
+    }
+
+    @Override
+    public long store(Message message) {
+        byte[] record = encode(message);
+        int length = RECORD_HEADER + record.length;
+        int slot;
+        int offset;
+        Segment segment;
+        synchronized (this) {
+            ensureOpen();
+            segment = reserve(length);
+            slot = segment.slot;
+            offset = segment.writeOffset;
+            segment.writeOffset += length;
+            segment.liveRecords++;
+            usedBytes += length;
+        }
+
+        // 预留的区域只属于本条记录，在锁外写入
+        segment.buffer.putInt(offset, record.length);
+        segment.buffer.put(offset + RECORD_HEADER, record);
+        return ((long) slot << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public Message load(long handle) {
+        Segment segment = segment(handle);
+        int offset = (int) handle;
+        byte[] record = new byte[segment.buffer.getInt(offset)];
+        segment.buffer.get(offset + RECORD_HEADER, record);
+        return decode(record);
+    }
+
+    @Override
+    public synchronized void release(long handle) {
+        if (closed) {
+            return;
+        }
+        Segment segment = segment(handle);
+        usedBytes -= RECORD_HEADER + segment.buffer.getInt((int) handle);
+        if (--segment.liveRecords == 0 && segment != active) {
+            recycle(segment);
+        }
+    }
+
+    @Override
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * 已分配的段占用的字节数，包括尚未回收的空间
+     */
+    public synchronized long getAllocatedBytes() {
+        long allocated = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            if (segments[i] != null) {
+                allocated += segments[i].buffer.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments = new Segment[0];
+        freeSegments.clear();
+        active = null;
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("关闭上下文存储文件失败: {}", e.getMessage());
+            }
+        }
+        logger.debug("上下文存储已关闭");
+    }
+
+    private Segment reserve(int length) {
+        if (length > segmentSize) {
+            return allocate(length, true);
+        }
+        if (active == null || active.buffer.capacity() - active.writeOffset < length) {
+            Segment previous = active;
+            active = freeSegments.isEmpty() ? allocate(segmentSize, false) : freeSegments.poll();
+            if (previous != null && previous.liveRecords == 0) {
+                recycle(previous);
+            }
+        }
+        return active;
+    }
+
+    private Segment allocate(int capacity, boolean oversized) {
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, fileEnd, capacity);
+                fileEnd += capacity;
+            } catch (IOException e) {
+                throw new ClaudeCodeException("CONTEXT_STORE_ERROR", "映射上下文存储文件失败: " + file, e);
+            }
+        }
+
+        int slot = freeSlots.isEmpty() ? segmentCount++ : freeSlots.pop();
+        if (slot == segments.length) {
+            segments = Arrays.copyOf(segments, slot * 2);
+        }
+        Segment segment = new Segment(slot, buffer, oversized);
+        segments[slot] = segment;
+        return segment;
+    }
+
+    private void recycle(Segment segment) {
+        if (segment.oversized) {
+            segments[segment.slot] = null;
+            freeSlots.push(segment.slot);
+        } else {
+            segment.writeOffset = 0;
+            freeSegments.push(segment);
+        }
+    }
+
+    private Segment segment(long handle) {
+        int slot = (int) (handle >>> 32);
+        Segment[] current = segments;
+        Segment segment = slot < current.length ? current[slot] : null;
+        if (segment == null) {
+            ensureOpen();
+            throw new IllegalArgumentException("无效的句柄: " + handle);
+        }
+        return segment;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new ClaudeCodeException("CONTEXT_STORE_CLOSED", "上下文存储已关闭");
+        }
+    }
+
+    private static byte[] encode(Message message) {
+        try {
+            String content = message.getContent();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (content != null ? content.length() : 0));
+            DataOutputStream out = new DataOutputStream(bytes);
+            Instant timestamp = message.getInstantTimestamp();
+            Map<String, Object> metadata = message.getMetadata();
+            out.writeByte(message.getType().ordinal());
+            out.writeLong(timestamp.getEpochSecond());
+            out.writeInt(timestamp.getNano());
+            writeString(out, message.getId());
+            writeString(out, message.getSubtype());
+            writeString(out, content);
+            writeString(out, metadata.isEmpty() ? null : METADATA_MAPPER.writeValueAsString(metadata));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new ClaudeCodeException("CONTEXT_STORE_ERROR", "编码消息失败: " + message.getId(), e);
+        }
+    }
+
+    private static Message decode(byte[] record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            MessageType type = TYPES[in.readByte()];
+            Instant timestamp = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            String id = readString(in);
+            String subtype = readString(in);
+            String content = readString(in);
+            String metadata = readString(in);
+            return Message.builder()
+                    .id(id)
+                    .type(type)
+                    .subtype(subtype)
+                    .content(content)
+                    .metadata(metadata != null ? METADATA_MAPPER.readValue(metadata, METADATA_TYPE) : null)
+                    .timestamp(timestamp)
+                    .build();
+        } catch (IOException e) {
+            throw new ClaudeCodeException("CONTEXT_STORE_ERROR", "解码消息失败", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(ABSENT);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == ABSENT) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 存储段，写入位置和记录数由存储的锁保护
+     */
+    private static final class Segment {
+        private final int slot;
+        private final ByteBuffer buffer;
+        private final boolean oversized;
+        private int writeOffset;
+        private int liveRecords;
+
+        Segment(int slot, ByteBuffer buffer, boolean oversized) {
+            this.slot = slot;
+            this.buffer = buffer;
+            this.oversized = oversized;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+
+import java.util.ServiceLoader;
+
+/**
+ * token计数器
+ *
+ * 上下文窗口、压缩器按它计算消息大小。可通过 {@link ContextConfig.Builder#tokenCounter(TokenCounter)}
+ * 指定实现，或以 {@link ServiceLoader} 方式在 META-INF/services 中注册，未注册时使用 {@link BpeTokenCounter}。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    /**
+     * 计算文本的token数
+     */
+    int countTokens(CharSequence text);
+
+    /**
+     * 计算消息的token数，每条消息至少计为1个token
+     */
+    default int countTokens(Message message) {
+        String content = message.getContent();
+        return content != null ? Math.max(1, countTokens(content)) : 1;
+    }
+
+    /**
+     * 加载默认计数器：取 {@link ServiceLoader} 找到的第一个实现，没有时使用 {@link BpeTokenCounter}
+     */
+    static TokenCounter loadDefault() {
+        for (TokenCounter counter : ServiceLoader.load(TokenCounter.class)) {
+            return counter;
+        }
+        return new BpeTokenCounter();
+    }
+}
@@ -1,6 +1,7 @@
 package com.anthropic.claude.messages;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -14,6 +15,11 @@ import java.util.UUID;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Message {
+    /**
+     * 元数据中CLI会话ID的键
+     */
+    public static final String SESSION_ID_KEY = "session_id";
+
     private final String id;
     private final MessageType type;
     private final String subtype;
@@ -155,6 +161,15 @@ public class Message {
         return new HashMap<>(metadata);
     }
 
+    /**
+     * CLI输出的会话ID，没有时返回null
+     */
+    @JsonIgnore
+    public String getSessionId() {
+        Object sessionId = metadata.get(SESSION_ID_KEY);
+        return sessionId != null ? sessionId.toString() : null;
+    }
+
     public java.time.LocalDateTime getTimestamp() {
         return timestamp.atZone(java.time.ZoneId.systemDefault()).toLocalDateTime();
     }
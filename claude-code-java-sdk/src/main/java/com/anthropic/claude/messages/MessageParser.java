@@ -2,8 +2,10 @@ package com.anthropic.claude.messages;
 
 import com.anthropic.claude.exceptions.ClaudeCodeException;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -11,69 +13,111 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+/**
+ * 消息解析器
+ *
+ * 基于Jackson流式JsonParser单遍解码，直接绑定为Message，不构建中间JsonNode树，
+ * 也不为数组元素或行重新生成字符串
+ */
 public class MessageParser {
     private static final Logger logger = LoggerFactory.getLogger(MessageParser.class);
 
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    // 解码时关注的字段下标
+    private static final int FIELD_ID = 0;
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_SUBTYPE = 2;
+    private static final int FIELD_CONTENT = 3;
+    private static final int FIELD_UUID = 4;
+    private static final int FIELD_RESULT = 5;
+    private static final int FIELD_SESSION_ID = 6;
+    private static final int FIELD_COUNT = 7;
+
+    // 字段取值形态
+    private static final byte ABSENT = 0;
+    private static final byte SCALAR = 1;
+    private static final byte NULL = 2;
+    private static final byte STRUCTURED = 3;
+
+    private static final String SSE_DATA_PREFIX = "data: ";
+
     private final ObjectMapper objectMapper;
     private final JsonFactory jsonFactory;
 
     public MessageParser() {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
-        this.jsonFactory = new JsonFactory();
+        this.jsonFactory = objectMapper.getFactory();
     }
 
     public Message parseMessage(String jsonString) throws ClaudeCodeException {
-        if (jsonString == null || jsonString.trim().isEmpty()) {
+        if (jsonString == null || jsonString.isBlank()) {
             throw new ClaudeCodeException("JSON字符串为空");
         }
 
-        try {
-            JsonNode jsonNode = objectMapper.readTree(jsonString);
-
-            // 处理Claude CLI的响应格式
-            if (jsonNode.has("result") && jsonNode.has("type") &&
-                "result".equals(jsonNode.get("type").asText())) {
+        try (JsonParser parser = jsonFactory.createParser(jsonString)) {
+            return readMessage(parser, parser.nextToken());
+        } catch (IOException e) {
+            logger.error("解析消息失败: {}", jsonString, e);
+            throw new ClaudeCodeException("MESSAGE_PARSE_ERROR", "解析消息失败", e);
+        }
+    }
 
-                String content = jsonNode.get("result").asText();
-                String subtype = jsonNode.has("subtype") ? jsonNode.get("subtype").asText() : null;
-                String id = jsonNode.has("uuid") ? jsonNode.get("uuid").asText() : null;
+    /**
+     * 直接从UTF-8字节解析单条消息
+     *
+     * @param data 字节数据
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 消息
+     * @throws ClaudeCodeException 解析失败时抛出
+     */
+    public Message parseMessage(byte[] data, int offset, int length) throws ClaudeCodeException {
+        if (data == null || length == 0) {
+            throw new ClaudeCodeException("JSON字节为空");
+        }
 
-                // 创建标准Message对象
-                return new Message(id, "TEXT", subtype, content, null, null);
+        try (JsonParser parser = jsonFactory.createParser(data, offset, length)) {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                throw new ClaudeCodeException("JSON字节为空");
             }
-
-            // 尝试直接解析为Message格式
-            return objectMapper.readValue(jsonString, Message.class);
+            return readMessage(parser, first);
         } catch (IOException e) {
-            logger.error("解析消息失败: {}", jsonString, e);
+            logger.error("解析消息失败: {} 字节", length, e);
             throw new ClaudeCodeException("MESSAGE_PARSE_ERROR", "解析消息失败", e);
         }
     }
 
     public List<Message> parseMessages(String jsonArrayString) throws ClaudeCodeException {
-        if (jsonArrayString == null || jsonArrayString.trim().isEmpty()) {
+        if (jsonArrayString == null || jsonArrayString.isBlank()) {
             return new ArrayList<>();
         }
 
-        try {
-            JsonNode arrayNode = objectMapper.readTree(jsonArrayString);
+        try (JsonParser parser = jsonFactory.createParser(jsonArrayString)) {
             List<Message> messages = new ArrayList<>();
+            JsonToken first = parser.nextToken();
 
-            if (arrayNode.isArray()) {
-                for (JsonNode node : arrayNode) {
-                    String messageJson = objectMapper.writeValueAsString(node);
-                    messages.add(parseMessage(messageJson));
+            if (first == JsonToken.START_ARRAY) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        throw new JsonParseException(parser, "消息数组未闭合");
+                    }
+                    messages.add(readMessage(parser, token));
                 }
             } else {
-                messages.add(parseMessage(jsonArrayString));
+                messages.add(readMessage(parser, first));
             }
 
             return messages;
@@ -83,29 +127,57 @@ public class MessageParser {
         }
     }
 
+    /**
+     * 从CLI的字节流中逐条解码消息，支持换行分隔的多个JSON值以及顶层数组
+     * 单条消息无法绑定时跳过，JSON语法错误时终止
+     *
+     * @param inputStream CLI输出字节流（UTF-8）
+     * @param consumer 消息回调，每解码出一条消息调用一次
+     * @return 解码出的消息数
+     * @throws ClaudeCodeException 读取失败或JSON语法错误时抛出
+     */
+    public int parseMessageStream(InputStream inputStream, Consumer<Message> consumer) throws ClaudeCodeException {
+        int count = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == null) {
+                            throw new JsonParseException(parser, "消息数组未闭合");
+                        }
+                        count += emitDecoded(parser, token, consumer);
+                    }
+                } else {
+                    count += emitDecoded(parser, token, consumer);
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            logger.error("解析消息流失败，已解码 {} 条", count, e);
+            throw new ClaudeCodeException("MESSAGE_STREAM_PARSE_ERROR", "解析消息流失败", e);
+        }
+    }
+
     public Stream<Message> parseStreamingMessages(String streamContent) {
         List<Message> messages = new ArrayList<>();
 
         try {
-            String[] lines = streamContent.split("\n");
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("//") || line.startsWith("#")) {
-                    continue;
+            // 只复制一次字符，按行边界直接在数组上解析，不为每行创建字符串
+            char[] chars = streamContent.toCharArray();
+            int lineStart = 0;
+            while (lineStart <= chars.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < chars.length && chars[lineEnd] != '\n') {
+                    lineEnd++;
                 }
 
-                if (line.startsWith("data: ")) {
-                    line = line.substring(6).trim();
-                }
-
-                if (isValidJson(line)) {
-                    try {
-                        Message message = parseMessage(line);
-                        messages.add(message);
-                    } catch (ClaudeCodeException e) {
-                        logger.warn("跳过无法解析的消息行: {}", line);
-                    }
+                Message message = parseStreamingLine(chars, lineStart, lineEnd);
+                if (message != null) {
+                    messages.add(message);
                 }
+                lineStart = lineEnd + 1;
             }
         } catch (Exception e) {
             logger.error("解析流式消息时出错", e);
@@ -114,15 +186,116 @@ public class MessageParser {
         return messages.stream();
     }
 
+    /**
+     * 解析流式输出中的单行
+     *
+     * @param line 输出行
+     * @return 解析出的消息；空行、注释行或无法解析的行返回null
+     */
+    public Message parseStreamingLine(String line) {
+        if (line == null) {
+            return null;
+        }
+
+        int start = skipWhitespace(line, 0, line.length());
+        if (start == line.length() || line.startsWith("//", start) || line.startsWith("#", start)) {
+            return null;
+        }
+
+        try {
+            if (line.startsWith(SSE_DATA_PREFIX, start)) {
+                return decodeStreamingLine(jsonFactory.createParser(line.substring(start + SSE_DATA_PREFIX.length())), line);
+            }
+            return decodeStreamingLine(jsonFactory.createParser(line), line);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 直接从UTF-8字节解析流式输出中的单行，规则与 {@link #parseStreamingLine(String)} 相同，不解码为字符串
+     *
+     * @param data 字节数据
+     * @param offset 行起始位置
+     * @param length 行长度，不含换行符
+     * @return 解析出的消息；空行、注释行或无法解析的行返回null
+     */
+    public Message parseStreamingLine(byte[] data, int offset, int length) {
+        if (data == null) {
+            return null;
+        }
+
+        int end = offset + length;
+        int start = offset;
+        while (start < end && (data[start] == ' ' || data[start] == '\t' || data[start] == '\r')) {
+            start++;
+        }
+        if (start == end || startsWith(data, start, end, "//") || startsWith(data, start, end, "#")) {
+            return null;
+        }
+
+        if (startsWith(data, start, end, SSE_DATA_PREFIX)) {
+            start += SSE_DATA_PREFIX.length();
+        }
+
+        try {
+            return decodeStreamingLine(jsonFactory.createParser(data, start, end - start), null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Message parseStreamingLine(char[] chars, int start, int end) {
+        start = skipWhitespace(chars, start, end);
+        if (start == end || startsWith(chars, start, end, "//") || startsWith(chars, start, end, "#")) {
+            return null;
+        }
+
+        if (startsWith(chars, start, end, SSE_DATA_PREFIX)) {
+            start += SSE_DATA_PREFIX.length();
+        }
+
+        try {
+            return decodeStreamingLine(jsonFactory.createParser(chars, start, end - start), null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解码一行内容：整行必须是合法JSON，首个值绑定为消息
+     */
+    private Message decodeStreamingLine(JsonParser parser, String line) {
+        try (JsonParser p = parser) {
+            JsonToken first = p.nextToken();
+            if (first == null) {
+                return null;
+            }
+
+            Message message;
+            try {
+                message = readMessage(p, first);
+            } catch (ClaudeCodeException e) {
+                drainTokens(p);
+                logger.warn("跳过无法解析的消息行: {}", line != null ? line : e.getMessage());
+                return null;
+            }
+
+            // 与逐token校验保持一致：行内剩余内容也必须是合法JSON
+            drainTokens(p);
+            return message;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     public boolean isValidJson(String jsonString) {
-        if (jsonString == null || jsonString.trim().isEmpty()) {
+        if (jsonString == null || jsonString.isBlank()) {
             return false;
         }
 
-        try (JsonParser parser = jsonFactory.createParser(new StringReader(jsonString))) {
-            while (parser.nextToken() != null) {
-                // 遍历所有token检查格式
-            }
+        try (JsonParser parser = jsonFactory.createParser(jsonString)) {
+            drainTokens(parser);
             return true;
         } catch (IOException e) {
             return false;
@@ -180,6 +353,199 @@ public class MessageParser {
         return node.toString();
     }
 
+    /**
+     * 从当前token开始单遍读取一个消息对象
+     *
+     * Claude CLI的result格式（type为result且包含result字段）转换为文本消息，
+     * 其余对象按Message的字段直接绑定
+     */
+    private Message readMessage(JsonParser parser, JsonToken first) throws IOException, ClaudeCodeException {
+        if (first == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (first != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            throw new ClaudeCodeException("MESSAGE_PARSE_ERROR", "消息不是JSON对象: " + first);
+        }
+
+        String[] texts = new String[FIELD_COUNT];
+        byte[] kinds = new byte[FIELD_COUNT];
+        Map<String, Object> metadata = null;
+        boolean metadataInvalid = false;
+        Object timestamp = null;
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (name) {
+                case "id":
+                    readField(parser, value, FIELD_ID, texts, kinds);
+                    break;
+                case "type":
+                    readField(parser, value, FIELD_TYPE, texts, kinds);
+                    break;
+                case "subtype":
+                    readField(parser, value, FIELD_SUBTYPE, texts, kinds);
+                    break;
+                case "content":
+                    readField(parser, value, FIELD_CONTENT, texts, kinds);
+                    break;
+                case "uuid":
+                    readField(parser, value, FIELD_UUID, texts, kinds);
+                    break;
+                case "result":
+                    readField(parser, value, FIELD_RESULT, texts, kinds);
+                    break;
+                case "session_id":
+                    readField(parser, value, FIELD_SESSION_ID, texts, kinds);
+                    break;
+                case "metadata":
+                    if (value == JsonToken.START_OBJECT) {
+                        metadata = parser.readValueAs(METADATA_TYPE);
+                        metadataInvalid = false;
+                    } else {
+                        metadata = null;
+                        metadataInvalid = value != JsonToken.VALUE_NULL;
+                        parser.skipChildren();
+                    }
+                    break;
+                case "timestamp":
+                    timestamp = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    parser.skipChildren();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "消息对象未闭合");
+        }
+
+        // 处理Claude CLI的响应格式
+        if (kinds[FIELD_RESULT] != ABSENT && kinds[FIELD_TYPE] != ABSENT
+                && "result".equals(asText(texts, kinds, FIELD_TYPE))) {
+            return new Message(asText(texts, kinds, FIELD_UUID), "TEXT",
+                    asText(texts, kinds, FIELD_SUBTYPE), asText(texts, kinds, FIELD_RESULT),
+                    withSessionId(null, texts, kinds), null);
+        }
+
+        if (kinds[FIELD_ID] == STRUCTURED || kinds[FIELD_TYPE] == STRUCTURED
+                || kinds[FIELD_SUBTYPE] == STRUCTURED || kinds[FIELD_CONTENT] == STRUCTURED || metadataInvalid) {
+            throw new ClaudeCodeException("MESSAGE_PARSE_ERROR", "消息字段类型不匹配");
+        }
+
+        try {
+            return new Message(texts[FIELD_ID], texts[FIELD_TYPE], texts[FIELD_SUBTYPE],
+                    texts[FIELD_CONTENT], withSessionId(metadata, texts, kinds), timestamp);
+        } catch (DateTimeParseException e) {
+            throw new ClaudeCodeException("MESSAGE_PARSE_ERROR", "消息时间戳格式无效: " + timestamp, e);
+        }
+    }
+
+    /**
+     * CLI在消息顶层输出的 session_id 并入元数据，供恢复会话使用
+     */
+    private Map<String, Object> withSessionId(Map<String, Object> metadata, String[] texts, byte[] kinds) {
+        if (kinds[FIELD_SESSION_ID] != SCALAR) {
+            return metadata;
+        }
+        Map<String, Object> result = metadata != null ? metadata : new HashMap<>();
+        result.putIfAbsent(Message.SESSION_ID_KEY, texts[FIELD_SESSION_ID]);
+        return result;
+    }
+
+    private void readField(JsonParser parser, JsonToken value, int field, String[] texts, byte[] kinds)
+            throws IOException {
+        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            texts[field] = null;
+            kinds[field] = STRUCTURED;
+        } else if (value == JsonToken.VALUE_NULL) {
+            texts[field] = null;
+            kinds[field] = NULL;
+        } else {
+            texts[field] = parser.getText();
+            kinds[field] = SCALAR;
+        }
+    }
+
+    /**
+     * 与JsonNode.asText一致的文本取值：null为"null"，对象和数组为空串，缺失为null
+     */
+    private String asText(String[] texts, byte[] kinds, int field) {
+        switch (kinds[field]) {
+            case SCALAR:
+                return texts[field];
+            case NULL:
+                return "null";
+            case STRUCTURED:
+                return "";
+            default:
+                return null;
+        }
+    }
+
+    private int emitDecoded(JsonParser parser, JsonToken first, Consumer<Message> consumer) throws IOException {
+        try {
+            Message message = readMessage(parser, first);
+            if (message != null) {
+                consumer.accept(message);
+                return 1;
+            }
+        } catch (ClaudeCodeException e) {
+            logger.warn("跳过无法解析的消息: {}", e.getMessage());
+        }
+        return 0;
+    }
+
+    private static void drainTokens(JsonParser parser) throws IOException {
+        while (parser.nextToken() != null) {
+            // 遍历所有token检查格式
+        }
+    }
+
+    private static int skipWhitespace(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipWhitespace(char[] chars, int start, int end) {
+        while (start < end && Character.isWhitespace(chars[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(char[] chars, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public String toJsonString(Object object) throws ClaudeCodeException {
         try {
             return objectMapper.writeValueAsString(object);
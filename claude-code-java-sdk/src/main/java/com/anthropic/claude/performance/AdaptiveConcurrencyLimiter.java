@@ -0,0 +1,488 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.query.CancellationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制器
+ *
+ * 采用AIMD调整并发上限：请求成功且上限已被用到一半以上时加1；延迟超过长期平均延迟的容忍倍数
+ * 或超时时按 backoffRatio 缩小；收到使用限制/限流信号时减半。
+ *
+ * 延迟样本取获取许可到首条响应（{@link Permit#onFirstResponse()}）的时间，不受生成长度和下游消费速度影响；
+ * 未标记首条响应时取整个执行时间。无法观察到首条响应的调用应通过 {@link Permit#skipLatencySample()}
+ * 放弃样本，此时成功结果仍参与上限增长，但不参与延迟判断和统计。
+ *
+ * 超出上限的请求按到达顺序排队。排队长度达到上限、等待超过截止时间，或按当前吞吐估算的等待时间
+ * 已超过截止时间时立即拒绝，避免请求在队列中耗尽自己的超时。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double RTT_SMOOTHING = 0.05;
+    private static final int RTT_WARMUP_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+
+    private double limit;
+    private int inFlight;
+    private double longRttNanos;
+    private long rttSamples;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    private AdaptiveConcurrencyLimiter(Builder builder) {
+        if (builder.minLimit <= 0 || builder.maxLimit < builder.minLimit) {
+            throw new IllegalArgumentException("并发上限范围无效: " + builder.minLimit + "-" + builder.maxLimit);
+        }
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 获取执行许可，超出并发上限时排队等待
+     *
+     * @param maxWait 最长等待时间，通常为请求剩余的超时时间
+     * @return 许可，执行结束后必须调用其中一个结束方法
+     * @throws ClaudeCodeException 队列已满、预计等待超过截止时间、等待超时或被中断时抛出
+     */
+    public Permit acquire(Duration maxWait) throws ClaudeCodeException {
+        return acquire(maxWait, null);
+    }
+
+    /**
+     * 获取执行许可，超出并发上限时排队等待；令牌在排队期间被取消时立即移出队列
+     *
+     * @param maxWait 最长等待时间，通常为请求剩余的超时时间
+     * @param token 请求的取消令牌，null表示不可取消
+     * @return 许可，执行结束后必须调用其中一个结束方法
+     * @throws ClaudeCodeException 队列已满、预计等待超过截止时间、等待超时、被取消或被中断时抛出
+     */
+    public Permit acquire(Duration maxWait, CancellationToken token) throws ClaudeCodeException {
+        long waitNanos = maxWait != null ? maxWait.toNanos() : Long.MAX_VALUE;
+
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < currentLimit()) {
+                return grant();
+            }
+            if (waiters.size() >= maxQueueSize) {
+                throw reject("CONCURRENCY_QUEUE_FULL", "并发排队已满: " + waiters.size());
+            }
+            long expectedWait = expectedWaitNanos(waiters.size() + 1);
+            if (expectedWait > waitNanos) {
+                throw reject("CONCURRENCY_DEADLINE_EXCEEDED", String.format(
+                    "预计排队 %dms 超过截止时间 %dms", TimeUnit.NANOSECONDS.toMillis(expectedWait),
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+            }
+
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiters.addLast(waiter);
+            CancellationToken.Registration registration = token != null
+                ? token.onCancel(() -> cancelWaiter(waiter))
+                : null;
+            long remaining = waitNanos;
+            try {
+                while (!waiter.granted) {
+                    if (waiter.cancelled) {
+                        token.throwIfCancelled();
+                    }
+                    if (remaining <= 0) {
+                        waiters.remove(waiter);
+                        throw reject("CONCURRENCY_QUEUE_TIMEOUT", "等待并发许可超时");
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // 许可已分配但调用方不再需要，归还给后续等待者
+                    inFlight--;
+                    grantWaiters();
+                } else {
+                    waiters.remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new ClaudeCodeException("CONCURRENCY_INTERRUPTED", "等待并发许可被中断", e);
+            } finally {
+                if (registration != null) {
+                    registration.close();
+                }
+            }
+            accepted.incrementAndGet();
+            return new Permit(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不排队地尝试获取执行许可，供外部调度器决定由哪个请求占用空出的槽位
+     *
+     * @return 许可；已达上限或已有请求在本限制器内排队时返回null
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < currentLimit()) {
+                return grant();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 注册许可释放监听器，在每次释放、本限制器内的等待者被唤醒之后调用，调用时不持有限制器的锁
+     */
+    public void addReleaseListener(Runnable listener) {
+        releaseListeners.add(listener);
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LimiterStats getStats() {
+        lock.lock();
+        try {
+            return new LimiterStats(currentLimit(), inFlight, waiters.size(),
+                accepted.get(), rejected.get(), succeeded.get(), dropped.get(), rateLimited.get(),
+                Duration.ofNanos((long) longRttNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit grant() {
+        inFlight++;
+        accepted.incrementAndGet();
+        return new Permit(System.nanoTime());
+    }
+
+    private ClaudeCodeException reject(String code, String message) {
+        rejected.incrementAndGet();
+        logger.debug("拒绝请求: {} (上限: {}, 执行中: {}, 排队: {})", message, currentLimit(), inFlight, waiters.size());
+        return new ClaudeCodeException(code, message);
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 按当前上限和平均延迟估算排在第position位的请求需要等待的时间，尚无延迟样本时不估算
+     */
+    private long expectedWaitNanos(int position) {
+        if (rttSamples < RTT_WARMUP_SAMPLES) {
+            return 0;
+        }
+        return (long) (longRttNanos * Math.ceil((double) position / currentLimit()));
+    }
+
+    /**
+     * 在上限内按到达顺序唤醒等待者，调用方需持有锁
+     */
+    private void grantWaiters() {
+        while (!waiters.isEmpty() && inFlight < currentLimit()) {
+            Waiter waiter = waiters.pollFirst();
+            waiter.granted = true;
+            inFlight++;
+            waiter.condition.signal();
+        }
+    }
+
+    /**
+     * 取消回调：尚未获得许可的等待者移出队列并唤醒
+     */
+    private void cancelWaiter(Waiter waiter) {
+        lock.lock();
+        try {
+            if (!waiter.granted && waiters.remove(waiter)) {
+                waiter.cancelled = true;
+                waiter.condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long rtt, Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            double previous = limit;
+            switch (outcome) {
+                case SUCCESS:
+                    succeeded.incrementAndGet();
+                    if (rtt >= 0 && isLatencyDegraded(rtt)) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                    } else if ((inFlight + 1) * 2 >= limit) {
+                        limit = Math.min(maxLimit, limit + 1);
+                    }
+                    if (rtt >= 0) {
+                        recordRtt(rtt);
+                    }
+                    break;
+                case DROPPED:
+                    dropped.incrementAndGet();
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    break;
+                case RATE_LIMITED:
+                    rateLimited.incrementAndGet();
+                    limit = Math.max(minLimit, limit / 2);
+                    break;
+                case IGNORED:
+                default:
+                    break;
+            }
+            if ((int) previous != (int) limit) {
+                logger.debug("并发上限调整: {} -> {} ({})", (int) previous, (int) limit, outcome);
+            }
+            grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable listener : releaseListeners) {
+            listener.run();
+        }
+    }
+
+    private boolean isLatencyDegraded(long rtt) {
+        return rttSamples >= RTT_WARMUP_SAMPLES && rtt > longRttNanos * latencyTolerance;
+    }
+
+    private void recordRtt(long rtt) {
+        rttSamples++;
+        if (rttSamples == 1) {
+            longRttNanos = rtt;
+        } else {
+            longRttNanos += (rtt - longRttNanos) * RTT_SMOOTHING;
+        }
+    }
+
+    /**
+     * 执行结果分类
+     */
+    public enum Outcome {
+        /** 正常完成，参与延迟统计 */
+        SUCCESS,
+        /** 超时等过载迹象 */
+        DROPPED,
+        /** 收到使用限制或限流信号 */
+        RATE_LIMITED,
+        /** 与负载无关的失败或取消，不调整上限 */
+        IGNORED
+    }
+
+    /**
+     * 执行许可，只有第一次结束调用生效
+     */
+    public final class Permit {
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final AtomicLong firstResponseNanos = new AtomicLong();
+        private volatile boolean sampleLatency = true;
+        private volatile Runnable releaseHook;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                Runnable hook = releaseHook;
+                if (hook != null) {
+                    hook.run();
+                }
+                long respondedAt = firstResponseNanos.get();
+                long latency = !sampleLatency ? -1
+                    : (respondedAt != 0 ? respondedAt : System.nanoTime()) - startNanos;
+                AdaptiveConcurrencyLimiter.this.release(latency, outcome);
+            }
+        }
+
+        /**
+         * 标记收到首条响应，只有第一次调用生效；之后的生成和消费时间不计入延迟样本
+         */
+        public void onFirstResponse() {
+            firstResponseNanos.compareAndSet(0, System.nanoTime());
+        }
+
+        /**
+         * 本次执行不提供延迟样本，用于拿到结果时已无法区分首条响应和完整生成时间的同步调用
+         */
+        public void skipLatencySample() {
+            sampleLatency = false;
+        }
+
+        /**
+         * 设置在归还许可之前执行的回调，供调度器维护自身的占用计数
+         */
+        void setReleaseHook(Runnable releaseHook) {
+            this.releaseHook = releaseHook;
+        }
+
+        public void onSuccess() {
+            release(Outcome.SUCCESS);
+        }
+
+        public void onDropped() {
+            release(Outcome.DROPPED);
+        }
+
+        public void onRateLimited() {
+            release(Outcome.RATE_LIMITED);
+        }
+
+        public void onIgnore() {
+            release(Outcome.IGNORED);
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private boolean granted;
+        private boolean cancelled;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    public static class Builder {
+        private int initialLimit = Math.max(4, Runtime.getRuntime().availableProcessors());
+        private int minLimit = 1;
+        private int maxLimit = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+        private int maxQueueSize = 1024;
+        private double backoffRatio = 0.9;
+        private double latencyTolerance = 2.0;
+
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        public Builder maxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * 超时或延迟劣化时上限的缩小比例
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * 单次延迟超过长期平均延迟的倍数时视为过载
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            return new AdaptiveConcurrencyLimiter(this);
+        }
+    }
+
+    /**
+     * 并发限制器统计信息
+     */
+    public static class LimiterStats {
+        private final int limit;
+        private final int inFlight;
+        private final int queued;
+        private final long accepted;
+        private final long rejected;
+        private final long succeeded;
+        private final long dropped;
+        private final long rateLimited;
+        private final Duration averageLatency;
+
+        public LimiterStats(int limit, int inFlight, int queued, long accepted, long rejected,
+                            long succeeded, long dropped, long rateLimited, Duration averageLatency) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.succeeded = succeeded;
+            this.dropped = dropped;
+            this.rateLimited = rateLimited;
+            this.averageLatency = averageLatency;
+        }
+
+        public int getLimit() { return limit; }
+        public int getInFlight() { return inFlight; }
+        public int getQueued() { return queued; }
+        public long getAccepted() { return accepted; }
+        public long getRejected() { return rejected; }
+        public long getSucceeded() { return succeeded; }
+        public long getDropped() { return dropped; }
+        public long getRateLimited() { return rateLimited; }
+        public Duration getAverageLatency() { return averageLatency; }
+
+        @Override
+        public String toString() {
+            return String.format("LimiterStats{limit=%d, inFlight=%d, queued=%d, accepted=%d, rejected=%d, dropped=%d, rateLimited=%d, avgLatency=%dms}",
+                    limit, inFlight, queued, accepted, rejected, dropped, rateLimited, averageLatency.toMillis());
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CacheManager {
     private static final Logger logger = LoggerFactory.getLogger(CacheManager.class);
+    private static final long UNKNOWN_VALUE_BYTES = 1024;
 
     private final Cache<String, Object> queryResultCache;
     private final Cache<String, Object> configCache;
@@ -29,12 +30,20 @@ public class CacheManager {
     }
 
     public CacheManager(CacheConfig config) {
-        // 查询结果缓存 - 较大容量，较长过期时间
-        this.queryResultCache = Caffeine.newBuilder()
-                .maximumSize(config.getQueryCacheSize())
-                .expireAfterWrite(Duration.ofMinutes(config.getQueryCacheExpireMinutes()))
-                .recordStats()
-                .build();
+        // 查询结果缓存 - 较大容量，较长过期时间；配置了字节上限时按估算字节数淘汰
+        Caffeine<Object, Object> queryCacheBuilder = Caffeine.newBuilder()
+                .expireAfterWrite(config.getQueryCacheTtl())
+                .recordStats();
+        if (config.getQueryCacheMaxBytes() > 0) {
+            this.queryResultCache = queryCacheBuilder
+                    .maximumWeight(config.getQueryCacheMaxBytes())
+                    .weigher(CacheManager::weigh)
+                    .build();
+        } else {
+            this.queryResultCache = queryCacheBuilder
+                    .maximumSize(config.getQueryCacheSize())
+                    .build();
+        }
 
         // 配置缓存 - 中等容量，很长过期时间
         this.configCache = Caffeine.newBuilder()
@@ -54,6 +63,28 @@ public class CacheManager {
                 config.getQueryCacheSize(), config.getConfigCacheSize(), config.getSessionCacheSize());
     }
 
+    /**
+     * 可估算占用字节数的缓存值，按字节上限淘汰时使用
+     */
+    public interface Weighted {
+        long estimatedBytes();
+    }
+
+    /**
+     * 估算缓存项字节数，无法估算的值按固定大小计
+     */
+    private static int weigh(Object key, Object value) {
+        long bytes = 2L * key.toString().length();
+        if (value instanceof Weighted) {
+            bytes += ((Weighted) value).estimatedBytes();
+        } else if (value instanceof CharSequence) {
+            bytes += 2L * ((CharSequence) value).length();
+        } else {
+            bytes += UNKNOWN_VALUE_BYTES;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
     /**
      * 获取查询结果缓存
      *
@@ -198,6 +229,10 @@ public class CacheManager {
         CacheStats configStats = configCache.stats();
         CacheStats sessionStats = sessionCache.stats();
 
+        long queryWeightedBytes = queryResultCache.policy().eviction()
+                .map(eviction -> eviction.isWeighted() ? eviction.weightedSize().orElse(0L) : 0L)
+                .orElse(0L);
+
         return new CacheManagerStats(
                 queryResultCache.estimatedSize(),
                 configCache.estimatedSize(),
@@ -208,7 +243,10 @@ public class CacheManager {
                 sessionStats.hitRate(),
                 queryStats.evictionCount(),
                 configStats.evictionCount(),
-                sessionStats.evictionCount()
+                sessionStats.evictionCount(),
+                queryStats.hitCount(),
+                queryStats.missCount(),
+                queryWeightedBytes
         );
     }
 
@@ -250,7 +288,8 @@ public class CacheManager {
         private final long queryCacheSize;
         private final long configCacheSize;
         private final long sessionCacheSize;
-        private final int queryCacheExpireMinutes;
+        private final Duration queryCacheTtl;
+        private final long queryCacheMaxBytes;
         private final int configCacheExpireHours;
         private final int sessionCacheExpireMinutes;
 
@@ -258,7 +297,8 @@ public class CacheManager {
             this.queryCacheSize = builder.queryCacheSize;
             this.configCacheSize = builder.configCacheSize;
             this.sessionCacheSize = builder.sessionCacheSize;
-            this.queryCacheExpireMinutes = builder.queryCacheExpireMinutes;
+            this.queryCacheTtl = builder.queryCacheTtl;
+            this.queryCacheMaxBytes = builder.queryCacheMaxBytes;
             this.configCacheExpireHours = builder.configCacheExpireHours;
             this.sessionCacheExpireMinutes = builder.sessionCacheExpireMinutes;
         }
@@ -275,7 +315,9 @@ public class CacheManager {
         public long getQueryCacheSize() { return queryCacheSize; }
         public long getConfigCacheSize() { return configCacheSize; }
         public long getSessionCacheSize() { return sessionCacheSize; }
-        public int getQueryCacheExpireMinutes() { return queryCacheExpireMinutes; }
+        public int getQueryCacheExpireMinutes() { return (int) queryCacheTtl.toMinutes(); }
+        public Duration getQueryCacheTtl() { return queryCacheTtl; }
+        public long getQueryCacheMaxBytes() { return queryCacheMaxBytes; }
         public int getConfigCacheExpireHours() { return configCacheExpireHours; }
         public int getSessionCacheExpireMinutes() { return sessionCacheExpireMinutes; }
 
@@ -283,7 +325,8 @@ public class CacheManager {
             private long queryCacheSize = 1000;
             private long configCacheSize = 100;
             private long sessionCacheSize = 500;
-            private int queryCacheExpireMinutes = 30;
+            private Duration queryCacheTtl = Duration.ofMinutes(30);
+            private long queryCacheMaxBytes = 0;
             private int configCacheExpireHours = 24;
             private int sessionCacheExpireMinutes = 60;
 
@@ -303,7 +346,20 @@ public class CacheManager {
             }
 
             public Builder queryCacheExpireMinutes(int queryCacheExpireMinutes) {
-                this.queryCacheExpireMinutes = queryCacheExpireMinutes;
+                this.queryCacheTtl = Duration.ofMinutes(queryCacheExpireMinutes);
+                return this;
+            }
+
+            public Builder queryCacheTtl(Duration queryCacheTtl) {
+                this.queryCacheTtl = queryCacheTtl;
+                return this;
+            }
+
+            /**
+             * 查询结果缓存的字节上限，大于0时按估算字节数淘汰并忽略条目数上限
+             */
+            public Builder queryCacheMaxBytes(long queryCacheMaxBytes) {
+                this.queryCacheMaxBytes = queryCacheMaxBytes;
                 return this;
             }
 
@@ -337,11 +393,24 @@ public class CacheManager {
         private final long queryResultEvictions;
         private final long configEvictions;
         private final long sessionEvictions;
+        private final long queryResultHits;
+        private final long queryResultMisses;
+        private final long queryResultWeightedBytes;
 
         public CacheManagerStats(long queryResultCacheSize, long configCacheSize, long sessionCacheSize,
                                 int customCacheCount, double queryResultHitRate, double configHitRate,
                                 double sessionHitRate, long queryResultEvictions, long configEvictions,
                                 long sessionEvictions) {
+            this(queryResultCacheSize, configCacheSize, sessionCacheSize, customCacheCount,
+                    queryResultHitRate, configHitRate, sessionHitRate,
+                    queryResultEvictions, configEvictions, sessionEvictions, 0, 0, 0);
+        }
+
+        public CacheManagerStats(long queryResultCacheSize, long configCacheSize, long sessionCacheSize,
+                                int customCacheCount, double queryResultHitRate, double configHitRate,
+                                double sessionHitRate, long queryResultEvictions, long configEvictions,
+                                long sessionEvictions, long queryResultHits, long queryResultMisses,
+                                long queryResultWeightedBytes) {
             this.queryResultCacheSize = queryResultCacheSize;
             this.configCacheSize = configCacheSize;
             this.sessionCacheSize = sessionCacheSize;
@@ -352,6 +421,9 @@ public class CacheManager {
             this.queryResultEvictions = queryResultEvictions;
             this.configEvictions = configEvictions;
             this.sessionEvictions = sessionEvictions;
+            this.queryResultHits = queryResultHits;
+            this.queryResultMisses = queryResultMisses;
+            this.queryResultWeightedBytes = queryResultWeightedBytes;
         }
 
         // Getters
@@ -365,6 +437,10 @@ public class CacheManager {
         public long getQueryResultEvictions() { return queryResultEvictions; }
         public long getConfigEvictions() { return configEvictions; }
         public long getSessionEvictions() { return sessionEvictions; }
+        public long getQueryResultHits() { return queryResultHits; }
+        public long getQueryResultMisses() { return queryResultMisses; }
+        /** 按字节上限淘汰时查询结果缓存的估算字节数，未启用时为0 */
+        public long getQueryResultWeightedBytes() { return queryResultWeightedBytes; }
 
         public long getTotalCacheSize() {
             return queryResultCacheSize + configCacheSize + sessionCacheSize;
@@ -1,23 +1,33 @@
 package com.anthropic.claude.performance;
 
 import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.exceptions.ClaudeCodeException;
 import com.anthropic.claude.process.ProcessManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 连接池管理器
- * 管理Claude CLI进程池，提供连接复用和健康检查
+ * 管理预热的Claude CLI常驻进程池，提供健康检查、按使用次数/存活时长的回收以及补充预热连接
+ *
+ * 常驻进程在多轮输入间保持CLI会话上下文，为避免不同调用方互相看到对方的提示词，
+ * 未指定会话键的连接只服务一次请求，释放后即关闭并由预热连接接替；
+ * 指定会话键的连接在释放后按键保留，同键的后续请求复用同一会话，直到达到最大使用次数
  *
  * @author Claude Code Java SDK
  * @version 1.0.0
  */
 public class ConnectionPoolManager {
     private static final Logger logger = LoggerFactory.getLogger(ConnectionPoolManager.class);
+    private static final long ACQUIRE_POLL_INTERVAL_MS = 100;
 
     private final int minPoolSize;
     private final int maxPoolSize;
@@ -25,20 +35,35 @@ public class ConnectionPoolManager {
     private final long healthCheckInterval;
     private final BlockingQueue<PooledConnection> availableConnections;
     private final ConcurrentHashMap<String, PooledConnection> activeConnections = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PooledConnection> conversationConnections = new ConcurrentHashMap<>();
     private final AtomicInteger totalConnections = new AtomicInteger(0);
     private final AtomicLong connectionCounter = new AtomicLong(0);
     private final ScheduledExecutorService healthCheckExecutor;
 
+    private final long maxConnectionUses;
+    private final Duration maxConnectionAge;
+    private final List<String> command;
+
     private final ProcessManager processManager;
+    private final Executor acquireExecutor;
     private volatile boolean shutdown = false;
 
     public ConnectionPoolManager(ClaudeCodeOptions options) {
+        this(options, new ProcessManager(options.getTimeout(), options.getEnvironment(),
+            options.getBlockingExecutor()));
+    }
+
+    public ConnectionPoolManager(ClaudeCodeOptions options, ProcessManager processManager) {
         this.minPoolSize = options.getMinPoolSize();
         this.maxPoolSize = options.getMaxPoolSize();
         this.connectionTimeout = options.getConnectionTimeout();
         this.healthCheckInterval = options.getHealthCheckInterval();
+        this.maxConnectionUses = options.getMaxConnectionUses();
+        this.maxConnectionAge = options.getMaxConnectionAge();
         this.availableConnections = new LinkedBlockingQueue<>(maxPoolSize);
-        this.processManager = new ProcessManager(options.getTimeout(), options.getEnvironment());
+        this.processManager = processManager;
+        this.acquireExecutor = options.getBlockingExecutor();
+        this.command = buildWarmCommand(options);
         this.healthCheckExecutor = Executors.newScheduledThreadPool(1, r -> {
             Thread thread = new Thread(r, "connection-pool-health-checker");
             thread.setDaemon(true);
@@ -63,49 +88,89 @@ public class ConnectionPoolManager {
             return failedFuture;
         }
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 首先尝试从可用连接中获取
-                PooledConnection connection = availableConnections.poll();
-
-                if (connection != null && connection.isHealthy()) {
-                    connection.activate();
-                    activeConnections.put(connection.getId(), connection);
-                    logger.debug("复用连接: {}", connection.getId());
-                    return connection;
+        return CompletableFuture.supplyAsync(this::acquireConnection, acquireExecutor);
+    }
+
+    /**
+     * 同步获取一次性连接，释放后连接即关闭，不与其他请求共享会话
+     *
+     * @return 已激活的连接
+     * @throws ClaudeCodeException 连接池已关闭、获取超时或被中断时抛出
+     */
+    public PooledConnection acquireConnection() throws ClaudeCodeException {
+        return acquireConnection(null);
+    }
+
+    /**
+     * 同步获取连接，指定会话键时优先复用该键保留的会话连接，否则取用预热的空闲连接，
+     * 不足时在上限内新建（连接数已满时关闭最久未用的会话连接腾出名额），否则等待至连接超时
+     *
+     * @param conversationKey 会话键，为null时获取一次性连接
+     * @return 已激活的连接
+     * @throws ClaudeCodeException 连接池已关闭、获取超时或被中断时抛出
+     */
+    public PooledConnection acquireConnection(String conversationKey) throws ClaudeCodeException {
+        if (shutdown) {
+            throw new ClaudeCodeException("CONNECTION_POOL_SHUTDOWN", "连接池已关闭");
+        }
+
+        PooledConnection connection;
+        if (conversationKey != null) {
+            connection = conversationConnections.remove(conversationKey);
+            if (connection != null) {
+                if (connection.isHealthy()) {
+                    logger.debug("复用会话连接: {}", connection.getId());
+                    return activateConnection(connection);
                 }
+                closeConnection(connection);
+            }
+        }
+
+        // 尝试从预热的空闲连接中获取
+        connection = pollHealthyConnection();
+        if (connection != null) {
+            logger.debug("取用预热连接: {}", connection.getId());
+            return activateConnection(connection, conversationKey);
+        }
 
-                // 如果没有可用连接，创建新连接
-                if (totalConnections.get() < maxPoolSize) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectionTimeout);
+        try {
+            while (!shutdown) {
+                // 如果没有可用连接，在上限内创建新连接
+                if (reserveConnectionSlot() || (evictIdleConversation() && reserveConnectionSlot())) {
                     connection = createNewConnection();
                     if (connection != null) {
-                        connection.activate();
-                        activeConnections.put(connection.getId(), connection);
-                        totalConnections.incrementAndGet();
                         logger.debug("创建新连接: {}", connection.getId());
-                        return connection;
+                        return activateConnection(connection, conversationKey);
                     }
+                    totalConnections.decrementAndGet();
                 }
 
-                // 等待连接可用
-                connection = availableConnections.poll(connectionTimeout, TimeUnit.MILLISECONDS);
-                if (connection != null && connection.isHealthy()) {
-                    connection.activate();
-                    activeConnections.put(connection.getId(), connection);
-                    return connection;
+                // 等待连接归还，分段等待以便在连接被回收后及时补建
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                connection = availableConnections.poll(
+                        Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ACQUIRE_POLL_INTERVAL_MS)),
+                        TimeUnit.NANOSECONDS);
+                if (connection != null) {
+                    if (connection.isHealthy()) {
+                        return activateConnection(connection, conversationKey);
+                    }
+                    closeConnection(connection);
                 }
-
-                throw new TimeoutException("获取连接超时");
-
-            } catch (Exception e) {
-                logger.error("获取连接失败", e);
-                throw new RuntimeException(e);
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClaudeCodeException("CONNECTION_POOL_INTERRUPTED", "获取连接被中断", e);
+        }
+
+        throw new ClaudeCodeException("CONNECTION_POOL_TIMEOUT", "获取连接超时");
     }
 
     /**
-     * 释放连接
+     * 释放连接，一次性连接直接关闭并补充预热连接，会话连接健康时按会话键保留
      *
      * @param connection 要释放的连接
      */
@@ -117,12 +182,22 @@ public class ConnectionPoolManager {
         activeConnections.remove(connection.getId());
         connection.deactivate();
 
-        if (connection.isHealthy() && !shutdown) {
-            availableConnections.offer(connection);
-            logger.debug("释放连接: {}", connection.getId());
-        } else {
-            closeConnection(connection);
+        String conversationKey = connection.getConversationKey();
+        if (conversationKey != null && connection.isHealthy() && !shutdown) {
+            PooledConnection previous = conversationConnections.put(conversationKey, connection);
+            if (previous != null && previous != connection) {
+                // 同一会话键的并发请求各自持有连接，只保留最后释放的一个
+                retireConnection(previous);
+            }
+            logger.debug("保留会话连接: {}", connection.getId());
+            if (shutdown && conversationConnections.remove(conversationKey, connection)) {
+                closeConnection(connection);
+            }
+            return;
         }
+
+        replenishAsync();
+        retireConnection(connection);
     }
 
     /**
@@ -168,6 +243,11 @@ public class ConnectionPoolManager {
         }
         activeConnections.clear();
 
+        for (PooledConnection connection : conversationConnections.values()) {
+            closeConnection(connection);
+        }
+        conversationConnections.clear();
+
         while (!availableConnections.isEmpty()) {
             PooledConnection connection = availableConnections.poll();
             if (connection != null) {
@@ -198,21 +278,135 @@ public class ConnectionPoolManager {
     private PooledConnection createNewConnection() {
         try {
             String connectionId = "conn-" + connectionCounter.incrementAndGet();
-            return new PooledConnection(connectionId, processManager);
+            PooledConnection connection = new PooledConnection(
+                    connectionId, processManager, command, maxConnectionUses, maxConnectionAge);
+            connection.start();
+            return connection;
         } catch (Exception e) {
             logger.error("创建连接失败", e);
             return null;
         }
     }
 
+    /**
+     * 从空闲队列中取出健康连接，顺带关闭已失效的连接
+     */
+    private PooledConnection pollHealthyConnection() {
+        PooledConnection connection;
+        while ((connection = availableConnections.poll()) != null) {
+            if (connection.isHealthy()) {
+                return connection;
+            }
+            closeConnection(connection);
+        }
+        return null;
+    }
+
+    /**
+     * 在最大连接数内预占一个连接名额
+     */
+    private boolean reserveConnectionSlot() {
+        while (true) {
+            int current = totalConnections.get();
+            if (current >= maxPoolSize) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 在最久未用的会话连接上腾出一个连接名额
+     *
+     * @return 是否关闭了会话连接
+     */
+    private boolean evictIdleConversation() {
+        Map.Entry<String, PooledConnection> eldest = null;
+        for (Map.Entry<String, PooledConnection> entry : conversationConnections.entrySet()) {
+            if (eldest == null || entry.getValue().getLastUsed().isBefore(eldest.getValue().getLastUsed())) {
+                eldest = entry;
+            }
+        }
+        if (eldest == null || !conversationConnections.remove(eldest.getKey(), eldest.getValue())) {
+            return false;
+        }
+        logger.debug("连接数已满，关闭最久未用的会话连接: {}", eldest.getValue().getId());
+        closeConnection(eldest.getValue());
+        return true;
+    }
+
+    private PooledConnection activateConnection(PooledConnection connection, String conversationKey) {
+        connection.bindConversation(conversationKey);
+        return activateConnection(connection);
+    }
+
+    private PooledConnection activateConnection(PooledConnection connection) {
+        connection.activate();
+        activeConnections.put(connection.getId(), connection);
+        return connection;
+    }
+
+    /**
+     * 连接被回收后异步补充预热连接
+     */
+    private void replenishAsync() {
+        if (shutdown) {
+            return;
+        }
+        try {
+            healthCheckExecutor.execute(this::ensureMinimumConnections);
+        } catch (RejectedExecutionException e) {
+            logger.debug("连接池正在关闭，跳过补充连接");
+        }
+    }
+
+    /**
+     * 构建常驻进程命令：stream-json输入输出，进程在多轮请求间保持存活
+     */
+    private static List<String> buildWarmCommand(ClaudeCodeOptions options) {
+        List<String> command = new ArrayList<>();
+        command.add(options.getCliPath());
+        command.add("--print");
+        command.add("--input-format");
+        command.add("stream-json");
+        command.add("--output-format");
+        command.add("stream-json");
+        command.add("--verbose");
+        command.addAll(options.getAdditionalArgs());
+        return command;
+    }
+
+    /**
+     * 立即让出连接占用的名额，在后台关闭进程：关闭进程最多需要数秒，不应由释放连接的调用方等待
+     */
+    private void retireConnection(PooledConnection connection) {
+        totalConnections.decrementAndGet();
+        Runnable close = () -> {
+            try {
+                connection.close();
+                logger.debug("关闭连接: {}", connection.getId());
+            } catch (Exception e) {
+                logger.error("关闭连接失败: {}", connection.getId(), e);
+            }
+        };
+        try {
+            healthCheckExecutor.execute(close);
+        } catch (RejectedExecutionException e) {
+            close.run();
+        }
+    }
+
     /**
      * 关闭连接
      */
     private void closeConnection(PooledConnection connection) {
         try {
-            connection.close();
-            totalConnections.decrementAndGet();
-            logger.debug("关闭连接: {}", connection.getId());
+            if (connection.close()) {
+                totalConnections.decrementAndGet();
+                logger.debug("关闭连接: {}", connection.getId());
+            }
         } catch (Exception e) {
             logger.error("关闭连接失败: {}", connection.getId(), e);
         }
@@ -251,6 +445,16 @@ public class ConnectionPoolManager {
             }
         }
 
+        // 检查保留的会话连接
+        for (Map.Entry<String, PooledConnection> entry : conversationConnections.entrySet()) {
+            checkedConnections++;
+            PooledConnection connection = entry.getValue();
+            if (!connection.isHealthy() && conversationConnections.remove(entry.getKey(), connection)) {
+                closeConnection(connection);
+                unhealthyConnections++;
+            }
+        }
+
         // 检查活跃连接
         for (PooledConnection connection : activeConnections.values()) {
             checkedConnections++;
@@ -272,20 +476,24 @@ public class ConnectionPoolManager {
     }
 
     /**
-     * 确保最小连接数量
+     * 确保预热的空闲连接不少于最小连接数（受最大连接数限制）
      */
-    private void ensureMinimumConnections() {
-        int currentTotal = totalConnections.get();
-        if (currentTotal < minPoolSize) {
-            int needed = minPoolSize - currentTotal;
-            for (int i = 0; i < needed; i++) {
-                PooledConnection connection = createNewConnection();
-                if (connection != null) {
-                    availableConnections.offer(connection);
-                    totalConnections.incrementAndGet();
-                }
+    private synchronized void ensureMinimumConnections() {
+        int added = 0;
+        while (!shutdown && availableConnections.size() < minPoolSize && reserveConnectionSlot()) {
+            PooledConnection connection = createNewConnection();
+            if (connection == null) {
+                totalConnections.decrementAndGet();
+                break;
             }
-            logger.debug("补充连接到最小数量 - 新增: {}", needed);
+            if (!availableConnections.offer(connection)) {
+                closeConnection(connection);
+                break;
+            }
+            added++;
+        }
+        if (added > 0) {
+            logger.debug("补充连接到最小数量 - 新增: {}", added);
         }
     }
 
@@ -0,0 +1,696 @@
+package com.anthropic.claude.performance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 磁盘缓存存储
+ *
+ * 数据以追加方式写入段文件 {@code cache.seg}，键到记录偏移的映射保存在内存映射的开放寻址哈希索引 {@code cache.idx} 中，
+ * 进程重启后可直接复用。索引头记录其覆盖的段文件长度，打开时若段文件更长则从该位置重放，
+ * 索引损坏或不一致时全量扫描段文件重建；每条记录带CRC32校验，末尾写了一半的记录会被截断。
+ *
+ * 覆盖写和过期产生的垃圾超过一半，或段文件超过字节上限时执行压缩：只复制未过期的最新记录，
+ * 仍超过上限时从最早写入的记录开始丢弃，直到降到上限的 {@value #COMPACT_TARGET_PERCENT}% 以内。
+ *
+ * 读操作并发执行，写操作和压缩互斥。同一目录同一时刻只能由一个进程打开：打开时对 {@code cache.lock}
+ * 加文件锁，锁已被占用时抛出IOException，调用方可退回只使用内存缓存。
+ *
+ * 索引文件只扩展不截断：重建索引时复用原文件并清零映射区域，避免截断仍被映射的文件（Windows上会失败）。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public final class DiskCacheStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DiskCacheStore.class);
+
+    static final String SEGMENT_FILE = "cache.seg";
+    static final String INDEX_FILE = "cache.idx";
+    static final String LOCK_FILE = "cache.lock";
+
+    private static final int INDEX_MAGIC = 0x43434958;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int MIN_CAPACITY = 1024;
+    private static final long DIRTY = -1L;
+
+    // 索引头字段偏移
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_SEGMENT_LENGTH = 16;
+    private static final int H_LIVE_BYTES = 24;
+
+    // 记录格式: [int 记录体长度][int CRC32][long 过期时间][int 键长度][键][值]
+    private static final int RECORD_PREFIX_BYTES = 8;
+    private static final int RECORD_FIXED_BYTES = 12;
+
+    private static final int ZERO_CHUNK_BYTES = 8192;
+    private static final byte[] ZEROS = new byte[ZERO_CHUNK_BYTES];
+
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    private static final int COMPACT_TARGET_PERCENT = 80;
+
+    private final Path directory;
+    private final Path segmentPath;
+    private final Path indexPath;
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private FileChannel segment;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private volatile boolean closed;
+
+    /**
+     * 打开或创建磁盘缓存
+     *
+     * @param directory 缓存目录
+     * @param maxBytes 段文件字节上限
+     * @throws IOException 目录或文件无法访问，或缓存目录已被其他进程打开时抛出
+     */
+    public DiskCacheStore(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("磁盘缓存上限必须大于0");
+        }
+        this.directory = directory;
+        this.segmentPath = directory.resolve(SEGMENT_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.fileLock = tryLock(lockChannel, directory);
+        try {
+            this.segment = FileChannel.open(segmentPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.indexChannel = FileChannel.open(indexPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(segment);
+            closeQuietly(indexChannel);
+            fileLock.release();
+            lockChannel.close();
+            throw e;
+        }
+
+        logger.info("磁盘缓存已打开 - 目录: {}, 条目: {}, 段文件: {} 字节", directory, count(), segment.size());
+    }
+
+    /**
+     * 读取缓存值
+     *
+     * @param key 缓存键
+     * @return 值，不存在或已过期时返回null
+     */
+    public byte[] get(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            long offset = lookup(keyBytes, hash(keyBytes));
+            if (offset >= 0) {
+                Record record = readRecord(offset);
+                if (record != null && !record.isExpired(System.currentTimeMillis())) {
+                    hits.incrementAndGet();
+                    return record.value;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入缓存值
+     *
+     * @param key 缓存键
+     * @param value 值
+     * @param ttl 存活时间，null表示不过期
+     */
+    public void put(String key, byte[] value, Duration ttl) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long expireAt = ttl != null ? System.currentTimeMillis() + ttl.toMillis() : Long.MAX_VALUE;
+        ByteBuffer record = encode(keyBytes, value, expireAt);
+        if (record.remaining() > maxBytes) {
+            logger.debug("缓存值超过磁盘缓存上限，跳过写入: {} 字节", record.remaining());
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            long offset = segment.size();
+            writeFully(segment, record, offset);
+            index(keyBytes, offset, record.capacity());
+            index.putLong(H_SEGMENT_LENGTH, segment.size());
+
+            if (shouldCompact()) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            segment.truncate(0);
+            resetIndex(MIN_CAPACITY);
+            index.putLong(H_SEGMENT_LENGTH, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩段文件，丢弃被覆盖和已过期的记录，并按字节上限淘汰最早写入的记录
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            doCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 将段文件和索引刷到磁盘
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            segment.force(false);
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public DiskCacheStats getStats() {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return new DiskCacheStats(0, 0, 0, hits.get(), misses.get(), compactions.get());
+            }
+            return new DiskCacheStats(count(), segment.size(), index.getLong(H_LIVE_BYTES),
+                hits.get(), misses.get(), compactions.get());
+        } catch (IOException e) {
+            return new DiskCacheStats(count(), 0, 0, hits.get(), misses.get(), compactions.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segment.force(false);
+            index.force();
+            segment.close();
+            indexChannel.close();
+            fileLock.release();
+            lockChannel.close();
+            logger.info("磁盘缓存已关闭: {}", directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 对锁文件加独占锁，其他进程（或本进程内另一个实例）已持有时抛出IOException
+     */
+    private static FileLock tryLock(FileChannel channel, Path directory) throws IOException {
+        FileLock acquired;
+        try {
+            acquired = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (acquired == null) {
+            channel.close();
+            throw new IOException("磁盘缓存目录已被其他进程占用: " + directory);
+        }
+        return acquired;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("关闭磁盘缓存文件失败", e);
+        }
+    }
+
+    // ---- 恢复 ----
+
+    private void recover() throws IOException {
+        long segmentLength = segment.size();
+        if (indexChannel.size() >= HEADER_BYTES) {
+            mapIndex(indexChannel.size());
+            long indexed = index.getLong(H_SEGMENT_LENGTH);
+            int storedCapacity = index.getInt(H_CAPACITY);
+            boolean valid = index.getInt(H_MAGIC) == INDEX_MAGIC
+                && index.getInt(H_VERSION) == INDEX_VERSION
+                && storedCapacity >= MIN_CAPACITY
+                && Integer.bitCount(storedCapacity) == 1
+                && indexChannel.size() >= HEADER_BYTES + (long) storedCapacity * SLOT_BYTES
+                && indexed != DIRTY
+                && indexed <= segmentLength;
+            if (valid) {
+                capacity = storedCapacity;
+                if (indexed < segmentLength) {
+                    logger.info("磁盘缓存索引落后于段文件，从 {} 重放", indexed);
+                    replay(indexed);
+                }
+                return;
+            }
+            logger.warn("磁盘缓存索引无效，重建索引: {}", indexPath);
+        }
+
+        resetIndex(MIN_CAPACITY);
+        replay(0);
+    }
+
+    /**
+     * 从指定位置扫描段文件重建索引，遇到不完整或校验失败的记录时截断
+     */
+    private void replay(long from) throws IOException {
+        long offset = from;
+        long size = segment.size();
+        while (offset < size) {
+            Record record = readRecord(offset);
+            if (record == null) {
+                logger.warn("磁盘缓存段文件在 {} 处损坏，截断 {} 字节", offset, size - offset);
+                segment.truncate(offset);
+                break;
+            }
+            index(record.key, offset, record.length);
+            offset += record.length;
+        }
+        index.putLong(H_SEGMENT_LENGTH, offset);
+    }
+
+    // ---- 压缩 ----
+
+    private boolean shouldCompact() throws IOException {
+        long size = segment.size();
+        if (size > maxBytes) {
+            return true;
+        }
+        return size >= MIN_COMPACT_BYTES && index.getLong(H_LIVE_BYTES) * 2 < size;
+    }
+
+    private void doCompact() throws IOException {
+        long before = segment.size();
+        long now = System.currentTimeMillis();
+
+        // 收集存活记录，按写入顺序排序
+        long[] offsets = new long[count()];
+        int live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long stored = index.getLong(slotPosition(slot) + 8);
+            if (stored != 0) {
+                offsets[live++] = stored - 1;
+            }
+        }
+        Arrays.sort(offsets, 0, live);
+
+        List<Record> kept = new ArrayList<>(live);
+        long keptBytes = 0;
+        for (int i = 0; i < live; i++) {
+            Record record = readRecord(offsets[i]);
+            if (record != null && !record.isExpired(now)) {
+                kept.add(record);
+                keptBytes += record.length;
+            }
+        }
+
+        // 超过上限时从最早写入的记录开始淘汰
+        long target = before > maxBytes ? maxBytes * COMPACT_TARGET_PERCENT / 100 : Long.MAX_VALUE;
+        int first = 0;
+        while (keptBytes > target && first < kept.size()) {
+            keptBytes -= kept.get(first++).length;
+        }
+        List<Record> survivors = kept.subList(first, kept.size());
+
+        Path tmp = directory.resolve(SEGMENT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Record record : survivors) {
+                writeFully(out, encode(record.key, record.value, record.expireAt), position);
+                position += record.length;
+            }
+            out.force(false);
+        }
+
+        // 替换期间崩溃时索引标记为脏，下次打开全量重建
+        index.putLong(H_SEGMENT_LENGTH, DIRTY);
+        index.force();
+        segment.close();
+        Files.move(tmp, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segment = FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        resetIndex(capacityFor(survivors.size()));
+        long position = 0;
+        for (Record record : survivors) {
+            index(record.key, position, record.length);
+            position += record.length;
+        }
+        index.putLong(H_SEGMENT_LENGTH, position);
+
+        compactions.incrementAndGet();
+        logger.debug("磁盘缓存压缩完成 - {} -> {} 字节, 保留 {} 条, 淘汰 {} 条",
+            before, position, survivors.size(), live - survivors.size());
+    }
+
+    // ---- 索引 ----
+
+    /**
+     * 查找键对应的记录偏移，不存在时返回-1
+     */
+    private long lookup(byte[] key, long hash) throws IOException {
+        int mask = capacity - 1;
+        for (int probe = 0, slot = (int) hash & mask; probe < capacity; probe++, slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long stored = index.getLong(position + 8);
+            if (stored == 0) {
+                return -1;
+            }
+            if (index.getLong(position) == hash && keyMatches(stored - 1, key)) {
+                return stored - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 写入或覆盖键的索引项，并维护存活字节数
+     */
+    private void index(byte[] key, long offset, int length) throws IOException {
+        if ((count() + 1) * 4L > capacity * 3L) {
+            resize(capacity * 2);
+        }
+
+        long hash = hash(key);
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long stored = index.getLong(position + 8);
+            if (stored == 0) {
+                index.putLong(position, hash);
+                index.putLong(position + 8, offset + 1);
+                index.putInt(H_COUNT, count() + 1);
+                index.putLong(H_LIVE_BYTES, index.getLong(H_LIVE_BYTES) + length);
+                return;
+            }
+            if (index.getLong(position) == hash && keyMatches(stored - 1, key)) {
+                int previous = readInt(stored - 1) + RECORD_PREFIX_BYTES;
+                index.putLong(position + 8, offset + 1);
+                index.putLong(H_LIVE_BYTES, index.getLong(H_LIVE_BYTES) - previous + length);
+                return;
+            }
+        }
+    }
+
+    private void resize(int newCapacity) throws IOException {
+        long[] slots = new long[capacity * 2];
+        for (int slot = 0; slot < capacity; slot++) {
+            slots[slot * 2] = index.getLong(slotPosition(slot));
+            slots[slot * 2 + 1] = index.getLong(slotPosition(slot) + 8);
+        }
+        long segmentLength = index.getLong(H_SEGMENT_LENGTH);
+        long liveBytes = index.getLong(H_LIVE_BYTES);
+        int count = count();
+
+        resetIndex(newCapacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < slots.length; i += 2) {
+            if (slots[i + 1] == 0) {
+                continue;
+            }
+            int slot = (int) slots[i] & mask;
+            while (index.getLong(slotPosition(slot) + 8) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index.putLong(slotPosition(slot), slots[i]);
+            index.putLong(slotPosition(slot) + 8, slots[i + 1]);
+        }
+        index.putInt(H_COUNT, count);
+        index.putLong(H_LIVE_BYTES, liveBytes);
+        index.putLong(H_SEGMENT_LENGTH, segmentLength);
+    }
+
+    private void resetIndex(int newCapacity) throws IOException {
+        long size = HEADER_BYTES + (long) newCapacity * SLOT_BYTES;
+        // 不截断文件：按需扩展后清零新的映射区域，超出部分保留但不再使用
+        mapIndex(size);
+        for (int position = 0; position < size; position += ZERO_CHUNK_BYTES) {
+            index.put(position, ZEROS, 0, (int) Math.min(ZERO_CHUNK_BYTES, size - position));
+        }
+        capacity = newCapacity;
+        index.putInt(H_MAGIC, INDEX_MAGIC);
+        index.putInt(H_VERSION, INDEX_VERSION);
+        index.putInt(H_CAPACITY, newCapacity);
+        index.putInt(H_COUNT, 0);
+        index.putLong(H_SEGMENT_LENGTH, DIRTY);
+        index.putLong(H_LIVE_BYTES, 0);
+    }
+
+    private void mapIndex(long size) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private int count() {
+        return index.getInt(H_COUNT);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int capacityFor(int entries) {
+        int needed = Math.max(MIN_CAPACITY, entries * 2);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    /**
+     * 64位FNV-1a哈希
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // ---- 记录 ----
+
+    private static ByteBuffer encode(byte[] key, byte[] value, long expireAt) {
+        int bodyLength = RECORD_FIXED_BYTES + key.length + value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_BYTES + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.putLong(expireAt);
+        buffer.putInt(key.length);
+        buffer.put(key);
+        buffer.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_PREFIX_BYTES, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 读取并校验记录，记录不完整或校验失败时返回null
+     */
+    private Record readRecord(long offset) throws IOException {
+        long size = segment.size();
+        if (offset + RECORD_PREFIX_BYTES > size) {
+            return null;
+        }
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_BYTES);
+        readFully(prefix, offset);
+        int bodyLength = prefix.getInt(0);
+        if (bodyLength < RECORD_FIXED_BYTES || offset + RECORD_PREFIX_BYTES + bodyLength > size) {
+            return null;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        readFully(body, offset + RECORD_PREFIX_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+        if ((int) crc.getValue() != prefix.getInt(4)) {
+            return null;
+        }
+
+        body.flip();
+        long expireAt = body.getLong();
+        int keyLength = body.getInt();
+        if (keyLength < 0 || keyLength > body.remaining()) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        body.get(key);
+        byte[] value = new byte[body.remaining()];
+        body.get(value);
+        return new Record(key, value, expireAt, RECORD_PREFIX_BYTES + bodyLength);
+    }
+
+    private boolean keyMatches(long offset, byte[] key) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_PREFIX_BYTES + RECORD_FIXED_BYTES + key.length);
+        if (offset + header.capacity() > segment.size()) {
+            return false;
+        }
+        readFully(header, offset);
+        if (header.getInt(RECORD_PREFIX_BYTES + 8) != key.length) {
+            return false;
+        }
+        byte[] stored = new byte[key.length];
+        header.position(RECORD_PREFIX_BYTES + RECORD_FIXED_BYTES);
+        header.get(stored);
+        return Arrays.equals(stored, key);
+    }
+
+    private int readInt(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(buffer, offset);
+        return buffer.getInt(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = segment.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("磁盘缓存段文件意外结束");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("磁盘缓存已关闭");
+        }
+    }
+
+    private static final class Record {
+        private final byte[] key;
+        private final byte[] value;
+        private final long expireAt;
+        private final int length;
+
+        Record(byte[] key, byte[] value, long expireAt, int length) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+            this.length = length;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt <= now;
+        }
+    }
+
+    /**
+     * 磁盘缓存统计信息
+     */
+    public static class DiskCacheStats {
+        private final int entryCount;
+        private final long segmentBytes;
+        private final long liveBytes;
+        private final long hits;
+        private final long misses;
+        private final long compactions;
+
+        public DiskCacheStats(int entryCount, long segmentBytes, long liveBytes,
+                              long hits, long misses, long compactions) {
+            this.entryCount = entryCount;
+            this.segmentBytes = segmentBytes;
+            this.liveBytes = liveBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.compactions = compactions;
+        }
+
+        public int getEntryCount() { return entryCount; }
+        public long getSegmentBytes() { return segmentBytes; }
+        public long getLiveBytes() { return liveBytes; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getCompactions() { return compactions; }
+
+        @Override
+        public String toString() {
+            return String.format("DiskCacheStats{entries=%d, segmentBytes=%d, liveBytes=%d, hits=%d, misses=%d, compactions=%d}",
+                    entryCount, segmentBytes, liveBytes, hits, misses, compactions);
+        }
+    }
+}
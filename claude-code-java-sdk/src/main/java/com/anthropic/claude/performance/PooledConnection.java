@@ -1,16 +1,45 @@
 package com.anthropic.claude.performance;
 
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.exceptions.ProcessExecutionException;
 import com.anthropic.claude.process.ProcessManager;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 池化连接
- * 封装Claude CLI进程连接，提供生命周期管理和健康检查
+ * 持有一个预先启动的stream-json模式Claude CLI常驻进程，在多次请求间保持预热，
+ * 提供真实的进程存活探测以及按使用次数、存活时长的回收策略
+ *
+ * 注意：同一常驻进程内的多次请求共享CLI会话上下文，连接池只在同一会话键的请求间复用连接，
+ * 未绑定会话键的连接只服务一次请求；会话连接通过最大使用次数限制上下文累积
+ *
+ * stdout按行进入有界队列：消费方处理变慢时读取线程在队列满时阻塞，不再读取stdout，CLI进程随管道写满而阻塞
  *
  * @author Claude Code Java SDK
  * @version 1.0.0
@@ -18,27 +47,79 @@ import java.util.concurrent.atomic.AtomicLong;
 public class PooledConnection {
     private static final Logger logger = LoggerFactory.getLogger(PooledConnection.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+    /**
+     * stdout结束标记（按引用比较）
+     */
+    private static final byte[] END_OF_OUTPUT = new byte[0];
+    private static final int READ_BUFFER_SIZE = 8192;
+    /**
+     * 读取线程最多领先消费方的行数
+     */
+    private static final int OUTPUT_QUEUE_CAPACITY = 256;
+
     private final String id;
     private final ProcessManager processManager;
+    private final List<String> command;
+    private final long maxUses;
+    private final Duration maxAge;
     private final LocalDateTime createdTime;
     private final AtomicLong usageCount = new AtomicLong(0);
     private final AtomicBoolean active = new AtomicBoolean(false);
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final BlockingQueue<byte[]> outputLines = new LinkedBlockingQueue<>(OUTPUT_QUEUE_CAPACITY);
 
+    private volatile Process process;
+    private volatile Thread stdoutReader;
+    private volatile BufferedWriter processInput;
+    private volatile boolean outputClosed = false;
+    private volatile boolean broken = false;
     private volatile LocalDateTime lastUsed;
-    private volatile LocalDateTime lastHealthCheck;
     private volatile boolean healthy = true;
+    private volatile String conversationKey;
 
-    public PooledConnection(String id, ProcessManager processManager) {
+    public PooledConnection(String id, ProcessManager processManager, List<String> command,
+                            long maxUses, Duration maxAge) {
         this.id = id;
         this.processManager = processManager;
+        this.command = new ArrayList<>(command);
+        this.maxUses = maxUses;
+        this.maxAge = maxAge;
         this.createdTime = LocalDateTime.now();
         this.lastUsed = LocalDateTime.now();
-        this.lastHealthCheck = LocalDateTime.now();
 
         logger.debug("创建池化连接: {}", id);
     }
 
+    /**
+     * 启动常驻CLI进程及其输出读取线程
+     *
+     * @throws ProcessExecutionException 进程启动失败时抛出
+     */
+    public void start() throws ProcessExecutionException {
+        if (process != null) {
+            return;
+        }
+
+        Process started = processManager.startProcess(command);
+        this.processInput = new BufferedWriter(
+                new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        this.process = started;
+
+        Thread reader = new Thread(() -> readOutput(started), "pooled-connection-" + id + "-stdout");
+        reader.setDaemon(true);
+        this.stdoutReader = reader;
+        reader.start();
+
+        Thread stderrReader = new Thread(() -> readError(started), "pooled-connection-" + id + "-stderr");
+        stderrReader.setDaemon(true);
+        stderrReader.start();
+
+        logger.debug("池化连接进程已启动: {} (pid: {})", id, started.pid());
+    }
+
     /**
      * 激活连接
      */
@@ -54,6 +135,22 @@ public class PooledConnection {
         logger.debug("激活连接: {} (使用次数: {})", id, usageCount.get());
     }
 
+    /**
+     * 绑定会话键，已绑定的连接保持原有会话键
+     */
+    void bindConversation(String key) {
+        if (conversationKey == null) {
+            conversationKey = key;
+        }
+    }
+
+    /**
+     * 连接所属的会话键，一次性连接返回null
+     */
+    String getConversationKey() {
+        return conversationKey;
+    }
+
     /**
      * 停用连接
      */
@@ -64,6 +161,63 @@ public class PooledConnection {
         logger.debug("停用连接: {}", id);
     }
 
+    /**
+     * 向常驻进程发送一轮用户输入，并逐行回调输出直到收到result行
+     *
+     * @param prompt 提示词
+     * @param timeout 本轮超时时间
+     * @param lineConsumer 输出行回调，参数为不含换行符的UTF-8字节
+     * @throws ClaudeCodeException 进程不可用、写入失败或超时时抛出，此后连接不再健康
+     */
+    public void sendPrompt(String prompt, Duration timeout, Consumer<byte[]> lineConsumer)
+            throws ClaudeCodeException {
+        if (closed.get() || process == null) {
+            throw new ClaudeCodeException("POOLED_CONNECTION_CLOSED", "连接不可用: " + id);
+        }
+
+        // 丢弃上一轮之后残留的输出，避免串入本轮响应
+        discardPendingOutput();
+
+        try {
+            processInput.write(buildUserMessage(prompt));
+            processInput.newLine();
+            processInput.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw new ClaudeCodeException("POOLED_CONNECTION_WRITE_ERROR", "写入常驻进程失败: " + id, e);
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                byte[] line = remaining > 0 ? outputLines.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+                if (line == null) {
+                    broken = true;
+                    throw new ClaudeCodeException("POOLED_CONNECTION_TIMEOUT",
+                            String.format("等待常驻进程响应超时: %s (%dms)", id, timeout.toMillis()));
+                }
+                if (line == END_OF_OUTPUT) {
+                    broken = true;
+                    throw new ClaudeCodeException("POOLED_CONNECTION_EOF", "常驻进程输出已结束: " + id);
+                }
+
+                lineConsumer.accept(line);
+
+                if (isResultLine(line)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            broken = true;
+            Thread.currentThread().interrupt();
+            throw new ClaudeCodeException("POOLED_CONNECTION_INTERRUPTED", "等待常驻进程响应被中断: " + id, e);
+        } finally {
+            lastUsed = LocalDateTime.now();
+        }
+    }
+
     /**
      * 检查连接健康状态
      *
@@ -74,13 +228,7 @@ public class PooledConnection {
             return false;
         }
 
-        // 定期进行健康检查
-        LocalDateTime now = LocalDateTime.now();
-        if (lastHealthCheck == null || lastHealthCheck.plusMinutes(1).isBefore(now)) {
-            performHealthCheck();
-            lastHealthCheck = now;
-        }
-
+        performHealthCheck();
         return healthy;
     }
 
@@ -153,7 +301,7 @@ public class PooledConnection {
      * @return 连接年龄
      */
     public long getAgeInMinutes() {
-        return java.time.Duration.between(createdTime, LocalDateTime.now()).toMinutes();
+        return Duration.between(createdTime, LocalDateTime.now()).toMinutes();
     }
 
     /**
@@ -165,29 +313,58 @@ public class PooledConnection {
         if (active.get()) {
             return 0;
         }
-        return java.time.Duration.between(lastUsed, LocalDateTime.now()).toMinutes();
+        return Duration.between(lastUsed, LocalDateTime.now()).toMinutes();
     }
 
     /**
-     * 关闭连接
+     * 关闭连接，终止常驻CLI进程及其子进程
+     *
+     * @return 本次调用是否实际关闭了连接
      */
-    public void close() {
+    public boolean close() {
         if (closed.getAndSet(true)) {
-            return;
+            return false;
         }
 
         active.set(false);
         healthy = false;
 
-        try {
-            // 在实际实现中，这里会关闭Claude CLI进程
-            logger.debug("关闭连接相关资源: {}", id);
-        } catch (Exception e) {
-            logger.error("关闭连接资源失败: {}", id, e);
+        // 清空队列并中断读取线程，释放可能阻塞在队列已满上的读取线程，进程不会因stdout写满而无法退出
+        outputLines.clear();
+        Thread reader = stdoutReader;
+        if (reader != null) {
+            reader.interrupt();
+        }
+
+        Process current = process;
+        if (current != null) {
+            try {
+                // 先关闭stdin让CLI自行退出，超时后强制终止
+                try {
+                    processInput.close();
+                } catch (IOException e) {
+                    logger.debug("关闭常驻进程输入失败: {}", id);
+                }
+
+                if (!current.waitFor(2, TimeUnit.SECONDS)) {
+                    current.descendants().forEach(ProcessHandle::destroy);
+                    current.destroy();
+                    if (!current.waitFor(2, TimeUnit.SECONDS)) {
+                        current.descendants().forEach(ProcessHandle::destroyForcibly);
+                        current.destroyForcibly();
+                    }
+                }
+            } catch (InterruptedException e) {
+                current.destroyForcibly();
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("关闭连接资源失败: {}", id, e);
+            }
         }
 
         logger.debug("连接已关闭: {} (使用次数: {}, 年龄: {}分钟)",
                 id, usageCount.get(), getAgeInMinutes());
+        return true;
     }
 
     /**
@@ -195,22 +372,20 @@ public class PooledConnection {
      */
     private void performHealthCheck() {
         try {
-            // 在实际实现中，这里会检查Claude CLI进程状态
-            // 例如：发送ping命令，检查进程是否响应
-
             // 检查连接年龄
-            if (getAgeInMinutes() > 60) { // 连接超过1小时认为需要更新
+            if (maxAge != null && Duration.between(createdTime, LocalDateTime.now()).compareTo(maxAge) > 0) {
                 healthy = false;
                 logger.debug("连接过期: {} (年龄: {}分钟)", id, getAgeInMinutes());
                 return;
             }
 
-            // 检查空闲时间
-            if (getIdleTimeInMinutes() > 30) { // 空闲超过30分钟可能需要重新激活
-                logger.debug("连接长时间空闲: {} (空闲: {}分钟)", id, getIdleTimeInMinutes());
+            // 检查使用次数，活跃中的连接在释放时再回收
+            if (!active.get() && maxUses > 0 && usageCount.get() >= maxUses) {
+                healthy = false;
+                logger.debug("连接达到最大使用次数: {} (使用次数: {})", id, usageCount.get());
+                return;
             }
 
-            // 模拟健康检查
             boolean processHealthy = checkProcessHealth();
             healthy = processHealthy;
 
@@ -231,15 +406,137 @@ public class PooledConnection {
      */
     private boolean checkProcessHealth() {
         try {
-            // 在实际实现中，这里会调用processManager检查Claude CLI进程状态
-            // 例如：processManager.isProcessAlive()
-            return true; // 模拟实现
+            Process current = process;
+            return current != null && current.isAlive() && !outputClosed && !broken;
         } catch (Exception e) {
             logger.error("检查进程健康状态失败: {}", id, e);
             return false;
         }
     }
 
+    /**
+     * 按换行符切分stdout字节，整行以字节形式交给消费方解析，不解码为字符串；
+     * 队列已满时阻塞，被中断（连接关闭）时视为输出结束
+     */
+    private void readOutput(Process source) {
+        try (InputStream input = source.getInputStream()) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ByteArrayOutputStream partial = new ByteArrayOutputStream();
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        emitLine(partial, buffer, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                partial.write(buffer, lineStart, read - lineStart);
+            }
+            emitLine(partial, buffer, 0, 0);
+        } catch (IOException e) {
+            if (!closed.get()) {
+                logger.debug("读取常驻进程输出失败: {}", id, e);
+            }
+        } catch (InterruptedException e) {
+            logger.trace("读取常驻进程输出被中断: {}", id);
+        } finally {
+            outputClosed = true;
+            offerEndOfOutput();
+        }
+    }
+
+    /**
+     * 在已读出的行之后放入结束标记；连接关闭后队列中的行不再有消费方，直接清空
+     */
+    private void offerEndOfOutput() {
+        try {
+            while (!outputLines.offer(END_OF_OUTPUT, 100, TimeUnit.MILLISECONDS)) {
+                if (closed.get()) {
+                    outputLines.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            // 只有关闭连接时才会中断读取线程
+            outputLines.clear();
+            outputLines.offer(END_OF_OUTPUT);
+        }
+    }
+
+    private void emitLine(ByteArrayOutputStream partial, byte[] buffer, int start, int end) throws InterruptedException {
+        byte[] line;
+        if (partial.size() == 0) {
+            line = Arrays.copyOfRange(buffer, start, end);
+        } else {
+            partial.write(buffer, start, end - start);
+            line = partial.toByteArray();
+            partial.reset();
+        }
+
+        int length = line.length;
+        if (length > 0 && line[length - 1] == '\r') {
+            line = Arrays.copyOf(line, --length);
+        }
+        if (length > 0) {
+            outputLines.put(line);
+        }
+    }
+
+    private void readError(Process source) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(source.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.debug("[{}] stderr: {}", id, line);
+            }
+        } catch (IOException e) {
+            logger.trace("读取常驻进程错误输出结束: {}", id);
+        }
+    }
+
+    private void discardPendingOutput() {
+        byte[] line;
+        while ((line = outputLines.peek()) != null && line != END_OF_OUTPUT) {
+            outputLines.poll();
+            if (logger.isDebugEnabled()) {
+                logger.debug("丢弃残留输出: {} - {}", id, new String(line, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private String buildUserMessage(String prompt) throws IOException {
+        ObjectNode message = OBJECT_MAPPER.createObjectNode();
+        message.put("role", "user");
+        message.put("content", prompt);
+
+        ObjectNode envelope = OBJECT_MAPPER.createObjectNode();
+        envelope.put("type", "user");
+        envelope.set("message", message);
+        return OBJECT_MAPPER.writeValueAsString(envelope);
+    }
+
+    /**
+     * 判断输出行是否为本轮结束的result行，只扫描顶层字段
+     */
+    static boolean isResultLine(byte[] line) {
+        try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field)) {
+                    return value == JsonToken.VALUE_STRING && "result".equals(parser.getText());
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("PooledConnection{id='%s', active=%s, healthy=%s, usage=%d, age=%dm, idle=%dm}",
@@ -258,4 +555,4 @@ public class PooledConnection {
     public int hashCode() {
         return id.hashCode();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,498 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.query.CancellationToken;
+import com.anthropic.claude.query.QueryPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 优先级请求调度器
+ *
+ * 位于 {@link AdaptiveConcurrencyLimiter} 之前，由限制器决定能同时执行多少请求，由调度器决定空出的槽位交给谁：
+ * <ul>
+ *   <li>优先级：按 {@link QueryPriority} 声明顺序严格优先，高优先级有请求等待时低优先级不被调度</li>
+ *   <li>租户公平：同一优先级内按租户权重进行加权公平排队（start-time fair queueing），
+ *       每个请求的虚拟完成时间为 max(类虚拟时间, 租户上次完成时间) + 1/权重</li>
+ *   <li>防饿死：任一优先级中等待超过 starvationThreshold 的请求按等待时间先后优先调度</li>
+ *   <li>并发上限：可为每个优先级单独设置同时执行的请求数上限，达到上限的优先级在调度时跳过</li>
+ * </ul>
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class RequestScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private static final String DEFAULT_TENANT = "default";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final int maxQueueSize;
+    private final long starvationThresholdNanos;
+    private final Map<String, Integer> tenantWeights;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final EnumMap<QueryPriority, PriorityClass> classes = new EnumMap<>(QueryPriority.class);
+
+    private int queued;
+    private long sequence;
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong promoted = new AtomicLong();
+
+    private RequestScheduler(Builder builder) {
+        this.limiter = builder.limiter;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.starvationThresholdNanos = builder.starvationThreshold.toNanos();
+        this.tenantWeights = new HashMap<>(builder.tenantWeights);
+        for (QueryPriority priority : QueryPriority.values()) {
+            Integer cap = builder.concurrencyCaps.get(priority);
+            classes.put(priority, new PriorityClass(cap != null && cap > 0 ? cap : Integer.MAX_VALUE));
+        }
+        limiter.addReleaseListener(this::onCapacityAvailable);
+    }
+
+    public static Builder builder(AdaptiveConcurrencyLimiter limiter) {
+        return new Builder(limiter);
+    }
+
+    /**
+     * 按优先级和租户排队获取执行许可
+     *
+     * @param priority 请求优先级，null按默认优先级处理
+     * @param tenant 租户标识，null归入默认租户
+     * @param maxWait 最长等待时间，通常为请求剩余的超时时间
+     * @return 限制器许可，执行结束后必须调用其中一个结束方法
+     * @throws ClaudeCodeException 队列已满、等待超时或被中断时抛出
+     */
+    public AdaptiveConcurrencyLimiter.Permit acquire(QueryPriority priority, String tenant, Duration maxWait)
+            throws ClaudeCodeException {
+        return acquire(priority, tenant, maxWait, null);
+    }
+
+    /**
+     * 按优先级和租户排队获取执行许可，令牌在排队期间被取消时立即移出队列
+     *
+     * @param priority 请求优先级，null按默认优先级处理
+     * @param tenant 租户标识，null归入默认租户
+     * @param maxWait 最长等待时间，通常为请求剩余的超时时间
+     * @param token 请求的取消令牌，null表示不可取消
+     * @return 限制器许可，执行结束后必须调用其中一个结束方法
+     * @throws ClaudeCodeException 队列已满、等待超时、被取消或被中断时抛出
+     */
+    public AdaptiveConcurrencyLimiter.Permit acquire(QueryPriority priority, String tenant, Duration maxWait,
+                                                     CancellationToken token) throws ClaudeCodeException {
+        long waitNanos = maxWait != null ? maxWait.toNanos() : Long.MAX_VALUE;
+        PriorityClass priorityClass = classes.get(priority != null ? priority : QueryPriority.getDefault());
+        String tenantKey = tenant != null ? tenant : DEFAULT_TENANT;
+
+        AdaptiveConcurrencyLimiter.Permit abandoned = null;
+        lock.lock();
+        try {
+            if (queued >= maxQueueSize) {
+                rejected.incrementAndGet();
+                throw new ClaudeCodeException("SCHEDULER_QUEUE_FULL", "调度队列已满: " + queued);
+            }
+
+            Waiter waiter = priorityClass.enqueue(tenantKey, weightOf(tenantKey), lock.newCondition(), sequence++);
+            queued++;
+            dispatch();
+
+            CancellationToken.Registration registration = token != null && waiter.permit == null
+                ? token.onCancel(() -> cancelWaiter(priorityClass, waiter))
+                : null;
+            long remaining = waitNanos;
+            try {
+                while (waiter.permit == null) {
+                    if (waiter.dequeued) {
+                        token.throwIfCancelled();
+                    }
+                    if (remaining <= 0) {
+                        priorityClass.remove(waiter);
+                        queued--;
+                        rejected.incrementAndGet();
+                        throw new ClaudeCodeException("SCHEDULER_QUEUE_TIMEOUT", "等待调度超时");
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.permit != null) {
+                    abandoned = waiter.permit;
+                } else if (!waiter.dequeued) {
+                    priorityClass.remove(waiter);
+                    queued--;
+                }
+                Thread.currentThread().interrupt();
+                throw new ClaudeCodeException("SCHEDULER_INTERRUPTED", "等待调度被中断", e);
+            } finally {
+                if (registration != null) {
+                    registration.close();
+                }
+            }
+            return waiter.permit;
+        } finally {
+            lock.unlock();
+            if (abandoned != null) {
+                // 许可已分配但调用方不再需要，在释放调度器锁之后归还，由释放监听器转交给后续请求
+                abandoned.onIgnore();
+            }
+        }
+    }
+
+    public SchedulerStats getStats() {
+        lock.lock();
+        try {
+            Map<QueryPriority, Integer> queuedByPriority = new EnumMap<>(QueryPriority.class);
+            Map<QueryPriority, Integer> inFlightByPriority = new EnumMap<>(QueryPriority.class);
+            for (Map.Entry<QueryPriority, PriorityClass> entry : classes.entrySet()) {
+                queuedByPriority.put(entry.getKey(), entry.getValue().fairQueue.size());
+                inFlightByPriority.put(entry.getKey(), entry.getValue().inFlight);
+            }
+            return new SchedulerStats(queuedByPriority, inFlightByPriority,
+                scheduled.get(), rejected.get(), promoted.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * 当前仍记录公平排队状态的租户数
+     */
+    int getTrackedTenantCount() {
+        lock.lock();
+        try {
+            return classes.values().stream().mapToInt(priorityClass -> priorityClass.tenants.size()).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int weightOf(String tenant) {
+        Integer weight = tenantWeights.get(tenant);
+        return weight != null && weight > 0 ? weight : 1;
+    }
+
+    private void onCapacityAvailable() {
+        lock.lock();
+        try {
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在限制器有空余槽位时按调度规则逐个分配许可，调用方需持有锁
+     */
+    private void dispatch() {
+        while (queued > 0) {
+            PriorityClass priorityClass = selectClass();
+            if (priorityClass == null) {
+                return;
+            }
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                return;
+            }
+
+            Waiter waiter = priorityClass.fairQueue.peek();
+            if (priorityClass.promoteCandidate != null) {
+                waiter = priorityClass.promoteCandidate;
+                promoted.incrementAndGet();
+            }
+            priorityClass.remove(waiter);
+            priorityClass.advanceVirtualTime(waiter.startTag);
+            priorityClass.inFlight++;
+            queued--;
+            scheduled.incrementAndGet();
+
+            permit.setReleaseHook(() -> onRelease(priorityClass));
+            waiter.permit = permit;
+            waiter.condition.signal();
+        }
+    }
+
+    /**
+     * 先选出等待超过阈值且未达并发上限的最早请求所在的优先级；没有时按优先级顺序选择第一个有请求且未达上限的优先级
+     */
+    private PriorityClass selectClass() {
+        long now = System.nanoTime();
+        PriorityClass starving = null;
+        long oldest = Long.MAX_VALUE;
+        for (PriorityClass priorityClass : classes.values()) {
+            priorityClass.promoteCandidate = null;
+            if (!priorityClass.hasCapacity()) {
+                continue;
+            }
+            Waiter head = priorityClass.oldestWaiter();
+            if (head != null && now - head.enqueuedAt >= starvationThresholdNanos && head.enqueuedAt < oldest) {
+                starving = priorityClass;
+                oldest = head.enqueuedAt;
+            }
+        }
+        if (starving != null) {
+            starving.promoteCandidate = starving.oldestWaiter();
+            logger.debug("请求等待超过 {}ms，提前调度", TimeUnit.NANOSECONDS.toMillis(starvationThresholdNanos));
+            return starving;
+        }
+
+        for (PriorityClass priorityClass : classes.values()) {
+            if (!priorityClass.fairQueue.isEmpty() && priorityClass.hasCapacity()) {
+                return priorityClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取消回调：尚未分配许可的请求移出队列并唤醒
+     */
+    private void cancelWaiter(PriorityClass priorityClass, Waiter waiter) {
+        lock.lock();
+        try {
+            if (waiter.permit == null && !waiter.dequeued) {
+                priorityClass.remove(waiter);
+                queued--;
+                waiter.condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onRelease(PriorityClass priorityClass) {
+        lock.lock();
+        try {
+            priorityClass.inFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 单个优先级的排队状态
+     */
+    private static final class PriorityClass {
+        private final int concurrencyCap;
+        // 按虚拟完成时间排序，决定租户间的公平顺序
+        private final PriorityQueue<Waiter> fairQueue = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.finishTag).thenComparingLong(waiter -> waiter.sequence));
+        // 按到达顺序排列，用于防饿死检查，已出队的请求延迟清理
+        private final ArrayDeque<Waiter> arrivals = new ArrayDeque<>();
+        private final Map<String, TenantState> tenants = new HashMap<>();
+        // 已无排队请求、但完成时间仍领先于虚拟时间的租户，按完成时间排序，虚拟时间越过后清理
+        private final PriorityQueue<IdleTenant> idleTenants = new PriorityQueue<>(
+            Comparator.comparingDouble((IdleTenant idle) -> idle.finishTag));
+
+        private double virtualTime;
+        private double maxFinishTag;
+        private int inFlight;
+        private Waiter promoteCandidate;
+
+        PriorityClass(int concurrencyCap) {
+            this.concurrencyCap = concurrencyCap;
+        }
+
+        boolean hasCapacity() {
+            return inFlight < concurrencyCap;
+        }
+
+        Waiter enqueue(String tenant, int weight, Condition condition, long sequence) {
+            TenantState state = tenants.computeIfAbsent(tenant, key -> new TenantState());
+            double startTag = Math.max(virtualTime, state.lastFinishTag);
+            double finishTag = startTag + 1.0 / weight;
+            state.lastFinishTag = finishTag;
+            state.queued++;
+            maxFinishTag = Math.max(maxFinishTag, finishTag);
+
+            Waiter waiter = new Waiter(tenant, condition, startTag, finishTag, sequence);
+            fairQueue.add(waiter);
+            arrivals.addLast(waiter);
+            return waiter;
+        }
+
+        void remove(Waiter waiter) {
+            waiter.dequeued = true;
+            fairQueue.remove(waiter);
+            TenantState state = tenants.get(waiter.tenant);
+            if (state != null && --state.queued == 0) {
+                idleTenants.add(new IdleTenant(waiter.tenant, state.lastFinishTag));
+            }
+            if (fairQueue.isEmpty()) {
+                // 队列排空时忙碌期结束，虚拟时间推进到最大完成时间，所有租户重新从同一起点排队
+                virtualTime = Math.max(virtualTime, maxFinishTag);
+                tenants.clear();
+                idleTenants.clear();
+            } else {
+                evictIdleTenants();
+            }
+        }
+
+        void advanceVirtualTime(double time) {
+            if (time > virtualTime) {
+                virtualTime = time;
+                evictIdleTenants();
+            }
+        }
+
+        /**
+         * 没有排队请求且已不领先于虚拟时间的租户不再需要记录，避免租户表随租户标识无限增长
+         */
+        private void evictIdleTenants() {
+            while (!idleTenants.isEmpty() && idleTenants.peek().finishTag <= virtualTime) {
+                IdleTenant idle = idleTenants.poll();
+                TenantState state = tenants.get(idle.tenant);
+                if (state != null && state.queued == 0 && state.lastFinishTag <= virtualTime) {
+                    tenants.remove(idle.tenant);
+                }
+            }
+        }
+
+        Waiter oldestWaiter() {
+            Waiter head = arrivals.peekFirst();
+            while (head != null && head.dequeued) {
+                arrivals.pollFirst();
+                head = arrivals.peekFirst();
+            }
+            return head;
+        }
+    }
+
+    private static final class TenantState {
+        private double lastFinishTag;
+        private int queued;
+    }
+
+    private static final class IdleTenant {
+        private final String tenant;
+        private final double finishTag;
+
+        IdleTenant(String tenant, double finishTag) {
+            this.tenant = tenant;
+            this.finishTag = finishTag;
+        }
+    }
+
+    private static final class Waiter {
+        private final String tenant;
+        private final Condition condition;
+        private final double startTag;
+        private final double finishTag;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private AdaptiveConcurrencyLimiter.Permit permit;
+        private boolean dequeued;
+
+        Waiter(String tenant, Condition condition, double startTag, double finishTag, long sequence) {
+            this.tenant = tenant;
+            this.condition = condition;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+    }
+
+    public static class Builder {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private int maxQueueSize = 1024;
+        private Duration starvationThreshold = Duration.ofSeconds(10);
+        private final Map<QueryPriority, Integer> concurrencyCaps = new EnumMap<>(QueryPriority.class);
+        private final Map<String, Integer> tenantWeights = new HashMap<>();
+
+        private Builder(AdaptiveConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        public Builder maxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * 请求排队超过该时间后不再受优先级约束，按等待先后调度
+         */
+        public Builder starvationThreshold(Duration starvationThreshold) {
+            this.starvationThreshold = starvationThreshold;
+            return this;
+        }
+
+        /**
+         * 限制某个优先级同时执行的请求数，未设置时仅受限制器的总上限约束
+         */
+        public Builder concurrencyCap(QueryPriority priority, int cap) {
+            this.concurrencyCaps.put(priority, cap);
+            return this;
+        }
+
+        public Builder concurrencyCaps(Map<QueryPriority, Integer> caps) {
+            this.concurrencyCaps.putAll(caps);
+            return this;
+        }
+
+        /**
+         * 设置租户权重，权重越大在同一优先级内分得的执行槽位越多，未设置的租户权重为1
+         */
+        public Builder tenantWeight(String tenant, int weight) {
+            this.tenantWeights.put(tenant, weight);
+            return this;
+        }
+
+        public Builder tenantWeights(Map<String, Integer> weights) {
+            this.tenantWeights.putAll(weights);
+            return this;
+        }
+
+        public RequestScheduler build() {
+            return new RequestScheduler(this);
+        }
+    }
+
+    /**
+     * 调度器统计信息
+     */
+    public static class SchedulerStats {
+        private final Map<QueryPriority, Integer> queued;
+        private final Map<QueryPriority, Integer> inFlight;
+        private final long scheduled;
+        private final long rejected;
+        private final long promoted;
+
+        public SchedulerStats(Map<QueryPriority, Integer> queued, Map<QueryPriority, Integer> inFlight,
+                              long scheduled, long rejected, long promoted) {
+            this.queued = queued;
+            this.inFlight = inFlight;
+            this.scheduled = scheduled;
+            this.rejected = rejected;
+            this.promoted = promoted;
+        }
+
+        public int getQueued(QueryPriority priority) { return queued.getOrDefault(priority, 0); }
+        public int getInFlight(QueryPriority priority) { return inFlight.getOrDefault(priority, 0); }
+        public long getScheduled() { return scheduled; }
+        public long getRejected() { return rejected; }
+        public long getPromoted() { return promoted; }
+
+        @Override
+        public String toString() {
+            return String.format("SchedulerStats{queued=%s, inFlight=%s, scheduled=%d, rejected=%d, promoted=%d}",
+                    queued, inFlight, scheduled, rejected, promoted);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.anthropic.claude.process;
 
 import com.anthropic.claude.exceptions.ProcessExecutionException;
+import com.anthropic.claude.query.CancellationToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessExecutor;
 import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.listener.ProcessListener;
 import org.zeroturnaround.exec.stream.LogOutputStream;
 
 import java.io.ByteArrayOutputStream;
@@ -14,7 +16,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class ProcessManager {
@@ -22,14 +27,25 @@ public class ProcessManager {
 
     private final Duration defaultTimeout;
     private final Map<String, String> environment;
+    private final Executor asyncExecutor;
 
     public ProcessManager() {
         this(Duration.ofMinutes(10), new HashMap<>());
     }
 
     public ProcessManager(Duration defaultTimeout, Map<String, String> environment) {
+        this(defaultTimeout, environment, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param defaultTimeout 默认超时时间
+     * @param environment 进程环境变量
+     * @param asyncExecutor 异步执行方法使用的执行器，任务会阻塞等待进程结束
+     */
+    public ProcessManager(Duration defaultTimeout, Map<String, String> environment, Executor asyncExecutor) {
         this.defaultTimeout = defaultTimeout;
         this.environment = environment;
+        this.asyncExecutor = asyncExecutor;
     }
 
     public ProcessResult executeSync(List<String> command) throws ProcessExecutionException {
@@ -37,15 +53,28 @@ public class ProcessManager {
     }
 
     public ProcessResult executeSync(List<String> command, Duration timeout) throws ProcessExecutionException {
+        return executeSync(command, timeout, null);
+    }
+
+    /**
+     * 同步执行命令
+     *
+     * @param command 命令
+     * @param timeout 超时时间，令牌有截止时间时取两者中较早者
+     * @param cancellationToken 取消时终止进程树，可为null
+     * @throws ProcessExecutionException 执行失败、超时、被取消或退出码非0时抛出
+     */
+    public ProcessResult executeSync(List<String> command, Duration timeout, CancellationToken cancellationToken)
+            throws ProcessExecutionException {
         try {
             logger.debug("执行命令: {}", String.join(" ", command));
 
-            ProcessResult result = new ProcessExecutor()
+            ProcessExecutor executor = new ProcessExecutor()
                     .command(command)
                     .environment(environment)
-                    .timeout(timeout.toMillis(), java.util.concurrent.TimeUnit.MILLISECONDS)
-                    .readOutput(true)
-                    .execute();
+                    .timeout(effectiveTimeout(timeout, cancellationToken).toMillis(), java.util.concurrent.TimeUnit.MILLISECONDS)
+                    .readOutput(true);
+            ProcessResult result = execute(executor, cancellationToken, null);
 
             if (result.getExitValue() != 0) {
                 String errorMsg = String.format("命令执行失败，退出码: %d, 错误信息: %s",
@@ -73,7 +102,7 @@ public class ProcessManager {
             } catch (ProcessExecutionException e) {
                 throw new RuntimeException(e);
             }
-        });
+        }, asyncExecutor);
     }
 
     public void executeStreaming(List<String> command, Consumer<String> outputConsumer)
@@ -83,20 +112,51 @@ public class ProcessManager {
 
     public void executeStreaming(List<String> command, Consumer<String> outputConsumer, Duration timeout)
             throws ProcessExecutionException {
+        executeStreaming(command, outputConsumer, timeout, null);
+    }
+
+    /**
+     * 流式执行命令，逐行回调输出
+     *
+     * @param command 命令
+     * @param outputConsumer 输出行回调，在读取线程上随输出到达逐行调用
+     * @param timeout 超时时间
+     * @param startListener 进程启动后的回调，可用于登记取消时终止进程，可为null
+     * @throws ProcessExecutionException 执行失败或退出码非0时抛出
+     */
+    public void executeStreaming(List<String> command, Consumer<String> outputConsumer, Duration timeout,
+                                 Consumer<Process> startListener) throws ProcessExecutionException {
+        executeStreaming(command, outputConsumer, timeout, startListener, null);
+    }
+
+    /**
+     * 流式执行命令，逐行回调输出
+     *
+     * @param command 命令
+     * @param outputConsumer 输出行回调，在读取线程上随输出到达逐行调用
+     * @param timeout 超时时间，令牌有截止时间时取两者中较早者
+     * @param startListener 进程启动后的回调，可为null
+     * @param cancellationToken 取消时终止进程树，可为null
+     * @throws ProcessExecutionException 执行失败、超时、被取消或退出码非0时抛出
+     */
+    public void executeStreaming(List<String> command, Consumer<String> outputConsumer, Duration timeout,
+                                 Consumer<Process> startListener, CancellationToken cancellationToken)
+            throws ProcessExecutionException {
         try {
             logger.debug("开始流式执行命令: {}", String.join(" ", command));
 
-            ProcessResult result = new ProcessExecutor()
+            ProcessExecutor executor = new ProcessExecutor()
                     .command(command)
                     .environment(environment)
-                    .timeout(timeout.toMillis(), java.util.concurrent.TimeUnit.MILLISECONDS)
+                    .timeout(effectiveTimeout(timeout, cancellationToken).toMillis(), java.util.concurrent.TimeUnit.MILLISECONDS)
                     .redirectOutput(new LogOutputStream() {
                         @Override
                         protected void processLine(String line) {
                             outputConsumer.accept(line);
                         }
-                    })
-                    .execute();
+                    });
+
+            ProcessResult result = execute(executor, cancellationToken, startListener);
 
             if (result.getExitValue() != 0) {
                 String errorMsg = String.format("流式命令执行失败，退出码: %d", result.getExitValue());
@@ -111,6 +171,61 @@ public class ProcessManager {
         }
     }
 
+    /**
+     * 执行命令：超时或等待被中断时终止整个进程树，而不只是直接子进程；令牌取消时同样终止进程树
+     */
+    private ProcessResult execute(ProcessExecutor executor, CancellationToken cancellationToken,
+                                  Consumer<Process> startListener)
+            throws IOException, TimeoutException, InterruptedException, ProcessExecutionException {
+        checkNotCancelled(cancellationToken);
+
+        AtomicReference<CancellationToken.Registration> registration = new AtomicReference<>();
+        executor.stopper(this::destroyProcessTree);
+        executor.addListener(new ProcessListener() {
+            @Override
+            public void afterStart(Process process, ProcessExecutor processExecutor) {
+                if (startListener != null) {
+                    startListener.accept(process);
+                }
+                if (cancellationToken != null) {
+                    registration.set(cancellationToken.onCancel(() -> {
+                        logger.debug("请求已取消，终止进程树: {}", process.pid());
+                        destroyProcessTree(process);
+                    }));
+                }
+            }
+        });
+
+        try {
+            ProcessResult result = executor.execute();
+            if (cancellationToken != null && cancellationToken.isCancelled()) {
+                throw new ProcessExecutionException("命令已取消: " + cancellationToken.getCancelReason(), -1);
+            }
+            return result;
+        } finally {
+            CancellationToken.Registration current = registration.get();
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    private static Duration effectiveTimeout(Duration timeout, CancellationToken cancellationToken) {
+        return cancellationToken != null ? cancellationToken.remaining(timeout) : timeout;
+    }
+
+    private static void checkNotCancelled(CancellationToken cancellationToken) throws ProcessExecutionException {
+        if (cancellationToken == null) {
+            return;
+        }
+        if (cancellationToken.isCancelled()) {
+            throw new ProcessExecutionException("命令已取消: " + cancellationToken.getCancelReason(), -1);
+        }
+        if (cancellationToken.isExpired()) {
+            throw new ProcessExecutionException("请求已超过截止时间，未启动命令", -1);
+        }
+    }
+
     public CompletableFuture<Void> executeStreamingAsync(List<String> command,
                                                         Consumer<String> outputConsumer) {
         return executeStreamingAsync(command, outputConsumer, defaultTimeout);
@@ -125,7 +240,52 @@ public class ProcessManager {
             } catch (ProcessExecutionException e) {
                 throw new RuntimeException(e);
             }
-        });
+        }, asyncExecutor);
+    }
+
+    /**
+     * 启动常驻进程，由调用方负责读写stdin/stdout以及销毁进程
+     *
+     * @param command 命令
+     * @return 已启动的进程
+     * @throws ProcessExecutionException 启动失败时抛出
+     */
+    public Process startProcess(List<String> command) throws ProcessExecutionException {
+        try {
+            logger.debug("启动常驻进程: {}", String.join(" ", command));
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.environment().putAll(environment);
+            return builder.start();
+        } catch (IOException e) {
+            String errorMsg = String.format("常驻进程启动异常: %s", e.getMessage());
+            logger.error(errorMsg, e);
+            throw new ProcessExecutionException(errorMsg, -1, e);
+        }
+    }
+
+    /**
+     * 终止进程及其全部子进程，先尝试正常终止，超时后强制终止
+     *
+     * @param process 要终止的进程
+     */
+    public void destroyProcessTree(Process process) {
+        if (process == null || !process.isAlive()) {
+            return;
+        }
+
+        logger.debug("终止进程树: {}", process.pid());
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        try {
+            if (!process.waitFor(2, java.util.concurrent.TimeUnit.SECONDS)) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
     }
 
     public boolean isCommandAvailable(String command) {
@@ -0,0 +1,189 @@
+package com.anthropic.claude.pty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节级行分帧器
+ *
+ * 直接在字节缓冲区上扫描CR/LF（\r\n、\n、\r均视为一个行结束符），
+ * 只对完整的行做一次UTF-8解码。已扫描过的字节不会重复扫描，
+ * 缓冲区仅在写满时压缩或扩容，超长行的处理开销与行长度成线性关系。
+ *
+ * 回调收到的CharSequence是内部缓冲区的视图，只在回调期间有效，需要保留时调用toString()。
+ * 非线程安全，应由单个读取线程使用。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class LineFramer {
+
+    /**
+     * 行回调
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        void onLine(CharSequence line);
+    }
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 4096;
+    private static final int DEFAULT_MAX_LINE_BYTES = 16 * 1024 * 1024;
+
+    private final LineHandler handler;
+    private final int maxLineBytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[] buffer;
+    private CharBuffer chars;
+    // 当前未完成行的起点、已扫描位置、有效数据终点
+    private int lineStart;
+    private int scanned;
+    private int end;
+    // 上一个结束符是\r，紧随其后的\n属于同一个结束符
+    private boolean pendingCr;
+
+    public LineFramer(LineHandler handler) {
+        this(handler, DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_LINE_BYTES);
+    }
+
+    /**
+     * @param handler 行回调
+     * @param initialCapacity 初始缓冲区字节数
+     * @param maxLineBytes 单行最大字节数，超出时按已缓冲内容强制成行，防止无换行输出耗尽内存
+     */
+    public LineFramer(LineHandler handler, int initialCapacity, int maxLineBytes) {
+        if (initialCapacity <= 0 || maxLineBytes <= 0) {
+            throw new IllegalArgumentException("缓冲区大小必须大于0");
+        }
+        this.handler = handler;
+        this.maxLineBytes = maxLineBytes;
+        this.buffer = new byte[initialCapacity];
+        this.chars = CharBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * 从输入流读取一次到内部缓冲区并分帧，不经过中间数组
+     *
+     * @param in 输入流
+     * @return 本次读取的字节数，流结束时返回-1
+     * @throws IOException 读取失败时抛出
+     */
+    public int read(InputStream in) throws IOException {
+        ensureWritable();
+        int count = in.read(buffer, end, buffer.length - end);
+        if (count > 0) {
+            end += count;
+            scan();
+        }
+        return count;
+    }
+
+    /**
+     * 追加一段字节并分帧
+     */
+    public void feed(byte[] data, int offset, int length) {
+        while (length > 0) {
+            ensureWritable();
+            int count = Math.min(length, buffer.length - end);
+            System.arraycopy(data, offset, buffer, end, count);
+            end += count;
+            offset += count;
+            length -= count;
+            scan();
+        }
+    }
+
+    /**
+     * 将尚未遇到结束符的剩余内容作为最后一行输出，通常在流结束时调用
+     */
+    public void flush() {
+        if (end > lineStart) {
+            emit(lineStart, end);
+        }
+        lineStart = 0;
+        scanned = 0;
+        end = 0;
+        pendingCr = false;
+    }
+
+    /**
+     * 当前缓冲的未完成行字节数
+     */
+    public int pendingBytes() {
+        return end - lineStart;
+    }
+
+    private void scan() {
+        byte[] buf = buffer;
+        for (int i = scanned; i < end; i++) {
+            byte b = buf[i];
+            if (b == '\n' && pendingCr) {
+                pendingCr = false;
+                lineStart = i + 1;
+                continue;
+            }
+            pendingCr = false;
+            if (b == '\n' || b == '\r') {
+                emit(lineStart, i);
+                lineStart = i + 1;
+                pendingCr = b == '\r';
+            }
+        }
+        scanned = end;
+
+        if (lineStart == end) {
+            // 没有未完成的行，直接从头复用缓冲区
+            lineStart = 0;
+            scanned = 0;
+            end = 0;
+        } else if (end - lineStart >= maxLineBytes) {
+            emit(lineStart, end);
+            lineStart = 0;
+            scanned = 0;
+            end = 0;
+        }
+    }
+
+    /**
+     * 保证缓冲区尾部有可写空间：优先把未完成行移到开头，仍然写满时扩容
+     */
+    private void ensureWritable() {
+        if (end < buffer.length) {
+            return;
+        }
+
+        if (lineStart > 0) {
+            int pending = end - lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, pending);
+            scanned -= lineStart;
+            end = pending;
+            lineStart = 0;
+        } else {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+        }
+    }
+
+    private void emit(int from, int to) {
+        int length = to - from;
+        // UTF-8解码出的char数不会超过字节数
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(buffer, from, length), chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        handler.onLine(chars);
+    }
+}
@@ -0,0 +1,535 @@
+package com.anthropic.claude.pty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * CLI输出行分类器
+ *
+ * 将 {@link ClaudeOutputPatterns} 中的关键字集合编译为一个Aho-Corasick自动机，
+ * 每行只扫描一遍即可得到所有关键字的出现位置，再据此判定命中的行类型。
+ * 所有模式均忽略大小写，且只对ASCII字母生效，与原正则的 (?i) 语义一致。
+ *
+ * 模式表可配置，模式语法：
+ * <ul>
+ *   <li>普通字符按字面匹配</li>
+ *   <li>开头的 ^ 表示必须从行首开始</li>
+ *   <li>* 表示任意个字符，? 表示至多一个字符</li>
+ *   <li>片段末尾的 \s 表示该片段后必须紧跟空白字符</li>
+ *   <li>\ 转义 ^ * ? \ 本身</li>
+ * </ul>
+ * 无法用上述语法表达的规则可以注册正则，并给出必需出现的关键字作为预过滤，只有关键字都出现时才执行正则。
+ *
+ * 实例不可变，可在多个解析器之间共享。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public final class OutputClassifier {
+
+    /**
+     * 行类型
+     */
+    public enum LineType {
+        PROMPT,
+        ERROR,
+        USAGE_LIMIT,
+        SESSION_INFO,
+        AUTH_REQUIRED,
+        PROCESSING,
+        STREAMING_START,
+        WAITING_INPUT,
+        INTERRUPT;
+
+        final int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    private static final OutputClassifier DEFAULT = defaultBuilder().build();
+
+    private static final int GAP_ANCHORED = 0;
+    private static final int GAP_ANY = 1;
+    private static final int GAP_AT_MOST_ONE = 2;
+
+    private static final int ROOT = 0;
+    private static final int ASCII_LIMIT = 128;
+
+    // 自动机：每个节点的子节点按字符排序，根节点另有ASCII直查表
+    private final char[][] childChars;
+    private final int[][] childNodes;
+    private final int[] rootAscii;
+    private final int[] fail;
+    private final int[][] outputs;
+    private final int[] keywordLengths;
+
+    private final CompiledRule[] rules;
+
+    private OutputClassifier(Builder builder) {
+        List<String> keywords = new ArrayList<>();
+        Map<String, Integer> keywordIds = new HashMap<>();
+        List<CompiledRule> compiled = new ArrayList<>();
+
+        for (Map.Entry<LineType, List<String>> entry : builder.patterns.entrySet()) {
+            for (String pattern : entry.getValue()) {
+                compiled.add(CompiledRule.glob(entry.getKey(), parse(pattern, keywords, keywordIds)));
+            }
+        }
+        for (RegexRule regexRule : builder.regexRules) {
+            int[] required = new int[regexRule.requiredKeywords.length];
+            for (int i = 0; i < required.length; i++) {
+                required[i] = keywordId(toLowerAscii(regexRule.requiredKeywords[i]), keywords, keywordIds);
+            }
+            compiled.add(CompiledRule.regex(regexRule.type, regexRule.pattern, required));
+        }
+        this.rules = compiled.toArray(new CompiledRule[0]);
+
+        // 构建trie
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        trie.add(new HashMap<>());
+        nodeOutputs.add(new ArrayList<>());
+        keywordLengths = new int[keywords.size()];
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            keywordLengths[id] = keyword.length();
+            int node = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    trie.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            nodeOutputs.get(node).add(id);
+        }
+
+        int nodeCount = trie.size();
+        childChars = new char[nodeCount][];
+        childNodes = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            Character[] chars = trie.get(node).keySet().toArray(new Character[0]);
+            Arrays.sort(chars);
+            childChars[node] = new char[chars.length];
+            childNodes[node] = new int[chars.length];
+            for (int i = 0; i < chars.length; i++) {
+                childChars[node][i] = chars[i];
+                childNodes[node][i] = trie.get(node).get(chars[i]);
+            }
+        }
+        rootAscii = new int[ASCII_LIMIT];
+        Arrays.fill(rootAscii, ROOT);
+        for (int i = 0; i < childChars[ROOT].length; i++) {
+            if (childChars[ROOT][i] < ASCII_LIMIT) {
+                rootAscii[childChars[ROOT][i]] = childNodes[ROOT][i];
+            }
+        }
+
+        // 按层计算失败指针，并沿失败指针合并输出
+        fail = new int[nodeCount];
+        outputs = new int[nodeCount][];
+        outputs[ROOT] = new int[0];
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int child : childNodes[ROOT]) {
+            fail[child] = ROOT;
+            outputs[child] = toArray(nodeOutputs.get(child));
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = 0; i < childChars[node].length; i++) {
+                char c = childChars[node][i];
+                int child = childNodes[node][i];
+                int f = fail[node];
+                int target;
+                while ((target = child(f, c)) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = target >= 0 && target != child ? target : ROOT;
+
+                int[] own = toArray(nodeOutputs.get(child));
+                int[] inherited = outputs[fail[child]];
+                int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+                outputs[child] = merged;
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * 与 {@link ClaudeOutputPatterns} 等价的默认分类器
+     */
+    public static OutputClassifier defaultClassifier() {
+        return DEFAULT;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 以默认模式表为基础的构建器，可在此基础上追加或替换规则
+     */
+    public static Builder defaultBuilder() {
+        return new Builder()
+            .patterns(LineType.PROMPT,
+                "^$\\s", "^>\\s", "^claude>", "^[*]$\\s", "^❯\\s", ":\\\\*>", "@*$",
+                "^welcome to claude code", "^claude-code")
+            .patterns(LineType.ERROR,
+                "error", "failed", "exception", "不能", "失败", "错误", "无法", "invalid", "missing")
+            .patterns(LineType.USAGE_LIMIT,
+                "usage?limit", "rate?limit", "quota*exceeded", "请求过于频繁", "达到使用限制", "limit exceeded")
+            .patterns(LineType.SESSION_INFO,
+                "session*restored", "会话*恢复", "resuming*session", "continuing*conversation", "恢复对话")
+            .regex(LineType.SESSION_INFO, ClaudeOutputPatterns.SESSION_ID_PATTERN, "session", "id")
+            .patterns(LineType.AUTH_REQUIRED,
+                "authentication*required", "需要认证", "login*required", "api*key*missing", "unauthorized")
+            .patterns(LineType.PROCESSING,
+                "processing", "处理中", "thinking", "analyzing", "generating", "正在", "working")
+            .patterns(LineType.STREAMING_START,
+                "^{\"type\":\"stream_start\"", "^开始生成回复", "^generating*response")
+            .patterns(LineType.WAITING_INPUT,
+                "waiting*input", "等待输入", "please*enter", "enter*command", "输入命令")
+            .patterns(LineType.INTERRUPT,
+                "interrupted", "中断", "cancelled", "取消", "stopped", "停止");
+    }
+
+    /**
+     * 对一行输出分类
+     *
+     * @param line 行内容
+     * @return 命中的行类型位集合，用 {@link #matches(int, LineType)} 判断
+     */
+    public int classify(CharSequence line) {
+        Occurrences occurrences = scan(line);
+
+        int mask = 0;
+        for (CompiledRule rule : rules) {
+            int bit = rule.type.bit();
+            if ((mask & bit) == 0 && rule.matches(line, occurrences, keywordLengths)) {
+                mask |= bit;
+            }
+        }
+        return mask;
+    }
+
+    public static boolean matches(int mask, LineType type) {
+        return (mask & type.bit()) != 0;
+    }
+
+    /**
+     * 单遍扫描，记录全部关键字出现位置
+     */
+    private Occurrences scan(CharSequence line) {
+        Occurrences occurrences = new Occurrences();
+        int node = ROOT;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+
+            if (node == ROOT) {
+                node = c < ASCII_LIMIT ? rootAscii[c] : Math.max(child(ROOT, c), ROOT);
+            } else {
+                int next;
+                while ((next = child(node, c)) < 0 && node != ROOT) {
+                    node = fail[node];
+                }
+                node = next >= 0 ? next : ROOT;
+            }
+
+            for (int keyword : outputs[node]) {
+                occurrences.add(keyword, i + 1 - keywordLengths[keyword]);
+            }
+        }
+        return occurrences;
+    }
+
+    private int child(int node, char c) {
+        if (node == ROOT && c < ASCII_LIMIT) {
+            int target = rootAscii[c];
+            return target != ROOT ? target : -1;
+        }
+        int index = Arrays.binarySearch(childChars[node], c);
+        return index >= 0 ? childNodes[node][index] : -1;
+    }
+
+    /**
+     * 解析一条模式为片段序列，关键字登记到自动机词表
+     */
+    private static Segment[] parse(String pattern, List<String> keywords, Map<String, Integer> keywordIds) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int gap = GAP_ANY;
+        int i = 0;
+        if (pattern.startsWith("^")) {
+            gap = GAP_ANCHORED;
+            i = 1;
+        }
+
+        boolean spaceAfter = false;
+        for (; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                char escaped = pattern.charAt(++i);
+                if (escaped == 's') {
+                    spaceAfter = true;
+                } else {
+                    literal.append(escaped);
+                }
+            } else if (c == '*' || c == '?') {
+                gap = closeSegment(pattern, segments, literal, gap, spaceAfter, keywords, keywordIds);
+                spaceAfter = false;
+                if (c == '?') {
+                    gap = GAP_AT_MOST_ONE;
+                }
+            } else {
+                if (spaceAfter) {
+                    throw new IllegalArgumentException("\\s 只能出现在片段末尾: " + pattern);
+                }
+                literal.append(c);
+            }
+        }
+        closeSegment(pattern, segments, literal, gap, spaceAfter, keywords, keywordIds);
+
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("模式不包含任何字面内容: " + pattern);
+        }
+        return segments.toArray(new Segment[0]);
+    }
+
+    private static int closeSegment(String pattern, List<Segment> segments, StringBuilder literal, int gap,
+                                    boolean spaceAfter, List<String> keywords, Map<String, Integer> keywordIds) {
+        if (literal.length() == 0) {
+            if (spaceAfter || gap == GAP_AT_MOST_ONE) {
+                throw new IllegalArgumentException("模式片段为空: " + pattern);
+            }
+            return gap == GAP_ANCHORED ? GAP_ANY : gap;
+        }
+        int id = keywordId(toLowerAscii(literal.toString()), keywords, keywordIds);
+        segments.add(new Segment(id, gap, spaceAfter));
+        literal.setLength(0);
+        return GAP_ANY;
+    }
+
+    private static int keywordId(String keyword, List<String> keywords, Map<String, Integer> keywordIds) {
+        return keywordIds.computeIfAbsent(keyword, k -> {
+            keywords.add(k);
+            return keywords.size() - 1;
+        });
+    }
+
+    private static String toLowerAscii(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] = (char) (chars[i] + ('a' - 'A'));
+            }
+        }
+        return new String(chars);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 与 java.util.regex 中 \s 相同的空白字符集合
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * 模式片段：关键字、与前一片段的间隔约束、是否要求后跟空白
+     */
+    private static final class Segment {
+        final int keyword;
+        final int gap;
+        final boolean spaceAfter;
+
+        Segment(int keyword, int gap, boolean spaceAfter) {
+            this.keyword = keyword;
+            this.gap = gap;
+            this.spaceAfter = spaceAfter;
+        }
+    }
+
+    /**
+     * 关键字出现位置，按结束位置递增排列
+     */
+    private static final class Occurrences {
+        private int[] keywords = new int[8];
+        private int[] starts = new int[8];
+        private int size;
+        // 出现过的关键字，超出64个的关键字不做快速排除
+        private long seen;
+
+        void add(int keyword, int start) {
+            if (size == keywords.length) {
+                keywords = Arrays.copyOf(keywords, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            keywords[size] = keyword;
+            starts[size] = start;
+            size++;
+            if (keyword < 64) {
+                seen |= 1L << keyword;
+            }
+        }
+
+        boolean mayContain(int keyword) {
+            return keyword >= 64 || (seen & (1L << keyword)) != 0;
+        }
+    }
+
+    private static final class CompiledRule {
+        final LineType type;
+        final Segment[] segments;
+        final Pattern regex;
+        final int[] requiredKeywords;
+
+        private CompiledRule(LineType type, Segment[] segments, Pattern regex, int[] requiredKeywords) {
+            this.type = type;
+            this.segments = segments;
+            this.regex = regex;
+            this.requiredKeywords = requiredKeywords;
+        }
+
+        static CompiledRule glob(LineType type, Segment[] segments) {
+            return new CompiledRule(type, segments, null, null);
+        }
+
+        static CompiledRule regex(LineType type, Pattern regex, int[] requiredKeywords) {
+            return new CompiledRule(type, null, regex, requiredKeywords);
+        }
+
+        boolean matches(CharSequence line, Occurrences occurrences, int[] keywordLengths) {
+            if (regex != null) {
+                for (int keyword : requiredKeywords) {
+                    if (!contains(occurrences, keyword)) {
+                        return false;
+                    }
+                }
+                return regex.matcher(line).find();
+            }
+
+            for (Segment segment : segments) {
+                if (!occurrences.mayContain(segment.keyword)) {
+                    return false;
+                }
+            }
+            return matchFrom(0, 0, line, occurrences, keywordLengths);
+        }
+
+        /**
+         * 从第index个片段开始匹配，previousEnd为上一片段的结束位置
+         * '*' 间隔下取最早结束的候选即为最优，无需回溯；'?' 间隔需要尝试所有候选
+         */
+        private boolean matchFrom(int index, int previousEnd, CharSequence line,
+                                  Occurrences occurrences, int[] keywordLengths) {
+            Segment segment = segments[index];
+            for (int i = 0; i < occurrences.size; i++) {
+                if (occurrences.keywords[i] != segment.keyword) {
+                    continue;
+                }
+
+                int start = occurrences.starts[i];
+                if (segment.gap == GAP_ANCHORED ? start != previousEnd
+                        : start < previousEnd || (segment.gap == GAP_AT_MOST_ONE && start > previousEnd + 1)) {
+                    continue;
+                }
+
+                int end = start + keywordLengths[segment.keyword];
+                if (segment.spaceAfter && (end >= line.length() || !isWhitespace(line.charAt(end)))) {
+                    continue;
+                }
+
+                if (index == segments.length - 1) {
+                    return true;
+                }
+                boolean rest = matchFrom(index + 1, end, line, occurrences, keywordLengths);
+                if (rest || segments[index + 1].gap == GAP_ANY) {
+                    return rest;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(Occurrences occurrences, int keyword) {
+            if (!occurrences.mayContain(keyword)) {
+                return false;
+            }
+            for (int i = 0; i < occurrences.size; i++) {
+                if (occurrences.keywords[i] == keyword) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class RegexRule {
+        final LineType type;
+        final Pattern pattern;
+        final String[] requiredKeywords;
+
+        RegexRule(LineType type, Pattern pattern, String[] requiredKeywords) {
+            this.type = type;
+            this.pattern = pattern;
+            this.requiredKeywords = requiredKeywords;
+        }
+    }
+
+    public static class Builder {
+        private final Map<LineType, List<String>> patterns = new EnumMap<>(LineType.class);
+        private final List<RegexRule> regexRules = new ArrayList<>();
+
+        /**
+         * 为行类型追加模式
+         */
+        public Builder patterns(LineType type, String... typePatterns) {
+            patterns.computeIfAbsent(type, t -> new ArrayList<>()).addAll(Arrays.asList(typePatterns));
+            return this;
+        }
+
+        /**
+         * 为行类型追加正则规则，requiredKeywords全部出现时才执行正则
+         */
+        public Builder regex(LineType type, Pattern pattern, String... requiredKeywords) {
+            regexRules.add(new RegexRule(type, pattern, requiredKeywords));
+            return this;
+        }
+
+        /**
+         * 清除行类型已有的全部规则
+         */
+        public Builder clear(LineType type) {
+            patterns.remove(type);
+            regexRules.removeIf(rule -> rule.type == type);
+            return this;
+        }
+
+        public OutputClassifier build() {
+            return new OutputClassifier(this);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -20,43 +21,88 @@ public class OutputParser {
 
     private final StringBuilder buffer = new StringBuilder();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OutputClassifier classifier;
     private ClaudeState currentState = ClaudeState.STARTING;
     private ClaudeResponseBuilder responseBuilder = new ClaudeResponseBuilder();
 
+    public OutputParser() {
+        this(OutputClassifier.defaultClassifier());
+    }
+
+    /**
+     * @param classifier 行分类器，可替换模式表
+     */
+    public OutputParser(OutputClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    /**
+     * 判断一段输出是否为使用限制或限流提示，与 {@link ClaudeState#USAGE_LIMIT} 的判定规则一致
+     *
+     * @param text 输出内容
+     * @return 是否命中使用限制规则
+     */
+    public static boolean isUsageLimit(CharSequence text) {
+        return text != null && OutputClassifier.matches(
+            OutputClassifier.defaultClassifier().classify(text), OutputClassifier.LineType.USAGE_LIMIT);
+    }
+
     /**
      * 解析CLI输出并返回状态变化
      *
+     * 输出可以是任意分块，\r\n、\n、\r均视为行结束符，未结束的行缓存到下次调用
+     *
      * @param output 输出内容
      * @return 状态变化列表
      */
     public List<StateChange> parseOutput(String output) {
         List<StateChange> changes = new ArrayList<>();
-        buffer.append(output);
 
-        // 同时按 \r\n、\n、\r 分割，兼容 Windows 回车更新
-        String[] lines = buffer.toString().split("(\\r\\n|\\n|\\r)");
-
-        // 保留最后一行（可能不完整）
-        if (lines.length > 0) {
-            String lastLine = lines[lines.length - 1];
-            buffer.setLength(0);
-            if (!(output.endsWith("\n") || output.endsWith("\r"))) {
-                buffer.append(lastLine);
+        int lineStart = 0;
+        int length = output.length();
+        for (int i = 0; i < length; i++) {
+            char c = output.charAt(i);
+            if (c != '\n' && c != '\r') {
+                continue;
             }
 
-            // 处理完整的行
-            boolean hasLineTerminator = output.endsWith("\n") || output.endsWith("\r");
-            for (int i = 0; i < lines.length - (hasLineTerminator ? 0 : 1); i++) {
-                String line = lines[i].trim();
-                if (!line.isEmpty()) {
-                    changes.addAll(parseLine(line));
-                }
+            if (buffer.length() > 0) {
+                buffer.append(output, lineStart, i);
+                changes.addAll(parseCompleteLine(buffer));
+                buffer.setLength(0);
+            } else {
+                changes.addAll(parseCompleteLine(CharBuffer.wrap(output, lineStart, i)));
             }
+            lineStart = i + 1;
         }
 
+        // 保留最后一行（可能不完整）
+        buffer.append(output, lineStart, length);
         return changes;
     }
 
+    /**
+     * 解析一行已经分帧的完整输出（不含行结束符），供 {@link LineFramer} 等上游分帧器直接调用
+     *
+     * @param line 行内容，调用结束后不再被引用
+     * @return 状态变化列表，空白行返回空列表
+     */
+    public List<StateChange> parseCompleteLine(CharSequence line) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (start == end) {
+            return new ArrayList<>();
+        }
+        return parseLine(line.subSequence(start, end).toString());
+    }
+
     /**
      * 解析单行输出
      */
@@ -65,54 +111,55 @@ public class OutputParser {
         ClaudeState previousState = currentState;
 
         try {
-            // 按优先级检测各种模式
-            if (detectPrompt(line)) {
+            // 单遍分类后按优先级判定
+            int mask = classifier.classify(line);
+            if (detectPrompt(mask)) {
                 currentState = ClaudeState.READY;
                 changes.add(new StateChange(previousState, currentState, line));
                 responseBuilder.complete();
 
-            } else if (detectError(line)) {
+            } else if (detectError(mask)) {
                 currentState = ClaudeState.ERROR;
                 ClaudeResponse errorResponse = new ClaudeResponse(
                     ClaudeResponse.ClaudeResponseType.ERROR_RESPONSE, line, currentState);
                 changes.add(new StateChange(currentState, errorResponse));
                 responseBuilder.setError(line);
 
-            } else if (detectUsageLimit(line)) {
+            } else if (detectUsageLimit(mask)) {
                 currentState = ClaudeState.USAGE_LIMIT;
                 ClaudeResponse limitResponse = new ClaudeResponse(
                     ClaudeResponse.ClaudeResponseType.STATUS_UPDATE, line, currentState);
                 changes.add(new StateChange(currentState, limitResponse));
 
-            } else if (detectSessionInfo(line)) {
+            } else if (detectSessionInfo(mask)) {
                 currentState = ClaudeState.SESSION_RESTORED;
                 ClaudeResponse sessionResponse = parseSessionInfo(line);
                 changes.add(new StateChange(currentState, sessionResponse));
 
-            } else if (detectAuthRequired(line)) {
+            } else if (detectAuthRequired(mask)) {
                 currentState = ClaudeState.AUTH_REQUIRED;
                 ClaudeResponse authResponse = new ClaudeResponse(
                     ClaudeResponse.ClaudeResponseType.STATUS_UPDATE, line, currentState);
                 changes.add(new StateChange(currentState, authResponse));
 
-            } else if (detectProcessing(line)) {
+            } else if (detectProcessing(mask)) {
                 if (currentState != ClaudeState.PROCESSING) {
                     currentState = ClaudeState.PROCESSING;
                     changes.add(new StateChange(previousState, currentState, line));
                 }
 
-            } else if (detectStreaming(line)) {
+            } else if (detectStreaming(mask)) {
                 if (currentState != ClaudeState.STREAMING) {
                     currentState = ClaudeState.STREAMING;
                     changes.add(new StateChange(previousState, currentState, line));
                 }
                 responseBuilder.appendContent(line);
 
-            } else if (detectWaitingInput(line)) {
+            } else if (detectWaitingInput(mask)) {
                 currentState = ClaudeState.WAITING_INPUT;
                 changes.add(new StateChange(previousState, currentState, line));
 
-            } else if (detectInterrupt(line)) {
+            } else if (detectInterrupt(mask)) {
                 currentState = ClaudeState.INTERRUPTED;
                 changes.add(new StateChange(previousState, currentState, line));
 
@@ -135,18 +182,6 @@ public class OutputParser {
                     currentState = ClaudeState.PROCESSING;
                     changes.add(new StateChange(previousState, currentState, line));
                 }
-
-                // 增强启动检测：如果包含常见的CLI启动信息
-                if (currentState == ClaudeState.STARTING &&
-                    (line.toLowerCase().contains("claude") ||
-                     line.toLowerCase().contains("ready") ||
-                     line.toLowerCase().contains("started") ||
-                     line.toLowerCase().contains("welcome") ||
-                     line.trim().length() > 0)) {
-                    currentState = ClaudeState.PROCESSING;
-                    changes.add(new StateChange(previousState, currentState, line));
-                    logger.debug("基于输出内容检测到CLI启动: {}", line);
-                }
             }
 
         } catch (Exception e) {
@@ -159,46 +194,48 @@ public class OutputParser {
     }
 
     // 各种检测方法
-    private boolean detectPrompt(String line) {
-        return ClaudeOutputPatterns.PROMPT_PATTERN.matcher(line).find();
+    private boolean detectPrompt(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.PROMPT);
     }
 
-    private boolean detectError(String line) {
-        return ClaudeOutputPatterns.ERROR_PATTERN.matcher(line).find();
+    private boolean detectError(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.ERROR);
     }
 
-    private boolean detectUsageLimit(String line) {
-        return ClaudeOutputPatterns.USAGE_LIMIT_PATTERN.matcher(line).find();
+    private boolean detectUsageLimit(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.USAGE_LIMIT);
     }
 
-    private boolean detectSessionInfo(String line) {
-        return ClaudeOutputPatterns.SESSION_RESTORED_PATTERN.matcher(line).find() ||
-               ClaudeOutputPatterns.SESSION_ID_PATTERN.matcher(line).find();
+    private boolean detectSessionInfo(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.SESSION_INFO);
     }
 
-    private boolean detectAuthRequired(String line) {
-        return ClaudeOutputPatterns.AUTH_REQUIRED_PATTERN.matcher(line).find();
+    private boolean detectAuthRequired(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.AUTH_REQUIRED);
     }
 
-    private boolean detectProcessing(String line) {
-        return ClaudeOutputPatterns.PROCESSING_PATTERN.matcher(line).find();
+    private boolean detectProcessing(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.PROCESSING);
     }
 
-    private boolean detectStreaming(String line) {
-        return ClaudeOutputPatterns.STREAMING_START_PATTERN.matcher(line).find() ||
+    private boolean detectStreaming(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.STREAMING_START) ||
                currentState == ClaudeState.STREAMING;
     }
 
-    private boolean detectWaitingInput(String line) {
-        return ClaudeOutputPatterns.WAITING_INPUT_PATTERN.matcher(line).find();
+    private boolean detectWaitingInput(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.WAITING_INPUT);
     }
 
-    private boolean detectInterrupt(String line) {
-        return ClaudeOutputPatterns.INTERRUPT_PATTERN.matcher(line).find();
+    private boolean detectInterrupt(int mask) {
+        return OutputClassifier.matches(mask, OutputClassifier.LineType.INTERRUPT);
     }
 
+    /**
+     * 行已去除首尾空白，首尾分别为花括号即视为JSON候选
+     */
     private boolean detectJsonResponse(String line) {
-        return ClaudeOutputPatterns.JSON_RESPONSE_PATTERN.matcher(line).matches();
+        return line.length() >= 2 && line.charAt(0) == '{' && line.charAt(line.length() - 1) == '}';
     }
 
     /**
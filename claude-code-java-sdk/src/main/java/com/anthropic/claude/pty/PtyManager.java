@@ -28,6 +28,18 @@ import java.util.function.Consumer;
 public class PtyManager {
     private static final Logger logger = LoggerFactory.getLogger(PtyManager.class);
 
+    /**
+     * 行监听器，每个非空行解析完成后回调一次
+     */
+    @FunctionalInterface
+    public interface LineListener {
+        /**
+         * @param line 去除首尾空白后的行内容
+         * @param changes 该行产生的状态变化，可能为空
+         */
+        void onLine(String line, List<StateChange> changes);
+    }
+
     private PtyProcess ptyProcess;
     private OutputParser outputParser;
     private BufferedWriter inputWriter;
@@ -38,6 +50,8 @@ public class PtyManager {
     private Consumer<ClaudeResponse> outputListener;
     private Consumer<StateChange> stateChangeListener;
     private Consumer<String> errorListener;
+    private LineListener lineListener;
+    private Runnable exitListener;
 
     // 配置
     private int terminalWidth = 120;
@@ -180,13 +194,15 @@ public class PtyManager {
                 inputWriter.close();
             }
 
-            // 终止进程
+            // 终止进程及其子进程，CLI派生的子进程不会随终端关闭自动退出
             if (ptyProcess != null && ptyProcess.isAlive()) {
+                ptyProcess.descendants().forEach(ProcessHandle::destroy);
                 ptyProcess.destroy();
 
                 // 等待进程结束
                 if (!ptyProcess.waitFor(5, TimeUnit.SECONDS)) {
                     logger.warn("强制终止Pty进程");
+                    ptyProcess.descendants().forEach(ProcessHandle::destroyForcibly);
                     ptyProcess.destroyForcibly();
                 }
             }
@@ -233,36 +249,18 @@ public class PtyManager {
      */
     private void startOutputReader() {
         executorService.submit(() -> {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(ptyProcess.getInputStream(), StandardCharsets.UTF_8))) {
-
-                char[] buffer = new char[4096];
-                StringBuilder lineBuffer = new StringBuilder();
+            // 按字节分帧，只解码完整的行（兼容 CRLF/CR）
+            LineFramer framer = new LineFramer(this::processOutputLine);
 
+            try (InputStream in = ptyProcess.getInputStream()) {
                 while (isRunning && ptyProcess.isAlive()) {
-                    int bytesRead = reader.read(buffer, 0, buffer.length);
-                    if (bytesRead > 0) {
-                        String chunk = new String(buffer, 0, bytesRead);
-
-                        // 按行处理输出（兼容 CRLF/CR）
-                        lineBuffer.append(chunk);
-                        String[] lines = lineBuffer.toString().split("(\\r\\n|\\n|\\r)", -1);
-
-                        // 处理完整的行
-                        for (int i = 0; i < lines.length - 1; i++) {
-                            processOutputLine(lines[i]);
-                        }
-
-                        // 保留最后不完整的行
-                        lineBuffer.setLength(0);
-                        lineBuffer.append(lines[lines.length - 1]);
+                    if (framer.read(in) < 0) {
+                        break;
                     }
                 }
 
                 // 处理剩余内容
-                if (lineBuffer.length() > 0) {
-                    processOutputLine(lineBuffer.toString());
-                }
+                framer.flush();
 
             } catch (IOException e) {
                 if (isRunning) {
@@ -272,15 +270,20 @@ public class PtyManager {
                     }
                 }
             }
+
+            // 非主动关闭导致的输出结束，说明进程已退出
+            if (isRunning && exitListener != null) {
+                exitListener.run();
+            }
         });
     }
 
     /**
      * 处理输出行
      */
-    private void processOutputLine(String line) {
+    private void processOutputLine(CharSequence line) {
         try {
-            List<StateChange> changes = outputParser.parseOutput(line);
+            List<StateChange> changes = outputParser.parseCompleteLine(line);
 
             for (StateChange change : changes) {
                 // 更新当前状态
@@ -302,6 +305,13 @@ public class PtyManager {
                 }
             }
 
+            if (lineListener != null) {
+                String text = line.toString().trim();
+                if (!text.isEmpty()) {
+                    lineListener.onLine(text, changes);
+                }
+            }
+
         } catch (Exception e) {
             logger.warn("处理输出行时出错: {}", line, e);
         }
@@ -378,6 +388,17 @@ public class PtyManager {
         this.errorListener = errorListener;
     }
 
+    public void setLineListener(LineListener lineListener) {
+        this.lineListener = lineListener;
+    }
+
+    /**
+     * 设置进程意外退出（输出流结束且未调用 {@link #closePty()}）时的回调，在读取线程上执行
+     */
+    public void setExitListener(Runnable exitListener) {
+        this.exitListener = exitListener;
+    }
+
     // Getters
     public ClaudeState getCurrentState() {
         return currentState;
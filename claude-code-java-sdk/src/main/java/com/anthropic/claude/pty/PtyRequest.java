@@ -0,0 +1,177 @@
+package com.anthropic.claude.pty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 提交到 {@link PtySessionPool} 的单个请求
+ *
+ * 每个请求有独立的响应通道：分配到的会话只把该请求的命令回显之后、下一个提示符之前的输出行交给它，
+ * 遇到提示符时以收集到的全部行完成。回显之前的输出（上一个请求的残留输出或提示符）一律忽略；
+ * 回显按去除空白后的字符匹配，终端对长命令折行后仍能识别。
+ *
+ * 指定行监听器时响应行只在会话读取线程上逐行交给监听器，不在请求中缓存，完成结果为空列表；
+ * 监听器阻塞时会话停止读取终端输出。未指定监听器时整个响应缓存在请求中，完成时一次返回。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class PtyRequest {
+    private final String requestId;
+    private final String commandLine;
+    private final Consumer<String> lineListener;
+    private final PtySessionPool pool;
+    private final Instant submittedAt;
+
+    private final List<String> lines = new ArrayList<>();
+    private final CompletableFuture<List<String>> completion = new CompletableFuture<>();
+
+    /**
+     * 去除空白后的命令，用于匹配终端回显
+     */
+    private final String echoPattern;
+
+    // 以下字段只在分配到的会话读取线程上访问
+    private final StringBuilder echoTail = new StringBuilder();
+    private boolean started;
+
+    private volatile String sessionId;
+
+    PtyRequest(String requestId, String commandLine, Consumer<String> lineListener, PtySessionPool pool) {
+        this.requestId = requestId;
+        this.commandLine = commandLine;
+        this.lineListener = lineListener;
+        this.pool = pool;
+        this.submittedAt = Instant.now();
+        this.echoPattern = stripWhitespace(commandLine);
+    }
+
+    /**
+     * 等待请求完成
+     *
+     * @param timeout 超时时间，超时后取消请求
+     * @return 响应行，指定了行监听器时为空列表
+     * @throws TimeoutException 超时
+     * @throws ExecutionException 会话异常退出或发送失败
+     * @throws InterruptedException 等待被中断
+     */
+    public List<String> await(Duration timeout) throws TimeoutException, ExecutionException, InterruptedException {
+        try {
+            return completion.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消请求：排队中的请求直接出队，执行中的请求会中断并回收所在会话
+     */
+    public void cancel() {
+        if (!completion.isDone()) {
+            pool.abort(this);
+        }
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getCommandLine() {
+        return commandLine;
+    }
+
+    /**
+     * 执行该请求的会话ID，尚未分配时返回null
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public CompletableFuture<List<String>> getCompletion() {
+        return completion;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    void assign(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * 处理分配到的会话上的一行输出
+     *
+     * @return 遇到响应结束的提示符时返回true
+     */
+    boolean onLine(String line, boolean prompt) {
+        if (!started) {
+            // 回显可能带提示符前缀，也可能被终端折成多行，回显结束前的行都不属于响应
+            started = matchesEcho(line);
+            return false;
+        }
+        if (prompt) {
+            return true;
+        }
+
+        if (lineListener != null) {
+            lineListener.accept(line);
+        } else {
+            lines.add(line);
+        }
+        return false;
+    }
+
+    /**
+     * 把一行的非空白字符追加到回显窗口，判断窗口是否以命令结尾
+     */
+    private boolean matchesEcho(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                echoTail.append(c);
+            }
+        }
+        int excess = echoTail.length() - echoPattern.length();
+        if (excess > 0) {
+            echoTail.delete(0, excess);
+        }
+        return excess >= 0 && echoPattern.contentEquals(echoTail);
+    }
+
+    private static String stripWhitespace(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    void complete() {
+        completion.complete(lines);
+    }
+
+    void fail(Throwable cause) {
+        completion.completeExceptionally(cause);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PtyRequest{id=%s, session=%s}", requestId, sessionId);
+    }
+}
@@ -0,0 +1,164 @@
+package com.anthropic.claude.pty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 会话池中的单个PTY会话，同一时刻最多执行一个请求
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+final class PtySession {
+    private static final Logger logger = LoggerFactory.getLogger(PtySession.class);
+
+    private final String sessionId;
+    private final PtyManager ptyManager;
+    private final PtySessionPool pool;
+
+    private volatile PtyRequest activeRequest;
+    private volatile boolean closed;
+    private long completedRequests;
+
+    // 最近一行输出是否为提示符；不在提示符处时新请求要等到下一个提示符再发送
+    private boolean atPrompt;
+    private boolean awaitingPrompt;
+
+    PtySession(String sessionId, PtyManager ptyManager, PtySessionPool pool) {
+        this.sessionId = sessionId;
+        this.ptyManager = ptyManager;
+        this.pool = pool;
+    }
+
+    void start(String[] command, Duration readyTimeout) throws IOException {
+        ptyManager.setReadyTimeout(readyTimeout);
+        ptyManager.setLineListener(this::onLine);
+        ptyManager.setExitListener(() -> pool.onSessionExited(this));
+        ptyManager.setErrorListener(error -> logger.warn("PTY会话 {} 错误: {}", sessionId, error));
+        ptyManager.startPty(command);
+        synchronized (this) {
+            // 启动返回时终端已就绪，等待输入
+            atPrompt = true;
+        }
+    }
+
+    /**
+     * 在本会话上执行请求，调用方保证会话当前空闲
+     *
+     * 上一个请求结束后终端又有输出时（残留输出或被误判的提示符），先等终端回到提示符再发送，
+     * 避免新请求的输入与残留输出交错
+     */
+    void dispatch(PtyRequest request) {
+        activeRequest = request;
+        request.assign(sessionId);
+
+        boolean ready;
+        synchronized (this) {
+            ready = atPrompt;
+            awaitingPrompt = !ready;
+            atPrompt = false;
+        }
+        if (ready) {
+            send(request);
+        } else {
+            logger.debug("PTY会话 {} 尚未回到提示符，请求 {} 等待重新同步", sessionId, request.getRequestId());
+        }
+    }
+
+    private void send(PtyRequest request) {
+        logger.debug("PTY会话 {} 执行请求 {}", sessionId, request.getRequestId());
+
+        ptyManager.sendCommand(request.getCommandLine()).whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.warn("PTY会话 {} 发送请求 {} 失败", sessionId, request.getRequestId(), error);
+                pool.onSessionFailed(this, error);
+            }
+        });
+    }
+
+    private void onLine(String line, List<StateChange> changes) {
+        boolean prompt = isPrompt(changes);
+        boolean resynced = false;
+        synchronized (this) {
+            if (awaitingPrompt) {
+                if (!prompt) {
+                    // 仍在等待提示符，残留输出不交给请求
+                    return;
+                }
+                awaitingPrompt = false;
+                resynced = true;
+            } else {
+                atPrompt = prompt;
+            }
+        }
+
+        PtyRequest request = activeRequest;
+        if (request == null || closed) {
+            return;
+        }
+        if (resynced) {
+            send(request);
+            return;
+        }
+
+        if (request.onLine(line, prompt)) {
+            activeRequest = null;
+            completedRequests++;
+            // 先归还会话再通知调用方，调用方看到完成时会话已可复用
+            pool.onRequestFinished(this);
+            request.complete();
+        }
+    }
+
+    private static boolean isPrompt(List<StateChange> changes) {
+        for (StateChange change : changes) {
+            if (change.getToState() == ClaudeState.READY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取出当前请求，会话随后不再向其投递输出
+     */
+    PtyRequest detachRequest() {
+        PtyRequest request = activeRequest;
+        activeRequest = null;
+        return request;
+    }
+
+    PtyRequest getActiveRequest() {
+        return activeRequest;
+    }
+
+    void interrupt() {
+        ptyManager.sendInterrupt();
+    }
+
+    void close() {
+        closed = true;
+        ptyManager.closePty();
+    }
+
+    boolean isAlive() {
+        return !closed && ptyManager.isAlive();
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    long getCompletedRequests() {
+        return completedRequests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PtySession{id=%s, completed=%d}", sessionId, completedRequests);
+    }
+}
@@ -0,0 +1,316 @@
+package com.anthropic.claude.pty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * PTY会话池
+ *
+ * 维护N个常驻PTY会话，每个会话同一时刻只执行一个请求，以提示符作为响应边界。
+ * 请求按提交顺序排队；会话完成请求后优先领取队首请求，空闲会话按最久未使用的顺序分配，
+ * 使请求均匀分布到各个会话。会话异常退出或请求被取消时，该会话被关闭并在后台补充新会话。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class PtySessionPool {
+    private static final Logger logger = LoggerFactory.getLogger(PtySessionPool.class);
+
+    private final String[] command;
+    private final int size;
+    private final Supplier<PtyManager> managerFactory;
+    private final Duration readyTimeout;
+    private final Executor replenishExecutor;
+
+    private final Object lock = new Object();
+    private final List<PtySession> sessions = new ArrayList<>();
+    private final Deque<PtySession> idleSessions = new ArrayDeque<>();
+    private final Deque<PtyRequest> pendingRequests = new ArrayDeque<>();
+
+    private final AtomicLong requestSequence = new AtomicLong();
+    private final AtomicLong sessionSequence = new AtomicLong();
+    private volatile boolean shutdown;
+
+    /**
+     * @param command PTY启动命令
+     * @param size 会话数
+     * @param managerFactory 为每个会话创建PtyManager，会话回收后会再次调用
+     * @param readyTimeout 单个会话的就绪超时
+     */
+    public PtySessionPool(String[] command, int size, Supplier<PtyManager> managerFactory, Duration readyTimeout) {
+        this(command, size, managerFactory, readyTimeout, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param replenishExecutor 后台补充会话的执行器，补充时会阻塞等待新会话就绪
+     */
+    public PtySessionPool(String[] command, int size, Supplier<PtyManager> managerFactory, Duration readyTimeout,
+                          Executor replenishExecutor) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("会话数必须大于0");
+        }
+        this.command = command.clone();
+        this.size = size;
+        this.managerFactory = managerFactory;
+        this.readyTimeout = readyTimeout;
+        this.replenishExecutor = replenishExecutor;
+    }
+
+    /**
+     * 启动全部会话，至少一个会话启动成功即视为成功
+     *
+     * @throws IOException 所有会话都启动失败时抛出
+     */
+    public void start() throws IOException {
+        logger.info("启动PTY会话池，会话数: {}", size);
+
+        IOException lastFailure = null;
+        for (int i = 0; i < size; i++) {
+            try {
+                addSession(startSession());
+            } catch (IOException e) {
+                logger.warn("PTY会话启动失败", e);
+                lastFailure = e;
+            }
+        }
+
+        synchronized (lock) {
+            if (sessions.isEmpty()) {
+                throw lastFailure != null ? lastFailure : new IOException("没有可用的PTY会话");
+            }
+            logger.info("PTY会话池启动完成，可用会话: {}/{}", sessions.size(), size);
+        }
+    }
+
+    /**
+     * 提交请求，有空闲会话时立即发送，否则排队
+     *
+     * @param commandLine 发送到终端的一行输入
+     * @param lineListener 逐行接收该请求的输出，在会话读取线程上调用；为null时整个响应缓存到请求完成
+     * @return 请求句柄
+     */
+    public PtyRequest submit(String commandLine, Consumer<String> lineListener) {
+        PtyRequest request = new PtyRequest(
+            "pty-req-" + requestSequence.incrementAndGet(), commandLine, lineListener, this);
+
+        PtySession session;
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("PTY会话池已关闭");
+            }
+            session = idleSessions.pollFirst();
+            if (session == null) {
+                pendingRequests.addLast(request);
+                logger.debug("请求 {} 排队，当前排队数: {}", request.getRequestId(), pendingRequests.size());
+                return request;
+            }
+            session.dispatch(request);
+        }
+        return request;
+    }
+
+    /**
+     * 会话完成当前请求后回调：领取下一个排队请求或回到空闲队列
+     */
+    void onRequestFinished(PtySession session) {
+        synchronized (lock) {
+            if (!sessions.contains(session)) {
+                return;
+            }
+            releaseLocked(session);
+        }
+    }
+
+    /**
+     * 会话进程意外退出
+     */
+    void onSessionExited(PtySession session) {
+        logger.warn("PTY会话 {} 意外退出", session.getSessionId());
+        discard(session, new IOException("PTY会话已退出: " + session.getSessionId()));
+    }
+
+    /**
+     * 会话发送失败
+     */
+    void onSessionFailed(PtySession session, Throwable cause) {
+        discard(session, cause);
+    }
+
+    /**
+     * 取消请求，由 {@link PtyRequest#cancel()} 调用
+     */
+    void abort(PtyRequest request) {
+        PtySession owner = null;
+        synchronized (lock) {
+            if (pendingRequests.remove(request)) {
+                logger.debug("取消排队中的请求 {}", request.getRequestId());
+            } else {
+                for (PtySession session : sessions) {
+                    if (session.getActiveRequest() == request) {
+                        owner = session;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (owner != null) {
+            // 会话状态已不确定，中断后直接回收
+            logger.debug("取消执行中的请求 {}，回收会话 {}", request.getRequestId(), owner.getSessionId());
+            owner.interrupt();
+            discard(owner, null);
+        }
+        request.fail(new CancellationException("请求已取消: " + request.getRequestId()));
+    }
+
+    /**
+     * 关闭会话池，排队中和执行中的请求都以失败结束
+     */
+    public void shutdown() {
+        List<PtySession> toClose;
+        List<PtyRequest> toFail = new ArrayList<>();
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            toClose = new ArrayList<>(sessions);
+            sessions.clear();
+            idleSessions.clear();
+            toFail.addAll(pendingRequests);
+            pendingRequests.clear();
+        }
+
+        logger.info("关闭PTY会话池，会话数: {}", toClose.size());
+        IOException cause = new IOException("PTY会话池已关闭");
+        for (PtySession session : toClose) {
+            PtyRequest active = session.detachRequest();
+            if (active != null) {
+                toFail.add(active);
+            }
+            session.close();
+        }
+        toFail.forEach(request -> request.fail(cause));
+    }
+
+    /**
+     * 是否至少有一个存活的会话
+     */
+    public boolean isAvailable() {
+        if (shutdown) {
+            return false;
+        }
+        synchronized (lock) {
+            for (PtySession session : sessions) {
+                if (session.isAlive()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public int getSessionCount() {
+        synchronized (lock) {
+            return sessions.size();
+        }
+    }
+
+    public int getIdleSessionCount() {
+        synchronized (lock) {
+            return idleSessions.size();
+        }
+    }
+
+    public int getPendingRequestCount() {
+        synchronized (lock) {
+            return pendingRequests.size();
+        }
+    }
+
+    private PtySession startSession() throws IOException {
+        PtySession session = new PtySession("pty-session-" + sessionSequence.incrementAndGet(),
+            managerFactory.get(), this);
+        try {
+            session.start(command, readyTimeout);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            // 本地PTY库不可用时同样按启动失败处理，便于上层回退
+            session.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+        return session;
+    }
+
+    private void addSession(PtySession session) {
+        synchronized (lock) {
+            if (shutdown) {
+                session.close();
+                return;
+            }
+            sessions.add(session);
+            releaseLocked(session);
+        }
+    }
+
+    private void releaseLocked(PtySession session) {
+        PtyRequest next = pendingRequests.pollFirst();
+        if (next != null) {
+            session.dispatch(next);
+        } else {
+            idleSessions.addLast(session);
+        }
+    }
+
+    /**
+     * 移除并关闭会话，失败其当前请求，然后在后台补充新会话
+     */
+    private void discard(PtySession session, Throwable cause) {
+        synchronized (lock) {
+            if (!sessions.remove(session)) {
+                return;
+            }
+            idleSessions.remove(session);
+        }
+
+        PtyRequest active = session.detachRequest();
+        if (active != null && cause != null) {
+            active.fail(cause);
+        }
+        session.close();
+
+        if (!shutdown) {
+            CompletableFuture.runAsync(this::replenish, replenishExecutor);
+        }
+    }
+
+    private void replenish() {
+        try {
+            addSession(startSession());
+            logger.info("已补充PTY会话，当前会话数: {}", getSessionCount());
+        } catch (IOException e) {
+            logger.error("补充PTY会话失败", e);
+            List<PtyRequest> stranded = new ArrayList<>();
+            synchronized (lock) {
+                if (sessions.isEmpty()) {
+                    stranded.addAll(pendingRequests);
+                    pendingRequests.clear();
+                }
+            }
+            stranded.forEach(request -> request.fail(e));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.performance.CacheManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 {@link CacheManager} 查询结果缓存的默认实现，按消息估算字节数计重
+ *
+ * @author Claude Code SDK
+ */
+public class CacheManagerQueryResultCache implements QueryResultCache {
+
+    // 对象头、字段引用以及id/时间戳等固定开销的粗略估计
+    private static final long MESSAGE_OVERHEAD_BYTES = 128;
+
+    private final CacheManager cacheManager;
+
+    public CacheManagerQueryResultCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public List<Message> get(String key) {
+        Object value = cacheManager.getQueryResult(key);
+        return value instanceof CachedResult ? ((CachedResult) value).messages : null;
+    }
+
+    @Override
+    public void put(String key, List<Message> messages) {
+        cacheManager.putQueryResult(key, new CachedResult(messages));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cacheManager.clearCache(CacheManager.CacheType.QUERY_RESULT);
+    }
+
+    @Override
+    public CacheManager.CacheManagerStats getStats() {
+        return cacheManager.getStats();
+    }
+
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
+    /**
+     * 估算消息列表占用的字节数
+     */
+    static long estimateBytes(List<Message> messages) {
+        long bytes = 0;
+        for (Message message : messages) {
+            bytes += MESSAGE_OVERHEAD_BYTES + chars(message.getContent()) * 2L + chars(message.getSubtype()) * 2L;
+            Map<String, Object> metadata = message.getMetadata();
+            if (metadata != null) {
+                for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                    bytes += 2L * (chars(entry.getKey()) + chars(String.valueOf(entry.getValue())));
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static int chars(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * 缓存值，创建时计算一次字节数
+     */
+    private static final class CachedResult implements CacheManager.Weighted {
+        private final List<Message> messages;
+        private final long bytes;
+
+        CachedResult(List<Message> messages) {
+            this.messages = Collections.unmodifiableList(messages);
+            this.bytes = estimateBytes(messages);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return bytes;
+        }
+    }
+}
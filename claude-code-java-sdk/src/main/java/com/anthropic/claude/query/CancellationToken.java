@@ -0,0 +1,189 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 请求级截止时间与取消令牌
+ *
+ * 随 {@link QueryRequest} 在查询链路中传递：排队、Hook、执行策略和进程管理都以 {@link #remaining(Duration)}
+ * 作为自己的超时时间，使整条链路共享同一个截止时间；调用 {@link #cancel(String)} 时依次执行登记的回调，
+ * 由各层终止CLI进程树、中断PTY会话或移出队列。
+ *
+ * 通过 {@link #child(Duration)} 派生的子令牌继承父令牌的取消和更早的截止时间，子令牌的取消不影响父令牌。
+ *
+ * @author Claude Code SDK
+ */
+public final class CancellationToken {
+    private static final Logger logger = LoggerFactory.getLogger(CancellationToken.class);
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final long deadlineNanos;
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile String cancelReason;
+    private Registration parentRegistration;
+
+    private CancellationToken(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 创建没有截止时间的令牌
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(NO_DEADLINE);
+    }
+
+    /**
+     * 创建从现在起经过 timeout 后到期的令牌
+     */
+    public static CancellationToken withDeadline(Duration timeout) {
+        return new CancellationToken(deadlineAfter(timeout));
+    }
+
+    /**
+     * 派生子令牌，截止时间取本令牌与 timeout 中较早者，本令牌取消时子令牌随之取消
+     *
+     * 子令牌使用完毕后应调用 {@link #close()}，解除与本令牌的关联
+     *
+     * @param timeout 子令牌的超时时间，null表示只继承本令牌的截止时间
+     */
+    public CancellationToken child(Duration timeout) {
+        long deadline = timeout != null ? Math.min(deadlineNanos, deadlineAfter(timeout)) : deadlineNanos;
+        CancellationToken child = new CancellationToken(deadline);
+        child.parentRegistration = onCancel(() -> child.cancel(cancelReason));
+        return child;
+    }
+
+    /**
+     * 取消令牌并执行已登记的回调，只有第一次调用生效
+     *
+     * @param reason 取消原因，用于日志和异常信息
+     */
+    public void cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (callbacks) {
+            if (cancelReason != null) {
+                return;
+            }
+            cancelReason = reason != null ? reason : "已取消";
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+
+        logger.debug("请求已取消: {}，执行 {} 个取消回调", cancelReason, toRun.size());
+        for (Runnable callback : toRun) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                logger.warn("执行取消回调失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 登记取消回调，令牌已取消时立即在当前线程执行
+     *
+     * @return 登记句柄，关闭后回调不再执行
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (callbacks) {
+            if (cancelReason == null) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (callbacks) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> { };
+    }
+
+    /**
+     * 结束令牌的作用域：清除尚未执行的回调并解除与父令牌的关联
+     */
+    public void close() {
+        synchronized (callbacks) {
+            callbacks.clear();
+        }
+        Registration registration = parentRegistration;
+        if (registration != null) {
+            registration.close();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    public String getCancelReason() {
+        return cancelReason;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != NO_DEADLINE;
+    }
+
+    /**
+     * 是否已超过截止时间
+     */
+    public boolean isExpired() {
+        return hasDeadline() && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 距截止时间的剩余时间，不会小于0
+     *
+     * @param fallback 没有截止时间时使用的超时时间；有截止时间时取两者中较短者，null表示不限
+     */
+    public Duration remaining(Duration fallback) {
+        if (!hasDeadline()) {
+            return fallback;
+        }
+        Duration remaining = Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+        return fallback != null && fallback.compareTo(remaining) < 0 ? fallback : remaining;
+    }
+
+    /**
+     * 令牌已取消或已超过截止时间时抛出异常
+     *
+     * @throws ClaudeCodeException 错误码为 QUERY_CANCELLED 或 QUERY_DEADLINE_EXCEEDED
+     */
+    public void throwIfCancelled() throws ClaudeCodeException {
+        if (cancelReason != null) {
+            throw new ClaudeCodeException("QUERY_CANCELLED", "请求已取消: " + cancelReason);
+        }
+        if (isExpired()) {
+            throw new ClaudeCodeException("QUERY_DEADLINE_EXCEEDED", "请求已超过截止时间");
+        }
+    }
+
+    private static long deadlineAfter(Duration timeout) {
+        long nanos;
+        try {
+            nanos = timeout.toNanos();
+        } catch (ArithmeticException e) {
+            return NO_DEADLINE;
+        }
+        long now = System.nanoTime();
+        // 超长超时视为没有截止时间，避免溢出
+        return nanos >= NO_DEADLINE - Math.max(0, now) ? NO_DEADLINE : now + nanos;
+    }
+
+    /**
+     * 取消回调的登记句柄
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -1,6 +1,8 @@
 package com.anthropic.claude.query;
 
 import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.streaming.PublisherAsyncIterator;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Observable;
 
 import java.time.Duration;
@@ -46,6 +48,21 @@ public class QueryBuilder {
         return this;
     }
 
+    public QueryBuilder withPriority(QueryPriority priority) {
+        requestBuilder.withPriority(priority);
+        return this;
+    }
+
+    public QueryBuilder withTenant(String tenant) {
+        requestBuilder.withTenant(tenant);
+        return this;
+    }
+
+    public QueryBuilder withCancellationToken(CancellationToken cancellationToken) {
+        requestBuilder.withCancellationToken(cancellationToken);
+        return this;
+    }
+
     public CompletableFuture<String> execute() {
         return queryService.queryAsync(requestBuilder.build())
                 .thenApply(messages -> messages
@@ -60,4 +77,12 @@ public class QueryBuilder {
     public Observable<Message> observe() {
         return queryService.queryStream(requestBuilder.build());
     }
+
+    public Flowable<Message> flowable() {
+        return queryService.queryFlowable(requestBuilder.build());
+    }
+
+    public PublisherAsyncIterator<Message> iterator() {
+        return queryService.queryIterator(requestBuilder.build());
+    }
 }
\ No newline at end of file
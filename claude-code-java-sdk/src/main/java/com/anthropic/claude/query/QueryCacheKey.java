@@ -0,0 +1,123 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.config.ClaudeCodeOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 查询结果缓存键
+ *
+ * 对影响CLI输出的请求字段（提示词、工具、上下文、maxTokens、温度、会话参数）做规范化后取SHA-256。
+ * 每个字段带标记和长度前缀，避免字段拼接产生歧义；工具列表排序后参与计算，顺序不同视为同一请求。
+ * 超时和元数据不影响输出，不参与计算。
+ * 配置中同样影响输出的部分（CLI路径、执行模式、附加参数如 --model、环境变量）通过 {@link #of(QueryRequest, ClaudeCodeOptions)}
+ * 一并计入，避免磁盘缓存在重启后把其他模型或配置下的结果返回给当前配置。
+ *
+ * @author Claude Code SDK
+ */
+public final class QueryCacheKey {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private QueryCacheKey() {
+    }
+
+    /**
+     * 计算请求的缓存键
+     *
+     * @param request 查询请求
+     * @return 64位十六进制字符串
+     */
+    public static String of(QueryRequest request) {
+        return of(request, null);
+    }
+
+    /**
+     * 计算请求在指定配置下的缓存键
+     *
+     * @param request 查询请求
+     * @param options 执行请求的配置，为null时只按请求字段计算
+     * @return 64位十六进制字符串
+     */
+    public static String of(QueryRequest request, ClaudeCodeOptions options) {
+        MessageDigest digest = newDigest();
+
+        if (options != null) {
+            update(digest, 'P', options.getCliPath());
+            update(digest, 'M', options.getCliMode() != null ? options.getCliMode().name() : null);
+            // 附加参数的顺序有意义（如 --model x），按原顺序参与计算
+            List<String> args = options.getAdditionalArgs();
+            digest.update(intBytes('a', args != null ? args.size() : 0));
+            if (args != null) {
+                for (String arg : args) {
+                    update(digest, 'A', arg);
+                }
+            }
+            Map<String, String> environment = options.getEnvironment() != null
+                ? new TreeMap<>(options.getEnvironment()) : new TreeMap<>();
+            digest.update(intBytes('e', environment.size()));
+            for (Map.Entry<String, String> entry : environment.entrySet()) {
+                update(digest, 'E', entry.getKey());
+                update(digest, 'V', entry.getValue());
+            }
+        }
+
+        update(digest, 'p', request.getPrompt());
+
+        String[] tools = request.getTools();
+        Arrays.sort(tools);
+        digest.update(intBytes('t', tools.length));
+        for (String tool : tools) {
+            update(digest, 'T', tool);
+        }
+
+        update(digest, 'c', request.getContext());
+        update(digest, 'm', request.getMaxTokens() != null ? request.getMaxTokens().toString() : null);
+        // 使用位模式保证 0.7 与 0.70 等写法得到相同的键
+        update(digest, 'r', request.getTemperature() != null
+            ? Long.toHexString(Double.doubleToLongBits(request.getTemperature())) : null);
+        update(digest, 's', request.getResumeSessionId());
+        digest.update(intBytes('l', request.isContinueLastSession() ? 1 : 0));
+
+        return toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, char tag, String value) {
+        if (value == null) {
+            digest.update(intBytes(tag, -1));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(intBytes(tag, bytes.length));
+        digest.update(bytes);
+    }
+
+    private static byte[] intBytes(char tag, int value) {
+        return ByteBuffer.allocate(6).putChar(tag).putInt(value).array();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Java平台规范要求必须提供SHA-256
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,215 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.config.BlockingExecutors;
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import io.reactivex.rxjava3.core.Observable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 在途查询合并（single-flight）
+ *
+ * 相同键的请求在执行期间到达时不再启动新的CLI进程，而是等待并共享第一个请求的结果。
+ * 同步查询共享同一个消息列表：共享执行在独立线程上以脱离调用方的令牌运行，包括第一个请求在内的所有调用方都只是等待者，
+ * 按自己的截止时间等待，被取消时立即脱离等待；最后一个等待者脱离时取消共享执行的令牌，终止CLI进程。
+ * 流式查询共享同一个上游，后加入的订阅者先重放已产生的消息再接收后续消息。
+ * 执行结束后立即移除在途记录，之后到达的请求重新执行（或由结果缓存命中）。
+ *
+ * @author Claude Code SDK
+ */
+final class QueryCoalescer {
+
+    private final ConcurrentHashMap<String, Flight> inFlightQueries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Observable<Message>> inFlightStreams = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedQueries = new AtomicLong();
+    private final AtomicLong coalescedStreams = new AtomicLong();
+    private final Executor executor;
+
+    /**
+     * 共享执行使用每个任务一个线程的执行器：执行期间调用方线程都在等待，
+     * 放在调用方所在的有界线程池上可能因线程耗尽而互相等待
+     */
+    QueryCoalescer() {
+        this(BlockingExecutors.threadPerTask("claude-coalesced-query-"));
+    }
+
+    QueryCoalescer(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 查询执行
+     */
+    @FunctionalInterface
+    interface Execution {
+        /**
+         * @param scope 共享执行的令牌，截止时间继承第一个请求，所有等待者取消后被取消
+         */
+        List<Message> execute(CancellationToken scope) throws Exception;
+    }
+
+    /**
+     * 执行查询，相同键的查询正在执行时等待其结果
+     *
+     * @param key 请求键
+     * @param token 调用方的取消令牌，决定等待结果的截止时间
+     * @param execution 实际执行逻辑，只由第一个到达的请求启动
+     * @return 不可修改的消息列表，合并的请求共享同一实例
+     * @throws Exception 执行失败时，所有合并的请求都抛出同一异常；等待者被取消或超过截止时间时只有该等待者抛出异常
+     */
+    List<Message> execute(String key, CancellationToken token, Execution execution) throws Exception {
+        while (true) {
+            Flight existing = inFlightQueries.get(key);
+            if (existing == null) {
+                Flight flight = new Flight(key, token.remaining(null));
+                if (inFlightQueries.putIfAbsent(key, flight) == null) {
+                    start(flight, execution);
+                    return await(flight, token);
+                }
+            } else if (existing.join()) {
+                coalescedQueries.incrementAndGet();
+                return await(existing, token);
+            } else {
+                // 所有等待者都已离开、正在取消的执行不再接纳新的等待者
+                inFlightQueries.remove(key, existing);
+            }
+        }
+    }
+
+    /**
+     * 获取流式查询的共享上游
+     *
+     * 所有订阅者取消后上游随之取消；上游结束后移除在途记录。
+     *
+     * @param key 请求键
+     * @param source 创建实际流式查询，只在没有在途上游时调用
+     * @return 可被多个订阅者共享的流
+     */
+    Observable<Message> stream(String key, Supplier<Observable<Message>> source) {
+        AtomicReference<Observable<Message>> created = new AtomicReference<>();
+        Observable<Message> shared = inFlightStreams.computeIfAbsent(key, k -> {
+            Observable<Message> upstream = source.get()
+                .doFinally(() -> inFlightStreams.remove(k, created.get()))
+                .replay()
+                .refCount();
+            created.set(upstream);
+            return upstream;
+        });
+        if (shared != created.get()) {
+            coalescedStreams.incrementAndGet();
+        }
+        return shared;
+    }
+
+    long getCoalescedQueries() {
+        return coalescedQueries.get();
+    }
+
+    long getCoalescedStreams() {
+        return coalescedStreams.get();
+    }
+
+    int getInFlightCount() {
+        return inFlightQueries.size() + inFlightStreams.size();
+    }
+
+    private void start(Flight flight, Execution execution) {
+        Runnable task = () -> {
+            try {
+                flight.result.complete(List.copyOf(execution.execute(flight.scope)));
+            } catch (Throwable e) {
+                flight.result.completeExceptionally(e);
+            } finally {
+                inFlightQueries.remove(flight.key, flight);
+                flight.scope.close();
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            inFlightQueries.remove(flight.key, flight);
+            flight.result.completeExceptionally(
+                new ClaudeCodeException("QUERY_REJECTED", "无法启动合并查询的执行", e));
+        }
+    }
+
+    /**
+     * 通过派生的Future等待，取消时只结束这个等待者；最后一个等待者离开时取消共享执行
+     */
+    private List<Message> await(Flight flight, CancellationToken token) throws Exception {
+        CompletableFuture<List<Message>> waiter = flight.result.thenApply(result -> result);
+        CancellationToken.Registration registration = token.onCancel(() -> waiter.completeExceptionally(
+            new ClaudeCodeException("QUERY_CANCELLED", "请求已取消: " + token.getCancelReason())));
+        try {
+            Duration remaining = token.remaining(null);
+            return remaining != null ? waiter.get(remaining.toNanos(), TimeUnit.NANOSECONDS) : waiter.get();
+        } catch (TimeoutException e) {
+            throw new ClaudeCodeException("QUERY_DEADLINE_EXCEEDED", "等待合并的查询结果超过截止时间", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            registration.close();
+            if (flight.leave()) {
+                inFlightQueries.remove(flight.key, flight);
+                flight.scope.cancel("合并查询的所有等待者均已取消");
+            }
+        }
+    }
+
+    /**
+     * 一次共享执行及其等待者计数
+     */
+    private static final class Flight {
+        private final String key;
+        private final CancellationToken scope;
+        private final CompletableFuture<List<Message>> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger(1);
+
+        Flight(String key, Duration deadline) {
+            this.key = key;
+            this.scope = deadline != null ? CancellationToken.withDeadline(deadline) : CancellationToken.create();
+        }
+
+        /**
+         * 加入等待，执行已被所有等待者放弃时返回false
+         */
+        boolean join() {
+            while (true) {
+                int current = waiters.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 离开等待，返回是否为最后一个离开且执行尚未结束
+         */
+        boolean leave() {
+            return waiters.decrementAndGet() == 0 && !result.isDone();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.anthropic.claude.query;
+
+/**
+ * 查询优先级枚举，按从高到低的顺序声明
+ *
+ * @author Claude Code SDK
+ */
+public enum QueryPriority {
+    /**
+     * 交互式请求
+     * 用户在界面上等待结果，优先调度
+     */
+    INTERACTIVE("交互式"),
+
+    /**
+     * 普通请求（默认）
+     */
+    NORMAL("普通"),
+
+    /**
+     * 批量请求
+     * 夜间任务等对延迟不敏感的请求，仅在高优先级请求空闲或等待过久时调度
+     */
+    BATCH("批量");
+
+    private final String description;
+
+    QueryPriority(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 获取默认优先级
+     */
+    public static QueryPriority getDefault() {
+        return NORMAL;
+    }
+}
@@ -14,6 +14,11 @@ public class QueryRequest {
     private final Map<String, Object> metadata;
     private final String resumeSessionId;
     private final boolean continueLastSession;
+    private final boolean cacheable;
+    private final QueryPriority priority;
+    private final String tenant;
+    private final String conversationKey;
+    private final CancellationToken cancellationToken;
 
     private QueryRequest(Builder builder) {
         this.prompt = builder.prompt;
@@ -25,6 +30,34 @@ public class QueryRequest {
         this.metadata = builder.metadata;
         this.resumeSessionId = builder.resumeSessionId;
         this.continueLastSession = builder.continueLastSession;
+        this.cacheable = builder.cacheable;
+        this.priority = builder.priority;
+        this.tenant = builder.tenant;
+        this.conversationKey = builder.conversationKey;
+        this.cancellationToken = builder.cancellationToken != null
+            ? builder.cancellationToken
+            : CancellationToken.create();
+    }
+
+    /**
+     * 复制请求并替换提示词、取消令牌和会话参数，用于派生单次执行的作用域或恢复会话的重试请求
+     */
+    private QueryRequest(QueryRequest source, String prompt, CancellationToken cancellationToken,
+                         String resumeSessionId, boolean continueLastSession) {
+        this.prompt = prompt;
+        this.tools = source.tools;
+        this.context = source.context;
+        this.maxTokens = source.maxTokens;
+        this.temperature = source.temperature;
+        this.timeout = source.timeout;
+        this.metadata = source.metadata;
+        this.resumeSessionId = resumeSessionId;
+        this.continueLastSession = continueLastSession;
+        this.cacheable = source.cacheable;
+        this.priority = source.priority;
+        this.tenant = source.tenant;
+        this.conversationKey = source.conversationKey;
+        this.cancellationToken = cancellationToken;
     }
 
     public String getPrompt() {
@@ -63,6 +96,52 @@ public class QueryRequest {
         return continueLastSession;
     }
 
+    /**
+     * 是否允许使用查询结果缓存以及与相同的在途请求合并，默认允许
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * 调度优先级，默认 {@link QueryPriority#NORMAL}
+     */
+    public QueryPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 租户标识，用于在同一优先级内按权重公平调度，未指定时返回null
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * 会话键，未指定时返回null，此时请求不会与其他请求共享常驻进程的会话
+     */
+    public String getConversationKey() {
+        return conversationKey;
+    }
+
+    /**
+     * 请求的取消令牌，未指定时为没有截止时间的独立令牌
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    QueryRequest withScope(CancellationToken scope) {
+        return new QueryRequest(this, prompt, scope, resumeSessionId, continueLastSession);
+    }
+
+    /**
+     * 复制请求，改为在指定会话中以新的提示词继续
+     */
+    QueryRequest withContinuation(String sessionId, String continuationPrompt) {
+        return new QueryRequest(this, continuationPrompt, cancellationToken, sessionId, false);
+    }
+
     public static Builder builder(String prompt) {
         return new Builder(prompt);
     }
@@ -77,6 +156,11 @@ public class QueryRequest {
         private Map<String, Object> metadata = new HashMap<>();
         private String resumeSessionId;
         private boolean continueLastSession;
+        private boolean cacheable = true;
+        private QueryPriority priority = QueryPriority.getDefault();
+        private String tenant;
+        private String conversationKey;
+        private CancellationToken cancellationToken;
 
         private Builder(String prompt) {
             this.prompt = prompt;
@@ -122,6 +206,48 @@ public class QueryRequest {
             return this;
         }
 
+        /**
+         * 设置为false时跳过查询结果缓存（既不读取也不写入）和在途请求合并
+         */
+        public Builder withCacheable(boolean cacheable) {
+            this.cacheable = cacheable;
+            return this;
+        }
+
+        /**
+         * 设置调度优先级，仅在启用请求调度时生效
+         */
+        public Builder withPriority(QueryPriority priority) {
+            this.priority = priority != null ? priority : QueryPriority.getDefault();
+            return this;
+        }
+
+        /**
+         * 设置租户标识，同一优先级内不同租户按权重分享执行槽位
+         */
+        public Builder withTenant(String tenant) {
+            this.tenant = tenant;
+            return this;
+        }
+
+        /**
+         * 设置会话键，进程池模式下同一租户、同一会话键的请求复用同一常驻进程，后续请求可以看到之前的对话；
+         * 未设置时每个请求独占一个常驻进程，不共享会话
+         */
+        public Builder withConversationKey(String conversationKey) {
+            this.conversationKey = conversationKey;
+            return this;
+        }
+
+        /**
+         * 设置取消令牌，调用其 cancel 方法会终止该请求的排队或执行；
+         * 令牌的截止时间与 timeout 同时生效，以先到者为准
+         */
+        public Builder withCancellationToken(CancellationToken cancellationToken) {
+            this.cancellationToken = cancellationToken;
+            return this;
+        }
+
         public QueryRequest build() {
             return new QueryRequest(this);
         }
@@ -0,0 +1,51 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.performance.CacheManager;
+
+import java.util.List;
+
+/**
+ * 查询结果缓存
+ *
+ * 位于 {@link QueryService} 执行查询之前，键由 {@link QueryCacheKey} 计算。
+ * 可通过 {@link com.anthropic.claude.config.ClaudeCodeOptions.Builder#queryResultCache(QueryResultCache)} 替换实现。
+ *
+ * @author Claude Code SDK
+ */
+public interface QueryResultCache {
+
+    /**
+     * 读取缓存结果
+     *
+     * @param key 缓存键
+     * @return 缓存的消息列表，未命中时返回null
+     */
+    List<Message> get(String key);
+
+    /**
+     * 写入查询结果
+     *
+     * @param key 缓存键
+     * @param messages 消息列表
+     */
+    void put(String key, List<Message> messages);
+
+    /**
+     * 清空缓存
+     */
+    void invalidateAll();
+
+    /**
+     * 缓存统计信息，实现不支持时返回null
+     */
+    default CacheManager.CacheManagerStats getStats() {
+        return null;
+    }
+
+    /**
+     * 释放缓存持有的资源，QueryService关闭时调用
+     */
+    default void close() {
+    }
+}
@@ -1,6 +1,8 @@
 package com.anthropic.claude.query;
 
+import com.anthropic.claude.config.BlockingExecutors;
 import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.config.CliMode;
 import com.anthropic.claude.exceptions.ClaudeCodeException;
 import com.anthropic.claude.exceptions.ProcessExecutionException;
 import com.anthropic.claude.hooks.HookContext;
@@ -8,34 +10,67 @@ import com.anthropic.claude.hooks.HookResult;
 import com.anthropic.claude.hooks.HookService;
 import com.anthropic.claude.messages.Message;
 import com.anthropic.claude.messages.MessageParser;
+import com.anthropic.claude.messages.MessageType;
+import com.anthropic.claude.performance.AdaptiveConcurrencyLimiter;
+import com.anthropic.claude.performance.RequestScheduler;
+import com.anthropic.claude.performance.CacheManager;
+import com.anthropic.claude.performance.DiskCacheStore;
 import com.anthropic.claude.process.ProcessManager;
 import com.anthropic.claude.process.StreamHandler;
 import com.anthropic.claude.pty.PtyManager;
 import com.anthropic.claude.strategy.CliExecutionStrategy;
 import com.anthropic.claude.strategy.CliExecutionStrategyFactory;
+import com.anthropic.claude.strategy.ConcurrencyLimitedStrategy;
+import com.anthropic.claude.streaming.AsyncIterator;
+import com.anthropic.claude.streaming.DemandGatedPublisher;
+import com.anthropic.claude.streaming.PublisherAsyncIterator;
+import com.anthropic.claude.streaming.StreamStateManager;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.reactivestreams.FlowAdapters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 public class QueryService {
     private static final Logger logger = LoggerFactory.getLogger(QueryService.class);
 
+    /**
+     * 恢复被中断的流时发送的续写提示，让模型在同一会话中接着上一轮的输出继续
+     */
+    private static final String CONTINUATION_PROMPT =
+        "Continue your previous response exactly where it was interrupted. Do not repeat anything you already wrote.";
+
     private final ProcessManager processManager;
     private final PtyManager ptyManager;
     private final HookService hookService;
     private final ClaudeCodeOptions options;
     private final MessageParser messageParser;
     private final AtomicInteger queryCounter = new AtomicInteger(0);
+    private final QueryResultCache resultCache;
+    private final QueryCoalescer coalescer;
+    private final StreamStateManager streamStateManager;
+    private final Executor streamExecutor;
 
     private CliExecutionStrategy executionStrategy;
 
@@ -45,6 +80,10 @@ public class QueryService {
         this.hookService = hookService;
         this.options = options;
         this.messageParser = new MessageParser();
+        this.resultCache = createResultCache(options);
+        this.coalescer = options.isQueryCoalescingEnabled() ? new QueryCoalescer() : null;
+        this.streamStateManager = new StreamStateManager(options.getStreamReplayBufferSize());
+        this.streamExecutor = createStreamExecutor(options);
 
         // 初始化执行策略
         initializeExecutionStrategy();
@@ -63,45 +102,263 @@ public class QueryService {
                 logger.warn("异步查询执行失败，已降级为空结果", e);
                 return java.util.stream.Stream.empty();
             }
-        });
+        }, options.getBlockingExecutor());
     }
 
+    /**
+     * 流式查询，取消订阅时取消本次执行的令牌，终止仍在运行的CLI进程
+     */
     public Observable<Message> queryStream(QueryRequest request) {
+        return createStream(request, true);
+    }
+
+    /**
+     * 支持背压的流式查询
+     *
+     * 下游没有未满足的请求时读取CLI输出的线程暂停读取，CLI进程随stdout管道写满而阻塞，
+     * 慢消费者不会导致消息在SDK内无限堆积。共享上游需要为后加入的订阅者缓存全部消息，
+     * 因此背压查询不与在途请求合并。
+     *
+     * 读取线程在整个流的生命周期内都可能阻塞，阻塞任务执行器为公共ForkJoinPool时改用独立线程，
+     * 避免慢消费者占满公共池
+     */
+    public Flowable<Message> queryFlowable(QueryRequest request) {
+        return Flowable.fromPublisher(new DemandGatedPublisher<>(createStream(request, false), streamExecutor));
+    }
+
+    /**
+     * {@link #queryFlowable(QueryRequest)} 的 {@link Flow.Publisher} 形式
+     */
+    public Flow.Publisher<Message> queryPublisher(QueryRequest request) {
+        return FlowAdapters.toFlowPublisher(queryFlowable(request));
+    }
+
+    /**
+     * 以 {@link AsyncIterator} 形式逐批拉取流式查询结果
+     *
+     * 基于 {@link #queryFlowable(QueryRequest)}，迭代器停止拉取时CLI输出读取随之暂停；
+     * 不再需要剩余结果时调用 {@link PublisherAsyncIterator#close()} 终止查询。
+     */
+    public PublisherAsyncIterator<Message> queryIterator(QueryRequest request) {
+        return new PublisherAsyncIterator<>(queryFlowable(request));
+    }
+
+    /**
+     * 可恢复的流式查询
+     *
+     * 交付给下游的每条消息都记入流的检查点。执行出错时最多重试 maxRetries 次；对已交付过消息的流再次调用时
+     * 同样从检查点继续。
+     *
+     * 检查点有会话ID时，重试以 --resume 恢复该CLI会话，不再发送原提示词，而是发送续写提示让模型从中断处
+     * 接着输出。会话记录中已包含已交付的消息，续写轮次的输出全部交给下游，接在已交付的消息之后。
+     *
+     * 检查点没有会话ID（CLI尚未输出会话信息就失败）时只能重新执行原请求并跳过已交付的消息，
+     * 这只适用于输出确定的请求：被跳过的前缀逐条与回放缓冲中已交付的消息比对（类型和内容），
+     * 不一致、输出短于已交付部分或回放缓冲已不保留任何已交付消息时以 STREAM_DIVERGED 结束流且不再重试，
+     * 不会把两次生成拼接交给下游。
+     * 流被 {@link StreamStateManager#pauseStream(String)} 暂停期间，读取CLI输出的线程阻塞直到恢复。
+     *
+     * @param streamId 由 {@link StreamStateManager#createStream(String)} 创建的流ID
+     */
+    public Flowable<Message> queryResumable(String streamId, QueryRequest request) {
+        if (streamStateManager.getStreamState(streamId) == null) {
+            throw new ClaudeCodeException("STREAM_NOT_FOUND", "流不存在: " + streamId);
+        }
+        return Flowable.defer(() -> resumeFromCheckpoint(streamId, request))
+            .retry(options.getMaxRetries(), error -> shouldRetryStream(streamId, request, error))
+            .doOnComplete(() -> streamStateManager.completeStream(streamId))
+            .doOnError(error -> {
+                StreamStateManager.StreamState state = streamStateManager.getStreamState(streamId);
+                if (state != null && state.getStatus() != StreamStateManager.StreamStatus.ERROR) {
+                    streamStateManager.markStreamError(streamId, error);
+                }
+            });
+    }
+
+    public StreamStateManager getStreamStateManager() {
+        return streamStateManager;
+    }
+
+    private Flowable<Message> resumeFromCheckpoint(String streamId, QueryRequest request) {
+        StreamStateManager.StreamCheckpoint checkpoint = streamStateManager.getCheckpoint(streamId);
+        if (checkpoint == null) {
+            return Flowable.error(new ClaudeCodeException("STREAM_NOT_FOUND", "流不存在: " + streamId));
+        }
+
+        long delivered = checkpoint.getDeliveredOffset();
+        StreamStateManager.StreamState state = streamStateManager.getStreamState(streamId);
+        if (state != null && state.getStatus() != StreamStateManager.StreamStatus.PAUSED) {
+            streamStateManager.updateStreamStatus(streamId, StreamStateManager.StreamStatus.RUNNING);
+        }
+
+        if (delivered > 0 && checkpoint.getSessionId() != null) {
+            logger.info("从检查点恢复流 {}: 在会话 {} 中续写，已交付 {} 条消息",
+                streamId, checkpoint.getSessionId(), delivered);
+            return deliver(streamId, trackSession(streamId,
+                queryFlowable(request.withContinuation(checkpoint.getSessionId(), CONTINUATION_PROMPT))));
+        }
+        if (delivered > 0) {
+            logger.info("从检查点恢复流 {}: 没有会话ID，重新执行并跳过 {} 条已交付消息", streamId, delivered);
+        }
+        if (delivered > 0 && checkpoint.getReplayStartOffset() >= delivered) {
+            return Flowable.error(new ClaudeCodeException("STREAM_DIVERGED",
+                "回放缓冲已不保留已交付的消息，无法确认重新执行的输出与已交付部分一致: " + streamId));
+        }
+        List<Message> replay = streamStateManager.getReplay(streamId, checkpoint.getReplayStartOffset());
+        long replayStart = checkpoint.getReplayStartOffset();
+        AtomicLong position = new AtomicLong();
+        AtomicReference<String> sessionId = new AtomicReference<>();
+
+        return deliver(streamId, queryFlowable(request)
+            .filter(message -> {
+                long index = position.getAndIncrement();
+                if (message.getSessionId() != null) {
+                    sessionId.set(message.getSessionId());
+                }
+                if (index < delivered && index >= replayStart
+                        && !isSameMessage(replay.get((int) (index - replayStart)), message)) {
+                    throw new ClaudeCodeException("STREAM_DIVERGED", String.format(
+                        "重新执行的输出在第 %d 条消息处与已交付的消息不一致: %s", index, streamId));
+                }
+                // 前缀核对完成之前不记录会话：这次执行在前缀内中断时，其会话并不包含全部已交付的消息，不能用于续写
+                if (index >= delivered - 1) {
+                    streamStateManager.updateSessionId(streamId, sessionId.get());
+                }
+                return index >= delivered;
+            })
+            .concatWith(Flowable.defer(() -> position.get() < delivered
+                ? Flowable.error(new ClaudeCodeException("STREAM_DIVERGED", String.format(
+                    "重新执行的输出只有 %d 条消息，少于已交付的 %d 条: %s", position.get(), delivered, streamId)))
+                : Flowable.empty())));
+    }
+
+    /**
+     * 记录输出中的会话ID，供下一次重试续写
+     */
+    private Flowable<Message> trackSession(String streamId, Flowable<Message> messages) {
+        return messages.doOnNext(message -> streamStateManager.updateSessionId(streamId, message.getSessionId()));
+    }
+
+    /**
+     * 暂停期间阻塞，交付后推进检查点
+     */
+    private Flowable<Message> deliver(String streamId, Flowable<Message> messages) {
+        return messages
+            .doOnNext(message -> {
+                streamStateManager.awaitResumed(streamId);
+                streamStateManager.recordDelivery(streamId, message);
+            });
+    }
+
+    private static boolean isSameMessage(Message delivered, Message replayed) {
+        return delivered.getType() == replayed.getType()
+            && Objects.equals(delivered.getContent(), replayed.getContent());
+    }
+
+    /**
+     * 取消、超过截止时间和输出分歧不重试，其余错误视为可恢复的暂时故障
+     */
+    private boolean shouldRetryStream(String streamId, QueryRequest request, Throwable error) {
+        streamStateManager.markStreamError(streamId, error);
+        CancellationToken token = request.getCancellationToken();
+        if (token.isCancelled() || token.isExpired()) {
+            return false;
+        }
+        if (error instanceof ClaudeCodeException) {
+            String code = ((ClaudeCodeException) error).getErrorCode();
+            if ("QUERY_CANCELLED".equals(code) || "QUERY_DEADLINE_EXCEEDED".equals(code)
+                    || "STREAM_DIVERGED".equals(code)) {
+                return false;
+            }
+        }
+        return streamStateManager.retryStream(streamId);
+    }
+
+    private Observable<Message> createStream(QueryRequest request, boolean coalesce) {
         return Observable.create(emitter -> {
+            CancellationToken scope = request.getCancellationToken().child(resolveTimeout(request));
+            QueryRequest scoped = request.withScope(scope);
+            AtomicReference<Disposable> upstream = new AtomicReference<>();
+            AtomicBoolean terminated = new AtomicBoolean(false);
+
+            // 先登记取消逻辑：部分执行策略在订阅时同步阻塞直到进程结束，订阅返回前就需要能终止进程
+            emitter.setCancellable(() -> {
+                if (!terminated.get()) {
+                    scope.cancel("流式订阅已取消");
+                }
+                Disposable current = upstream.get();
+                if (current != null) {
+                    current.dispose();
+                }
+                scope.close();
+            });
+
             try {
-                HookContext preHookContext = createHookContext("pre_query", request, queryCounter.incrementAndGet());
+                HookContext preHookContext = createHookContext("pre_query", scoped, queryCounter.incrementAndGet());
                 HookResult preHookResult = hookService.executeHooks("pre_query", preHookContext);
 
                 if (!preHookResult.shouldContinue()) {
                     logger.warn("流式查询被Hook取消: {}", preHookResult.getMessage());
+                    terminated.set(true);
                     emitter.onComplete();
                     return;
                 }
+                scope.throwIfCancelled();
+
+                String requestKey = coalesce && coalescer != null ? requestKeyOf(scoped) : null;
+                Observable<Message> source = requestKey != null
+                    ? coalescer.stream(requestKey, () -> streamSource(detach(scoped)))
+                    : streamSource(scoped);
+                source.subscribe(new Observer<Message>() {
+                    @Override
+                    public void onSubscribe(Disposable disposable) {
+                        upstream.set(disposable);
+                        if (emitter.isDisposed()) {
+                            disposable.dispose();
+                        }
+                    }
 
-                // 使用策略执行流式查询
-                if (executionStrategy != null && executionStrategy.isAvailable()) {
-                    executionStrategy.executeStream(request).subscribe(
-                        emitter::onNext,
-                        emitter::onError,
-                        emitter::onComplete
-                    );
-                } else {
-                    logger.warn("执行策略不可用，使用传统流式处理");
-                    executeLegacyStreamingQuery(request, emitter);
-                }
+                    @Override
+                    public void onNext(Message message) {
+                        emitter.onNext(message);
+                    }
 
+                    @Override
+                    public void onError(Throwable error) {
+                        terminated.set(true);
+                        emitter.tryOnError(error);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        terminated.set(true);
+                        emitter.onComplete();
+                    }
+                });
             } catch (Exception e) {
-                emitter.onError(e);
+                terminated.set(true);
+                emitter.tryOnError(e);
             }
         });
     }
 
+    /**
+     * 实际执行流式查询的上游
+     */
+    private Observable<Message> streamSource(QueryRequest request) {
+        if (executionStrategy != null && executionStrategy.isAvailable()) {
+            return executionStrategy.executeStream(request);
+        }
+        logger.warn("执行策略不可用，使用传统流式处理");
+        return Observable.create(emitter -> executeLegacyStreamingQuery(request, emitter));
+    }
+
     /**
      * 初始化执行策略
      */
     private void initializeExecutionStrategy() {
         try {
-            if (ptyManager != null) {
+            if (ptyManager != null || options.getCliMode() == CliMode.POOLED) {
                 executionStrategy = CliExecutionStrategyFactory.createStrategy(
                     options, processManager, ptyManager, messageParser);
             } else {
@@ -109,6 +366,14 @@ public class QueryService {
                     processManager, messageParser, options);
             }
 
+            if (options.isRequestSchedulingEnabled()) {
+                executionStrategy = new ConcurrencyLimitedStrategy(executionStrategy,
+                    createRequestScheduler(options), options.getTimeout());
+            } else if (options.isConcurrencyLimitEnabled()) {
+                executionStrategy = new ConcurrencyLimitedStrategy(executionStrategy,
+                    createConcurrencyLimiter(options), options.getTimeout());
+            }
+
             executionStrategy.start();
             logger.info("执行策略初始化成功: {}", executionStrategy.getStrategyType());
 
@@ -118,6 +383,62 @@ public class QueryService {
         }
     }
 
+    private static AdaptiveConcurrencyLimiter createConcurrencyLimiter(ClaudeCodeOptions options) {
+        if (options.getConcurrencyLimiter() != null) {
+            return options.getConcurrencyLimiter();
+        }
+        int maxLimit = Math.max(1, options.getMaxConcurrency());
+        return AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(Math.min(maxLimit, Math.max(4, Runtime.getRuntime().availableProcessors())))
+            .maxLimit(maxLimit)
+            .maxQueueSize(options.getConcurrencyQueueSize())
+            .build();
+    }
+
+    /**
+     * 请求调度器以并发限制器的槽位为调度对象，未启用并发限制时使用固定为最大并发数的限制器
+     */
+    private static RequestScheduler createRequestScheduler(ClaudeCodeOptions options) {
+        AdaptiveConcurrencyLimiter limiter;
+        if (options.isConcurrencyLimitEnabled()) {
+            limiter = createConcurrencyLimiter(options);
+        } else {
+            int maxLimit = Math.max(1, options.getMaxConcurrency());
+            limiter = AdaptiveConcurrencyLimiter.builder()
+                .initialLimit(maxLimit)
+                .minLimit(maxLimit)
+                .maxLimit(maxLimit)
+                .build();
+        }
+        return RequestScheduler.builder(limiter)
+            .maxQueueSize(options.getConcurrencyQueueSize())
+            .starvationThreshold(options.getStarvationThreshold())
+            .concurrencyCaps(options.getPriorityConcurrencyCaps())
+            .tenantWeights(options.getTenantWeights())
+            .build();
+    }
+
+    /**
+     * 请求调度器统计，未启用请求调度时返回null
+     */
+    public RequestScheduler.SchedulerStats getSchedulerStats() {
+        if (executionStrategy instanceof ConcurrencyLimitedStrategy
+                && ((ConcurrencyLimitedStrategy) executionStrategy).getScheduler() != null) {
+            return ((ConcurrencyLimitedStrategy) executionStrategy).getScheduler().getStats();
+        }
+        return null;
+    }
+
+    /**
+     * CLI执行并发限制器统计，未启用并发限制时返回null
+     */
+    public AdaptiveConcurrencyLimiter.LimiterStats getConcurrencyStats() {
+        if (executionStrategy instanceof ConcurrencyLimitedStrategy) {
+            return ((ConcurrencyLimitedStrategy) executionStrategy).getLimiter().getStats();
+        }
+        return null;
+    }
+
     /**
      * 关闭QueryService，释放策略资源
      */
@@ -130,9 +451,25 @@ public class QueryService {
                 logger.error("关闭执行策略时发生错误", e);
             }
         }
+        if (resultCache != null) {
+            resultCache.close();
+        }
+        streamStateManager.shutdown();
     }
 
+    /**
+     * 为本次执行派生带截止时间的令牌，排队、Hook和执行共享同一截止时间
+     */
     private Stream<Message> executeQuery(QueryRequest request) throws ClaudeCodeException {
+        CancellationToken scope = request.getCancellationToken().child(resolveTimeout(request));
+        try {
+            return executeScopedQuery(request.withScope(scope));
+        } finally {
+            scope.close();
+        }
+    }
+
+    private Stream<Message> executeScopedQuery(QueryRequest request) throws ClaudeCodeException {
         int queryId = queryCounter.incrementAndGet();
         logger.debug("开始执行查询 {}: {}", queryId, request.getPrompt());
 
@@ -144,18 +481,33 @@ public class QueryService {
             return java.util.stream.Stream.empty();
         }
 
+        String requestKey = requestKeyOf(request);
+        String cacheKey = resultCache != null ? requestKey : null;
+        if (cacheKey != null) {
+            List<Message> cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                logger.debug("查询 {} 命中结果缓存", queryId);
+                HookContext postHookContext = createHookContext("post_query", request, queryId);
+                postHookContext.getData().put("messages", cached);
+                postHookContext.getData().put("cached", true);
+                hookService.executeHooks("post_query", postHookContext);
+                return cached.stream();
+            }
+        }
+
         try {
-            // 使用策略执行查询
-            Stream<Message> messages;
-            if (executionStrategy != null && executionStrategy.isAvailable()) {
-                messages = executionStrategy.execute(request);
+            request.getCancellationToken().throwIfCancelled();
+
+            List<Message> messageList;
+            if (coalescer != null && requestKey != null) {
+                // 合并的请求共享不可修改的结果，这里复制一份交给各自的Hook
+                messageList = new ArrayList<>(coalescer.execute(requestKey, request.getCancellationToken(),
+                    scope -> executeAndCache(request.withScope(scope), cacheKey)));
             } else {
-                logger.warn("执行策略不可用，使用传统方式执行查询");
-                messages = executeLegacyQuery(request);
+                messageList = executeAndCache(request, cacheKey);
             }
 
             HookContext postHookContext = createHookContext("post_query", request, queryId);
-            List<Message> messageList = messages.collect(java.util.stream.Collectors.toList());
             postHookContext.getData().put("messages", messageList);
             hookService.executeHooks("post_query", postHookContext);
 
@@ -163,7 +515,11 @@ public class QueryService {
             return messageList.stream();
 
         } catch (Exception e) {
-            logger.warn("查询 {} 执行异常", queryId, e);
+            if (request.getCancellationToken().isCancelled()) {
+                logger.debug("查询 {} 已取消: {}", queryId, request.getCancellationToken().getCancelReason());
+            } else {
+                logger.warn("查询 {} 执行异常", queryId, e);
+            }
 
             HookContext errorHookContext = createHookContext("query_error", request, queryId);
             errorHookContext.getData().put("error", e);
@@ -173,6 +529,128 @@ public class QueryService {
         }
     }
 
+    /**
+     * 执行查询并在结果可缓存时写入缓存
+     */
+    private List<Message> executeAndCache(QueryRequest request, String cacheKey) throws ClaudeCodeException {
+        Stream<Message> messages;
+        if (executionStrategy != null && executionStrategy.isAvailable()) {
+            messages = executionStrategy.execute(request);
+        } else {
+            logger.warn("执行策略不可用，使用传统方式执行查询");
+            messages = executeLegacyQuery(request);
+        }
+
+        List<Message> messageList = messages.collect(java.util.stream.Collectors.toList());
+        if (cacheKey != null && isCacheableResult(messageList)) {
+            resultCache.put(cacheKey, new ArrayList<>(messageList));
+        }
+        return messageList;
+    }
+
+    /**
+     * 合并执行的结果由多个调用方共享，只继承截止时间，单个调用方取消不会终止共享的执行
+     */
+    private static QueryRequest detach(QueryRequest request) {
+        Duration remaining = request.getCancellationToken().remaining(null);
+        return request.withScope(remaining != null
+            ? CancellationToken.withDeadline(remaining)
+            : CancellationToken.create());
+    }
+
+    private Duration resolveTimeout(QueryRequest request) {
+        return request.getTimeout() != null ? request.getTimeout() : options.getTimeout();
+    }
+
+    /**
+     * 背压流的读取线程执行器：公共ForkJoinPool线程数受CPU核数限制，且被JVM内其他任务共享，
+     * 不能承载按消费速度阻塞的读取；其他执行器由调用方按需要配置，直接使用
+     */
+    private static Executor createStreamExecutor(ClaudeCodeOptions options) {
+        Executor executor = options.getBlockingExecutor();
+        if (executor == ForkJoinPool.commonPool()) {
+            return BlockingExecutors.threadPerTask("claude-stream-");
+        }
+        return executor;
+    }
+
+    /**
+     * 计算用于缓存和合并的请求键，请求结果不可共享时返回null
+     * 继续上次会话、恢复指定会话或带会话键的请求依赖外部会话状态，会话每轮都会推进，
+     * 无法由请求字段确定结果，不参与缓存和合并
+     */
+    private String requestKeyOf(QueryRequest request) {
+        if ((resultCache == null && coalescer == null) || !request.isCacheable() || request.isContinueLastSession()
+            || request.getResumeSessionId() != null || request.getConversationKey() != null) {
+            return null;
+        }
+        return QueryCacheKey.of(request, options);
+    }
+
+    /**
+     * 空结果和包含错误消息的结果不写入缓存
+     */
+    private static boolean isCacheableResult(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return false;
+        }
+        for (Message message : messages) {
+            if (message.getType() == MessageType.ERROR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static QueryResultCache createResultCache(ClaudeCodeOptions options) {
+        if (!options.isQueryCacheEnabled()) {
+            return null;
+        }
+        if (options.getQueryResultCache() != null) {
+            return options.getQueryResultCache();
+        }
+
+        CacheManager.CacheConfig config = CacheManager.CacheConfig.builder()
+            .queryCacheTtl(options.getQueryCacheTtl())
+            .queryCacheMaxBytes(options.getQueryCacheMaxBytes())
+            .build();
+        QueryResultCache memory = new CacheManagerQueryResultCache(new CacheManager(config));
+        if (options.getQueryCacheDirectory() == null) {
+            return memory;
+        }
+
+        try {
+            DiskCacheStore disk = new DiskCacheStore(options.getQueryCacheDirectory(), options.getQueryDiskCacheMaxBytes());
+            return new TieredQueryResultCache(memory, disk, options.getQueryCacheTtl());
+        } catch (IOException e) {
+            logger.warn("打开磁盘缓存失败，只使用内存缓存: {}", e.getMessage());
+            return memory;
+        }
+    }
+
+    /**
+     * 查询结果缓存统计，未启用缓存或缓存实现不支持时返回null
+     */
+    public CacheManager.CacheManagerStats getCacheStats() {
+        return resultCache != null ? resultCache.getStats() : null;
+    }
+
+    /**
+     * 与在途请求合并而未单独执行的查询数，包括同步查询和流式查询
+     */
+    public long getCoalescedQueryCount() {
+        return coalescer != null ? coalescer.getCoalescedQueries() + coalescer.getCoalescedStreams() : 0;
+    }
+
+    /**
+     * 清空查询结果缓存
+     */
+    public void invalidateCache() {
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+    }
+
     private void executeStreamingQuery(QueryRequest request, StreamHandler streamHandler) throws ClaudeCodeException {
         int queryId = queryCounter.incrementAndGet();
         logger.debug("开始执行流式查询 {}: {}", queryId, request.getPrompt());
@@ -186,7 +664,8 @@ public class QueryService {
             List<String> command = buildStreamingCommand(request);
             Duration timeout = request.getTimeout() != null ? request.getTimeout() : options.getTimeout();
 
-            processManager.executeStreaming(command, streamHandler.getOutputConsumer(), timeout);
+            processManager.executeStreaming(command, streamHandler.getOutputConsumer(), timeout, null,
+                request.getCancellationToken());
             streamHandler.stop();
 
         } catch (ProcessExecutionException e) {
@@ -259,6 +738,7 @@ public class QueryService {
         data.put("query_id", queryId);
         data.put("request", request);
         data.put("prompt", request.getPrompt());
+        data.put("cancellation_token", request.getCancellationToken());
 
         return new HookContext(eventType, data, String.valueOf(queryId));
     }
@@ -288,10 +768,9 @@ public class QueryService {
             List<String> command = buildCommand(request);
             Duration timeout = request.getTimeout() != null ? request.getTimeout() : options.getTimeout();
 
-            ProcessResult result = processManager.executeSync(command, timeout);
-            String output = result.outputUTF8();
-
-            List<Message> messages = messageParser.parseMessages(output);
+            ProcessResult result = processManager.executeSync(command, timeout, request.getCancellationToken());
+            List<Message> messages = new ArrayList<>();
+            messageParser.parseMessageStream(new ByteArrayInputStream(result.output()), messages::add);
             return messages.stream();
 
         } catch (ProcessExecutionException e) {
@@ -311,8 +790,8 @@ public class QueryService {
             streamHandler.getOutputStream().subscribe(
                 line -> {
                     try {
-                        if (messageParser.isValidJson(line)) {
-                            Message message = messageParser.parseMessage(line);
+                        Message message = messageParser.parseStreamingLine(line);
+                        if (message != null) {
                             emitter.onNext(message);
                         }
                     } catch (Exception e) {
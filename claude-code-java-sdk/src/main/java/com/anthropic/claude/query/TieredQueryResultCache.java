@@ -0,0 +1,108 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.performance.CacheManager;
+import com.anthropic.claude.performance.DiskCacheStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 两级查询结果缓存
+ *
+ * 内存缓存未命中时读取 {@link DiskCacheStore}，命中后回填内存缓存；写入时同时写两级。
+ * 消息列表以JSON形式落盘。磁盘读写失败只记录日志并按未命中处理，不影响查询。
+ *
+ * @author Claude Code SDK
+ */
+public class TieredQueryResultCache implements QueryResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(TieredQueryResultCache.class);
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<List<Message>>() {};
+
+    private final QueryResultCache memory;
+    private final DiskCacheStore disk;
+    private final Duration ttl;
+    private final ObjectMapper mapper;
+
+    /**
+     * @param memory 内存缓存
+     * @param disk 磁盘缓存，关闭本缓存时一并关闭
+     * @param ttl 磁盘缓存条目的存活时间
+     */
+    public TieredQueryResultCache(QueryResultCache memory, DiskCacheStore disk, Duration ttl) {
+        this.memory = memory;
+        this.disk = disk;
+        this.ttl = ttl;
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModule(new JavaTimeModule());
+        this.mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Override
+    public List<Message> get(String key) {
+        List<Message> cached = memory.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            byte[] bytes = disk.get(key);
+            if (bytes == null) {
+                return null;
+            }
+            List<Message> messages = mapper.readValue(bytes, MESSAGE_LIST);
+            memory.put(key, messages);
+            return messages;
+        } catch (IOException e) {
+            logger.warn("读取磁盘缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, List<Message> messages) {
+        memory.put(key, messages);
+        try {
+            disk.put(key, mapper.writeValueAsBytes(messages), ttl);
+        } catch (IOException e) {
+            logger.warn("写入磁盘缓存失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        memory.invalidateAll();
+        try {
+            disk.clear();
+        } catch (IOException e) {
+            logger.warn("清空磁盘缓存失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public CacheManager.CacheManagerStats getStats() {
+        return memory.getStats();
+    }
+
+    public DiskCacheStore.DiskCacheStats getDiskStats() {
+        return disk.getStats();
+    }
+
+    @Override
+    public void close() {
+        memory.close();
+        try {
+            disk.close();
+        } catch (IOException e) {
+            logger.warn("关闭磁盘缓存失败: {}", e.getMessage());
+        }
+    }
+}
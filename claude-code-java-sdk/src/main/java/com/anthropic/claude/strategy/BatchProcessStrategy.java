@@ -11,10 +11,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessResult;
 
+import java.io.ByteArrayInputStream;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 /**
@@ -61,7 +61,8 @@ public class BatchProcessStrategy implements CliExecutionStrategy {
             logger.debug("批处理命令: {}", String.join(" ", command));
 
             ProcessResult result = processManager.executeSync(command,
-                request.getTimeout() != null ? request.getTimeout() : Duration.ofMinutes(10));
+                request.getTimeout() != null ? request.getTimeout() : Duration.ofMinutes(10),
+                request.getCancellationToken());
 
             if (result.getExitValue() != 0) {
                 String errorOutput = result.outputUTF8();
@@ -69,10 +70,12 @@ public class BatchProcessStrategy implements CliExecutionStrategy {
                 throw new ClaudeCodeException("CLI执行失败: " + errorOutput);
             }
 
-            String output = result.outputUTF8();
-            logger.debug("CLI输出长度: {} 字符", output.length());
+            // 直接从输出字节解码，不先转换为字符串
+            byte[] output = result.output();
+            logger.debug("CLI输出长度: {} 字节", output.length);
 
-            List<Message> messages = messageParser.parseMessages(output);
+            List<Message> messages = new ArrayList<>();
+            messageParser.parseMessageStream(new ByteArrayInputStream(output), messages::add);
             return messages.stream();
 
         } catch (Exception e) {
@@ -90,27 +93,31 @@ public class BatchProcessStrategy implements CliExecutionStrategy {
                 List<String> command = buildBatchCommand(request, true);
                 logger.debug("批处理流式命令: {}", String.join(" ", command));
 
-                CompletableFuture<ProcessResult> future = processManager.executeAsync(command);
+                Duration timeout = request.getTimeout() != null ? request.getTimeout() : options.getTimeout();
+
+                // 每行到达即解析并推送；订阅被取消时终止CLI进程
+                processManager.executeStreaming(command, line -> {
+                    if (emitter.isDisposed()) {
+                        return;
+                    }
+                    Message message = messageParser.parseStreamingLine(line);
+                    if (message != null) {
+                        emitter.onNext(message);
+                    }
+                }, timeout, process -> emitter.setCancellable(() -> {
+                    logger.debug("流式订阅已取消，终止CLI进程");
+                    processManager.destroyProcessTree(process);
+                }), request.getCancellationToken());
 
-                // 模拟流式处理 - 实际上批处理模式仍然是一次性返回
-                ProcessResult result = future.get();
-
-                if (result.getExitValue() != 0) {
-                    String errorOutput = result.outputUTF8();
-                    logger.error("CLI流式执行失败，退出码: {}, 输出: {}", result.getExitValue(), errorOutput);
-                    emitter.onError(new ClaudeCodeException("CLI流式执行失败: " + errorOutput));
-                    return;
-                }
-
-                String output = result.outputUTF8();
-                Stream<Message> messages = messageParser.parseStreamingMessages(output);
-
-                messages.forEach(emitter::onNext);
                 emitter.onComplete();
 
             } catch (Exception e) {
+                if (emitter.isDisposed()) {
+                    logger.debug("流式订阅已取消: {}", e.getMessage());
+                    return;
+                }
                 logger.error("批处理流式执行失败", e);
-                emitter.onError(new ClaudeCodeException("批处理流式执行失败: " + e.getMessage(), e));
+                emitter.tryOnError(new ClaudeCodeException("批处理流式执行失败: " + e.getMessage(), e));
             }
         });
     }
@@ -177,16 +184,13 @@ public class BatchProcessStrategy implements CliExecutionStrategy {
             command.add(String.valueOf(request.getTemperature()));
         }
 
-        // 添加会话相关参数（如果QueryRequest支持的话）
-        // TODO: 根据实际QueryRequest API添加会话支持
-        /*
-        if (request.getSessionId() != null) {
+        // 添加会话相关参数
+        if (request.getResumeSessionId() != null && !request.getResumeSessionId().trim().isEmpty()) {
             command.add("--resume");
-            command.add(request.getSessionId());
-        } else if (request.isContinueSession()) {
+            command.add(request.getResumeSessionId());
+        } else if (request.isContinueLastSession()) {
             command.add("--continue");
         }
-        */
 
         // 添加额外参数
         if (options.getAdditionalArgs() != null) {
@@ -42,8 +42,15 @@ public class CliExecutionStrategyFactory {
                 return createBatchStrategy(options, processManager, messageParser);
 
             case PTY_INTERACTIVE:
+                if (ptyManager == null) {
+                    logger.warn("未提供PTY管理器，使用批处理策略");
+                    return createBatchStrategy(options, processManager, messageParser);
+                }
                 return createPtyInteractiveStrategy(options, processManager, ptyManager, messageParser);
 
+            case POOLED:
+                return createPooledStrategy(options, processManager, messageParser);
+
             default:
                 throw new ClaudeCodeException("不支持的CLI模式: " + mode);
         }
@@ -74,6 +81,20 @@ public class CliExecutionStrategyFactory {
         return new PtyInteractiveStrategy(ptyManager, messageParser, options, fallbackStrategy);
     }
 
+    /**
+     * 创建进程池策略
+     */
+    private static PooledProcessStrategy createPooledStrategy(ClaudeCodeOptions options,
+                                                             ProcessManager processManager,
+                                                             MessageParser messageParser) {
+        logger.debug("创建进程池策略");
+
+        // 创建回退策略
+        BatchProcessStrategy fallbackStrategy = createBatchStrategy(options, processManager, messageParser);
+
+        return new PooledProcessStrategy(processManager, messageParser, options, fallbackStrategy);
+    }
+
     /**
      * 创建默认策略（批处理模式）
      */
@@ -0,0 +1,218 @@
+package com.anthropic.claude.strategy;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageType;
+import com.anthropic.claude.performance.AdaptiveConcurrencyLimiter;
+import com.anthropic.claude.performance.RequestScheduler;
+import com.anthropic.claude.pty.OutputParser;
+import com.anthropic.claude.query.CancellationToken;
+import com.anthropic.claude.query.QueryRequest;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 并发限制执行策略
+ *
+ * 包装实际执行策略，每次执行前从 {@link AdaptiveConcurrencyLimiter} 获取许可，
+ * 排队时间不超过请求的超时时间。执行结果反馈给限制器：
+ * 包含使用限制/限流提示（按 {@link OutputParser#isUsageLimit(CharSequence)} 判定）的结果或异常视为限流，
+ * 超时异常视为过载，其他失败和取消不调整上限。流式执行的延迟样本在收到首条消息时截止，
+ * 不包含后续生成以及等待下游消费的时间；同步执行拿到结果时生成已经结束，无法得到首条消息的时间，
+ * 只反馈结果，不提供延迟样本，避免完整生成时间混入首条消息延迟的统计。
+ *
+ * 指定 {@link RequestScheduler} 时由调度器按请求的优先级和租户决定排队顺序，否则按到达顺序排队。
+ *
+ * @author Claude Code SDK
+ */
+public class ConcurrencyLimitedStrategy implements CliExecutionStrategy {
+
+    private final CliExecutionStrategy delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RequestScheduler scheduler;
+    private final Duration defaultTimeout;
+
+    public ConcurrencyLimitedStrategy(CliExecutionStrategy delegate, AdaptiveConcurrencyLimiter limiter,
+                                      Duration defaultTimeout) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.scheduler = null;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public ConcurrencyLimitedStrategy(CliExecutionStrategy delegate, RequestScheduler scheduler,
+                                      Duration defaultTimeout) {
+        this.delegate = delegate;
+        this.limiter = scheduler.getLimiter();
+        this.scheduler = scheduler;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    public void start() throws ClaudeCodeException {
+        delegate.start();
+    }
+
+    @Override
+    public void shutdown() throws ClaudeCodeException {
+        delegate.shutdown();
+    }
+
+    @Override
+    public Stream<Message> execute(QueryRequest request) throws ClaudeCodeException {
+        AdaptiveConcurrencyLimiter.Permit permit = acquire(request);
+        permit.skipLatencySample();
+        try {
+            List<Message> messages = delegate.execute(request).collect(Collectors.toList());
+            if (messages.stream().anyMatch(ConcurrencyLimitedStrategy::isUsageLimit)) {
+                permit.onRateLimited();
+            } else {
+                permit.onSuccess();
+            }
+            return messages.stream();
+        } catch (Exception e) {
+            permit.release(classify(e));
+            throw e;
+        } finally {
+            permit.onIgnore();
+        }
+    }
+
+    @Override
+    public Observable<Message> executeStream(QueryRequest request) throws ClaudeCodeException {
+        return Observable.create(emitter -> {
+            AdaptiveConcurrencyLimiter.Permit permit = acquire(request);
+            AtomicBoolean limited = new AtomicBoolean(false);
+
+            // 订阅前注册取消回调：同步发射的上游在 subscribe 返回前就可能被下游取消
+            SerialDisposable upstream = new SerialDisposable();
+            emitter.setCancellable(() -> {
+                upstream.dispose();
+                permit.onIgnore();
+            });
+
+            try {
+                delegate.executeStream(request).subscribe(new Observer<Message>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        upstream.replace(d);
+                    }
+
+                    @Override
+                    public void onNext(Message message) {
+                        permit.onFirstResponse();
+                        if (isUsageLimit(message)) {
+                            limited.set(true);
+                        }
+                        emitter.onNext(message);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        permit.release(classify(error));
+                        emitter.tryOnError(error);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        if (limited.get()) {
+                            permit.onRateLimited();
+                        } else {
+                            permit.onSuccess();
+                        }
+                        emitter.onComplete();
+                    }
+                });
+            } catch (Exception e) {
+                permit.release(classify(e));
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    @Override
+    public String getStrategyType() {
+        return delegate.getStrategyType();
+    }
+
+    @Override
+    public boolean supportsSessionPersistence() {
+        return delegate.supportsSessionPersistence();
+    }
+
+    public CliExecutionStrategy getDelegate() {
+        return delegate;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * 请求调度器，未启用请求调度时返回null
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 排队时间计入请求的截止时间；排队期间请求被取消时立即移出队列，获得许可后才发现已取消或已过截止时间时归还许可，
+     * 两种情况都抛出异常
+     */
+    private AdaptiveConcurrencyLimiter.Permit acquire(QueryRequest request) {
+        CancellationToken token = request.getCancellationToken();
+        token.throwIfCancelled();
+        AdaptiveConcurrencyLimiter.Permit permit = scheduler != null
+            ? scheduler.acquire(request.getPriority(), request.getTenant(), resolveTimeout(request), token)
+            : limiter.acquire(resolveTimeout(request), token);
+        try {
+            token.throwIfCancelled();
+        } catch (ClaudeCodeException e) {
+            permit.onIgnore();
+            throw e;
+        }
+        return permit;
+    }
+
+    private Duration resolveTimeout(QueryRequest request) {
+        return request.getCancellationToken().remaining(
+            request.getTimeout() != null ? request.getTimeout() : defaultTimeout);
+    }
+
+    private static boolean isUsageLimit(Message message) {
+        return message.getType() == MessageType.ERROR && OutputParser.isUsageLimit(message.getContent());
+    }
+
+    /**
+     * 异常链中任一层包含限流提示视为限流，错误码或消息表明超时视为过载
+     */
+    static AdaptiveConcurrencyLimiter.Outcome classify(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (OutputParser.isUsageLimit(current.getMessage())) {
+                return AdaptiveConcurrencyLimiter.Outcome.RATE_LIMITED;
+            }
+        }
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof TimeoutException
+                    || (current instanceof ClaudeCodeException
+                        && String.valueOf(((ClaudeCodeException) current).getErrorCode()).contains("TIMEOUT"))) {
+                return AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+            }
+        }
+        return AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+    }
+}
@@ -0,0 +1,229 @@
+package com.anthropic.claude.strategy;
+
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageParser;
+import com.anthropic.claude.performance.ConnectionPoolManager;
+import com.anthropic.claude.performance.PooledConnection;
+import com.anthropic.claude.process.ProcessManager;
+import com.anthropic.claude.query.CancellationToken;
+import com.anthropic.claude.query.QueryRequest;
+import io.reactivex.rxjava3.core.Observable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 进程池执行策略
+ *
+ * 从连接池获取预热的stream-json常驻CLI进程执行查询，避免每次查询的进程启动开销
+ * 常驻进程的命令行参数是固定的，携带工具、token、温度或会话参数的请求回退至批处理模式
+ * 未指定会话键的请求独占一次性的常驻进程；指定会话键的请求在同一租户内复用同一进程的会话
+ *
+ * @author Claude Code SDK
+ */
+public class PooledProcessStrategy implements CliExecutionStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(PooledProcessStrategy.class);
+
+    private final ProcessManager processManager;
+    private final MessageParser messageParser;
+    private final ClaudeCodeOptions options;
+    private final BatchProcessStrategy fallbackStrategy;
+
+    private final AtomicBoolean isShutdown = new AtomicBoolean(false);
+    private volatile ConnectionPoolManager connectionPool;
+
+    public PooledProcessStrategy(ProcessManager processManager,
+                                 MessageParser messageParser,
+                                 ClaudeCodeOptions options,
+                                 BatchProcessStrategy fallbackStrategy) {
+        this.processManager = processManager;
+        this.messageParser = messageParser;
+        this.options = options;
+        this.fallbackStrategy = fallbackStrategy;
+    }
+
+    @Override
+    public void start() throws ClaudeCodeException {
+        logger.info("启动进程池策略");
+
+        try {
+            connectionPool = new ConnectionPoolManager(options, processManager);
+            logger.info("进程池策略启动成功: {}", connectionPool.getStats());
+        } catch (Exception e) {
+            logger.error("进程池策略启动失败", e);
+            throw new ClaudeCodeException("进程池策略启动失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void shutdown() throws ClaudeCodeException {
+        logger.info("关闭进程池策略");
+
+        isShutdown.set(true);
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+        }
+    }
+
+    @Override
+    public Stream<Message> execute(QueryRequest request) throws ClaudeCodeException {
+        if (!isPoolable(request)) {
+            logger.debug("请求携带逐次命令行参数，回退到批处理模式");
+            return fallbackStrategy.execute(request);
+        }
+
+        logger.debug("执行进程池查询: {}", request.getPrompt());
+
+        CancellationToken token = request.getCancellationToken();
+        PooledConnection connection = null;
+        CancellationToken.Registration registration = null;
+        try {
+            token.throwIfCancelled();
+            connection = connectionPool.acquireConnection(conversationKeyOf(request));
+            registration = closeOnCancel(token, connection);
+
+            List<Message> messages = new ArrayList<>();
+            connection.sendPrompt(request.getPrompt(), resolveTimeout(request), line -> {
+                Message message = messageParser.parseStreamingLine(line, 0, line.length);
+                if (message != null) {
+                    messages.add(message);
+                }
+            });
+
+            return messages.stream();
+
+        } catch (Exception e) {
+            logger.error("进程池执行失败", e);
+            throw new ClaudeCodeException("进程池执行失败: " + e.getMessage(), e);
+        } finally {
+            if (registration != null) {
+                registration.close();
+            }
+            if (connection != null) {
+                connectionPool.releaseConnection(connection);
+            }
+        }
+    }
+
+    @Override
+    public Observable<Message> executeStream(QueryRequest request) throws ClaudeCodeException {
+        if (!isPoolable(request)) {
+            logger.debug("请求携带逐次命令行参数，回退到批处理流式模式");
+            return fallbackStrategy.executeStream(request);
+        }
+
+        logger.debug("执行进程池流式查询: {}", request.getPrompt());
+
+        return Observable.create(emitter -> {
+            CancellationToken token = request.getCancellationToken();
+            PooledConnection connection = null;
+            CancellationToken.Registration registration = null;
+            AtomicBoolean finished = new AtomicBoolean(false);
+            try {
+                token.throwIfCancelled();
+                connection = connectionPool.acquireConnection(conversationKeyOf(request));
+                registration = closeOnCancel(token, connection);
+                // 执行中取消订阅时常驻进程的输出已无法与后续请求对齐，直接关闭连接
+                PooledConnection acquired = connection;
+                emitter.setCancellable(() -> {
+                    if (!finished.get()) {
+                        acquired.close();
+                    }
+                });
+                connection.sendPrompt(request.getPrompt(), resolveTimeout(request), line -> {
+                    Message message = messageParser.parseStreamingLine(line, 0, line.length);
+                    if (message != null) {
+                        emitter.onNext(message);
+                    }
+                });
+                finished.set(true);
+                emitter.onComplete();
+
+            } catch (Exception e) {
+                finished.set(true);
+                if (emitter.isDisposed()) {
+                    logger.debug("流式订阅已取消: {}", e.getMessage());
+                    return;
+                }
+                logger.error("进程池流式执行失败", e);
+                emitter.onError(new ClaudeCodeException("进程池流式执行失败: " + e.getMessage(), e));
+            } finally {
+                if (registration != null) {
+                    registration.close();
+                }
+                if (connection != null) {
+                    connectionPool.releaseConnection(connection);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !isShutdown.get() && connectionPool != null;
+    }
+
+    @Override
+    public String getStrategyType() {
+        return "PooledProcess";
+    }
+
+    @Override
+    public boolean supportsSessionPersistence() {
+        // 常驻进程的会话由连接池管理，调用方无法指定会话
+        return false;
+    }
+
+    /**
+     * 获取连接池统计信息
+     *
+     * @return 统计信息，策略未启动时返回null
+     */
+    public ConnectionPoolManager.PoolStats getPoolStats() {
+        return connectionPool != null ? connectionPool.getStats() : null;
+    }
+
+    /**
+     * 判断请求能否在固定参数的常驻进程上执行
+     */
+    private boolean isPoolable(QueryRequest request) {
+        return request.getTools().length == 0
+            && request.getMaxTokens() == null
+            && request.getTemperature() == null
+            && request.getResumeSessionId() == null
+            && !request.isContinueLastSession();
+    }
+
+    /**
+     * 连接池中的会话键按租户隔离，未指定会话键时返回null
+     */
+    private static String conversationKeyOf(QueryRequest request) {
+        if (request.getConversationKey() == null) {
+            return null;
+        }
+        String tenant = request.getTenant() != null ? request.getTenant() : "";
+        return tenant + '\u0000' + request.getConversationKey();
+    }
+
+    /**
+     * 请求取消时关闭连接，终止常驻进程树，释放时连接池会补充新连接
+     */
+    private CancellationToken.Registration closeOnCancel(CancellationToken token, PooledConnection connection) {
+        return token.onCancel(() -> {
+            logger.debug("请求已取消，关闭连接: {}", connection.getId());
+            connection.close();
+        });
+    }
+
+    private Duration resolveTimeout(QueryRequest request) {
+        return request.getCancellationToken().remaining(
+            request.getTimeout() != null ? request.getTimeout() : options.getTimeout());
+    }
+}
@@ -4,9 +4,10 @@ import com.anthropic.claude.config.ClaudeCodeOptions;
 import com.anthropic.claude.exceptions.ClaudeCodeException;
 import com.anthropic.claude.messages.Message;
 import com.anthropic.claude.messages.MessageParser;
-import com.anthropic.claude.pty.ClaudeResponse;
 import com.anthropic.claude.pty.PtyManager;
-import com.anthropic.claude.pty.StateChange;
+import com.anthropic.claude.pty.PtyRequest;
+import com.anthropic.claude.pty.PtySessionPool;
+import com.anthropic.claude.query.CancellationToken;
 import com.anthropic.claude.query.QueryRequest;
 import io.reactivex.rxjava3.core.Observable;
 import org.slf4j.Logger;
@@ -15,16 +16,15 @@ import org.slf4j.LoggerFactory;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 /**
  * PTY交互执行策略
  *
- * 维护常驻会话，通过回调接收响应
+ * 通过PTY会话池维护多个常驻会话，每个请求独占一个会话直到提示符出现，
+ * 并发请求在会话间排队分配，互不串扰
  * 异常时自动回退至批处理模式
  *
  * @author Claude Code SDK
@@ -39,8 +39,11 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
 
     private final AtomicBoolean isReady = new AtomicBoolean(false);
     private final AtomicBoolean isShutdown = new AtomicBoolean(false);
-    private final List<ClaudeResponse> responseBuffer = new ArrayList<>();
+    private volatile PtySessionPool sessionPool;
 
+    /**
+     * @param ptyManager 第一个会话使用的PTY管理器，其余会话按需创建
+     */
     public PtyInteractiveStrategy(PtyManager ptyManager,
                                  MessageParser messageParser,
                                  ClaudeCodeOptions options,
@@ -56,20 +59,23 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
         logger.info("启动PTY交互策略");
 
         try {
-            // 设置回调监听器
-            setupCallbacks();
-
-            // 启动PTY会话
             List<String> command = buildPtyCommand();
             logger.debug("PTY命令: {}", String.join(" ", command));
 
-            ptyManager.startPty(command.toArray(new String[0]));
+            Duration readyTimeout = options.getPtyReadyTimeout() != null ?
+                options.getPtyReadyTimeout() : Duration.ofSeconds(15);
+            int sessionCount = Math.max(1, options.getPtySessionCount());
 
-            // 等待进程就绪
-            waitForReady();
+            // 注入的管理器只用于第一个会话，已关闭的管理器不能重新启动
+            AtomicReference<PtyManager> injected = new AtomicReference<>(ptyManager);
+            sessionPool = new PtySessionPool(command.toArray(new String[0]), sessionCount, () -> {
+                PtyManager manager = injected.getAndSet(null);
+                return manager != null ? manager : new PtyManager();
+            }, readyTimeout, options.getBlockingExecutor());
+            sessionPool.start();
 
             isReady.set(true);
-            logger.info("PTY交互策略启动成功");
+            logger.info("PTY交互策略启动成功，会话数: {}", sessionPool.getSessionCount());
 
         } catch (Exception e) {
             logger.error("PTY策略启动失败，将回退到批处理模式", e);
@@ -85,7 +91,9 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
         isReady.set(false);
 
         try {
-            ptyManager.closePty();
+            if (sessionPool != null) {
+                sessionPool.shutdown();
+            }
             logger.info("PTY交互策略关闭完成");
 
         } catch (Exception e) {
@@ -103,23 +111,31 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
 
         logger.debug("执行PTY交互查询: {}", request.getPrompt());
 
-        try {
-            // 发送查询命令
-            String queryLine = buildQueryLine(request);
-            CompletableFuture<ClaudeResponse> future = ptyManager.sendCommand(queryLine);
+        CancellationToken token = request.getCancellationToken();
+        token.throwIfCancelled();
 
-            // 等待响应完成
-            Duration timeout = request.getTimeout() != null ? request.getTimeout() : Duration.ofMinutes(10);
-            future.get(timeout.getSeconds(), TimeUnit.SECONDS);
+        CancellationToken.Registration registration = null;
+        try {
+            PtyRequest ptyRequest = sessionPool.submit(buildQueryLine(request), null);
+            // 取消时中断终端会话并回收，排队中的请求直接出队
+            registration = token.onCancel(ptyRequest::cancel);
+            List<String> lines = ptyRequest.await(resolveTimeout(request));
+            logger.debug("PTY请求 {} 在会话 {} 完成，输出 {} 行",
+                ptyRequest.getRequestId(), ptyRequest.getSessionId(), lines.size());
 
-            // 从响应缓冲区获取完整响应
-            String response = collectResponseFromBuffer();
-            List<Message> messages = messageParser.parseMessages(response);
-            return messages.stream();
+            return messageParser.parseStreamingMessages(String.join("\n", lines));
 
         } catch (Exception e) {
+            if (token.isCancelled() || token.isExpired()) {
+                throw new ClaudeCodeException(token.isCancelled() ? "QUERY_CANCELLED" : "QUERY_DEADLINE_EXCEEDED",
+                    "PTY请求已取消或超过截止时间: " + e.getMessage(), e);
+            }
             logger.error("PTY执行失败，回退到批处理模式", e);
             return fallbackStrategy.execute(request);
+        } finally {
+            if (registration != null) {
+                registration.close();
+            }
         }
     }
 
@@ -133,22 +149,14 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
         logger.debug("执行PTY交互流式查询: {}", request.getPrompt());
 
         return Observable.create(emitter -> {
+            PtyRequest ptyRequest;
             try {
-                // 设置输出监听器用于流式处理
-                ptyManager.setOutputListener(response -> {
-                    try {
-                        Stream<Message> messages = messageParser.parseStreamingMessages(
-                            response.getContent());
-                        messages.forEach(emitter::onNext);
-                    } catch (Exception e) {
-                        logger.debug("解析流式消息失败: {}", e.getMessage());
+                ptyRequest = sessionPool.submit(buildQueryLine(request), line -> {
+                    Message message = messageParser.parseStreamingLine(line);
+                    if (message != null) {
+                        emitter.onNext(message);
                     }
                 });
-
-                // 发送查询命令
-                String queryLine = buildQueryLine(request);
-                ptyManager.sendCommand(queryLine);
-
             } catch (Exception e) {
                 logger.error("PTY流式执行失败，回退到批处理模式", e);
 
@@ -158,13 +166,26 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
                     emitter::onError,
                     emitter::onComplete
                 );
+                return;
+            }
+
+            CancellationToken.Registration registration = request.getCancellationToken().onCancel(ptyRequest::cancel);
+            emitter.setCancellable(ptyRequest::cancel);
+            try {
+                ptyRequest.await(resolveTimeout(request));
+                emitter.onComplete();
+            } catch (Exception e) {
+                logger.error("PTY流式请求 {} 失败", ptyRequest.getRequestId(), e);
+                emitter.tryOnError(new ClaudeCodeException("PTY流式执行失败: " + e.getMessage(), e));
+            } finally {
+                registration.close();
             }
         });
     }
 
     @Override
     public boolean isAvailable() {
-        return !isShutdown.get() && isReady.get() && ptyManager.isAlive();
+        return !isShutdown.get() && isReady.get() && sessionPool != null && sessionPool.isAvailable();
     }
 
     @Override
@@ -179,59 +200,10 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
     }
 
     /**
-     * 设置PTY回调监听器
-     */
-    private void setupCallbacks() {
-        ptyManager.setOutputListener(response -> {
-            synchronized (responseBuffer) {
-                responseBuffer.add(response);
-            }
-        });
-
-        ptyManager.setStateChangeListener(stateChange -> {
-            logger.debug("PTY状态变化: {}", stateChange);
-        });
-
-        ptyManager.setErrorListener(error -> {
-            logger.error("PTY错误: {}", error);
-        });
-    }
-
-    /**
-     * 等待PTY进程就绪
+     * 获取PTY会话池，策略未启动时返回null
      */
-    private void waitForReady() throws TimeoutException {
-        Duration timeout = options.getPtyReadyTimeout() != null ?
-            options.getPtyReadyTimeout() : Duration.ofSeconds(15); // 增加默认超时
-
-        logger.info("等待PTY进程就绪，超时时间: {}秒", timeout.getSeconds());
-
-        long startTime = System.currentTimeMillis();
-        while ((System.currentTimeMillis() - startTime) < timeout.toMillis()) {
-            // 更宽松的就绪检测条件
-            if (ptyManager.isAlive()) {
-                // 额外等待1秒确保状态稳定
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new TimeoutException("等待就绪时被中断");
-                }
-
-                logger.info("PTY进程已就绪，当前状态: {}", ptyManager.getCurrentState());
-                return;
-            }
-
-            try {
-                Thread.sleep(200); // 增加检查间隔
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new TimeoutException("等待就绪时被中断");
-            }
-        }
-
-        logger.warn("PTY进程启动超时，但会继续尝试使用，当前状态: {}", ptyManager.getCurrentState());
-        // 不抛出异常，而是记录警告并继续
+    public PtySessionPool getSessionPool() {
+        return sessionPool;
     }
 
     /**
@@ -268,17 +240,8 @@ public class PtyInteractiveStrategy implements CliExecutionStrategy {
         return query.toString();
     }
 
-    /**
-     * 从响应缓冲区收集完整响应
-     */
-    private String collectResponseFromBuffer() {
-        StringBuilder response = new StringBuilder();
-        synchronized (responseBuffer) {
-            for (ClaudeResponse claudeResponse : responseBuffer) {
-                response.append(claudeResponse.getContent()).append("\n");
-            }
-            responseBuffer.clear();
-        }
-        return response.toString();
+    private Duration resolveTimeout(QueryRequest request) {
+        return request.getCancellationToken().remaining(
+            request.getTimeout() != null ? request.getTimeout() : Duration.ofMinutes(10));
     }
-}
\ No newline at end of file
+}
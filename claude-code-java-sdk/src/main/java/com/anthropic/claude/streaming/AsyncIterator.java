@@ -43,6 +43,20 @@ public interface AsyncIterator<T> {
         });
     }
 
+    /**
+     * 异步获取下一批元素
+     *
+     * 返回至少一个、至多 maxSize 个元素，已取得的元素不为凑满批量而等待；返回空列表表示没有更多元素。
+     * 组合器和收集操作按批拉取，每批只经过一次异步完成，实现类应尽量直接从内部缓冲返回整批元素。
+     *
+     * @param maxSize 本批最多元素数量
+     * @return CompletableFuture包装的元素列表
+     */
+    default CompletableFuture<java.util.List<T>> nextBatch(int maxSize) {
+        AsyncLoops.checkBatchSize(maxSize);
+        return AsyncLoops.pullBatch(this, maxSize);
+    }
+
     /**
      * 异步收集所有剩余元素到列表
      *
@@ -60,16 +74,7 @@ public interface AsyncIterator<T> {
      * @return CompletableFuture包装的元素列表
      */
     default CompletableFuture<java.util.List<T>> collectToList(java.util.List<T> list) {
-        return hasNext().thenCompose(hasNext -> {
-            if (hasNext) {
-                return next().thenCompose(item -> {
-                    list.add(item);
-                    return collectToList(list);
-                });
-            } else {
-                return CompletableFuture.completedFuture(list);
-            }
-        });
+        return forEachBatch(list::addAll).thenApply(ignored -> list);
     }
 
     /**
@@ -79,32 +84,46 @@ public interface AsyncIterator<T> {
      * @return CompletableFuture表示操作完成
      */
     default CompletableFuture<Void> forEach(java.util.function.Consumer<T> action) {
-        return hasNext().thenCompose(hasNext -> {
-            if (hasNext) {
-                return next().thenCompose(item -> {
-                    action.accept(item);
-                    return forEach(action);
-                });
-            } else {
-                return CompletableFuture.completedFuture(null);
+        return forEachBatch(batch -> batch.forEach(action));
+    }
+
+    /**
+     * 按批对剩余元素执行操作，每批元素数量不超过默认批量
+     *
+     * @param action 对每批元素执行的操作
+     * @return CompletableFuture表示操作完成
+     */
+    default CompletableFuture<Void> forEachBatch(java.util.function.Consumer<java.util.List<T>> action) {
+        return AsyncLoops.loop(() -> nextBatch(AsyncLoops.DEFAULT_BATCH_SIZE).thenApply(batch -> {
+            if (batch.isEmpty()) {
+                return false;
             }
-        });
+            action.accept(batch);
+            return true;
+        }));
     }
 
     /**
-     * 异步对每个元素执行异步操作
+     * 异步对每个元素执行异步操作，前一个操作完成后才处理下一个元素
      *
      * @param action 要执行的异步操作
      * @return CompletableFuture表示操作完成
      */
     default CompletableFuture<Void> forEachAsync(java.util.function.Function<T, CompletionStage<Void>> action) {
-        return hasNext().thenCompose(hasNext -> {
-            if (hasNext) {
-                return next().thenCompose(item ->
-                        action.apply(item).thenCompose(ignored -> forEachAsync(action))
-                );
-            } else {
-                return CompletableFuture.completedFuture(null);
+        return AsyncLoops.loop(new java.util.function.Supplier<CompletableFuture<Boolean>>() {
+            private java.util.List<T> batch = java.util.Collections.emptyList();
+            private int index;
+
+            @Override
+            public CompletableFuture<Boolean> get() {
+                if (index < batch.size()) {
+                    return action.apply(batch.get(index++)).toCompletableFuture().thenApply(ignored -> true);
+                }
+                return nextBatch(AsyncLoops.DEFAULT_BATCH_SIZE).thenApply(next -> {
+                    batch = next;
+                    index = 0;
+                    return !next.isEmpty();
+                });
             }
         });
     }
@@ -0,0 +1,102 @@
+package com.anthropic.claude.streaming;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 异步循环工具
+ *
+ * 以蹦床方式反复执行异步步骤：步骤返回的结果已完成时在当前循环内继续，未完成时登记回调，
+ * 由完成该结果的线程重新进入循环。同步完成的数据源不会因逐个 thenCompose 而加深调用栈。
+ *
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+final class AsyncLoops {
+
+    /**
+     * 组合器每次向上游拉取的默认批量
+     */
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    static final CompletableFuture<Boolean> CONTINUE = CompletableFuture.completedFuture(Boolean.TRUE);
+    static final CompletableFuture<Boolean> STOP = CompletableFuture.completedFuture(Boolean.FALSE);
+    static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private AsyncLoops() {
+    }
+
+    /**
+     * 重复执行步骤直到步骤结果为 false 或异常完成
+     *
+     * @param step 单步操作，返回是否继续
+     * @return 循环结束时完成
+     */
+    static CompletableFuture<Void> loop(Supplier<CompletableFuture<Boolean>> step) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        run(step, result);
+        return result;
+    }
+
+    /**
+     * 通过 hasNext/next 拉取一批元素
+     *
+     * 已取得元素后，下一个元素不能立即得到时就返回当前批次，不为凑满批量而等待
+     */
+    static <T> CompletableFuture<List<T>> pullBatch(AsyncIterator<T> iterator, int maxSize) {
+        List<T> batch = new ArrayList<>(Math.min(maxSize, 16));
+        return loop(() -> {
+            if (batch.size() >= maxSize) {
+                return STOP;
+            }
+            CompletableFuture<Boolean> hasNext = iterator.hasNext();
+            if (!batch.isEmpty() && !hasNext.isDone()) {
+                return STOP;
+            }
+            return hasNext.thenCompose(has -> has
+                ? iterator.next().thenApply(batch::add)
+                : STOP);
+        }).thenApply(ignored -> batch);
+    }
+
+    static void checkBatchSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("批量大小必须为正数: " + maxSize);
+        }
+    }
+
+    private static void run(Supplier<CompletableFuture<Boolean>> step, CompletableFuture<Void> result) {
+        while (true) {
+            CompletableFuture<Boolean> next;
+            try {
+                next = step.get();
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            if (!next.isDone()) {
+                next.whenComplete((proceed, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else if (proceed) {
+                        run(step, result);
+                    } else {
+                        result.complete(null);
+                    }
+                });
+                return;
+            }
+            if (next.isCompletedExceptionally()) {
+                next.whenComplete((proceed, error) -> result.completeExceptionally(error));
+                return;
+            }
+            if (!next.join()) {
+                result.complete(null);
+                return;
+            }
+        }
+    }
+}
@@ -3,117 +3,225 @@ package com.anthropic.claude.streaming;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 背压控制器
  * 管理流处理的背压机制，防止生产者过快导致内存溢出
  *
+ * 提供两种用法：
+ * <ul>
+ *   <li>许可模式：{@link #tryAcquire()} / {@link #requestPermit()} 获取许可，处理完成后 {@link #releasePermit()}，
+ *       元素由调用方自行保存</li>
+ *   <li>缓冲模式：{@link #offer(Object)} / {@link #poll()} 通过控制器内部的环形缓冲区传递元素，
+ *       DROP_OLDEST 淘汰缓冲区中最旧的元素，DROP_LATEST 拒绝新元素</li>
+ * </ul>
+ * 两种用法共享同一份容量，同一个控制器只应使用其中一种。
+ *
+ * 许可计数和环形缓冲区均基于CAS实现，未饱和时在调用线程上同步完成，{@link #tryAcquire()} 和 {@link #offer(Object)}
+ * 不分配对象；只有 BLOCK 策略下缓冲区已满时才登记异步等待，由释放许可的线程直接移交许可。
+ * 指定执行器时，移交后的等待结果在该执行器上完成，等待方的后续阶段不占用释放许可的线程。
+ * 背压状态在缓冲量达到高水位时激活，回落到低水位时才停用，避免在单一阈值附近反复切换。
+ *
+ * @param <T> 缓冲模式下的元素类型，只使用许可模式时可任意指定
  * @author Claude Code Java SDK
  * @version 1.0.0
  */
-public class BackpressureController {
+public class BackpressureController<T> {
     private static final Logger logger = LoggerFactory.getLogger(BackpressureController.class);
 
     private final int maxBufferSize;
     private final int highWaterMark;
     private final int lowWaterMark;
-    private final Semaphore permits;
     private final AtomicInteger currentBufferSize = new AtomicInteger(0);
-    private final AtomicLong totalProcessed = new AtomicLong(0);
-    private final AtomicLong totalDropped = new AtomicLong(0);
+    private final AtomicBoolean backpressureActive = new AtomicBoolean(false);
+    private final Queue<CompletableFuture<Boolean>> waiters = new ConcurrentLinkedQueue<>();
+    private final RingBuffer<T> ring;
+    private final Queue<T> overflow = new ConcurrentLinkedQueue<>();
+    private final LongAdder totalProcessed = new LongAdder();
+    private final LongAdder totalDropped = new LongAdder();
+    private final Executor executor;
 
     private volatile BackpressureStrategy strategy = BackpressureStrategy.BLOCK;
-    private volatile boolean backpressureActive = false;
 
     public BackpressureController(int maxBufferSize) {
         this(maxBufferSize, (int) (maxBufferSize * 0.8), (int) (maxBufferSize * 0.3));
     }
 
     public BackpressureController(int maxBufferSize, int highWaterMark, int lowWaterMark) {
+        this(maxBufferSize, highWaterMark, lowWaterMark, null);
+    }
+
+    /**
+     * @param executor BLOCK策略下完成移交许可的执行器，为null时在释放许可的线程上直接完成
+     */
+    public BackpressureController(int maxBufferSize, int highWaterMark, int lowWaterMark, Executor executor) {
+        if (maxBufferSize <= 0) {
+            throw new IllegalArgumentException("最大缓冲必须大于0: " + maxBufferSize);
+        }
+        if (lowWaterMark < 0 || lowWaterMark > highWaterMark || highWaterMark > maxBufferSize) {
+            throw new IllegalArgumentException("水位范围无效: 低水位 " + lowWaterMark + ", 高水位 " + highWaterMark);
+        }
         this.maxBufferSize = maxBufferSize;
         this.highWaterMark = highWaterMark;
         this.lowWaterMark = lowWaterMark;
-        this.permits = new Semaphore(maxBufferSize);
+        this.executor = executor;
+        this.ring = new RingBuffer<>(maxBufferSize);
 
         logger.info("背压控制器已初始化 - 最大缓冲: {}, 高水位: {}, 低水位: {}",
                 maxBufferSize, highWaterMark, lowWaterMark);
     }
 
+    /**
+     * 尝试立即获取许可，不阻塞也不分配对象
+     *
+     * 缓冲区已满时，BUFFER 策略仍然放行，其余策略返回 false；DROP 策略下记为一次丢弃
+     *
+     * @return 是否获得许可
+     */
+    public boolean tryAcquire() {
+        if (tryAcquireSlot()) {
+            return true;
+        }
+        BackpressureStrategy current = strategy;
+        if (current == BackpressureStrategy.BUFFER) {
+            forceAcquireSlot();
+            return true;
+        }
+        if (current != BackpressureStrategy.BLOCK) {
+            totalDropped.increment();
+        }
+        return false;
+    }
+
     /**
      * 请求处理许可
      *
+     * 可以立即获得许可时返回已完成的结果；BLOCK 策略下缓冲区已满时返回的结果在其他调用方释放许可后完成，
+     * 等待期间不占用线程。取消返回的结果即放弃等待。
+     *
      * @return CompletableFuture表示许可获取结果
      */
     public CompletableFuture<Boolean> requestPermit() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                switch (strategy) {
-                    case BLOCK:
-                        permits.acquire();
-                        incrementBuffer();
-                        return true;
-
-                    case DROP_OLDEST:
-                        if (permits.tryAcquire()) {
-                            incrementBuffer();
-                            return true;
-                        } else {
-                            totalDropped.incrementAndGet();
-                            logger.debug("背压激活 - 丢弃元素 (DROP_OLDEST)");
-                            return false;
-                        }
-
-                    case DROP_LATEST:
-                        if (currentBufferSize.get() >= maxBufferSize) {
-                            totalDropped.incrementAndGet();
-                            logger.debug("背压激活 - 丢弃元素 (DROP_LATEST)");
-                            return false;
-                        } else {
-                            permits.acquire();
-                            incrementBuffer();
-                            return true;
-                        }
-
-                    case BUFFER:
-                        // 允许超过缓冲区大小，但记录警告
-                        permits.acquire();
-                        incrementBuffer();
-                        if (currentBufferSize.get() > maxBufferSize) {
-                            logger.warn("缓冲区超出限制: {}/{}", currentBufferSize.get(), maxBufferSize);
-                        }
-                        return true;
-
-                    default:
-                        permits.acquire();
-                        incrementBuffer();
-                        return true;
-                }
+        if (tryAcquire()) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        if (strategy != BackpressureStrategy.BLOCK) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.error("获取许可被中断", e);
-                return false;
+        CompletableFuture<Boolean> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // 登记后重试一次：登记前释放的许可不会移交给本次等待
+        if (tryAcquireSlot()) {
+            if (waiters.remove(waiter)) {
+                waiter.complete(Boolean.TRUE);
+            } else {
+                // 重试期间已有释放方移交了许可，归还多拿的一个
+                releaseSlot();
             }
-        });
+        }
+        return waiter;
     }
 
     /**
      * 释放许可
      */
     public void releasePermit() {
-        permits.release();
-        decrementBuffer();
-        totalProcessed.incrementAndGet();
+        totalProcessed.increment();
+        releaseSlot();
+    }
 
-        // 检查是否需要停用背压
-        if (backpressureActive && currentBufferSize.get() <= lowWaterMark) {
-            backpressureActive = false;
-            logger.info("背压已停用 - 当前缓冲: {}/{}", currentBufferSize.get(), maxBufferSize);
+    /**
+     * 向缓冲区放入元素，不阻塞
+     *
+     * <ul>
+     *   <li>BLOCK：缓冲区已满时返回 false，需要等待空间时使用 {@link #offerAsync(Object)}</li>
+     *   <li>DROP_OLDEST：丢弃缓冲区中最旧的元素后放入，总是返回 true</li>
+     *   <li>DROP_LATEST：缓冲区已满时丢弃本元素并返回 false</li>
+     *   <li>BUFFER：超出容量的元素进入无界溢出队列，总是返回 true</li>
+     * </ul>
+     *
+     * @param element 元素，不能为null
+     * @return 元素是否进入缓冲区
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException("element");
         }
+        BackpressureStrategy current = strategy;
+        if (current == BackpressureStrategy.BUFFER) {
+            return offerUnbounded(element);
+        }
+        if (tryAcquireSlot()) {
+            ring.enqueue(element);
+            return true;
+        }
+        if (current == BackpressureStrategy.DROP_OLDEST) {
+            // 淘汰最旧元素并沿用它占用的许可；最旧元素已被消费者取走时重新获取许可
+            while (true) {
+                if (ring.dequeue() != null) {
+                    totalDropped.increment();
+                    ring.enqueue(element);
+                    return true;
+                }
+                if (tryAcquireSlot()) {
+                    ring.enqueue(element);
+                    return true;
+                }
+                Thread.onSpinWait();
+            }
+        }
+        if (current == BackpressureStrategy.DROP_LATEST) {
+            totalDropped.increment();
+        }
+        return false;
+    }
+
+    /**
+     * 向缓冲区放入元素，BLOCK 策略下缓冲区已满时在出现空间后放入
+     *
+     * @return 元素是否进入缓冲区，非 BLOCK 策略的结果与 {@link #offer(Object)} 相同
+     */
+    public CompletableFuture<Boolean> offerAsync(T element) {
+        if (offer(element)) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        if (strategy != BackpressureStrategy.BLOCK) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        return requestPermit().thenApply(granted -> {
+            if (granted) {
+                ring.enqueue(element);
+            }
+            return granted;
+        });
+    }
+
+    /**
+     * 取出缓冲区中最旧的元素并释放其占用的许可
+     *
+     * @return 元素，缓冲区为空时返回null
+     */
+    public T poll() {
+        T element = ring.dequeue();
+        if (element == null) {
+            element = overflow.poll();
+        }
+        if (element != null) {
+            releasePermit();
+        }
+        return element;
     }
 
     /**
@@ -131,7 +239,7 @@ public class BackpressureController {
      * @return 可用许可数
      */
     public int getAvailablePermits() {
-        return permits.availablePermits();
+        return Math.max(0, maxBufferSize - currentBufferSize.get());
     }
 
     /**
@@ -140,7 +248,7 @@ public class BackpressureController {
      * @return 是否处于背压状态
      */
     public boolean isBackpressureActive() {
-        return backpressureActive;
+        return backpressureActive.get();
     }
 
     /**
@@ -151,6 +259,13 @@ public class BackpressureController {
     public void setBackpressureStrategy(BackpressureStrategy strategy) {
         this.strategy = strategy;
         logger.info("设置背压策略: {}", strategy);
+        if (strategy != BackpressureStrategy.BLOCK) {
+            // 非阻塞策略下不再有人移交许可，已登记的等待全部拒绝
+            CompletableFuture<Boolean> waiter;
+            while ((waiter = waiters.poll()) != null) {
+                waiter.complete(Boolean.FALSE);
+            }
+        }
     }
 
     /**
@@ -162,10 +277,10 @@ public class BackpressureController {
         return new BackpressureStats(
                 maxBufferSize,
                 currentBufferSize.get(),
-                permits.availablePermits(),
-                totalProcessed.get(),
-                totalDropped.get(),
-                backpressureActive,
+                getAvailablePermits(),
+                totalProcessed.sum(),
+                totalDropped.sum(),
+                backpressureActive.get(),
                 strategy
         );
     }
@@ -174,23 +289,162 @@ public class BackpressureController {
      * 重置统计信息
      */
     public void resetStats() {
-        totalProcessed.set(0);
-        totalDropped.set(0);
+        totalProcessed.reset();
+        totalDropped.reset();
         logger.info("重置背压统计信息");
     }
 
-    private void incrementBuffer() {
-        int current = currentBufferSize.incrementAndGet();
+    private boolean offerUnbounded(T element) {
+        // 溢出队列非空时新元素也进入溢出队列，保持先进先出
+        if (overflow.isEmpty() && tryAcquireSlot()) {
+            ring.enqueue(element);
+        } else {
+            forceAcquireSlot();
+            overflow.add(element);
+        }
+        return true;
+    }
 
-        // 检查是否需要激活背压
-        if (!backpressureActive && current >= highWaterMark) {
-            backpressureActive = true;
-            logger.warn("背压已激活 - 当前缓冲: {}/{}", current, maxBufferSize);
+    private boolean tryAcquireSlot() {
+        while (true) {
+            int current = currentBufferSize.get();
+            if (current >= maxBufferSize) {
+                return false;
+            }
+            if (currentBufferSize.compareAndSet(current, current + 1)) {
+                onSizeChanged(current + 1);
+                return true;
+            }
+        }
+    }
+
+    private void forceAcquireSlot() {
+        int size = currentBufferSize.incrementAndGet();
+        if (size == maxBufferSize + 1) {
+            logger.warn("缓冲区超出限制: {}/{}", size, maxBufferSize);
         }
+        onSizeChanged(size);
     }
 
-    private void decrementBuffer() {
-        currentBufferSize.decrementAndGet();
+    private void releaseSlot() {
+        if (handOff()) {
+            return;
+        }
+        onSizeChanged(currentBufferSize.decrementAndGet());
+
+        // 与 requestPermit 的登记后重试配对：任一方都能看到对方，不会遗漏等待者
+        while (!waiters.isEmpty() && tryAcquireSlot()) {
+            if (!handOff()) {
+                onSizeChanged(currentBufferSize.decrementAndGet());
+            }
+        }
+    }
+
+    /**
+     * 把当前许可直接移交给一个仍在等待的请求，缓冲量不变
+     */
+    private boolean handOff() {
+        CompletableFuture<Boolean> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (executor == null) {
+                if (waiter.complete(Boolean.TRUE)) {
+                    return true;
+                }
+            } else if (!waiter.isDone()) {
+                CompletableFuture<Boolean> granted = waiter;
+                try {
+                    executor.execute(() -> grant(granted));
+                } catch (RejectedExecutionException e) {
+                    grant(granted);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在执行器上完成移交；等待方在移交期间已放弃时归还许可
+     */
+    private void grant(CompletableFuture<Boolean> waiter) {
+        if (!waiter.complete(Boolean.TRUE)) {
+            releaseSlot();
+        }
+    }
+
+    private void onSizeChanged(int size) {
+        if (size >= highWaterMark) {
+            if (!backpressureActive.get() && backpressureActive.compareAndSet(false, true)) {
+                logger.debug("背压已激活 - 当前缓冲: {}/{}", size, maxBufferSize);
+            }
+        } else if (size <= lowWaterMark) {
+            if (backpressureActive.get() && backpressureActive.compareAndSet(true, false)) {
+                logger.debug("背压已停用 - 当前缓冲: {}/{}", size, maxBufferSize);
+            }
+        }
+    }
+
+    /**
+     * 有界多生产者多消费者环形缓冲区
+     *
+     * 每个槽位带序号，生产者和消费者分别以CAS推进尾、头位置，槽位序号表明其当前可写还是可读。
+     * 容量由外层许可保证不会超出，入队遇到消费者尚未归还的槽位时短暂自旋。
+     */
+    private static final class RingBuffer<E> {
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final AtomicReferenceArray<E> elements;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        RingBuffer(int minCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            this.elements = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        void enqueue(E element) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - position;
+                if (diff == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        elements.lazySet(index, element);
+                        sequences.set(index, position + 1);
+                        return;
+                    }
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        E dequeue() {
+            while (true) {
+                long position = head.get();
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - (position + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(position, position + 1)) {
+                        E element = elements.get(index);
+                        elements.lazySet(index, null);
+                        sequences.set(index, position + mask + 1);
+                        return element;
+                    }
+                } else if (diff < 0) {
+                    if (position == tail.get()) {
+                        return null;
+                    }
+                    // 生产者已占位但尚未写入
+                    Thread.onSpinWait();
+                }
+            }
+        }
     }
 
     /**
@@ -253,4 +507,4 @@ public class BackpressureController {
                     backpressureActive, strategy);
         }
     }
-}
\ No newline at end of file
+}
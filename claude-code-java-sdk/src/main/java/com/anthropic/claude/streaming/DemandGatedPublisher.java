@@ -0,0 +1,241 @@
+package com.anthropic.claude.streaming;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按需放行的发布者
+ *
+ * 把同步推送的消息源（各执行策略的 Observable，在读取CLI输出的线程上逐行推送）转换为遵循
+ * Reactive Streams 请求语义的发布者：下游没有未满足的请求时，推送线程在 onNext 中阻塞，
+ * 不再读取CLI的stdout；管道写满后CLI进程自身阻塞。消息不在本类中缓存，内存占用只取决于下游请求量。
+ *
+ * 上游在指定执行器上订阅，订阅方在 onSubscribe 之后再请求也不会死锁；取消订阅时释放推送线程并取消上游。
+ * 请求数非法时的 onError 与推送线程的信号串行发送：推送线程正在 onNext 中时由它在返回后发送。
+ *
+ * @param <T> 元素类型
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public final class DemandGatedPublisher<T> implements Publisher<T> {
+    private static final Logger logger = LoggerFactory.getLogger(DemandGatedPublisher.class);
+
+    private final Observable<T> source;
+    private final Executor subscribeExecutor;
+
+    /**
+     * @param source 同步推送的消息源，onNext 在生产线程上调用
+     * @param subscribeExecutor 订阅上游的执行器，上游可能在订阅期间阻塞直到进程结束
+     */
+    public DemandGatedPublisher(Observable<T> source, Executor subscribeExecutor) {
+        this.source = source;
+        this.subscribeExecutor = subscribeExecutor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        GatedSubscription<T> subscription = new GatedSubscription<>(subscriber);
+        subscriber.onSubscribe(subscription);
+        if (subscription.isTerminated()) {
+            return;
+        }
+
+        try {
+            subscribeExecutor.execute(() -> source.subscribe(subscription));
+        } catch (RejectedExecutionException e) {
+            subscription.onError(e);
+        }
+    }
+
+    /**
+     * 单个订阅：记录下游未满足的请求数，推送线程每发出一个元素消耗一个请求
+     */
+    private static final class GatedSubscription<T> implements Subscription, Observer<T> {
+        private final Subscriber<? super T> downstream;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demandAvailable = lock.newCondition();
+
+        private long demand;
+        private boolean cancelled;
+        private boolean done;
+        private boolean emitting;
+        private Throwable pendingError;
+        private volatile Disposable upstream;
+
+        GatedSubscription(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                rejectRequest(new IllegalArgumentException("请求数必须为正数: " + n));
+                return;
+            }
+            lock.lock();
+            try {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                demandAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                demandAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            Disposable current = upstream;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+
+        /**
+         * 已取消或已因非法请求终止，此后不再需要订阅上游
+         */
+        boolean isTerminated() {
+            lock.lock();
+            try {
+                return cancelled || done;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Disposable disposable) {
+            upstream = disposable;
+            if (isTerminated()) {
+                disposable.dispose();
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            boolean emit = false;
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled && !done) {
+                    demandAvailable.await();
+                }
+                if (!cancelled && !done) {
+                    emit = true;
+                    emitting = true;
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            } finally {
+                lock.unlock();
+            }
+
+            if (interrupted) {
+                logger.debug("等待下游请求时被中断，取消上游");
+                cancel();
+            } else if (emit) {
+                downstream.onNext(item);
+                Throwable error;
+                lock.lock();
+                try {
+                    emitting = false;
+                    error = pendingError;
+                    pendingError = null;
+                } finally {
+                    lock.unlock();
+                }
+                if (error != null) {
+                    downstream.onError(error);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            signalError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (markDone()) {
+                downstream.onComplete();
+            }
+        }
+
+        /**
+         * 非法请求终止订阅并取消上游；推送线程正在发送元素时错误交给它在 onNext 返回后发送
+         */
+        private void rejectRequest(Throwable error) {
+            boolean deliverNow;
+            lock.lock();
+            try {
+                if (done || cancelled) {
+                    return;
+                }
+                done = true;
+                deliverNow = !emitting;
+                if (!deliverNow) {
+                    pendingError = error;
+                }
+                demandAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            Disposable current = upstream;
+            if (current != null) {
+                current.dispose();
+            }
+            if (deliverNow) {
+                downstream.onError(error);
+            }
+        }
+
+        private void signalError(Throwable error) {
+            if (markDone()) {
+                downstream.onError(error);
+            }
+        }
+
+        /**
+         * 终止信号只发送一次，取消后不再发送
+         */
+        private boolean markDone() {
+            lock.lock();
+            try {
+                if (done || cancelled) {
+                    return false;
+                }
+                done = true;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.anthropic.claude.streaming;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
@@ -7,6 +11,8 @@ import java.util.function.Predicate;
  * 过滤异步迭代器
  * 只返回满足条件的元素
  *
+ * 按批从源迭代器拉取并过滤，满足条件的元素暂存在本地缓冲中
+ *
  * @param <T> 元素类型
  * @author Claude Code Java SDK
  * @version 1.0.0
@@ -15,7 +21,9 @@ public class FilteredAsyncIterator<T> implements AsyncIterator<T> {
 
     private final AsyncIterator<T> source;
     private final Predicate<T> predicate;
-    private CompletableFuture<T> nextItem = null;
+    private List<T> buffer = Collections.emptyList();
+    private int position = 0;
+    private boolean exhausted = false;
 
     public FilteredAsyncIterator(AsyncIterator<T> source, Predicate<T> predicate) {
         this.source = source;
@@ -24,44 +32,58 @@ public class FilteredAsyncIterator<T> implements AsyncIterator<T> {
 
     @Override
     public CompletableFuture<Boolean> hasNext() {
-        if (nextItem != null) {
-            return CompletableFuture.completedFuture(true);
+        if (buffered() > 0) {
+            return AsyncLoops.CONTINUE;
         }
-
-        return findNext().thenApply(found -> found != null);
+        return fill().thenApply(ignored -> buffered() > 0);
     }
 
     @Override
     public CompletableFuture<T> next() {
-        if (nextItem != null) {
-            CompletableFuture<T> result = nextItem;
-            nextItem = null;
-            return result;
+        if (buffered() > 0) {
+            return CompletableFuture.completedFuture(buffer.get(position++));
         }
-
-        return findNext().thenCompose(found -> {
-            if (found != null) {
-                return found;
-            } else {
-                throw new java.util.NoSuchElementException("没有更多满足条件的元素");
+        return fill().thenApply(ignored -> {
+            if (buffered() == 0) {
+                throw new NoSuchElementException("没有更多满足条件的元素");
             }
+            return buffer.get(position++);
         });
     }
 
-    private CompletableFuture<CompletableFuture<T>> findNext() {
-        return source.hasNext().thenCompose(hasNext -> {
-            if (hasNext) {
-                return source.next().thenCompose(item -> {
-                    if (predicate.test(item)) {
-                        nextItem = CompletableFuture.completedFuture(item);
-                        return CompletableFuture.completedFuture(nextItem);
-                    } else {
-                        return findNext();
-                    }
-                });
-            } else {
-                return CompletableFuture.completedFuture(null);
-            }
+    @Override
+    public CompletableFuture<List<T>> nextBatch(int maxSize) {
+        AsyncLoops.checkBatchSize(maxSize);
+        return fill().thenApply(ignored -> {
+            int count = Math.min(maxSize, buffered());
+            List<T> batch = new ArrayList<>(buffer.subList(position, position + count));
+            position += count;
+            return batch;
         });
     }
-}
\ No newline at end of file
+
+    private int buffered() {
+        return buffer.size() - position;
+    }
+
+    private CompletableFuture<Void> fill() {
+        if (buffered() > 0 || exhausted) {
+            return AsyncLoops.DONE;
+        }
+        return AsyncLoops.loop(() -> source.nextBatch(AsyncLoops.DEFAULT_BATCH_SIZE).thenApply(batch -> {
+            if (batch.isEmpty()) {
+                exhausted = true;
+                return false;
+            }
+            List<T> accepted = new ArrayList<>(batch.size());
+            for (T item : batch) {
+                if (predicate.test(item)) {
+                    accepted.add(item);
+                }
+            }
+            buffer = accepted;
+            position = 0;
+            return accepted.isEmpty();
+        }));
+    }
+}
@@ -1,5 +1,7 @@
 package com.anthropic.claude.streaming;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -37,4 +39,18 @@ public class LimitedAsyncIterator<T> implements AsyncIterator<T> {
         consumed++;
         return source.next();
     }
-}
\ No newline at end of file
+
+    @Override
+    public CompletableFuture<List<T>> nextBatch(int maxSize) {
+        AsyncLoops.checkBatchSize(maxSize);
+        long remaining = limit - consumed;
+        if (remaining <= 0) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        // 只向源请求剩余额度内的元素，不多读源迭代器
+        return source.nextBatch((int) Math.min(maxSize, remaining)).thenApply(batch -> {
+            consumed += batch.size();
+            return batch;
+        });
+    }
+}
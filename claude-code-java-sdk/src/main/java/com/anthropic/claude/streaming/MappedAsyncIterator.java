@@ -1,5 +1,7 @@
 package com.anthropic.claude.streaming;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
@@ -31,4 +33,15 @@ public class MappedAsyncIterator<T, R> implements AsyncIterator<R> {
     public CompletableFuture<R> next() {
         return source.next().thenApply(mapper);
     }
-}
\ No newline at end of file
+
+    @Override
+    public CompletableFuture<List<R>> nextBatch(int maxSize) {
+        return source.nextBatch(maxSize).thenApply(batch -> {
+            List<R> mapped = new ArrayList<>(batch.size());
+            for (T item : batch) {
+                mapped.add(mapper.apply(item));
+            }
+            return mapped;
+        });
+    }
+}
@@ -0,0 +1,226 @@
+package com.anthropic.claude.streaming;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于 Reactive Streams 发布者的异步迭代器
+ *
+ * 首次拉取时订阅发布者，并按预取量向上游请求元素；消费掉一半预取量后再补充请求，
+ * 本地缓冲不超过预取量。与 {@link DemandGatedPublisher} 配合时，迭代器不拉取则CLI输出读取随之暂停。
+ * 元素到达前的拉取返回未完成的结果，由推送元素的线程完成。
+ *
+ * @param <T> 元素类型
+ * @author Claude Code Java SDK
+ * @version 1.0.0
+ */
+public class PublisherAsyncIterator<T> implements AsyncIterator<T>, AutoCloseable {
+
+    private final Publisher<? extends T> publisher;
+    private final int prefetch;
+    private final int replenishThreshold;
+    private final Object lock = new Object();
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+
+    private Subscription subscription;
+    private boolean subscribed;
+    private boolean done;
+    private boolean cancelled;
+    private Throwable error;
+    private int consumedSinceRequest;
+    private CompletableFuture<Void> signal;
+
+    public PublisherAsyncIterator(Publisher<? extends T> publisher) {
+        this(publisher, AsyncLoops.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param prefetch 向上游请求的元素数量上限，即本地缓冲上限
+     */
+    public PublisherAsyncIterator(Publisher<? extends T> publisher, int prefetch) {
+        AsyncLoops.checkBatchSize(prefetch);
+        this.publisher = publisher;
+        this.prefetch = prefetch;
+        this.replenishThreshold = Math.max(1, prefetch / 2);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasNext() {
+        CompletableFuture<Void> wait;
+        synchronized (lock) {
+            if (!buffer.isEmpty()) {
+                return AsyncLoops.CONTINUE;
+            }
+            if (done) {
+                return terminal(AsyncLoops.STOP);
+            }
+            wait = awaitSignal();
+        }
+        subscribeIfNeeded();
+        return wait.thenCompose(ignored -> hasNext());
+    }
+
+    @Override
+    public CompletableFuture<T> next() {
+        return nextBatch(1).thenApply(batch -> {
+            if (batch.isEmpty()) {
+                throw new NoSuchElementException("没有更多元素");
+            }
+            return batch.get(0);
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<T>> nextBatch(int maxSize) {
+        AsyncLoops.checkBatchSize(maxSize);
+        List<T> batch;
+        CompletableFuture<Void> wait;
+        long toRequest = 0;
+        Subscription current;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                if (done) {
+                    return terminal(CompletableFuture.completedFuture(Collections.emptyList()));
+                }
+                wait = awaitSignal();
+                batch = null;
+            } else {
+                wait = null;
+                int count = Math.min(maxSize, buffer.size());
+                batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(buffer.poll());
+                }
+                consumedSinceRequest += count;
+                if (consumedSinceRequest >= replenishThreshold && !done) {
+                    toRequest = consumedSinceRequest;
+                    consumedSinceRequest = 0;
+                }
+            }
+            current = subscription;
+        }
+
+        if (batch == null) {
+            subscribeIfNeeded();
+            return wait.thenCompose(ignored -> nextBatch(maxSize));
+        }
+        if (toRequest > 0 && current != null) {
+            current.request(toRequest);
+        }
+        return CompletableFuture.completedFuture(batch);
+    }
+
+    /**
+     * 取消订阅，已缓冲的元素仍可取出，之后迭代结束
+     */
+    @Override
+    public void close() {
+        Subscription current;
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            done = true;
+            current = subscription;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        signalWaiter();
+    }
+
+    private void subscribeIfNeeded() {
+        synchronized (lock) {
+            if (subscribed || cancelled) {
+                return;
+            }
+            subscribed = true;
+        }
+        publisher.subscribe(new BufferingSubscriber());
+    }
+
+    private CompletableFuture<Void> awaitSignal() {
+        if (signal == null) {
+            signal = new CompletableFuture<>();
+        }
+        return signal;
+    }
+
+    private <R> CompletableFuture<R> terminal(CompletableFuture<R> completion) {
+        if (error != null) {
+            return CompletableFuture.failedFuture(error);
+        }
+        return completion;
+    }
+
+    /**
+     * 唤醒等待中的拉取，必须在锁外调用：拉取的后续操作会在当前线程上同步执行
+     */
+    private void signalWaiter() {
+        CompletableFuture<Void> waiter;
+        synchronized (lock) {
+            waiter = signal;
+            signal = null;
+        }
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+    private final class BufferingSubscriber implements Subscriber<T> {
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            boolean cancelNow;
+            synchronized (lock) {
+                cancelNow = cancelled;
+                subscription = s;
+            }
+            if (cancelNow) {
+                s.cancel();
+            } else {
+                s.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            synchronized (lock) {
+                if (cancelled) {
+                    return;
+                }
+                buffer.add(item);
+            }
+            signalWaiter();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (lock) {
+                if (done) {
+                    return;
+                }
+                error = throwable;
+                done = true;
+            }
+            signalWaiter();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (lock) {
+                done = true;
+            }
+            signalWaiter();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.anthropic.claude.streaming;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -38,22 +39,29 @@ public class SkippedAsyncIterator<T> implements AsyncIterator<T> {
         return source.next();
     }
 
-    private CompletableFuture<Void> performSkip() {
-        if (skipCompleted || skipped >= skip) {
-            skipCompleted = true;
-            return CompletableFuture.completedFuture(null);
+    @Override
+    public CompletableFuture<List<T>> nextBatch(int maxSize) {
+        AsyncLoops.checkBatchSize(maxSize);
+        if (!skipCompleted) {
+            return performSkip().thenCompose(ignored -> source.nextBatch(maxSize));
         }
+        return source.nextBatch(maxSize);
+    }
 
-        return source.hasNext().thenCompose(hasNext -> {
-            if (hasNext && skipped < skip) {
-                return source.next().thenCompose(ignored -> {
-                    skipped++;
-                    return performSkip();
-                });
-            } else {
+    private CompletableFuture<Void> performSkip() {
+        return AsyncLoops.loop(() -> {
+            long remaining = skip - skipped;
+            if (skipCompleted || remaining <= 0) {
                 skipCompleted = true;
-                return CompletableFuture.completedFuture(null);
+                return AsyncLoops.STOP;
             }
+            return source.nextBatch((int) Math.min(remaining, AsyncLoops.DEFAULT_BATCH_SIZE)).thenApply(batch -> {
+                skipped += batch.size();
+                if (batch.isEmpty()) {
+                    skipCompleted = true;
+                }
+                return !batch.isEmpty();
+            });
         });
     }
-}
\ No newline at end of file
+}
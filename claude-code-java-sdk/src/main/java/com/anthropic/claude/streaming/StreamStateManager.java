@@ -1,9 +1,13 @@
 package com.anthropic.claude.streaming;
 
+import com.anthropic.claude.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -11,14 +15,38 @@ import java.util.concurrent.atomic.AtomicLong;
  * 流状态管理器
  * 监控和管理流的状态，支持暂停、恢复和错误恢复
  *
+ * 每个流记录已交付给消费者的消息偏移量、CLI会话ID，并在有界回放缓冲中保留最近交付的消息。
+ * 出错重试时根据检查点以 --resume 恢复会话并跳过已交付的消息，消费者重新连接时可从回放缓冲补齐。
+ * 暂停期间交付线程在 {@link #awaitResumed(String)} 中阻塞，不再读取CLI输出。
+ *
  * @author Claude Code Java SDK
  * @version 1.0.0
  */
 public class StreamStateManager {
     private static final Logger logger = LoggerFactory.getLogger(StreamStateManager.class);
 
+    /**
+     * 默认回放缓冲大小（消息数）
+     */
+    public static final int DEFAULT_REPLAY_BUFFER_SIZE = 1000;
+
     private final ConcurrentHashMap<String, StreamState> streams = new ConcurrentHashMap<>();
     private final AtomicLong streamIdCounter = new AtomicLong(0);
+    private final int replayBufferSize;
+
+    public StreamStateManager() {
+        this(DEFAULT_REPLAY_BUFFER_SIZE);
+    }
+
+    /**
+     * @param replayBufferSize 每个流保留的最近交付消息数量，0表示不保留
+     */
+    public StreamStateManager(int replayBufferSize) {
+        if (replayBufferSize < 0) {
+            throw new IllegalArgumentException("回放缓冲大小不能为负数: " + replayBufferSize);
+        }
+        this.replayBufferSize = replayBufferSize;
+    }
 
     /**
      * 创建新的流状态
@@ -28,7 +56,7 @@ public class StreamStateManager {
      */
     public String createStream(String streamName) {
         String streamId = generateStreamId();
-        StreamState state = new StreamState(streamId, streamName);
+        StreamState state = new StreamState(streamId, streamName, replayBufferSize);
         streams.put(streamId, state);
 
         logger.info("创建流状态: {} [{}]", streamName, streamId);
@@ -68,8 +96,7 @@ public class StreamStateManager {
      */
     public boolean pauseStream(String streamId) {
         StreamState state = streams.get(streamId);
-        if (state != null && state.getStatus() == StreamStatus.RUNNING) {
-            state.setStatus(StreamStatus.PAUSED);
+        if (state != null && state.transition(StreamStatus.RUNNING, StreamStatus.PAUSED)) {
             state.setPauseTime(LocalDateTime.now());
             logger.info("暂停流: {}", streamId);
             return true;
@@ -85,8 +112,7 @@ public class StreamStateManager {
      */
     public boolean resumeStream(String streamId) {
         StreamState state = streams.get(streamId);
-        if (state != null && state.getStatus() == StreamStatus.PAUSED) {
-            state.setStatus(StreamStatus.RUNNING);
+        if (state != null && state.transition(StreamStatus.PAUSED, StreamStatus.RUNNING)) {
             state.setPauseTime(null);
             logger.info("恢复流: {}", streamId);
             return true;
@@ -118,17 +144,84 @@ public class StreamStateManager {
      */
     public boolean retryStream(String streamId) {
         StreamState state = streams.get(streamId);
-        if (state != null && state.getStatus() == StreamStatus.ERROR) {
-            state.setStatus(StreamStatus.RUNNING);
+        if (state != null && state.transition(StreamStatus.ERROR, StreamStatus.RUNNING)) {
             state.incrementRetryCount();
             state.setLastError(null);
             state.setErrorTime(null);
-            logger.info("重试流: {} (重试次数: {})", streamId, state.getRetryCount());
+            logger.info("重试流: {} (重试次数: {}, 已交付: {})", streamId, state.getRetryCount(),
+                    state.getDeliveredOffset());
             return true;
         }
         return false;
     }
 
+    /**
+     * 记录一条已交付给消费者的消息，推进偏移量并放入回放缓冲
+     *
+     * @param streamId 流ID
+     * @param message 已交付的消息
+     * @return 该消息的偏移量，流不存在时返回-1
+     */
+    public long recordDelivery(String streamId, Message message) {
+        StreamState state = streams.get(streamId);
+        if (state == null) {
+            return -1;
+        }
+        updateSessionId(streamId, message.getSessionId());
+        return state.recordDelivery(message);
+    }
+
+    /**
+     * 记录流对应的CLI会话ID，恢复会话时使用最近一次记录的值
+     *
+     * @param streamId 流ID
+     * @param sessionId 会话ID，为null时忽略
+     */
+    public void updateSessionId(String streamId, String sessionId) {
+        StreamState state = streams.get(streamId);
+        if (state != null && sessionId != null && !sessionId.equals(state.getSessionId())) {
+            state.setSessionId(sessionId);
+            logger.debug("流 {} 的会话ID: {}", streamId, sessionId);
+        }
+    }
+
+    /**
+     * 获取流的检查点
+     *
+     * @param streamId 流ID
+     * @return 检查点，流不存在时返回null
+     */
+    public StreamCheckpoint getCheckpoint(String streamId) {
+        StreamState state = streams.get(streamId);
+        return state != null ? state.checkpoint() : null;
+    }
+
+    /**
+     * 从回放缓冲中取出指定偏移量之后交付的消息
+     *
+     * 早于 {@link StreamCheckpoint#getReplayStartOffset()} 的消息已被淘汰，不再返回
+     *
+     * @param streamId 流ID
+     * @param fromOffset 起始偏移量（包含）
+     * @return 消息列表，流不存在时为空
+     */
+    public List<Message> getReplay(String streamId, long fromOffset) {
+        StreamState state = streams.get(streamId);
+        return state != null ? state.getReplay(fromOffset) : new ArrayList<>();
+    }
+
+    /**
+     * 流处于暂停状态时阻塞当前线程，直到流恢复、结束或当前线程被中断
+     *
+     * @param streamId 流ID
+     */
+    public void awaitResumed(String streamId) {
+        StreamState state = streams.get(streamId);
+        if (state != null) {
+            state.awaitNotPaused();
+        }
+    }
+
     /**
      * 完成流
      *
@@ -201,6 +294,7 @@ public class StreamStateManager {
      */
     public void shutdown() {
         logger.info("关闭流状态管理器，流数量: {}", streams.size());
+        streams.values().forEach(state -> state.setStatus(StreamStatus.CLOSED));
         streams.clear();
     }
 
@@ -234,10 +328,19 @@ public class StreamStateManager {
         private volatile LocalDateTime completionTime;
         private volatile Throwable lastError;
         private volatile int retryCount = 0;
+        private volatile String sessionId;
+        private final int replayCapacity;
+        private final ArrayDeque<Message> replayBuffer = new ArrayDeque<>();
+        private long deliveredOffset = 0;
 
         public StreamState(String streamId, String streamName) {
+            this(streamId, streamName, DEFAULT_REPLAY_BUFFER_SIZE);
+        }
+
+        public StreamState(String streamId, String streamName, int replayCapacity) {
             this.streamId = streamId;
             this.streamName = streamName;
+            this.replayCapacity = replayCapacity;
             this.createdTime = LocalDateTime.now();
             this.status = StreamStatus.CREATED;
             this.lastUpdate = LocalDateTime.now();
@@ -248,7 +351,10 @@ public class StreamStateManager {
         public String getStreamName() { return streamName; }
         public LocalDateTime getCreatedTime() { return createdTime; }
         public StreamStatus getStatus() { return status; }
-        public void setStatus(StreamStatus status) { this.status = status; }
+        public synchronized void setStatus(StreamStatus status) {
+            this.status = status;
+            notifyAll();
+        }
         public LocalDateTime getLastUpdate() { return lastUpdate; }
         public void setLastUpdate(LocalDateTime lastUpdate) { this.lastUpdate = lastUpdate; }
         public LocalDateTime getPauseTime() { return pauseTime; }
@@ -261,6 +367,61 @@ public class StreamStateManager {
         public void setLastError(Throwable lastError) { this.lastError = lastError; }
         public int getRetryCount() { return retryCount; }
         public void incrementRetryCount() { this.retryCount++; }
+        public String getSessionId() { return sessionId; }
+        public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+
+        public synchronized long getDeliveredOffset() {
+            return deliveredOffset;
+        }
+
+        /**
+         * 状态为 expected 时切换为 next
+         */
+        synchronized boolean transition(StreamStatus expected, StreamStatus next) {
+            if (status != expected) {
+                return false;
+            }
+            setStatus(next);
+            lastUpdate = LocalDateTime.now();
+            return true;
+        }
+
+        synchronized long recordDelivery(Message message) {
+            if (replayCapacity > 0) {
+                if (replayBuffer.size() == replayCapacity) {
+                    replayBuffer.pollFirst();
+                }
+                replayBuffer.addLast(message);
+            }
+            return deliveredOffset++;
+        }
+
+        synchronized List<Message> getReplay(long fromOffset) {
+            long startOffset = deliveredOffset - replayBuffer.size();
+            long skip = Math.max(0, fromOffset - startOffset);
+            List<Message> messages = new ArrayList<>((int) Math.max(0, replayBuffer.size() - skip));
+            long index = 0;
+            for (Message message : replayBuffer) {
+                if (index++ >= skip) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+
+        synchronized StreamCheckpoint checkpoint() {
+            return new StreamCheckpoint(streamId, sessionId, deliveredOffset, deliveredOffset - replayBuffer.size());
+        }
+
+        synchronized void awaitNotPaused() {
+            try {
+                while (status == StreamStatus.PAUSED) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
         public boolean isActive() {
             return status == StreamStatus.RUNNING || status == StreamStatus.PAUSED;
@@ -272,4 +433,34 @@ public class StreamStateManager {
                     streamId, streamName, status, retryCount);
         }
     }
+
+    /**
+     * 流检查点：恢复会话所需的会话ID和已交付偏移量
+     */
+    public static class StreamCheckpoint {
+        private final String streamId;
+        private final String sessionId;
+        private final long deliveredOffset;
+        private final long replayStartOffset;
+
+        public StreamCheckpoint(String streamId, String sessionId, long deliveredOffset, long replayStartOffset) {
+            this.streamId = streamId;
+            this.sessionId = sessionId;
+            this.deliveredOffset = deliveredOffset;
+            this.replayStartOffset = replayStartOffset;
+        }
+
+        public String getStreamId() { return streamId; }
+        public String getSessionId() { return sessionId; }
+        /** 已交付的消息数量，即下一条消息的偏移量 */
+        public long getDeliveredOffset() { return deliveredOffset; }
+        /** 回放缓冲中最早一条消息的偏移量 */
+        public long getReplayStartOffset() { return replayStartOffset; }
+
+        @Override
+        public String toString() {
+            return String.format("StreamCheckpoint{id='%s', session='%s', delivered=%d, replayFrom=%d}",
+                    streamId, sessionId, deliveredOffset, replayStartOffset);
+        }
+    }
 }
\ No newline at end of file
@@ -7,6 +7,10 @@ import org.junit.jupiter.api.Test;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +43,38 @@ class ClaudeCodeOptionsTest {
         assertEquals(authProvider, options.getAuthProvider());
     }
 
+    @Test
+    void testBlockingExecutorModes() throws Exception {
+        ClaudeCodeOptions defaults = ClaudeCodeOptions.builder().build();
+        assertEquals(ExecutorMode.COMMON_POOL, defaults.getExecutorMode());
+        assertSame(ForkJoinPool.commonPool(), defaults.getBlockingExecutor());
+
+        ClaudeCodeOptions platform = ClaudeCodeOptions.builder()
+                .executorMode(ExecutorMode.PLATFORM)
+                .blockingPoolSize(3)
+                .build();
+        ThreadPoolExecutor pool = assertInstanceOf(ThreadPoolExecutor.class, platform.getBlockingExecutor());
+        assertEquals(3, pool.getMaximumPoolSize());
+        assertTrue(CompletableFuture.supplyAsync(() -> Thread.currentThread().isDaemon(), pool).get());
+
+        // JDK 21以下回退到有界平台线程池
+        ClaudeCodeOptions virtual = ClaudeCodeOptions.builder()
+                .executorMode(ExecutorMode.VIRTUAL)
+                .blockingPoolSize(5)
+                .build();
+        if (!BlockingExecutors.isVirtualThreadSupported()) {
+            assertEquals(5, ((ThreadPoolExecutor) virtual.getBlockingExecutor()).getMaximumPoolSize());
+        }
+        assertEquals("ok", CompletableFuture.supplyAsync(() -> "ok", virtual.getBlockingExecutor()).get());
+
+        Executor custom = Runnable::run;
+        ClaudeCodeOptions injected = ClaudeCodeOptions.builder()
+                .executorMode(ExecutorMode.PLATFORM)
+                .blockingExecutor(custom)
+                .build();
+        assertSame(custom, injected.getBlockingExecutor());
+    }
+
     @Test
     void testBuilderWithDefaults() {
         ClaudeCodeOptions options = ClaudeCodeOptions.builder()
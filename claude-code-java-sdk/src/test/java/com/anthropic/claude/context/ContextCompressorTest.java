@@ -0,0 +1,162 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上下文压缩器测试
+ */
+class ContextCompressorTest {
+
+    private static final MessageType[] TYPES = {
+        MessageType.SYSTEM, MessageType.USER, MessageType.ASSISTANT, MessageType.ERROR, MessageType.TEXT
+    };
+    private static final String[] PHRASES = {
+        "ok", "an error occurred", "important note", "critical exception", "重要的错误", "普通回复"
+    };
+
+    @Test
+    void testCompressKeepsPolicy() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message(MessageType.SYSTEM, "system prompt", now.minusHours(2)));
+        messages.add(new Message(MessageType.USER, "critical error in build", now.minusMinutes(5)));
+        for (int i = 0; i < 20; i++) {
+            messages.add(new Message(MessageType.ASSISTANT, "reply-" + i + "-" + "x".repeat(36),
+                now.minusHours(1).plusMinutes(i)));
+        }
+        ContextConfig config = ContextConfig.builder().minRetainedMessages(1).build();
+
+        List<Message> compressed = new ContextCompressor(config).compress(messages);
+        assertSame(messages.get(0), compressed.get(0));
+        assertTrue(compressed.contains(messages.get(1)));
+        assertTrue(compressed.size() < messages.size());
+        assertTrue(compressed.contains(messages.get(messages.size() - 1)));
+        assertFalse(compressed.contains(messages.get(2)));
+    }
+
+    @Test
+    void testMatchesReferencePolicy() {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            List<Message> messages = randomHistory(random);
+            ContextConfig config = ContextConfig.builder()
+                .minRetainedMessages(1 + random.nextInt(12))
+                .compressionRatio(0.1 + random.nextInt(8) * 0.1)
+                .preserveImportantMessages(random.nextBoolean())
+                .build();
+
+            List<Message> expected = referenceCompress(messages, config);
+            List<Message> actual = new ContextCompressor(config).compress(messages);
+            assertEquals(ids(expected), ids(actual), "第 " + round + " 轮结果不一致");
+        }
+    }
+
+    private static List<Message> randomHistory(Random random) {
+        // 时间错开半分钟，避免落在10/30分钟的边界上；时间相同的消息用于检查相同时间下的顺序
+        LocalDateTime base = LocalDateTime.now().minusSeconds(30);
+        int count = 1 + random.nextInt(40);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!messages.isEmpty() && random.nextInt(10) == 0) {
+                messages.add(messages.get(random.nextInt(messages.size())));
+                continue;
+            }
+            MessageType type = TYPES[random.nextInt(TYPES.length)];
+            String content = PHRASES[random.nextInt(PHRASES.length)] + " " + "y".repeat(random.nextInt(600));
+            LocalDateTime time = base.minusMinutes(random.nextInt(45));
+            messages.add(new Message(type, content, time));
+        }
+        if (random.nextBoolean()) {
+            messages.sort(Comparator.comparing(Message::getTimestamp));
+        }
+        return messages;
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 改写前基于排序的压缩实现，作为结果的对照
+     */
+    private static List<Message> referenceCompress(List<Message> messages, ContextConfig config) {
+        TokenCounter counter = config.getTokenCounter();
+        int currentSize = messages.stream().mapToInt(counter::countTokens).sum();
+        int targetSize = (int) (currentSize * config.getCompressionRatio());
+
+        List<Message> important = new ArrayList<>();
+        List<Message> regular = new ArrayList<>();
+        List<Message> compressed = new ArrayList<>();
+        for (Message message : messages) {
+            if (message.getType() == MessageType.SYSTEM) {
+                compressed.add(message);
+            } else if (referenceImportance(message) > 0.7) {
+                important.add(message);
+            } else {
+                regular.add(message);
+            }
+        }
+        if (config.isPreserveImportantMessages()) {
+            compressed.addAll(important);
+        }
+
+        int remaining = targetSize - compressed.stream().mapToInt(counter::countTokens).sum();
+        if (remaining > 0) {
+            List<Message> sorted = regular.stream()
+                .sorted(Comparator.comparing(Message::getTimestamp).reversed())
+                .collect(Collectors.toList());
+            int used = 0;
+            for (Message message : sorted) {
+                int size = counter.countTokens(message);
+                if (used + size <= remaining) {
+                    compressed.add(message);
+                    used += size;
+                }
+            }
+        }
+        compressed.sort(Comparator.comparing(Message::getTimestamp));
+
+        if (compressed.size() < config.getMinRetainedMessages()) {
+            Set<Message> existing = new HashSet<>(compressed);
+            messages.stream()
+                .filter(message -> !existing.contains(message))
+                .sorted(Comparator.comparing(Message::getTimestamp).reversed())
+                .limit(config.getMinRetainedMessages() - compressed.size())
+                .forEach(compressed::add);
+            compressed.sort(Comparator.comparing(Message::getTimestamp));
+        }
+        return compressed;
+    }
+
+    private static double referenceImportance(Message message) {
+        double score = 0.0;
+        String content = message.getContent().toLowerCase();
+        if (content.contains("error") || content.contains("exception") ||
+            content.contains("failed") || content.contains("错误")) {
+            score += 0.3;
+        }
+        if (content.contains("important") || content.contains("重要") ||
+            content.contains("critical") || content.contains("关键")) {
+            score += 0.2;
+        }
+        if (message.getContent().length() > 500) {
+            score += 0.1;
+        }
+        long ageMinutes = Duration.between(message.getTimestamp(), LocalDateTime.now()).toMinutes();
+        if (ageMinutes < 10) {
+            score += 0.2;
+        } else if (ageMinutes < 30) {
+            score += 0.1;
+        }
+        return Math.min(1.0, score);
+    }
+}
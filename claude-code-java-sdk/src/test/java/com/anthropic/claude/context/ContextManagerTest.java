@@ -0,0 +1,134 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上下文管理器测试
+ */
+class ContextManagerTest {
+
+    /** 固定按字符数除以4计数，便于断言窗口大小 */
+    private static final TokenCounter QUARTER_LENGTH = text -> text.length() / 4;
+
+    @Test
+    void testTotalSizeFollowsEveryWindow() {
+        ContextManager manager = new ContextManager(ContextConfig.builder()
+            .maxWindowSize(1000).compressionThreshold(900).tokenCounter(QUARTER_LENGTH).build());
+
+        manager.addMessage("a", Message.text("x".repeat(40)));
+        manager.addMessage("a", Message.text("x".repeat(80)));
+        manager.addMessage("b", Message.text("x".repeat(400)));
+        assertEquals(130, manager.getStats().getTotalSize());
+
+        // 替换窗口、清理上下文都会扣除原窗口的大小
+        manager.createContext("b");
+        assertEquals(30, manager.getStats().getTotalSize());
+        assertTrue(manager.clearContext("a"));
+        assertEquals(0, manager.getStats().getTotalSize());
+
+        manager.addMessage("c", Message.text("x".repeat(8)));
+        manager.shutdown();
+        assertEquals(0, manager.getStats().getTotalSize());
+    }
+
+    @Test
+    void testTruncationKeepsNewestMessagesThatFit() {
+        ContextConfig config = ContextConfig.builder().maxWindowSize(100).compressionThreshold(100)
+            .tokenCounter(QUARTER_LENGTH).build();
+        ContextManager.ContextWindow window = new ContextManager.ContextWindow("w", config);
+
+        for (int i = 0; i < 11; i++) {
+            window.addMessage(Message.text(i + "-" + "x".repeat(38)));
+        }
+
+        // 每条10 tokens，超过100后保留不超过80的最新消息
+        assertEquals(80, window.getCurrentSize());
+        List<String> prefixes = window.getMessages().stream()
+            .map(message -> message.getContent().substring(0, message.getContent().indexOf('-')))
+            .collect(Collectors.toList());
+        assertEquals(List.of("3", "4", "5", "6", "7", "8", "9", "10"), prefixes);
+    }
+
+    @Test
+    void testSnapshotIsReadOnlyAndStable() {
+        ContextConfig config = ContextConfig.builder().maxWindowSize(100).compressionThreshold(100)
+            .tokenCounter(QUARTER_LENGTH).build();
+        ContextManager.ContextWindow window = new ContextManager.ContextWindow("w", config);
+        window.addMessage(Message.text("first"));
+        window.addMessage(Message.text("second"));
+
+        List<Message> snapshot = window.getMessages();
+        for (int i = 0; i < 40; i++) {
+            window.addMessage(Message.text("later-" + i + "-" + "x".repeat(30)));
+        }
+        window.setMessages(List.of(Message.text("replaced")));
+
+        assertEquals(List.of("first", "second"),
+            snapshot.stream().map(Message::getContent).collect(Collectors.toList()));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(Message.text("x")));
+        assertEquals(1, window.getMessageCount());
+        assertEquals(2, window.getCurrentSize());
+    }
+
+    @Test
+    void testCompactionKeepsMessagesAppendedMeanwhile() {
+        ContextConfig config = ContextConfig.builder().maxWindowSize(100).compressionThreshold(100)
+            .tokenCounter(QUARTER_LENGTH).build();
+        ContextManager.ContextWindow window = new ContextManager.ContextWindow("w", config);
+        for (int i = 0; i < 5; i++) {
+            window.addMessage(Message.text("old-" + i + "-" + "x".repeat(34)));
+        }
+
+        ContextManager.WindowSnapshot snapshot = window.snapshot();
+        window.addMessage(Message.text("new-1-" + "x".repeat(34)));
+        window.addMessage(Message.text("new-2-" + "x".repeat(34)));
+        assertTrue(window.replaceIfUnchanged(snapshot, snapshot.getMessages().subList(4, 5)));
+        assertEquals(List.of("old-4", "new-1", "new-2"), window.getMessages().stream()
+            .map(message -> message.getContent().substring(0, 5))
+            .collect(Collectors.toList()));
+        assertEquals(30, window.getCurrentSize());
+
+        // 快照之后发生截断时放弃压缩结果
+        ContextManager.WindowSnapshot stale = window.snapshot();
+        window.addMessage(Message.text("x".repeat(320)));
+        assertFalse(window.replaceIfUnchanged(stale, List.of()));
+        assertEquals(80, window.getCurrentSize());
+    }
+
+    @Test
+    void testBackgroundCompactionAndIdleExpiry() throws Exception {
+        ContextManager manager = new ContextManager(ContextConfig.builder()
+            .maxWindowSize(1000).compressionThreshold(100).minRetainedMessages(1)
+            .tokenCounter(QUARTER_LENGTH).backgroundCompaction(true).build());
+        Message last = null;
+        for (int i = 0; i < 30; i++) {
+            last = Message.text("m-" + i + "-" + "x".repeat(36));
+            manager.addMessage("a", last);
+        }
+
+        ContextManager.ContextWindow window = manager.getContext("a");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (window.getCurrentSize() >= 300 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(window.getCurrentSize() < 300);
+        assertTrue(manager.getMessages("a").contains(last));
+        assertEquals(window.getCurrentSize(), manager.getStats().getTotalSize());
+
+        // 超过最大上下文年龄未访问的窗口被清理，之后的消息进入新窗口
+        assertEquals(0, manager.expireIdleContexts());
+        assertEquals(1, manager.expireIdleContexts(LocalDateTime.now().plusMinutes(61)));
+        assertNull(manager.getContext("a"));
+        assertEquals(0, manager.getStats().getTotalSize());
+        manager.addMessage("a", Message.text("x".repeat(40)));
+        assertEquals(1, manager.getContext("a").getMessageCount());
+        manager.shutdown();
+    }
+}
@@ -0,0 +1,133 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 堆外上下文存储测试
+ */
+class OffHeapContextStoreTest {
+
+    @Test
+    void testRoundTripAndSegmentReuse() {
+        try (OffHeapContextStore store = OffHeapContextStore.direct(256)) {
+            Message original = Message.builder()
+                .type(MessageType.TOOL_RESULT)
+                .subtype("success")
+                .content("上下文压缩 done")
+                .addMetadata("session_id", "s-1")
+                .addMetadata("tokens", List.of(1, 2))
+                .timestamp(Instant.parse("2024-05-01T10:15:30.123456789Z"))
+                .build();
+
+            long handle = store.store(original);
+            Message loaded = store.load(handle);
+            assertNotSame(original, loaded);
+            assertEquals(original.getId(), loaded.getId());
+            assertEquals(MessageType.TOOL_RESULT, loaded.getType());
+            assertEquals("success", loaded.getSubtype());
+            assertEquals(original.getContent(), loaded.getContent());
+            assertEquals(original.getInstantTimestamp(), loaded.getInstantTimestamp());
+            assertEquals(Map.of("session_id", "s-1", "tokens", List.of(1, 2)), loaded.getMetadata());
+            store.release(handle);
+            assertEquals(0, store.getUsedBytes());
+
+            // 段内记录全部释放后复用，已分配空间不随写入次数增长
+            for (int round = 0; round < 3; round++) {
+                List<Long> handles = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    handles.add(store.store(Message.text("message-" + i)));
+                }
+                assertEquals("message-49", store.load(handles.get(49)).getContent());
+                handles.forEach(store::release);
+            }
+            long allocated = store.getAllocatedBytes();
+            for (int i = 0; i < 50; i++) {
+                store.release(store.store(Message.text("message-" + i)));
+            }
+            assertEquals(allocated, store.getAllocatedBytes());
+
+            // 超过段大小的消息单独成段
+            long large = store.store(Message.text("x".repeat(1000)));
+            assertEquals(1000, store.load(large).getContent().length());
+            store.release(large);
+            assertEquals(allocated, store.getAllocatedBytes());
+        }
+    }
+
+    @Test
+    void testTimeMetadataIsStoredAsIsoText() {
+        try (OffHeapContextStore store = OffHeapContextStore.direct(256)) {
+            long handle = store.store(Message.builder()
+                .type(MessageType.TEXT)
+                .content("with time")
+                .addMetadata("created_at", Instant.parse("2024-05-01T10:15:30Z"))
+                .addMetadata("local", LocalDateTime.of(2024, 5, 1, 18, 15, 30))
+                .build());
+
+            Map<String, Object> metadata = store.load(handle).getMetadata();
+            assertEquals("2024-05-01T10:15:30Z", metadata.get("created_at"));
+            assertEquals("2024-05-01T18:15:30", metadata.get("local"));
+        }
+    }
+
+    @Test
+    void testMappedStoreIsDeletedOnClose(@TempDir Path dir) {
+        Path file = dir.resolve("context.store");
+        OffHeapContextStore store = OffHeapContextStore.mapped(file, 1024);
+        long handle = store.store(Message.text("mapped"));
+        assertEquals("mapped", store.load(handle).getContent());
+        assertTrue(Files.exists(file));
+
+        store.close();
+        assertFalse(Files.exists(file));
+        ClaudeCodeException closed = assertThrows(ClaudeCodeException.class, () -> store.load(handle));
+        assertEquals("CONTEXT_STORE_CLOSED", closed.getErrorCode());
+    }
+
+    @Test
+    void testContextManagerReleasesStoredMessages() {
+        try (OffHeapContextStore store = OffHeapContextStore.direct(4096)) {
+            ContextManager manager = new ContextManager(ContextConfig.builder()
+                .maxWindowSize(100).compressionThreshold(100).minRetainedMessages(1)
+                .tokenCounter(text -> text.length() / 4)
+                .contextStore(store)
+                .build());
+
+            for (int i = 0; i < 11; i++) {
+                manager.addMessage("a", Message.text(i + "-" + "x".repeat(38)));
+            }
+            // 与堆上存储相同：超过100后保留不超过80的最新消息
+            List<String> prefixes = manager.getMessages("a").stream()
+                .map(message -> message.getContent().substring(0, message.getContent().indexOf('-')))
+                .collect(Collectors.toList());
+            assertEquals(List.of("3", "4", "5", "6", "7", "8", "9", "10"), prefixes);
+            assertEquals(80, manager.getStats().getTotalSize());
+            long used = store.getUsedBytes();
+            assertTrue(used > 0);
+
+            manager.compressContext("a");
+            assertTrue(store.getUsedBytes() < used);
+            assertEquals(manager.getContext("a").getMessageCount(), manager.getMessages("a").size());
+
+            manager.addMessage("b", Message.text("other"));
+            assertTrue(manager.clearContext("a"));
+            manager.shutdown();
+            assertEquals(0, store.getUsedBytes());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.anthropic.claude.context;
+
+import com.anthropic.claude.messages.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * token计数器测试
+ */
+class TokenCounterTest {
+
+    private final BpeTokenCounter counter = new BpeTokenCounter();
+
+    @Test
+    void testBpeCounterRules() {
+        assertEquals(0, counter.countTokens(""));
+        // 单词前的单个空格并入单词，长单词按6个字符拆分
+        assertEquals(3, counter.countTokens("hello world!"));
+        assertEquals(4, counter.countTokens("internationalization"));
+        // 数字每3位一个token
+        assertEquals(3, counter.countTokens("12345678"));
+        // 中文每个字符一个token，全角标点同样计数
+        assertEquals(6, counter.countTokens("上下文压缩。"));
+        // 连续相同符号合并，emoji计2个
+        assertEquals(2, counter.countTokens("--------"));
+        assertEquals(2, counter.countTokens("😀"));
+        assertEquals(3, counter.countTokens("a\n\n\nb"));
+    }
+
+    @Test
+    void testCjkIsNotUnderestimated() {
+        String chinese = "请帮我分析一下这个函数的性能问题并给出优化建议";
+        assertTrue(counter.countTokens(chinese) >= chinese.length());
+        assertTrue(counter.countTokens(chinese) > chinese.length() / 4 * 3);
+    }
+
+    @Test
+    void testCountsAreCachedPerMessage() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingTokenCounter caching = new CachingTokenCounter(text -> {
+            calls.incrementAndGet();
+            return text.length();
+        });
+        Message message = Message.text("abcdef");
+
+        assertEquals(6, caching.countTokens(message));
+        assertEquals(6, caching.countTokens(message));
+        assertEquals(1, calls.get());
+
+        // ID相同但内容不同时重新计数
+        Message rebuilt = Message.builder().id(message.getId()).content("abc").build();
+        assertEquals(3, caching.countTokens(rebuilt));
+        assertEquals(2, calls.get());
+
+        assertSame(caching, CachingTokenCounter.wrap(caching));
+    }
+
+    @Test
+    void testConfiguredCounterSizesWindowsAndCompression() {
+        AtomicInteger calls = new AtomicInteger();
+        ContextConfig config = ContextConfig.builder()
+            .maxWindowSize(1000).compressionThreshold(900).minRetainedMessages(1)
+            .tokenCounter(text -> {
+                calls.incrementAndGet();
+                return 10;
+            })
+            .build();
+        ContextManager.ContextWindow window = new ContextManager.ContextWindow("w", config);
+        for (int i = 0; i < 5; i++) {
+            window.addMessage(Message.text("m" + i));
+        }
+        assertEquals(50, window.getCurrentSize());
+
+        new ContextCompressor(config).compress(window.getMessages());
+        List<Message> truncated = new ContextCompressor(config).truncateToSize(window.getMessages(), 30);
+        assertEquals(3, truncated.size());
+        // 每条消息只计数一次
+        assertEquals(5, calls.get());
+    }
+}
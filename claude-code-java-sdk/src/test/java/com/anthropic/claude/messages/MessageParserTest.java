@@ -4,6 +4,10 @@ import com.anthropic.claude.exceptions.ClaudeCodeException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -189,4 +193,110 @@ class MessageParserTest {
 
         assertFalse(parser.validateMessageFormat(invalidJson));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseCliResultFormat() throws ClaudeCodeException {
+        String json = "{\"type\":\"result\",\"subtype\":\"success\",\"uuid\":\"u-1\",\"result\":\"done\",\"usage\":{\"input_tokens\":3}}";
+
+        Message message = parser.parseMessage(json);
+
+        assertEquals("u-1", message.getId());
+        assertEquals(MessageType.TEXT, message.getType());
+        assertEquals("success", message.getSubtype());
+        assertEquals("done", message.getContent());
+    }
+
+    @Test
+    void testParseMessageBindsMetadataAndTimestamp() throws ClaudeCodeException {
+        String json = "{\"timestamp\":\"2024-01-01T00:00:00Z\",\"metadata\":{\"k\":[1,2]},\"type\":\"assistant\",\"content\":\"hi\",\"extra\":{\"a\":1}}";
+
+        Message message = parser.parseMessage(json);
+
+        assertEquals(MessageType.ASSISTANT, message.getType());
+        assertEquals("hi", message.getContent());
+        assertEquals(List.of(1, 2), message.getMetadata().get("k"));
+        assertEquals("2024-01-01T00:00:00Z", message.getInstantTimestamp().toString());
+    }
+
+    @Test
+    void testParseMessageRejectsStructuredContent() {
+        assertThrows(ClaudeCodeException.class,
+            () -> parser.parseMessage("{\"type\":\"text\",\"content\":[1]}"));
+        assertThrows(ClaudeCodeException.class, () -> parser.parseMessage("42"));
+    }
+
+    @Test
+    void testParseMessageFromBytes() throws ClaudeCodeException {
+        byte[] data = "xx{\"id\":\"b-1\",\"content\":\"字节\"}yy".getBytes(StandardCharsets.UTF_8);
+
+        Message message = parser.parseMessage(data, 2, data.length - 4);
+
+        assertEquals("b-1", message.getId());
+        assertEquals("字节", message.getContent());
+    }
+
+    @Test
+    void testParseMessageStream() throws ClaudeCodeException {
+        String content = "{\"id\":\"1\",\"content\":\"a\"}\n"
+            + "{\"type\":\"result\",\"result\":\"b\"}\n"
+            + "[{\"id\":\"3\"},{\"id\":\"4\",\"content\":{}}]\n";
+        InputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        List<Message> received = new ArrayList<>();
+
+        int count = parser.parseMessageStream(in, received::add);
+
+        assertEquals(3, count);
+        assertEquals("1", received.get(0).getId());
+        assertEquals("b", received.get(1).getContent());
+        assertEquals("3", received.get(2).getId());
+    }
+
+    @Test
+    void testParseStreamingLine() {
+        assertNull(parser.parseStreamingLine(null));
+        assertNull(parser.parseStreamingLine("   "));
+        assertNull(parser.parseStreamingLine("# comment"));
+        assertNull(parser.parseStreamingLine("not json"));
+        assertNull(parser.parseStreamingLine("{\"id\":\"1\"} trailing"));
+
+        Message message = parser.parseStreamingLine("  data: {\"id\":\"sse\",\"content\":\"x\"}\r");
+        assertNotNull(message);
+        assertEquals("sse", message.getId());
+    }
+
+    @Test
+    void testParseStreamingLineFromBytes() {
+        byte[] data = "# comment\n  data: {\"id\":\"sse\",\"content\":\"中文\"}\r\nnot json"
+            .getBytes(StandardCharsets.UTF_8);
+        int first = indexOf(data, 0);
+        int second = indexOf(data, first + 1);
+
+        assertNull(parser.parseStreamingLine(data, 0, first));
+        Message message = parser.parseStreamingLine(data, first + 1, second - first - 1);
+        assertNotNull(message);
+        assertEquals("sse", message.getId());
+        assertEquals("中文", message.getContent());
+        assertNull(parser.parseStreamingLine(data, second + 1, data.length - second - 1));
+    }
+
+    private static int indexOf(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return data.length;
+    }
+
+    @Test
+    void testSessionIdIsKeptInMetadata() {
+        Message init = parser.parseStreamingLine("{\"type\":\"system\",\"subtype\":\"init\",\"session_id\":\"sess-1\"}");
+        assertEquals("sess-1", init.getSessionId());
+
+        Message result = parser.parseStreamingLine("{\"type\":\"result\",\"result\":\"done\",\"session_id\":\"sess-1\"}");
+        assertEquals("done", result.getContent());
+        assertEquals("sess-1", result.getSessionId());
+
+        assertNull(parser.parseStreamingLine("{\"type\":\"text\",\"content\":\"x\"}").getSessionId());
+    }
+}
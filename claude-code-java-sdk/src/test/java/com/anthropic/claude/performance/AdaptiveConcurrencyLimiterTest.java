@@ -0,0 +1,226 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.query.CancellationToken;
+import com.anthropic.claude.query.QueryRequest;
+import com.anthropic.claude.strategy.CliExecutionStrategy;
+import com.anthropic.claude.strategy.ConcurrencyLimitedStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 自适应并发限制器测试
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void testRequestsBeyondLimitQueueInArrivalOrder() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(1).maxLimit(1).build();
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(Duration.ofSeconds(5));
+        List<Integer> order = new ArrayList<>();
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            waiters.add(CompletableFuture.runAsync(() -> {
+                AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(Duration.ofSeconds(5));
+                synchronized (order) {
+                    order.add(index);
+                }
+                permit.onIgnore();
+            }));
+            waitFor(() -> limiter.getStats().getQueued() == index + 1);
+        }
+
+        first.onIgnore();
+        for (CompletableFuture<Void> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of(0, 1, 2), order);
+        assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    @Test
+    void testFullQueueAndQueueTimeoutAreRejected() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(1).maxLimit(1).maxQueueSize(0).build();
+        limiter.acquire(Duration.ofSeconds(1));
+
+        ClaudeCodeException full = assertThrows(ClaudeCodeException.class, () -> limiter.acquire(Duration.ofSeconds(1)));
+        assertEquals("CONCURRENCY_QUEUE_FULL", full.getErrorCode());
+
+        AdaptiveConcurrencyLimiter queued = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(1).maxLimit(1).build();
+        queued.acquire(Duration.ofSeconds(1));
+        ClaudeCodeException timeout = assertThrows(ClaudeCodeException.class, () -> queued.acquire(Duration.ofMillis(50)));
+        assertEquals("CONCURRENCY_QUEUE_TIMEOUT", timeout.getErrorCode());
+        assertEquals(0, queued.getStats().getQueued());
+        assertEquals(1, queued.getStats().getRejected());
+    }
+
+    @Test
+    void testCancelledWaiterLeavesQueue() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(1).maxLimit(1).build();
+        AdaptiveConcurrencyLimiter.Permit running = limiter.acquire(Duration.ofSeconds(5));
+
+        CancellationToken token = CancellationToken.create();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter = CompletableFuture.supplyAsync(
+            () -> limiter.acquire(Duration.ofSeconds(30), token));
+        waitFor(() -> limiter.getStats().getQueued() == 1);
+
+        token.cancel("caller gone");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertEquals("QUERY_CANCELLED", ((ClaudeCodeException) failure.getCause()).getErrorCode());
+        assertEquals(0, limiter.getStats().getQueued());
+
+        running.onIgnore();
+        assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    @Test
+    void testLimitGrowsOnSuccessAndBacksOffOnOverload() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(2).minLimit(1).maxLimit(32).build();
+
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire(Duration.ofSeconds(1)).onSuccess();
+        }
+        assertTrue(limiter.getLimit() > 2, "上限被用满时成功请求应提高上限");
+        int grown = limiter.getLimit();
+
+        limiter.acquire(Duration.ofSeconds(1)).onRateLimited();
+        assertEquals(grown / 2, limiter.getLimit());
+
+        int beforeDrop = limiter.getLimit();
+        limiter.acquire(Duration.ofSeconds(1)).onDropped();
+        assertTrue(limiter.getLimit() <= beforeDrop);
+
+        // 不调整上限的结果以及重复释放都不影响统计
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(Duration.ofSeconds(1));
+        permit.onIgnore();
+        permit.onRateLimited();
+        assertEquals(1, limiter.getStats().getRateLimited());
+        assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    @Test
+    void testExpectedWaitBeyondDeadlineIsRejectedImmediately() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(1).maxLimit(1).build();
+        for (int i = 0; i < 10; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(Duration.ofSeconds(1));
+            Thread.sleep(100);
+            permit.onSuccess();
+        }
+
+        limiter.acquire(Duration.ofSeconds(1));
+        long start = System.nanoTime();
+        ClaudeCodeException rejected = assertThrows(ClaudeCodeException.class, () -> limiter.acquire(Duration.ofMillis(50)));
+        assertEquals("CONCURRENCY_DEADLINE_EXCEEDED", rejected.getErrorCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50), "应在排队前拒绝");
+    }
+
+    @Test
+    void testStrategyReportsUsageLimitAndTimeouts() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(8).maxLimit(8).build();
+        CliExecutionStrategy delegate = mock(CliExecutionStrategy.class);
+        ConcurrencyLimitedStrategy strategy = new ConcurrencyLimitedStrategy(delegate, limiter, Duration.ofSeconds(5));
+        QueryRequest request = QueryRequest.builder("q").build();
+
+        when(delegate.execute(any())).thenReturn(Stream.of(Message.error("Usage limit reached, try again later")));
+        assertEquals(1, strategy.execute(request).count());
+        assertEquals(1, limiter.getStats().getRateLimited());
+        assertEquals(4, limiter.getLimit());
+
+        when(delegate.execute(any())).thenThrow(new ClaudeCodeException("POOLED_CONNECTION_TIMEOUT", "timeout"));
+        assertThrows(ClaudeCodeException.class, () -> strategy.execute(request));
+        assertEquals(1, limiter.getStats().getDropped());
+
+        when(delegate.executeStream(any())).thenReturn(io.reactivex.rxjava3.core.Observable.just(Message.text("ok")));
+        assertEquals(1, strategy.executeStream(request).toList().blockingGet().size());
+        assertEquals(0, limiter.getStats().getInFlight());
+    }
+
+    @Test
+    void testSlowConsumerDoesNotCountAsLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(8).maxLimit(8).build();
+        CliExecutionStrategy delegate = mock(CliExecutionStrategy.class);
+        ConcurrencyLimitedStrategy strategy = new ConcurrencyLimitedStrategy(delegate, limiter, Duration.ofSeconds(5));
+        QueryRequest request = QueryRequest.builder("q").build();
+        when(delegate.executeStream(any())).thenAnswer(invocation ->
+            io.reactivex.rxjava3.core.Observable.just(Message.text("a"), Message.text("b"), Message.text("c")));
+
+        for (int i = 0; i < 10; i++) {
+            strategy.executeStream(request).blockingSubscribe();
+        }
+        // 首条消息之后消费者每条停顿100ms，不应被视为延迟劣化
+        strategy.executeStream(request).blockingSubscribe(message -> Thread.sleep(100));
+
+        assertEquals(8, limiter.getLimit());
+        assertEquals(11, limiter.getStats().getSucceeded());
+        assertTrue(limiter.getStats().getAverageLatency().toMillis() < 50);
+    }
+
+    @Test
+    void testSyncExecutionDoesNotSampleLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(8).maxLimit(8).build();
+        CliExecutionStrategy delegate = mock(CliExecutionStrategy.class);
+        ConcurrencyLimitedStrategy strategy = new ConcurrencyLimitedStrategy(delegate, limiter, Duration.ofSeconds(5));
+        QueryRequest request = QueryRequest.builder("q").build();
+        when(delegate.execute(any())).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return Stream.of(Message.text("done"));
+        });
+
+        // 同步结果返回时生成已经结束，完整生成时间不能混入首条消息延迟
+        assertEquals(1, strategy.execute(request).count());
+
+        assertEquals(1, limiter.getStats().getSucceeded());
+        assertEquals(Duration.ZERO, limiter.getStats().getAverageLatency());
+    }
+
+    @Test
+    void testCancellingSynchronousStreamDisposesUpstream() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(8).maxLimit(8).build();
+        CliExecutionStrategy delegate = mock(CliExecutionStrategy.class);
+        ConcurrencyLimitedStrategy strategy = new ConcurrencyLimitedStrategy(delegate, limiter, Duration.ofSeconds(5));
+        QueryRequest request = QueryRequest.builder("q").build();
+        // 在订阅线程上无限同步发射，只有上游被取消才会返回
+        when(delegate.executeStream(any())).thenReturn(
+            io.reactivex.rxjava3.core.Observable.generate(emitter -> emitter.onNext(Message.text("x"))));
+
+        List<Message> received = assertTimeoutPreemptively(Duration.ofSeconds(5),
+            () -> strategy.executeStream(request).take(3).toList().blockingGet());
+
+        assertEquals(3, received.size());
+        assertEquals(0, limiter.getStats().getInFlight());
+        assertEquals(0, limiter.getStats().getSucceeded());
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+}
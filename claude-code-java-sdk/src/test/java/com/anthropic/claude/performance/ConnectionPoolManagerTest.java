@@ -0,0 +1,131 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.process.ProcessManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 连接池管理器测试，使用shell脚本模拟stream-json模式的常驻CLI
+ */
+@EnabledOnOs({OS.LINUX, OS.MAC})
+class ConnectionPoolManagerTest {
+
+    private static final String ECHO_CLI = "#!/bin/sh\n"
+        + "while IFS= read -r line; do\n"
+        + "  echo '{\"type\":\"result\",\"subtype\":\"success\",\"result\":\"ok\"}'\n"
+        + "done\n";
+
+    @TempDir
+    Path directory;
+
+    private ConnectionPoolManager pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testConnectionWithoutKeyIsRetiredAfterOneRequest() throws Exception {
+        pool = createPool(1, 2);
+
+        PooledConnection first = pool.acquireConnection();
+        first.sendPrompt("tenant-a secret", Duration.ofSeconds(5), line -> { });
+        pool.releaseConnection(first);
+
+        waitFor(first::isClosed);
+        PooledConnection second = pool.acquireConnection();
+        assertNotSame(first, second);
+        pool.releaseConnection(second);
+    }
+
+    @Test
+    void testConversationKeyReusesConnection() throws Exception {
+        pool = createPool(1, 3);
+
+        PooledConnection first = pool.acquireConnection("session-a");
+        first.sendPrompt("hello", Duration.ofSeconds(5), line -> { });
+        pool.releaseConnection(first);
+        assertFalse(first.isClosed());
+
+        PooledConnection other = pool.acquireConnection("session-b");
+        assertNotSame(first, other);
+        PooledConnection anonymous = pool.acquireConnection();
+        assertNotSame(first, anonymous);
+        pool.releaseConnection(other);
+        pool.releaseConnection(anonymous);
+
+        PooledConnection again = pool.acquireConnection("session-a");
+        assertSame(first, again);
+        assertEquals(2, again.getUsageCount());
+        pool.releaseConnection(again);
+    }
+
+    @Test
+    void testIdleConversationEvictedWhenPoolFull() throws Exception {
+        pool = createPool(1, 1);
+
+        PooledConnection keyed = pool.acquireConnection("session-a");
+        pool.releaseConnection(keyed);
+        assertFalse(keyed.isClosed());
+
+        PooledConnection anonymous = pool.acquireConnection();
+        assertNotSame(keyed, anonymous);
+        assertTrue(keyed.isClosed(), "连接数已满时应关闭空闲的会话连接");
+        pool.releaseConnection(anonymous);
+    }
+
+    @Test
+    void testReleaseDoesNotWaitForProcessExit() throws Exception {
+        // stdin关闭后进程仍继续运行数秒，释放连接不应等待进程退出
+        pool = createPool(1, 2, ECHO_CLI + "sleep 5\n");
+
+        PooledConnection connection = pool.acquireConnection();
+        connection.sendPrompt("hello", Duration.ofSeconds(5), line -> { });
+        long start = System.nanoTime();
+        pool.releaseConnection(connection);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "释放连接不应同步关闭进程");
+        assertTrue(pool.getStats().getTotalConnections() <= 2);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private ConnectionPoolManager createPool(int minPoolSize, int maxPoolSize) throws Exception {
+        return createPool(minPoolSize, maxPoolSize, ECHO_CLI);
+    }
+
+    private ConnectionPoolManager createPool(int minPoolSize, int maxPoolSize, String script) throws Exception {
+        Path cli = directory.resolve("fake-cli.sh");
+        Files.writeString(cli, script);
+        assertTrue(cli.toFile().setExecutable(true));
+
+        ClaudeCodeOptions options = ClaudeCodeOptions.builder()
+            .cliPath(cli.toString())
+            .minPoolSize(minPoolSize)
+            .maxPoolSize(maxPoolSize)
+            .connectionTimeout(5000)
+            .build();
+        return new ConnectionPoolManager(options, new ProcessManager(Duration.ofSeconds(10), new HashMap<>()));
+    }
+}
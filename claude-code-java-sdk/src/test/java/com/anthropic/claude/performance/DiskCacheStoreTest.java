@@ -0,0 +1,179 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.query.CacheManagerQueryResultCache;
+import com.anthropic.claude.query.TieredQueryResultCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 磁盘缓存存储测试
+ */
+class DiskCacheStoreTest {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEntriesSurviveReopen() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            for (int i = 0; i < 3000; i++) {
+                store.put("key-" + i, bytes("value-" + i), null);
+            }
+            store.put("key-7", bytes("updated"), null);
+        }
+
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            assertEquals("value-0", string(store.get("key-0")));
+            assertEquals("value-2999", string(store.get("key-2999")));
+            assertEquals("updated", string(store.get("key-7")));
+            assertNull(store.get("missing"));
+            assertEquals(3000, store.getStats().getEntryCount());
+        }
+    }
+
+    @Test
+    void testExpiredEntriesAreMisses() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            store.put("gone", bytes("x"), Duration.ofMillis(-1));
+            store.put("kept", bytes("y"), Duration.ofHours(1));
+
+            assertNull(store.get("gone"));
+            assertEquals("y", string(store.get("kept")));
+
+            store.compact();
+            assertEquals(1, store.getStats().getEntryCount());
+            assertEquals("y", string(store.get("kept")));
+        }
+    }
+
+    @Test
+    void testTornTailIsTruncatedAndLostIndexIsRebuilt() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            store.put("a", bytes("1"), null);
+            store.put("b", bytes("2"), null);
+        }
+
+        Path segment = directory.resolve(DiskCacheStore.SEGMENT_FILE);
+        long intact = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[] {0, 0, 0, 100, 1, 2, 3}));
+        }
+        Files.delete(directory.resolve(DiskCacheStore.INDEX_FILE));
+
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            assertEquals("1", string(store.get("a")));
+            assertEquals("2", string(store.get("b")));
+            assertEquals(intact, store.getStats().getSegmentBytes());
+        }
+    }
+
+    @Test
+    void testCompactionDropsOverwritesAndEnforcesSizeCap() throws IOException {
+        byte[] payload = new byte[1024];
+        Arrays.fill(payload, (byte) 'x');
+
+        try (DiskCacheStore store = new DiskCacheStore(directory, 64 * 1024)) {
+            for (int i = 0; i < 200; i++) {
+                store.put("key-" + i, payload, null);
+            }
+
+            DiskCacheStore.DiskCacheStats stats = store.getStats();
+            assertTrue(stats.getCompactions() > 0);
+            assertTrue(stats.getSegmentBytes() <= 64 * 1024);
+            // 最早写入的结果被淘汰，最新的保留
+            assertNull(store.get("key-0"));
+            assertArrayEquals(payload, store.get("key-199"));
+        }
+    }
+
+    @Test
+    void testDirectoryIsLockedWhileOpen() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            store.put("a", bytes("1"), null);
+            assertThrows(IOException.class, () -> new DiskCacheStore(directory, MAX_BYTES));
+            assertEquals("1", string(store.get("a")));
+        }
+
+        try (DiskCacheStore reopened = new DiskCacheStore(directory, MAX_BYTES)) {
+            assertEquals("1", string(reopened.get("a")));
+        }
+    }
+
+    @Test
+    void testIndexFileIsNotTruncatedWhenRebuilt() throws IOException {
+        Path index = directory.resolve(DiskCacheStore.INDEX_FILE);
+        long grown;
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            for (int i = 0; i < 3000; i++) {
+                store.put("key-" + i, bytes("value-" + i), null);
+            }
+            grown = Files.size(index);
+
+            // 清空后索引缩回最小容量，文件保持原长度，旧槽位已清零
+            store.clear();
+            assertEquals(grown, Files.size(index));
+            assertNull(store.get("key-1"));
+            assertEquals(0, store.getStats().getEntryCount());
+            store.put("fresh", bytes("new"), null);
+        }
+
+        try (DiskCacheStore store = new DiskCacheStore(directory, MAX_BYTES)) {
+            assertEquals("new", string(store.get("fresh")));
+            assertNull(store.get("key-1"));
+            assertEquals(1, store.getStats().getEntryCount());
+        }
+    }
+
+    @Test
+    void testTieredCacheServesFromDiskAfterRestart() throws IOException {
+        Message message = Message.builder().content("persisted").subtype("final").addMetadata("n", 1).build();
+
+        TieredQueryResultCache first = newTieredCache();
+        first.put("query", List.of(message));
+        first.close();
+
+        TieredQueryResultCache second = newTieredCache();
+        try {
+            List<Message> cached = second.get("query");
+            assertNotNull(cached);
+            assertEquals("persisted", cached.get(0).getContent());
+            assertEquals("final", cached.get(0).getSubtype());
+            assertEquals(message.getId(), cached.get(0).getId());
+            assertEquals(1, second.getDiskStats().getHits());
+
+            // 回填内存后不再读盘
+            second.get("query");
+            assertEquals(1, second.getDiskStats().getHits());
+        } finally {
+            second.close();
+        }
+    }
+
+    private TieredQueryResultCache newTieredCache() throws IOException {
+        return new TieredQueryResultCache(new CacheManagerQueryResultCache(new CacheManager()),
+            new DiskCacheStore(directory, MAX_BYTES), Duration.ofHours(1));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+}
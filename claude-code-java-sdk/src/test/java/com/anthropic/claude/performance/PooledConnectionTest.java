@@ -0,0 +1,182 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.process.ProcessManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 池化连接测试，使用shell脚本模拟stream-json模式的常驻CLI
+ */
+@EnabledOnOs({OS.LINUX, OS.MAC})
+class PooledConnectionTest {
+
+    private static final String ECHO_CLI =
+        "while IFS= read -r line; do "
+            + "echo '{\"type\":\"assistant\",\"content\":\"working\"}'; "
+            + "echo '{\"type\":\"result\",\"subtype\":\"success\",\"result\":\"ok\"}'; "
+            + "done";
+
+    private ProcessManager processManager;
+    private PooledConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        processManager = new ProcessManager(Duration.ofSeconds(10), new HashMap<>());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    void testSendPromptReadsUntilResultLine() throws Exception {
+        connection = createConnection(ECHO_CLI, 10);
+        connection.start();
+        connection.activate();
+
+        List<String> lines = new ArrayList<>();
+        connection.sendPrompt("hello", Duration.ofSeconds(5),
+            line -> lines.add(new String(line, StandardCharsets.UTF_8)));
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).contains("\"result\""));
+        assertTrue(connection.isHealthy());
+
+        // 同一进程可以处理下一轮请求
+        lines.clear();
+        connection.sendPrompt("again", Duration.ofSeconds(5),
+            line -> lines.add(new String(line, StandardCharsets.UTF_8)));
+        assertEquals(2, lines.size());
+    }
+
+    @Test
+    void testConnectionRecycledAfterMaxUses() throws Exception {
+        connection = createConnection(ECHO_CLI, 1);
+        connection.start();
+
+        connection.activate();
+        assertTrue(connection.isHealthy(), "活跃中的连接不因使用次数判定为不健康");
+
+        connection.deactivate();
+        assertFalse(connection.isHealthy());
+    }
+
+    @Test
+    void testExitedProcessIsUnhealthy() throws Exception {
+        connection = createConnection("read -r line; echo '{\"type\":\"result\",\"result\":\"bye\"}'", 10);
+        connection.start();
+        connection.activate();
+
+        connection.sendPrompt("hello", Duration.ofSeconds(5), line -> { });
+        connection.deactivate();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connection.isHealthy() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(connection.isHealthy());
+        assertThrows(ClaudeCodeException.class,
+            () -> connection.sendPrompt("again", Duration.ofSeconds(1), line -> { }));
+    }
+
+    @Test
+    void testTimeoutMarksConnectionBroken() throws Exception {
+        connection = createConnection("cat > /dev/null", 10);
+        connection.start();
+        connection.activate();
+
+        assertThrows(ClaudeCodeException.class,
+            () -> connection.sendPrompt("hello", Duration.ofMillis(200), line -> { }));
+        assertFalse(connection.isHealthy());
+    }
+
+    @Test
+    void testSlowConsumerStopsReadingStdout(@TempDir Path directory) throws Exception {
+        Path finished = directory.resolve("finished");
+        String payload = "x".repeat(100);
+        connection = createConnection("read -r line; i=0; while [ $i -lt 5000 ]; do "
+            + "echo '{\"type\":\"assistant\",\"content\":\"" + payload + "\"}'; i=$((i+1)); done; "
+            + "touch '" + finished + "'; "
+            + "echo '{\"type\":\"result\",\"subtype\":\"success\",\"result\":\"ok\"}'; "
+            + "cat > /dev/null", 10);
+        connection.start();
+        connection.activate();
+
+        CountDownLatch firstLine = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        CompletableFuture<Void> turn = CompletableFuture.runAsync(() -> connection.sendPrompt("hello",
+            Duration.ofSeconds(20), line -> {
+                if (received.incrementAndGet() == 1) {
+                    firstLine.countDown();
+                    try {
+                        resume.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+
+        // 输出远超有界队列和管道缓冲，消费方停住时CLI应阻塞在写stdout上
+        assertTrue(firstLine.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertFalse(Files.exists(finished), "消费方暂停时不应继续读取stdout");
+
+        resume.countDown();
+        turn.get(20, TimeUnit.SECONDS);
+        assertEquals(5001, received.get());
+        assertTrue(Files.exists(finished));
+    }
+
+    @Test
+    void testCloseTerminatesProcess() throws Exception {
+        connection = createConnection(ECHO_CLI, 10);
+        connection.start();
+
+        assertTrue(connection.close());
+        assertFalse(connection.close());
+        assertTrue(connection.isClosed());
+        assertFalse(connection.isHealthy());
+    }
+
+    @Test
+    void testIsResultLine() {
+        assertTrue(PooledConnection.isResultLine(bytes("{\"type\":\"result\",\"result\":\"ok\"}")));
+        assertTrue(PooledConnection.isResultLine(bytes("{\"meta\":{\"type\":\"x\"},\"type\":\"result\"}")));
+        assertFalse(PooledConnection.isResultLine(bytes("{\"type\":\"assistant\"}")));
+        assertFalse(PooledConnection.isResultLine(bytes("{\"message\":{\"type\":\"result\"}}")));
+        assertFalse(PooledConnection.isResultLine(bytes("not json")));
+    }
+
+    private static byte[] bytes(String line) {
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private PooledConnection createConnection(String script, long maxUses) {
+        return new PooledConnection("test-conn", processManager,
+            Arrays.asList("sh", "-c", script), maxUses, Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,224 @@
+package com.anthropic.claude.performance;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.query.CancellationToken;
+import com.anthropic.claude.query.QueryPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 优先级请求调度器测试
+ */
+class RequestSchedulerTest {
+
+    private final List<String> order = new ArrayList<>();
+    private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void testHigherPriorityIsScheduledFirst() throws Exception {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter()).build();
+        AdaptiveConcurrencyLimiter.Permit running = scheduler.acquire(QueryPriority.BATCH, null, Duration.ofSeconds(5));
+
+        enqueue(scheduler, "batch", QueryPriority.BATCH, null);
+        enqueue(scheduler, "normal", QueryPriority.NORMAL, null);
+        enqueue(scheduler, "interactive", QueryPriority.INTERACTIVE, null);
+
+        running.onIgnore();
+        awaitAll();
+        assertEquals(List.of("interactive", "normal", "batch"), order);
+    }
+
+    @Test
+    void testTenantsShareSlotsByWeight() throws Exception {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter())
+            .tenantWeight("gui", 2)
+            .build();
+        AdaptiveConcurrencyLimiter.Permit running = scheduler.acquire(null, null, Duration.ofSeconds(5));
+
+        for (int i = 0; i < 4; i++) {
+            enqueue(scheduler, "nightly" + i, QueryPriority.NORMAL, "nightly");
+        }
+        for (int i = 0; i < 4; i++) {
+            enqueue(scheduler, "gui" + i, QueryPriority.NORMAL, "gui");
+        }
+
+        running.onIgnore();
+        awaitAll();
+        // 权重为2的租户每轮分得两倍槽位，先到的租户不会独占
+        assertEquals(List.of("gui0", "nightly0", "gui1", "gui2", "nightly1", "gui3", "nightly2", "nightly3"), order);
+    }
+
+    @Test
+    void testPriorityConcurrencyCapLeavesRoomForOtherClasses() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder()
+            .initialLimit(4).maxLimit(4).build();
+        RequestScheduler scheduler = RequestScheduler.builder(limiter)
+            .concurrencyCap(QueryPriority.BATCH, 1)
+            .build();
+
+        AdaptiveConcurrencyLimiter.Permit batch = scheduler.acquire(QueryPriority.BATCH, null, Duration.ofSeconds(1));
+        ClaudeCodeException capped = assertThrows(ClaudeCodeException.class,
+            () -> scheduler.acquire(QueryPriority.BATCH, null, Duration.ofMillis(50)));
+        assertEquals("SCHEDULER_QUEUE_TIMEOUT", capped.getErrorCode());
+
+        AdaptiveConcurrencyLimiter.Permit interactive = scheduler.acquire(QueryPriority.INTERACTIVE, null, Duration.ofMillis(50));
+        assertEquals(1, scheduler.getStats().getInFlight(QueryPriority.BATCH));
+        assertEquals(1, scheduler.getStats().getInFlight(QueryPriority.INTERACTIVE));
+
+        batch.onSuccess();
+        interactive.onSuccess();
+        assertEquals(0, scheduler.getStats().getInFlight(QueryPriority.BATCH));
+        assertEquals(0, limiter.getStats().getInFlight());
+        assertEquals(0, scheduler.getStats().getQueued(QueryPriority.BATCH));
+    }
+
+    @Test
+    void testLongWaitingLowPriorityRequestIsPromoted() throws Exception {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter())
+            .starvationThreshold(Duration.ofMillis(50))
+            .build();
+        AdaptiveConcurrencyLimiter.Permit running = scheduler.acquire(QueryPriority.INTERACTIVE, null, Duration.ofSeconds(5));
+
+        enqueue(scheduler, "batch", QueryPriority.BATCH, null);
+        Thread.sleep(100);
+        enqueue(scheduler, "interactive", QueryPriority.INTERACTIVE, null);
+
+        running.onIgnore();
+        awaitAll();
+        assertEquals(List.of("batch", "interactive"), order);
+        assertEquals(1, scheduler.getStats().getPromoted());
+    }
+
+    @Test
+    void testCancelledRequestLeavesQueue() throws Exception {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter()).build();
+        AdaptiveConcurrencyLimiter.Permit running = scheduler.acquire(null, null, Duration.ofSeconds(5));
+
+        CancellationToken token = CancellationToken.create();
+        int expected = queued(scheduler) + 1;
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> cancelled = CompletableFuture.supplyAsync(
+            () -> scheduler.acquire(QueryPriority.NORMAL, "gone", Duration.ofSeconds(30), token), callers);
+        awaitQueued(scheduler, expected);
+        enqueue(scheduler, "next", QueryPriority.NORMAL, "next");
+
+        token.cancel("caller gone");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> cancelled.get(5, TimeUnit.SECONDS));
+        assertEquals("QUERY_CANCELLED", ((ClaudeCodeException) failure.getCause()).getErrorCode());
+        assertEquals(1, queued(scheduler));
+
+        running.onIgnore();
+        awaitAll();
+        assertEquals(List.of("next"), order);
+        assertEquals(0, queued(scheduler));
+    }
+
+    @Test
+    void testFullQueueIsRejected() {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter())
+            .maxQueueSize(0)
+            .build();
+
+        ClaudeCodeException full = assertThrows(ClaudeCodeException.class,
+            () -> scheduler.acquire(QueryPriority.NORMAL, null, Duration.ofSeconds(1)));
+        assertEquals("SCHEDULER_QUEUE_FULL", full.getErrorCode());
+        assertEquals(1, scheduler.getStats().getRejected());
+    }
+
+    @Test
+    void testIdleTenantsAreForgotten() throws Exception {
+        RequestScheduler scheduler = RequestScheduler.builder(singleSlotLimiter()).build();
+        AdaptiveConcurrencyLimiter.Permit running = scheduler.acquire(null, "steady", Duration.ofSeconds(5));
+
+        for (int i = 0; i < 50; i++) {
+            enqueue(scheduler, "once" + i, QueryPriority.NORMAL, "once" + i);
+        }
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = hold(scheduler, "steady");
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> third = hold(scheduler, "steady");
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> fourth = hold(scheduler, "steady");
+        assertEquals(51, scheduler.getTrackedTenantCount());
+
+        running.onIgnore();
+        second.get(5, TimeUnit.SECONDS).onIgnore();
+        // 调度到steady的第三个请求时虚拟时间越过一次性租户的完成时间，此时队列中仍有请求
+        AdaptiveConcurrencyLimiter.Permit thirdPermit = third.get(5, TimeUnit.SECONDS);
+        awaitAll();
+        assertEquals(1, queued(scheduler));
+        assertEquals(1, scheduler.getTrackedTenantCount());
+
+        thirdPermit.onIgnore();
+        fourth.get(5, TimeUnit.SECONDS).onIgnore();
+        assertEquals(0, scheduler.getTrackedTenantCount());
+    }
+
+    private static AdaptiveConcurrencyLimiter singleSlotLimiter() {
+        return AdaptiveConcurrencyLimiter.builder().initialLimit(1).maxLimit(1).build();
+    }
+
+    /**
+     * 异步排队一个请求，获得许可后记录名称并立即释放；返回前确认该请求已进入队列
+     */
+    private void enqueue(RequestScheduler scheduler, String name, QueryPriority priority, String tenant)
+            throws InterruptedException {
+        int expected = queued(scheduler) + 1;
+        waiters.add(CompletableFuture.runAsync(() -> {
+            AdaptiveConcurrencyLimiter.Permit permit = scheduler.acquire(priority, tenant, Duration.ofSeconds(5));
+            synchronized (order) {
+                order.add(name);
+            }
+            permit.onIgnore();
+        }, callers));
+        awaitQueued(scheduler, expected);
+    }
+
+    /**
+     * 异步排队一个请求，获得的许可交给调用方释放；返回前确认该请求已进入队列
+     */
+    private CompletableFuture<AdaptiveConcurrencyLimiter.Permit> hold(RequestScheduler scheduler, String tenant)
+            throws InterruptedException {
+        int expected = queued(scheduler) + 1;
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permit = CompletableFuture.supplyAsync(
+            () -> scheduler.acquire(QueryPriority.NORMAL, tenant, Duration.ofSeconds(5)), callers);
+        awaitQueued(scheduler, expected);
+        return permit;
+    }
+
+    private static void awaitQueued(RequestScheduler scheduler, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued(scheduler) < expected) {
+            assertTrue(System.nanoTime() < deadline, "等待请求入队超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static int queued(RequestScheduler scheduler) {
+        RequestScheduler.SchedulerStats stats = scheduler.getStats();
+        int total = 0;
+        for (QueryPriority priority : QueryPriority.values()) {
+            total += stats.getQueued(priority);
+        }
+        return total;
+    }
+
+    private void awaitAll() throws Exception {
+        for (CompletableFuture<Void> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
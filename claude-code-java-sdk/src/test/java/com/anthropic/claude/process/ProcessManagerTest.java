@@ -1,6 +1,7 @@
 package com.anthropic.claude.process;
 
 import com.anthropic.claude.exceptions.ProcessExecutionException;
+import com.anthropic.claude.query.CancellationToken;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledOnOs;
@@ -12,6 +13,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.zeroturnaround.exec.ProcessResult;
 
@@ -212,4 +215,72 @@ class ProcessManagerTest {
             future.get();
         });
     }
-}
\ No newline at end of file
+
+    // 启动一个后台孙进程并输出其pid，随后等待它结束
+    private static final List<String> SPAWNING_COMMAND = Arrays.asList("sh", "-c", "sleep 30 & echo $!; wait");
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testCancellationTerminatesProcessTree() throws Exception {
+        CancellationToken token = CancellationToken.create();
+        AtomicLong grandchild = new AtomicLong();
+
+        CompletableFuture<Void> execution = CompletableFuture.runAsync(() -> {
+            try {
+                processManager.executeStreaming(SPAWNING_COMMAND, line -> grandchild.set(Long.parseLong(line.trim())),
+                    Duration.ofSeconds(30), null, token);
+            } catch (ProcessExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waitForPid(grandchild);
+
+        token.cancel("测试取消");
+        Exception failure = assertThrows(Exception.class, () -> execution.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getCause() instanceof ProcessExecutionException);
+        assertFalse(isAlive(grandchild.get()), "取消后孙进程应被终止");
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testTimeoutTerminatesProcessTree() throws Exception {
+        AtomicLong grandchild = new AtomicLong();
+
+        assertThrows(ProcessExecutionException.class, () -> processManager.executeStreaming(SPAWNING_COMMAND,
+            line -> grandchild.set(Long.parseLong(line.trim())), Duration.ofMillis(500)));
+
+        waitForPid(grandchild);
+        assertFalse(isAlive(grandchild.get()), "超时后孙进程应被终止");
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testCancelledTokenDoesNotStartCommand() {
+        CancellationToken token = CancellationToken.create();
+        token.cancel("提前取消");
+
+        ProcessExecutionException rejected = assertThrows(ProcessExecutionException.class,
+            () -> processManager.executeSync(Arrays.asList("echo", "never"), Duration.ofSeconds(5), token));
+        assertTrue(rejected.getMessage().contains("提前取消"));
+    }
+
+    private static void waitForPid(AtomicLong pid) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pid.get() == 0) {
+            assertTrue(System.nanoTime() < deadline, "等待孙进程启动超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private static boolean isAlive(long pid) throws InterruptedException {
+        // 进程终止是异步的，稍作等待
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+            if (System.nanoTime() > deadline) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package com.anthropic.claude.pty;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 字节级行分帧测试
+ */
+class LineFramerTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineFramer framer = new LineFramer(line -> lines.add(line.toString()), 8, 1024 * 1024);
+
+    @Test
+    void testAllLineTerminators() {
+        feed("a\nb\r\nc\rd");
+
+        assertEquals(Arrays.asList("a", "b", "c"), lines);
+        assertEquals(1, framer.pendingBytes());
+
+        framer.flush();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), lines);
+    }
+
+    @Test
+    void testCrLfSplitAcrossChunks() {
+        feed("first\r");
+        feed("\nsecond\n");
+
+        assertEquals(Arrays.asList("first", "second"), lines);
+    }
+
+    @Test
+    void testEmptyLinesArePreserved() {
+        feed("a\n\n\r\rb\n");
+
+        assertEquals(Arrays.asList("a", "", "", "", "b"), lines);
+    }
+
+    @Test
+    void testMultiByteCharacterSplitAcrossReads() {
+        byte[] data = "中文输出✻\n".getBytes(StandardCharsets.UTF_8);
+        for (byte b : data) {
+            framer.feed(new byte[]{b}, 0, 1);
+        }
+
+        assertEquals(Arrays.asList("中文输出✻"), lines);
+    }
+
+    @Test
+    void testLongLineGrowsBuffer() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longLine.append("diff-").append(i);
+        }
+        feed(longLine + "\nnext\n");
+
+        assertEquals(Arrays.asList(longLine.toString(), "next"), lines);
+    }
+
+    @Test
+    void testOversizedLineIsForcedOut() {
+        LineFramer bounded = new LineFramer(line -> lines.add(line.toString()), 8, 16);
+        byte[] data = "0123456789abcdefXYZ\n".getBytes(StandardCharsets.UTF_8);
+        bounded.feed(data, 0, data.length);
+
+        assertEquals(Arrays.asList("0123456789abcdef", "XYZ"), lines);
+    }
+
+    @Test
+    void testReadFromStreamInSmallPieces() throws Exception {
+        byte[] data = "line one\r\nline two\nline three".getBytes(StandardCharsets.UTF_8);
+        InputStream in = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+
+        while (framer.read(in) >= 0) {
+            // 持续读取直到流结束
+        }
+        framer.flush();
+
+        assertEquals(Arrays.asList("line one", "line two", "line three"), lines);
+    }
+
+    private void feed(String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        framer.feed(data, 0, data.length);
+    }
+}
@@ -0,0 +1,105 @@
+package com.anthropic.claude.pty;
+
+import com.anthropic.claude.pty.OutputClassifier.LineType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 输出行分类器测试，默认模式表需与 ClaudeOutputPatterns 的正则判定一致
+ */
+class OutputClassifierTest {
+
+    private static final List<String> CORPUS = Arrays.asList(
+        "$ ls -la", "$", "> fix the bug", ">", "claude>", "Claude> hello", "[user@host]$ make", "[tag] $ x",
+        "❯ run", "C:\\Users\\dev>", "D:\\work> dir", "user@host:~$", "mail me at a@b.c", "Welcome to Claude Code!",
+        "claude-code v1.0.0", "Error: request timed out", "Build FAILED", "NullPointerException at line 3",
+        "操作失败", "无法连接服务器", "INVALID token", "missing argument", "Usage limit reached",
+        "usage-limit hit", "usage  limit", "Rate limit exceeded", "quota for today exceeded", "请求过于频繁",
+        "Session restored from disk", "会话已恢复", "Resuming session abc", "continuing the conversation",
+        "session_id: abc-123", "Session ID 42", "sessionid:", "authentication is required",
+        "login required", "API key missing", "401 Unauthorized", "需要认证", "Processing...", "✻ Thinking…",
+        "正在分析", "Analyzing files", "{\"type\":\"stream_start\"}", "开始生成回复", "Generating a response",
+        "generating", "Waiting for input", "please enter your name", "Enter a command:", "等待输入",
+        "Interrupted by user", "Cancelled", "已取消", "stopped", "{\"type\":\"result\"}", "plain text line",
+        "● 我先查看一下项目结构", "  ⎿  Found 4 files"
+    );
+
+    // 分类器统一忽略ASCII大小写；原正则对此项区分大小写，但 generating 总会先命中 PROCESSING，解析结果不受影响
+    private static final Pattern STREAMING_START_IGNORE_CASE =
+        Pattern.compile(ClaudeOutputPatterns.STREAMING_START_PATTERN.pattern(), Pattern.CASE_INSENSITIVE);
+
+    private final OutputClassifier classifier = OutputClassifier.defaultClassifier();
+
+    @Test
+    void testDefaultTableMatchesRegexPatterns() {
+        for (String line : CORPUS) {
+            int mask = classifier.classify(line);
+
+            assertEquals(find(ClaudeOutputPatterns.PROMPT_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.PROMPT), "PROMPT: " + line);
+            assertEquals(find(ClaudeOutputPatterns.ERROR_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.ERROR), "ERROR: " + line);
+            assertEquals(find(ClaudeOutputPatterns.USAGE_LIMIT_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.USAGE_LIMIT), "USAGE_LIMIT: " + line);
+            assertEquals(find(ClaudeOutputPatterns.SESSION_RESTORED_PATTERN, line)
+                    || find(ClaudeOutputPatterns.SESSION_ID_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.SESSION_INFO), "SESSION_INFO: " + line);
+            assertEquals(find(ClaudeOutputPatterns.AUTH_REQUIRED_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.AUTH_REQUIRED), "AUTH_REQUIRED: " + line);
+            assertEquals(find(ClaudeOutputPatterns.PROCESSING_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.PROCESSING), "PROCESSING: " + line);
+            assertEquals(find(STREAMING_START_IGNORE_CASE, line),
+                OutputClassifier.matches(mask, LineType.STREAMING_START), "STREAMING_START: " + line);
+            assertEquals(find(ClaudeOutputPatterns.WAITING_INPUT_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.WAITING_INPUT), "WAITING_INPUT: " + line);
+            assertEquals(find(ClaudeOutputPatterns.INTERRUPT_PATTERN, line),
+                OutputClassifier.matches(mask, LineType.INTERRUPT), "INTERRUPT: " + line);
+        }
+    }
+
+    @Test
+    void testCustomTable() {
+        OutputClassifier custom = OutputClassifier.builder()
+            .patterns(LineType.PROMPT, "^>>>\\s")
+            .patterns(LineType.ERROR, "fatal*disk", "e?r")
+            .build();
+
+        assertTrue(OutputClassifier.matches(custom.classify(">>> ready"), LineType.PROMPT));
+        assertFalse(OutputClassifier.matches(custom.classify(" >>> ready"), LineType.PROMPT));
+        assertFalse(OutputClassifier.matches(custom.classify(">>>"), LineType.PROMPT));
+        assertTrue(OutputClassifier.matches(custom.classify("FATAL: disk full"), LineType.ERROR));
+        assertFalse(OutputClassifier.matches(custom.classify("disk fatal"), LineType.ERROR));
+        assertTrue(OutputClassifier.matches(custom.classify("exr"), LineType.ERROR));
+        assertFalse(OutputClassifier.matches(custom.classify("exxr"), LineType.ERROR));
+        assertEquals(0, custom.classify("Error: request timed out") & ~(1 << LineType.ERROR.ordinal()));
+    }
+
+    @Test
+    void testDefaultBuilderCanReplaceRules() {
+        OutputClassifier custom = OutputClassifier.defaultBuilder()
+            .clear(LineType.PROCESSING)
+            .patterns(LineType.PROCESSING, "pondering")
+            .build();
+
+        assertFalse(OutputClassifier.matches(custom.classify("Thinking…"), LineType.PROCESSING));
+        assertTrue(OutputClassifier.matches(custom.classify("✻ Pondering…"), LineType.PROCESSING));
+        assertTrue(OutputClassifier.matches(custom.classify("Error"), LineType.ERROR));
+    }
+
+    @Test
+    void testInvalidPatternRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> OutputClassifier.builder().patterns(LineType.ERROR, "^*").build());
+        assertThrows(IllegalArgumentException.class,
+            () -> OutputClassifier.builder().patterns(LineType.ERROR, "a\\sb").build());
+    }
+
+    private static boolean find(Pattern pattern, String line) {
+        return pattern.matcher(line).find();
+    }
+}
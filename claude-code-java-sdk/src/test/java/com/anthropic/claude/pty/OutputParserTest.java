@@ -0,0 +1,56 @@
+package com.anthropic.claude.pty;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CLI输出解析测试
+ */
+class OutputParserTest {
+
+    private OutputParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new OutputParser();
+    }
+
+    @Test
+    void testPartialLineIsBufferedUntilTerminator() {
+        assertTrue(parser.parseOutput("Error: request ").isEmpty());
+
+        List<StateChange> changes = parser.parseOutput("timed out\r\n");
+
+        assertEquals(1, changes.size());
+        assertEquals(ClaudeState.ERROR, parser.getCurrentState());
+        assertEquals("Error: request timed out", changes.get(0).getResponse().getContent());
+    }
+
+    @Test
+    void testBlankLinesAreIgnored() {
+        assertTrue(parser.parseOutput("\r\n   \n\r").isEmpty());
+        assertEquals(ClaudeState.STARTING, parser.getCurrentState());
+    }
+
+    @Test
+    void testParseCompleteLineTrimsView() {
+        List<StateChange> changes = parser.parseCompleteLine(new StringBuilder("  Usage limit reached  "));
+
+        assertEquals(1, changes.size());
+        assertEquals(ClaudeState.USAGE_LIMIT, parser.getCurrentState());
+        assertEquals("Usage limit reached", changes.get(0).getResponse().getContent());
+    }
+
+    @Test
+    void testFramerFeedsParser() {
+        LineFramer framer = new LineFramer(parser::parseCompleteLine);
+        byte[] data = "✻ Thinking…\r\nSession restored: abc-123\n".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        framer.feed(data, 0, data.length);
+
+        assertEquals(ClaudeState.SESSION_RESTORED, parser.getCurrentState());
+    }
+}
@@ -0,0 +1,296 @@
+package com.anthropic.claude.pty;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PTY会话池测试，使用脚本化的PtyManager模拟以提示符分隔响应的交互式CLI
+ */
+class PtySessionPoolTest {
+
+    private PtySessionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsAreCorrelatedAcrossSessions() throws Exception {
+        pool = createPool(2);
+        pool.start();
+        assertEquals(2, pool.getSessionCount());
+
+        List<PtyRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(pool.submit("q" + i, null));
+        }
+
+        Set<String> sessionIds = new HashSet<>();
+        Set<String> pids = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            List<String> lines = requests.get(i).await(Duration.ofSeconds(10));
+            assertEquals(2, lines.size(), "回显和提示符不属于响应: " + lines);
+            assertTrue(lines.get(0).startsWith("reply[q" + i + "]"), lines.get(0));
+            assertEquals("second line", lines.get(1));
+            sessionIds.add(requests.get(i).getSessionId());
+            pids.add(lines.get(0).substring(lines.get(0).lastIndexOf(' ') + 1));
+        }
+
+        assertEquals(2, sessionIds.size());
+        assertEquals(2, pids.size());
+        assertEquals(2, pool.getIdleSessionCount());
+    }
+
+    @Test
+    void testRequestsQueueWhileSessionBusy() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        List<String> streamed = new ArrayList<>();
+        PtyRequest first = pool.submit("a", streamed::add);
+        PtyRequest second = pool.submit("b", null);
+        PtyRequest third = pool.submit("c", null);
+        assertEquals(2, pool.getPendingRequestCount());
+
+        assertTrue(third.await(Duration.ofSeconds(10)).get(0).startsWith("reply[c]"));
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        // 指定监听器的请求只逐行交给监听器，不在请求中缓存
+        assertTrue(streamed.get(0).startsWith("reply[a]"));
+        assertTrue(first.getCompletion().get().isEmpty());
+        assertEquals(0, pool.getPendingRequestCount());
+    }
+
+    @Test
+    void testTimedOutRequestRecyclesSession() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        PtyRequest hanging = pool.submit("hang", null);
+        PtyRequest queued = pool.submit("after", null);
+
+        assertThrows(TimeoutException.class, () -> hanging.await(Duration.ofMillis(500)));
+        assertThrows(CancellationException.class, () -> hanging.getCompletion().get());
+
+        // 会话被回收后补充的新会话继续处理排队请求
+        assertTrue(queued.await(Duration.ofSeconds(10)).get(0).startsWith("reply[after]"));
+        assertNotEquals(hanging.getSessionId(), queued.getSessionId());
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    @Test
+    void testExitedSessionFailsActiveRequest() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        PtyRequest exiting = pool.submit("exit", null);
+        ExecutionException failure = assertThrows(ExecutionException.class,
+            () -> exiting.await(Duration.ofSeconds(10)));
+        assertNotNull(failure.getCause());
+
+        PtyRequest next = pool.submit("next", null);
+        assertTrue(next.await(Duration.ofSeconds(10)).get(0).startsWith("reply[next]"));
+    }
+
+    @Test
+    void testWrappedEchoIsNotPartOfResponse() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        String longCommand = "please summarize the following paragraph in one short sentence";
+        List<String> lines = pool.submit(longCommand, null).await(Duration.ofSeconds(10));
+
+        assertEquals(2, lines.size(), "折行的回显不属于响应: " + lines);
+        assertTrue(lines.get(0).startsWith("reply[" + longCommand + "]"));
+    }
+
+    @Test
+    void testLeftoverOutputDoesNotLeakIntoNextRequest() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        PtyRequest noisy = pool.submit("noisy", null);
+        PtyRequest queued = pool.submit("queued", null);
+        assertTrue(noisy.await(Duration.ofSeconds(10)).get(0).startsWith("reply[noisy]"));
+
+        // 排队请求紧接着发送，残留输出和多余的提示符出现在其回显之前
+        List<String> lines = queued.await(Duration.ofSeconds(10));
+        assertEquals(2, lines.size(), "残留输出不属于下一个请求: " + lines);
+        assertTrue(lines.get(0).startsWith("reply[queued]"));
+    }
+
+    @Test
+    void testIdleSessionResyncsToPromptBeforeSending() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        ScriptedPtyManager manager = managers.get(0);
+        assertTrue(pool.submit("noisy", null).await(Duration.ofSeconds(10)).get(0).startsWith("reply[noisy]"));
+        while (!manager.noisy) {
+            Thread.sleep(10);
+        }
+
+        // 会话空闲时收到残留输出，下一个请求要等到终端回到提示符后才发送
+        List<String> lines = pool.submit("next", null).await(Duration.ofSeconds(10));
+        assertEquals(2, lines.size(), lines.toString());
+        assertTrue(lines.get(0).startsWith("reply[next]"));
+        assertFalse(manager.sentDuringNoise);
+    }
+
+    @Test
+    void testShutdownFailsPendingRequests() throws Exception {
+        pool = createPool(1);
+        pool.start();
+
+        pool.submit("hang", null);
+        PtyRequest pending = pool.submit("later", null);
+        pool.shutdown();
+
+        assertThrows(ExecutionException.class, () -> pending.await(Duration.ofSeconds(5)));
+        assertFalse(pool.isAvailable());
+        assertThrows(IllegalStateException.class, () -> pool.submit("again", null));
+    }
+
+    private final List<ScriptedPtyManager> managers = Collections.synchronizedList(new ArrayList<>());
+
+    private PtySessionPool createPool(int size) {
+        AtomicInteger processIds = new AtomicInteger(1000);
+        return new PtySessionPool(new String[]{"claude"}, size, () -> {
+            ScriptedPtyManager manager = new ScriptedPtyManager(processIds.incrementAndGet());
+            managers.add(manager);
+            return manager;
+        }, Duration.ofSeconds(10));
+    }
+
+    /**
+     * 回显输入（按终端宽度折行）后输出两行响应和一个提示符；输入hang时不再输出，输入exit时模拟进程退出，
+     * 输入noisy时在提示符之后继续输出残留内容，稍后再输出一次提示符
+     */
+    private static class ScriptedPtyManager extends PtyManager {
+        private static final int TERMINAL_WIDTH = 24;
+
+        private final int pid;
+        private volatile boolean noisy;
+        private volatile boolean sentDuringNoise;
+        private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ScriptedPty");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private LineListener lineListener;
+        private Runnable exitListener;
+        private volatile boolean alive;
+
+        ScriptedPtyManager(int pid) {
+            this.pid = pid;
+        }
+
+        @Override
+        public void setLineListener(LineListener lineListener) {
+            this.lineListener = lineListener;
+        }
+
+        @Override
+        public void setExitListener(Runnable exitListener) {
+            this.exitListener = exitListener;
+        }
+
+        @Override
+        public void startPty(String[] command) {
+            alive = true;
+            reader.submit(this::prompt);
+        }
+
+        @Override
+        public CompletableFuture<ClaudeResponse> sendCommand(String command) {
+            if (noisy) {
+                sentDuringNoise = true;
+            }
+            reader.submit(() -> {
+                String echo = "> " + command;
+                for (int i = 0; i < echo.length(); i += TERMINAL_WIDTH) {
+                    output(echo.substring(i, Math.min(echo.length(), i + TERMINAL_WIDTH)));
+                }
+                switch (command) {
+                    case "hang":
+                        break;
+                    case "exit":
+                        alive = false;
+                        exitListener.run();
+                        break;
+                    case "noisy":
+                        output("reply[noisy] from " + pid);
+                        output("second line");
+                        prompt();
+                        output("late noise");
+                        noisy = true;
+                        sleepMillis(300);
+                        noisy = false;
+                        prompt();
+                        break;
+                    default:
+                        sleep();
+                        output("reply[" + command + "] from " + pid);
+                        output("second line");
+                        prompt();
+                }
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void sendInterrupt() {
+        }
+
+        @Override
+        public void closePty() {
+            alive = false;
+            reader.shutdownNow();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        private void output(String line) {
+            lineListener.onLine(line, Collections.emptyList());
+        }
+
+        private void prompt() {
+            lineListener.onLine("claude>",
+                Collections.singletonList(new StateChange(ClaudeState.READY, "claude>")));
+        }
+
+        private static void sleep() {
+            sleepMillis(50);
+        }
+
+        private static void sleepMillis(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求取消令牌测试
+ */
+class CancellationTokenTest {
+
+    @Test
+    void testCancelRunsCallbacksOnce() {
+        CancellationToken token = CancellationToken.create();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+        CancellationToken.Registration removed = token.onCancel(calls::incrementAndGet);
+        removed.close();
+
+        token.cancel("用户取消");
+        token.cancel("重复取消");
+        assertEquals(1, calls.get());
+        assertEquals("用户取消", token.getCancelReason());
+
+        // 已取消的令牌立即执行新登记的回调
+        token.onCancel(calls::incrementAndGet);
+        assertEquals(2, calls.get());
+
+        ClaudeCodeException cancelled = assertThrows(ClaudeCodeException.class, token::throwIfCancelled);
+        assertEquals("QUERY_CANCELLED", cancelled.getErrorCode());
+    }
+
+    @Test
+    void testChildInheritsCancellationAndEarlierDeadline() {
+        CancellationToken parent = CancellationToken.withDeadline(Duration.ofMillis(200));
+        CancellationToken child = parent.child(Duration.ofMinutes(10));
+        assertTrue(child.remaining(null).compareTo(Duration.ofMillis(200)) <= 0);
+        assertEquals(Duration.ofMillis(50), child.remaining(Duration.ofMillis(50)));
+
+        AtomicInteger calls = new AtomicInteger();
+        child.onCancel(calls::incrementAndGet);
+        parent.cancel("上游取消");
+        assertTrue(child.isCancelled());
+        assertEquals(1, calls.get());
+
+        // 子令牌的取消不影响父令牌
+        CancellationToken root = CancellationToken.create();
+        root.child(Duration.ofSeconds(1)).cancel("子令牌取消");
+        assertFalse(root.isCancelled());
+    }
+
+    @Test
+    void testClosedChildIsDetachedFromParent() {
+        CancellationToken parent = CancellationToken.create();
+        CancellationToken child = parent.child(null);
+        AtomicInteger calls = new AtomicInteger();
+        child.onCancel(calls::incrementAndGet);
+
+        child.close();
+        parent.cancel("作用域结束后取消");
+        assertFalse(child.isCancelled());
+        assertEquals(0, calls.get());
+        assertFalse(child.hasDeadline());
+        assertEquals(Duration.ofSeconds(3), child.remaining(Duration.ofSeconds(3)));
+    }
+
+    @Test
+    void testExpiredDeadline() throws Exception {
+        CancellationToken token = CancellationToken.withDeadline(Duration.ofMillis(10));
+        Thread.sleep(30);
+
+        assertTrue(token.isExpired());
+        assertFalse(token.isCancelled());
+        assertEquals(Duration.ZERO, token.remaining(Duration.ofSeconds(5)));
+        ClaudeCodeException expired = assertThrows(ClaudeCodeException.class, token::throwIfCancelled);
+        assertEquals("QUERY_DEADLINE_EXCEEDED", expired.getErrorCode());
+    }
+}
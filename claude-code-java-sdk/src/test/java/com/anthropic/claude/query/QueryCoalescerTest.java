@@ -0,0 +1,316 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.config.CliMode;
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.hooks.HookService;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.process.ProcessManager;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import org.junit.jupiter.api.Test;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 在途查询合并测试
+ */
+class QueryCoalescerTest {
+
+    private static final String CLI_OUTPUT = "[{\"type\":\"text\",\"content\":\"shared answer\"}]";
+
+    @Test
+    void testConcurrentIdenticalQueriesShareOneExecution() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ProcessManager processManager = blockingProcessManager(started, release);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            QueryService service = new QueryService(processManager, new HookService(), ClaudeCodeOptions.builder()
+                .cliPath("claude")
+                .cliEnabled(true)
+                .cliMode(CliMode.BATCH)
+                .queryCoalescingEnabled(true)
+                .blockingExecutor(executor)
+                .build());
+
+            CompletableFuture<Stream<Message>> leader = service.queryAsync(QueryRequest.builder("same").build());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<CompletableFuture<Stream<Message>>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(service.queryAsync(QueryRequest.builder("same").build()));
+            }
+            waitFor(() -> service.getCoalescedQueryCount() == 3);
+            release.countDown();
+
+            assertEquals("shared answer", leader.get(5, TimeUnit.SECONDS).findFirst().get().getContent());
+            for (CompletableFuture<Stream<Message>> follower : followers) {
+                assertEquals("shared answer", follower.get(5, TimeUnit.SECONDS).findFirst().get().getContent());
+            }
+            verify(processManager, times(1)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+
+            // 执行结束后相同请求重新执行
+            service.queryAsync(QueryRequest.builder("same").build()).get(5, TimeUnit.SECONDS);
+            verify(processManager, times(2)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testOptedOutRequestsAreNotCoalesced() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ProcessManager processManager = blockingProcessManager(started, release);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            QueryService service = new QueryService(processManager, new HookService(), ClaudeCodeOptions.builder()
+                .cliPath("claude")
+                .cliEnabled(true)
+                .cliMode(CliMode.BATCH)
+                .queryCoalescingEnabled(true)
+                .blockingExecutor(executor)
+                .build());
+
+            CompletableFuture<Stream<Message>> first = service.queryAsync(QueryRequest.builder("same").withCacheable(false).build());
+            CompletableFuture<Stream<Message>> second = service.queryAsync(QueryRequest.builder("same").withCacheable(false).build());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            release.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(0, service.getCoalescedQueryCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureIsSharedWithWaiters() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<List<Message>> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return coalescer.execute("k", CancellationToken.create(), scope -> {
+                    started.countDown();
+                    release.await();
+                    throw new IllegalStateException("boom");
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Exception> follower = CompletableFuture.supplyAsync(() -> {
+            try {
+                coalescer.execute("k", CancellationToken.create(), scope -> fail("不应再次执行"));
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+        waitFor(() -> coalescer.getCoalescedQueries() == 1);
+        release.countDown();
+
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals("boom", follower.get(5, TimeUnit.SECONDS).getMessage());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void testCancelledOrExpiredWaiterDetachesWithoutStoppingLeader() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<List<Message>> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return coalescer.execute("k", CancellationToken.create(), scope -> {
+                    started.countDown();
+                    release.await();
+                    return List.of(Message.text("shared"));
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CancellationToken cancelled = CancellationToken.create();
+        CompletableFuture<Exception> cancelledFollower = awaitFailure(coalescer, cancelled);
+        waitFor(() -> coalescer.getCoalescedQueries() == 1);
+        cancelled.cancel("caller gone");
+        ClaudeCodeException cancellation = (ClaudeCodeException) cancelledFollower.get(5, TimeUnit.SECONDS);
+        assertEquals("QUERY_CANCELLED", cancellation.getErrorCode());
+
+        CompletableFuture<Exception> expiredFollower = awaitFailure(coalescer,
+            CancellationToken.withDeadline(Duration.ofMillis(50)));
+        ClaudeCodeException expiry = (ClaudeCodeException) expiredFollower.get(5, TimeUnit.SECONDS);
+        assertEquals("QUERY_DEADLINE_EXCEEDED", expiry.getErrorCode());
+
+        // 等待者脱离不影响正在执行的请求
+        assertFalse(leader.isDone());
+        release.countDown();
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS).get(0).getContent());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void testCancellingCoalescedLeaderReturnsAndLastWaiterStopsCli() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<CancellationToken> cliToken = new AtomicReference<>();
+        ProcessManager processManager = mock(ProcessManager.class);
+        when(processManager.isCommandAvailable(anyString())).thenReturn(true);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenAnswer(invocation -> {
+            CancellationToken token = invocation.getArgument(2);
+            cliToken.set(token);
+            started.countDown();
+            // 模拟CLI进程一直运行到被取消
+            CountDownLatch killed = new CountDownLatch(1);
+            token.onCancel(killed::countDown);
+            killed.await(5, TimeUnit.SECONDS);
+            throw new ClaudeCodeException("QUERY_CANCELLED", "进程已终止");
+        });
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            QueryService service = new QueryService(processManager, new HookService(), ClaudeCodeOptions.builder()
+                .cliPath("claude")
+                .cliEnabled(true)
+                .cliMode(CliMode.BATCH)
+                .queryCoalescingEnabled(true)
+                .blockingExecutor(executor)
+                .build());
+
+            CancellationToken leaderToken = CancellationToken.create();
+            CompletableFuture<Stream<Message>> leader = service.queryAsync(
+                QueryRequest.builder("same").withCancellationToken(leaderToken).build());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CancellationToken followerToken = CancellationToken.create();
+            CompletableFuture<Stream<Message>> follower = service.queryAsync(
+                QueryRequest.builder("same").withCancellationToken(followerToken).build());
+            waitFor(() -> service.getCoalescedQueryCount() == 1);
+
+            // 第一个请求被取消后立即返回，仍有等待者时CLI继续运行
+            leaderToken.cancel("leader gone");
+            assertEquals(0, leader.get(5, TimeUnit.SECONDS).count());
+            assertFalse(cliToken.get().isCancelled());
+            assertFalse(follower.isDone());
+
+            // 最后一个等待者取消后终止CLI
+            followerToken.cancel("follower gone");
+            assertEquals(0, follower.get(5, TimeUnit.SECONDS).count());
+            waitFor(() -> cliToken.get().isCancelled());
+            verify(processManager, times(1)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLateStreamSubscriberReplaysEarlierMessages() {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        PublishSubject<Message> upstream = PublishSubject.create();
+        AtomicInteger executions = new AtomicInteger();
+
+        Observable<Message> first = coalescer.stream("k", () -> {
+            executions.incrementAndGet();
+            return upstream;
+        });
+        TestObserver<Message> early = first.test();
+        upstream.onNext(Message.text("one"));
+
+        TestObserver<Message> late = coalescer.stream("k", () -> {
+            executions.incrementAndGet();
+            return Observable.never();
+        }).test();
+        upstream.onNext(Message.text("two"));
+        upstream.onComplete();
+
+        assertEquals(1, executions.get());
+        assertEquals(List.of("one", "two"), contents(early.values()));
+        assertEquals(List.of("one", "two"), contents(late.values()));
+        late.assertComplete();
+        assertEquals(1, coalescer.getCoalescedStreams());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void testStreamUpstreamCancelledWhenAllSubscribersDispose() {
+        QueryCoalescer coalescer = new QueryCoalescer();
+        PublishSubject<Message> upstream = PublishSubject.create();
+
+        TestObserver<Message> a = coalescer.stream("k", () -> upstream).test();
+        TestObserver<Message> b = coalescer.stream("k", () -> upstream).test();
+        assertTrue(upstream.hasObservers());
+
+        a.dispose();
+        assertTrue(upstream.hasObservers());
+        b.dispose();
+        assertFalse(upstream.hasObservers());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    private static CompletableFuture<Exception> awaitFailure(QueryCoalescer coalescer, CancellationToken token) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                coalescer.execute("k", token, scope -> fail("不应再次执行"));
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+    }
+
+    private static ProcessManager blockingProcessManager(CountDownLatch started, CountDownLatch release) throws Exception {
+        ProcessManager processManager = mock(ProcessManager.class);
+        ProcessResult result = mock(ProcessResult.class);
+        when(result.getExitValue()).thenReturn(0);
+        when(result.output()).thenReturn(CLI_OUTPUT.getBytes(StandardCharsets.UTF_8));
+        when(processManager.isCommandAvailable(anyString())).thenReturn(true);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return result;
+        });
+        return processManager;
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).collect(Collectors.toList());
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.anthropic.claude.query;
+
+import com.anthropic.claude.config.CliMode;
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.hooks.HookService;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.performance.CacheManager;
+import com.anthropic.claude.process.ProcessManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 查询结果缓存测试
+ */
+class QueryResultCacheTest {
+
+    private static final String CLI_OUTPUT = "[{\"type\":\"text\",\"content\":\"cached answer\"}]";
+
+    private ProcessManager processManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        processManager = mock(ProcessManager.class);
+        ProcessResult result = mock(ProcessResult.class);
+        when(result.getExitValue()).thenReturn(0);
+        when(result.output()).thenReturn(CLI_OUTPUT.getBytes(StandardCharsets.UTF_8));
+        when(processManager.isCommandAvailable(anyString())).thenReturn(true);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenReturn(result);
+    }
+
+    @Test
+    void testCacheKeyIsCanonical() {
+        String key = QueryCacheKey.of(QueryRequest.builder("p").withTools("b", "a").withTemperature(0.7).build());
+
+        // 工具顺序、超时和元数据不影响缓存键
+        assertEquals(key, QueryCacheKey.of(QueryRequest.builder("p").withTools("a", "b").withTemperature(0.70)
+            .withTimeout(Duration.ofSeconds(5)).addMetadata("trace", "x").build()));
+
+        assertNotEquals(key, QueryCacheKey.of(QueryRequest.builder("p").withTools("a", "b").withTemperature(0.8).build()));
+        assertNotEquals(key, QueryCacheKey.of(QueryRequest.builder("p").withTools("a", "b").build()));
+        assertNotEquals(key, QueryCacheKey.of(QueryRequest.builder("p").withTools("ab").withTemperature(0.7).build()));
+        assertNotEquals(
+            QueryCacheKey.of(QueryRequest.builder("p").withContext("c").build()),
+            QueryCacheKey.of(QueryRequest.builder("p").withResumeSessionId("c").build()));
+        assertEquals(64, key.length());
+    }
+
+    @Test
+    void testChangedAdditionalArgsMissDiskCache(@TempDir Path cacheDir) throws Exception {
+        QueryRequest request = QueryRequest.builder("same").build();
+
+        queryAndShutdown(cacheDir, List.of("--model", "model-a"), request);
+        // 模拟重启：新实例打开同一磁盘目录，配置相同时命中磁盘缓存
+        queryAndShutdown(cacheDir, List.of("--model", "model-a"), request);
+        verify(processManager, times(1)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+
+        // 换用其他模型后不能返回之前模型的结果
+        queryAndShutdown(cacheDir, List.of("--model", "model-b"), request);
+        verify(processManager, times(2)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+
+        assertNotEquals(QueryCacheKey.of(request, ClaudeCodeOptions.builder().additionalArgs(List.of("--model", "a")).build()),
+            QueryCacheKey.of(request, ClaudeCodeOptions.builder().additionalArgs(List.of("--model", "b")).build()));
+    }
+
+    @Test
+    void testRepeatedQueryIsServedFromCache() throws Exception {
+        QueryService service = createService(true);
+
+        List<Message> first = service.queryAsync(QueryRequest.builder("same").build()).get()
+            .collect(Collectors.toList());
+        List<Message> second = service.queryAsync(QueryRequest.builder("same").build()).get()
+            .collect(Collectors.toList());
+
+        assertEquals(1, first.size());
+        assertEquals("cached answer", second.get(0).getContent());
+        verify(processManager, times(1)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+
+        CacheManager.CacheManagerStats stats = service.getCacheStats();
+        assertEquals(1, stats.getQueryResultHits());
+        assertEquals(1, stats.getQueryResultMisses());
+        assertEquals(1, stats.getQueryResultCacheSize());
+        assertTrue(stats.getQueryResultWeightedBytes() > 0);
+    }
+
+    @Test
+    void testPerRequestOptOutAndContinueSessionBypassCache() throws Exception {
+        QueryService service = createService(true);
+
+        service.queryAsync(QueryRequest.builder("same").build()).get();
+        service.queryAsync(QueryRequest.builder("same").withCacheable(false).build()).get();
+        service.queryAsync(QueryRequest.builder("same").withContinueLastSession(true).build()).get();
+        service.queryAsync(QueryRequest.builder("same").withContinueLastSession(true).build()).get();
+
+        verify(processManager, times(4)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+    }
+
+    @Test
+    void testResumedSessionBypassesCache() throws Exception {
+        QueryService service = createService(true);
+
+        // 同一会话每轮都会推进，相同的提示词在会话的不同阶段会得到不同的结果
+        service.queryAsync(QueryRequest.builder("next").withResumeSessionId("sess-1").build()).get();
+        service.queryAsync(QueryRequest.builder("next").withResumeSessionId("sess-1").build()).get();
+
+        verify(processManager, times(2)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+        assertEquals(0, service.getCacheStats().getQueryResultCacheSize());
+    }
+
+    @Test
+    void testCacheDisabledByDefault() throws Exception {
+        QueryService service = createService(false);
+
+        service.queryAsync(QueryRequest.builder("same").build()).get();
+        service.queryAsync(QueryRequest.builder("same").build()).get();
+
+        verify(processManager, times(2)).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+        assertNull(service.getCacheStats());
+    }
+
+    @Test
+    void testByteBoundEvictsLargeResults() {
+        CacheManager cacheManager = new CacheManager(CacheManager.CacheConfig.builder()
+            .queryCacheMaxBytes(4096)
+            .build());
+        CacheManagerQueryResultCache cache = new CacheManagerQueryResultCache(cacheManager);
+
+        String large = String.join("", Collections.nCopies(4096, "x"));
+        cache.put("large", List.of(Message.text(large)));
+        cache.put("small", List.of(Message.text("ok")));
+        cacheManager.cleanup();
+
+        assertNull(cache.get("large"));
+        assertEquals("ok", cache.get("small").get(0).getContent());
+        assertTrue(cacheManager.getStats().getQueryResultWeightedBytes() <= 4096);
+    }
+
+    private QueryService createService(boolean cacheEnabled) {
+        ClaudeCodeOptions options = ClaudeCodeOptions.builder()
+            .cliPath("claude")
+            .cliEnabled(true)
+            .cliMode(CliMode.BATCH)
+            .queryCacheEnabled(cacheEnabled)
+            .blockingExecutor(Runnable::run)
+            .build();
+        return new QueryService(processManager, new HookService(), options);
+    }
+
+    private void queryAndShutdown(Path cacheDir, List<String> additionalArgs, QueryRequest request) throws Exception {
+        QueryService service = createDiskCachedService(cacheDir, additionalArgs);
+        try {
+            service.queryAsync(request).get();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private QueryService createDiskCachedService(Path cacheDir, List<String> additionalArgs) {
+        ClaudeCodeOptions options = ClaudeCodeOptions.builder()
+            .cliPath("claude")
+            .cliEnabled(true)
+            .cliMode(CliMode.BATCH)
+            .queryCacheEnabled(true)
+            .queryCacheDirectory(cacheDir)
+            .additionalArgs(additionalArgs)
+            .blockingExecutor(Runnable::run)
+            .build();
+        return new QueryService(processManager, new HookService(), options);
+    }
+}
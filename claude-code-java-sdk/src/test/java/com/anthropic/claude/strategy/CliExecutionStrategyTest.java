@@ -5,6 +5,7 @@ import com.anthropic.claude.config.ClaudeCodeOptions;
 import com.anthropic.claude.messages.Message;
 import com.anthropic.claude.messages.MessageParser;
 import com.anthropic.claude.process.ProcessManager;
+import com.anthropic.claude.query.CancellationToken;
 import com.anthropic.claude.query.QueryRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +13,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.zeroturnaround.exec.ProcessResult;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
@@ -60,12 +63,9 @@ class CliExecutionStrategyTest {
         BatchProcessStrategy strategy = new BatchProcessStrategy(processManager, messageParser, options);
 
         when(processManager.isCommandAvailable(anyString())).thenReturn(true);
-        when(processManager.executeSync(anyList(), any(Duration.class))).thenReturn(processResult);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenReturn(processResult);
         when(processResult.getExitValue()).thenReturn(0);
-        when(processResult.outputUTF8()).thenReturn("测试输出");
-
-        List<Message> mockMessages = new ArrayList<>();
-        when(messageParser.parseMessages(anyString())).thenReturn(mockMessages);
+        when(processResult.output()).thenReturn("测试输出".getBytes(StandardCharsets.UTF_8));
 
         // Act
         strategy.start();
@@ -77,8 +77,8 @@ class CliExecutionStrategyTest {
         assertTrue(strategy.supportsSessionPersistence());
         assertNotNull(result);
 
-        verify(processManager).executeSync(anyList(), any(Duration.class));
-        verify(messageParser).parseMessages("测试输出");
+        verify(processManager).executeSync(anyList(), any(Duration.class), any(CancellationToken.class));
+        verify(messageParser).parseMessageStream(any(InputStream.class), any());
     }
 
     @Test
@@ -87,7 +87,7 @@ class CliExecutionStrategyTest {
         BatchProcessStrategy strategy = new BatchProcessStrategy(processManager, messageParser, options);
 
         when(processManager.isCommandAvailable(anyString())).thenReturn(true);
-        when(processManager.executeSync(anyList(), any(Duration.class))).thenReturn(processResult);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenReturn(processResult);
         when(processResult.getExitValue()).thenReturn(1);
         when(processResult.outputUTF8()).thenReturn("错误输出");
 
@@ -116,12 +116,9 @@ class CliExecutionStrategyTest {
         BatchProcessStrategy strategy = new BatchProcessStrategy(processManager, messageParser, customOptions);
 
         when(processManager.isCommandAvailable(anyString())).thenReturn(true);
-        when(processManager.executeSync(anyList(), any(Duration.class))).thenReturn(processResult);
+        when(processManager.executeSync(anyList(), any(Duration.class), any(CancellationToken.class))).thenReturn(processResult);
         when(processResult.getExitValue()).thenReturn(0);
-        when(processResult.outputUTF8()).thenReturn("{}");
-
-        List<Message> mockMessages = new ArrayList<>();
-        when(messageParser.parseMessages(anyString())).thenReturn(mockMessages);
+        when(processResult.output()).thenReturn("{}".getBytes(StandardCharsets.UTF_8));
 
         // Act
         strategy.start();
@@ -139,7 +136,55 @@ class CliExecutionStrategyTest {
                    commandStr.contains("--max-tokens 500") &&
                    commandStr.contains("--temperature 0.7") &&
                    commandStr.contains("--verbose");
-        }), any(Duration.class));
+        }), any(Duration.class), any(CancellationToken.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchProcessStreamEmitsEachLineAsItArrives() throws Exception {
+        // Arrange
+        BatchProcessStrategy strategy = new BatchProcessStrategy(processManager, new MessageParser(), options);
+        List<Message> received = new ArrayList<>();
+
+        doAnswer(invocation -> {
+            java.util.function.Consumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("{\"type\":\"assistant\",\"content\":\"第一段\"}");
+            // 第二行到达之前，第一条消息应已推送给订阅者
+            assertEquals(1, received.size());
+            consumer.accept("");
+            consumer.accept("{\"type\":\"result\",\"result\":\"完成\"}");
+            return null;
+        }).when(processManager).executeStreaming(anyList(), any(), any(Duration.class), any(), any(CancellationToken.class));
+
+        // Act
+        strategy.executeStream(queryRequest).subscribe(received::add);
+
+        // Assert
+        assertEquals(2, received.size());
+        assertEquals("第一段", received.get(0).getContent());
+        assertEquals("完成", received.get(1).getContent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchProcessStreamDisposeDestroysProcess() throws Exception {
+        // Arrange
+        BatchProcessStrategy strategy = new BatchProcessStrategy(processManager, new MessageParser(), options);
+        Process process = mock(Process.class);
+
+        doAnswer(invocation -> {
+            java.util.function.Consumer<Process> startListener = invocation.getArgument(3);
+            startListener.accept(process);
+            java.util.function.Consumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("{\"type\":\"assistant\",\"content\":\"片段\"}");
+            return null;
+        }).when(processManager).executeStreaming(anyList(), any(), any(Duration.class), any(), any(CancellationToken.class));
+
+        // Act
+        strategy.executeStream(queryRequest).take(1).blockingSubscribe();
+
+        // Assert
+        verify(processManager).destroyProcessTree(process);
     }
 
     @Test
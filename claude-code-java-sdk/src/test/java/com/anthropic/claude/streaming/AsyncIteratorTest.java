@@ -0,0 +1,152 @@
+package com.anthropic.claude.streaming;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 异步迭代器组合器测试
+ */
+class AsyncIteratorTest {
+
+    private static final int LARGE = 1_000_000;
+
+    @Test
+    void testSynchronousSourceDoesNotGrowStack() throws Exception {
+        List<Integer> all = new CountingIterator(LARGE, null).collectToList().get(30, TimeUnit.SECONDS);
+        assertEquals(LARGE, all.size());
+
+        AtomicLong sum = new AtomicLong();
+        new CountingIterator(LARGE, null).forEach(sum::addAndGet).get(30, TimeUnit.SECONDS);
+        assertEquals((long) LARGE * (LARGE - 1) / 2, sum.get());
+
+        AtomicInteger visited = new AtomicInteger();
+        new CountingIterator(LARGE, null)
+            .forEachAsync(item -> {
+                visited.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            })
+            .get(30, TimeUnit.SECONDS);
+        assertEquals(LARGE, visited.get());
+    }
+
+    @Test
+    void testCombinatorsOverSynchronousSource() throws Exception {
+        // 过滤掉绝大多数元素时同样不会逐个递归
+        List<Integer> result = new CountingIterator(LARGE, null)
+            .filter(i -> i % 100_000 == 0)
+            .skip(2)
+            .map(i -> i / 100_000)
+            .limit(5)
+            .collectToList()
+            .get(30, TimeUnit.SECONDS);
+        assertEquals(List.of(2, 3, 4, 5, 6), result);
+    }
+
+    @Test
+    void testNextBatchRespectsLimitAndExhaustion() throws Exception {
+        AsyncIterator<Integer> iterator = new CountingIterator(10, null).limit(7);
+
+        assertEquals(List.of(0, 1, 2, 3), iterator.nextBatch(4).get());
+        assertEquals(List.of(4, 5, 6), iterator.nextBatch(4).get());
+        assertTrue(iterator.nextBatch(4).get().isEmpty());
+        assertFalse(iterator.hasNext().get());
+        assertThrows(IllegalArgumentException.class, () -> iterator.nextBatch(0));
+    }
+
+    @Test
+    void testAsynchronousSource() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Integer> result = new CountingIterator(20_000, executor)
+                .filter(i -> i % 2 == 0)
+                .map(i -> i / 2)
+                .collectToList()
+                .get(30, TimeUnit.SECONDS);
+            assertEquals(IntStream.range(0, 10_000).boxed().collect(Collectors.toList()), result);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPublisherIteratorBoundsOutstandingDemand() throws Exception {
+        AtomicLong maxRequest = new AtomicLong();
+        Flowable<Integer> source = Flowable.range(0, 10_000)
+            .doOnRequest(n -> maxRequest.accumulateAndGet(n, Math::max))
+            .subscribeOn(Schedulers.io());
+
+        PublisherAsyncIterator<Integer> iterator = new PublisherAsyncIterator<>(source, 64);
+        List<Integer> first = iterator.nextBatch(10).get(5, TimeUnit.SECONDS);
+        assertFalse(first.isEmpty());
+        assertEquals(0, first.get(0));
+
+        List<Integer> rest = iterator.collectToList().get(30, TimeUnit.SECONDS);
+        assertEquals(10_000, first.size() + rest.size());
+        assertTrue(maxRequest.get() <= 64);
+        assertFalse(iterator.hasNext().get());
+    }
+
+    @Test
+    void testPublisherIteratorPropagatesErrorAndClose() throws Exception {
+        PublisherAsyncIterator<Integer> failing = new PublisherAsyncIterator<>(
+            Flowable.concat(Flowable.just(1, 2), Flowable.error(new IllegalStateException("boom"))));
+        assertEquals(List.of(1, 2), failing.nextBatch(10).get());
+        Exception error = assertThrows(Exception.class, () -> failing.nextBatch(10).get());
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        PublisherAsyncIterator<Integer> endless = new PublisherAsyncIterator<>(
+            Flowable.<Integer>never().doOnCancel(() -> cancelled.set(true)));
+        CompletableFuture<Boolean> pending = endless.hasNext();
+        assertFalse(pending.isDone());
+
+        endless.close();
+        assertTrue(cancelled.get());
+        assertFalse(pending.get(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 产生 0..count-1 的迭代器，executor 为null时同步完成
+     */
+    private static final class CountingIterator implements AsyncIterator<Integer> {
+        private final int count;
+        private final ExecutorService executor;
+        private int next;
+
+        CountingIterator(int count, ExecutorService executor) {
+            this.count = count;
+            this.executor = executor;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> hasNext() {
+            return complete(next < count);
+        }
+
+        @Override
+        public CompletableFuture<Integer> next() {
+            return complete(next++);
+        }
+
+        private <V> CompletableFuture<V> complete(V value) {
+            if (executor == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            return CompletableFuture.supplyAsync(() -> value, executor);
+        }
+    }
+}
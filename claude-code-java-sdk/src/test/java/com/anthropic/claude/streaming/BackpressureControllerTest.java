@@ -0,0 +1,171 @@
+package com.anthropic.claude.streaming;
+
+import com.anthropic.claude.streaming.BackpressureController.BackpressureStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 背压控制器测试
+ */
+class BackpressureControllerTest {
+
+    @Test
+    void testWaterMarkHysteresis() {
+        BackpressureController<String> controller = new BackpressureController<>(4, 3, 1);
+
+        assertTrue(controller.tryAcquire());
+        assertTrue(controller.tryAcquire());
+        assertFalse(controller.isBackpressureActive());
+        assertTrue(controller.tryAcquire());
+        assertTrue(controller.isBackpressureActive());
+
+        // 回落到高水位以下但未到低水位时保持激活
+        controller.releasePermit();
+        assertTrue(controller.isBackpressureActive());
+        controller.releasePermit();
+        assertFalse(controller.isBackpressureActive());
+        assertEquals(1, controller.getCurrentBufferSize());
+    }
+
+    @Test
+    void testBlockedRequestIsHandedReleasedPermit() throws Exception {
+        BackpressureController<String> controller = new BackpressureController<>(2, 2, 0);
+        assertTrue(controller.requestPermit().get());
+        assertTrue(controller.requestPermit().get());
+
+        CompletableFuture<Boolean> waiting = controller.requestPermit();
+        assertFalse(waiting.isDone());
+        assertFalse(controller.tryAcquire());
+
+        controller.releasePermit();
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(2, controller.getCurrentBufferSize());
+
+        // 放弃等待的请求不会占用之后释放的许可
+        CompletableFuture<Boolean> abandoned = controller.requestPermit();
+        abandoned.cancel(false);
+        controller.releasePermit();
+        assertEquals(1, controller.getCurrentBufferSize());
+        assertEquals(1, controller.getAvailablePermits());
+    }
+
+    @Test
+    void testCompletedResultsAreNotShared() throws Exception {
+        BackpressureController<String> controller = new BackpressureController<>(1, 1, 0);
+
+        CompletableFuture<Boolean> first = controller.requestPermit();
+        first.obtrudeValue(Boolean.FALSE);
+        controller.releasePermit();
+        // 一个调用方改写自己拿到的结果不影响其他调用方
+        assertTrue(controller.requestPermit().get());
+    }
+
+    @Test
+    void testHandOffCompletesOnExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "permit-executor"));
+        try {
+            BackpressureController<String> controller = new BackpressureController<>(1, 1, 0, executor);
+            assertTrue(controller.requestPermit().get());
+
+            CompletableFuture<String> continuation = controller.requestPermit()
+                .thenApply(granted -> Thread.currentThread().getName());
+            controller.releasePermit();
+
+            assertEquals("permit-executor", continuation.get(1, TimeUnit.SECONDS));
+            assertEquals(1, controller.getCurrentBufferSize());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDropOldestEvictsBufferedElements() {
+        BackpressureController<Integer> controller = new BackpressureController<>(4, 3, 1);
+        controller.setBackpressureStrategy(BackpressureStrategy.DROP_OLDEST);
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(controller.offer(i));
+        }
+
+        assertEquals(List.of(3, 4, 5, 6), drain(controller));
+        assertEquals(2, controller.getStats().getTotalDropped());
+        assertEquals(4, controller.getStats().getTotalProcessed());
+        assertEquals(0, controller.getCurrentBufferSize());
+    }
+
+    @Test
+    void testDropLatestRejectsNewElements() {
+        BackpressureController<Integer> controller = new BackpressureController<>(4, 3, 1);
+        controller.setBackpressureStrategy(BackpressureStrategy.DROP_LATEST);
+        for (int i = 1; i <= 6; i++) {
+            assertEquals(i <= 4, controller.offer(i));
+        }
+
+        assertEquals(List.of(1, 2, 3, 4), drain(controller));
+        assertEquals(2, controller.getStats().getTotalDropped());
+    }
+
+    @Test
+    void testBufferStrategyKeepsOrderBeyondCapacity() {
+        BackpressureController<Integer> controller = new BackpressureController<>(2, 2, 0);
+        controller.setBackpressureStrategy(BackpressureStrategy.BUFFER);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(controller.offer(i));
+        }
+        assertEquals(5, controller.getCurrentBufferSize());
+
+        assertEquals(List.of(1, 2, 3, 4, 5), drain(controller));
+    }
+
+    @Test
+    void testConcurrentProducersDeliverEveryElementOnce() throws Exception {
+        BackpressureController<Integer> controller = new BackpressureController<>(8, 6, 2);
+        int producers = 4;
+        int perProducer = 5_000;
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    controller.offerAsync(base + i).join();
+                }
+            }));
+        }
+        CompletableFuture<Void> consumer = CompletableFuture.runAsync(() -> {
+            while (received.size() < producers * perProducer) {
+                Integer element = controller.poll();
+                if (element != null) {
+                    assertTrue(received.add(element));
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        });
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        consumer.get(30, TimeUnit.SECONDS);
+        assertEquals(producers * perProducer, received.size());
+        assertEquals(0, controller.getCurrentBufferSize());
+        assertNull(controller.poll());
+    }
+
+    private static List<Integer> drain(BackpressureController<Integer> controller) {
+        List<Integer> elements = new ArrayList<>();
+        Integer element;
+        while ((element = controller.poll()) != null) {
+            elements.add(element);
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,270 @@
+package com.anthropic.claude.streaming;
+
+import com.anthropic.claude.config.CliMode;
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.hooks.HookService;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.process.ProcessManager;
+import com.anthropic.claude.query.QueryRequest;
+import com.anthropic.claude.query.QueryService;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按需放行发布者测试
+ */
+class DemandGatedPublisherTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testProducerWaitsForDemand() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        Observable<Integer> source = Observable.create(emitter -> {
+            for (int i = 0; i < 100 && !emitter.isDisposed(); i++) {
+                produced.incrementAndGet();
+                emitter.onNext(i);
+            }
+            emitter.onComplete();
+        });
+
+        TestSubscriber<Integer> subscriber = TestSubscriber.create(0);
+        new DemandGatedPublisher<>(source, executor).subscribe(subscriber);
+
+        // 没有请求时生产线程停在第一个元素上
+        waitFor(() -> produced.get() == 1);
+        Thread.sleep(50);
+        assertEquals(1, produced.get());
+        subscriber.assertNoValues();
+
+        subscriber.request(3);
+        waitFor(() -> produced.get() == 4);
+        Thread.sleep(50);
+        assertEquals(4, produced.get());
+        subscriber.assertValues(0, 1, 2);
+
+        subscriber.request(Long.MAX_VALUE);
+        assertTrue(subscriber.await(5, TimeUnit.SECONDS));
+        subscriber.assertValueCount(100).assertComplete();
+    }
+
+    @Test
+    void testCancelReleasesBlockedProducer() throws Exception {
+        CountDownLatch disposed = new CountDownLatch(1);
+        CountDownLatch producerDone = new CountDownLatch(1);
+        Observable<Integer> source = Observable.create(emitter -> {
+            emitter.setCancellable(disposed::countDown);
+            for (int i = 0; i < 100 && !emitter.isDisposed(); i++) {
+                emitter.onNext(i);
+            }
+            producerDone.countDown();
+        });
+
+        TestSubscriber<Integer> subscriber = TestSubscriber.create(2);
+        new DemandGatedPublisher<>(source, executor).subscribe(subscriber);
+        waitFor(() -> subscriber.values().size() == 2);
+
+        subscriber.cancel();
+        assertTrue(disposed.await(5, TimeUnit.SECONDS));
+        assertTrue(producerDone.await(5, TimeUnit.SECONDS));
+        subscriber.assertValues(0, 1).assertNotComplete().assertNoErrors();
+    }
+
+    @Test
+    void testInvalidRequestSignalsError() {
+        Observable<Integer> source = Observable.never();
+        DemandGatedPublisher<Integer> publisher = new DemandGatedPublisher<>(source, executor);
+        AtomicReference<Throwable> received = new AtomicReference<>();
+
+        publisher.subscribe(new org.reactivestreams.Subscriber<Integer>() {
+            private org.reactivestreams.Subscription subscription;
+
+            @Override
+            public void onSubscribe(org.reactivestreams.Subscription s) {
+                subscription = s;
+                s.request(0);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                fail("不应收到元素");
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                received.set(error);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onComplete() {
+                fail("不应完成");
+            }
+        });
+
+        assertInstanceOf(IllegalArgumentException.class, received.get());
+    }
+
+    @Test
+    void testInvalidRequestDuringOnNextIsSignalledAfterIt() throws Exception {
+        CountDownLatch disposed = new CountDownLatch(1);
+        Observable<Integer> source = Observable.create(emitter -> {
+            emitter.setCancellable(disposed::countDown);
+            emitter.onNext(1);
+        });
+        AtomicBoolean inOnNext = new AtomicBoolean();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch errored = new CountDownLatch(1);
+
+        new DemandGatedPublisher<>(source, executor).subscribe(new org.reactivestreams.Subscriber<Integer>() {
+            private org.reactivestreams.Subscription subscription;
+
+            @Override
+            public void onSubscribe(org.reactivestreams.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                inOnNext.set(true);
+                try {
+                    // 另一个线程在onNext期间发出非法请求，错误不能与onNext并发送达
+                    Thread requester = new Thread(() -> subscription.request(-1));
+                    requester.start();
+                    requester.join();
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inOnNext.set(false);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                overlapped.compareAndSet(false, inOnNext.get());
+                assertInstanceOf(IllegalArgumentException.class, error);
+                errored.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                fail("不应完成");
+            }
+        });
+
+        assertTrue(errored.await(5, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        assertTrue(disposed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testSlowConsumerPausesCliProcess(@TempDir Path dir) throws Exception {
+        // 输出远大于管道缓冲区，消费者不请求时CLI写不完，无法创建完成标记
+        Path marker = dir.resolve("finished");
+        Path cli = dir.resolve("fake-claude.sh");
+        Files.writeString(cli, "#!/bin/sh\n"
+            + "i=0\n"
+            + "while [ $i -lt 5000 ]; do\n"
+            + "  echo '{\"type\":\"text\",\"content\":\"chunk-'$i' padding padding padding padding padding\"}'\n"
+            + "  i=$((i+1))\n"
+            + "done\n"
+            + "touch '" + marker + "'\n");
+        assertTrue(cli.toFile().setExecutable(true));
+
+        QueryService service = new QueryService(new ProcessManager(), new HookService(), ClaudeCodeOptions.builder()
+            .cliPath(cli.toString())
+            .cliEnabled(true)
+            .cliMode(CliMode.BATCH)
+            .blockingExecutor(executor)
+            .build());
+
+        Flowable<Message> stream = service.queryFlowable(QueryRequest.builder("slow").build());
+        TestSubscriber<Message> subscriber = stream.test(1);
+        waitFor(() -> subscriber.values().size() == 1);
+        Thread.sleep(500);
+        assertFalse(Files.exists(marker), "消费者未请求时CLI仍在持续输出");
+
+        subscriber.request(Long.MAX_VALUE);
+        assertTrue(subscriber.await(10, TimeUnit.SECONDS));
+        subscriber.assertComplete().assertNoErrors().assertValueCount(5000);
+        assertTrue(Files.exists(marker));
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testStalledStreamsDoNotOccupyCommonPool(@TempDir Path dir) throws Exception {
+        Path cli = dir.resolve("fake-claude.sh");
+        Files.writeString(cli, "#!/bin/sh\n"
+            + "i=0\n"
+            + "while [ $i -lt 5000 ]; do\n"
+            + "  echo '{\"type\":\"text\",\"content\":\"chunk-'$i' padding padding padding padding padding\"}'\n"
+            + "  i=$((i+1))\n"
+            + "done\n");
+        assertTrue(cli.toFile().setExecutable(true));
+
+        // 未指定执行器时阻塞任务使用公共ForkJoinPool
+        QueryService service = new QueryService(new ProcessManager(), new HookService(), ClaudeCodeOptions.builder()
+            .cliPath(cli.toString())
+            .cliEnabled(true)
+            .cliMode(CliMode.BATCH)
+            .build());
+
+        List<TestSubscriber<Message>> stalled = new ArrayList<>();
+        try {
+            for (int i = 0; i <= ForkJoinPool.commonPool().getParallelism(); i++) {
+                TestSubscriber<Message> subscriber = service.queryFlowable(QueryRequest.builder("slow").build()).test(1);
+                stalled.add(subscriber);
+                waitFor(() -> subscriber.values().size() == 1);
+            }
+
+            // 读取线程全部因消费者不请求而阻塞，公共池仍能执行其他任务
+            assertTrue(ForkJoinPool.commonPool().submit(() -> true).get(5, TimeUnit.SECONDS));
+        } finally {
+            stalled.forEach(TestSubscriber::cancel);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.anthropic.claude.streaming;
+
+import com.anthropic.claude.config.CliMode;
+import com.anthropic.claude.config.ClaudeCodeOptions;
+import com.anthropic.claude.exceptions.ClaudeCodeException;
+import com.anthropic.claude.hooks.HookService;
+import com.anthropic.claude.messages.Message;
+import com.anthropic.claude.messages.MessageType;
+import com.anthropic.claude.process.ProcessManager;
+import com.anthropic.claude.query.QueryRequest;
+import com.anthropic.claude.query.QueryService;
+import com.anthropic.claude.streaming.StreamStateManager.StreamCheckpoint;
+import com.anthropic.claude.streaming.StreamStateManager.StreamStatus;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流状态管理器测试
+ */
+class StreamStateManagerTest {
+
+    @Test
+    void testDeliveryOffsetsAndBoundedReplay() {
+        StreamStateManager manager = new StreamStateManager(3);
+        String streamId = manager.createStream("replay");
+
+        assertEquals(0, manager.recordDelivery(streamId, sessionMessage("init", "sess-1")));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, manager.recordDelivery(streamId, Message.text("part-" + i)));
+        }
+
+        StreamCheckpoint checkpoint = manager.getCheckpoint(streamId);
+        assertEquals("sess-1", checkpoint.getSessionId());
+        assertEquals(5, checkpoint.getDeliveredOffset());
+        assertEquals(2, checkpoint.getReplayStartOffset());
+
+        // 早于回放缓冲起点的消息已淘汰
+        assertEquals(List.of("part-2", "part-3", "part-4"), contents(manager.getReplay(streamId, 0)));
+        assertEquals(List.of("part-4"), contents(manager.getReplay(streamId, 4)));
+        assertTrue(manager.getReplay(streamId, 5).isEmpty());
+        assertEquals(-1, manager.recordDelivery("missing", Message.text("x")));
+    }
+
+    @Test
+    void testPausedStreamBlocksDelivery() throws Exception {
+        StreamStateManager manager = new StreamStateManager();
+        String streamId = manager.createStream("pause");
+        manager.updateStreamStatus(streamId, StreamStatus.RUNNING);
+        assertTrue(manager.pauseStream(streamId));
+        assertFalse(manager.pauseStream(streamId));
+
+        CompletableFuture<Void> delivery = CompletableFuture.runAsync(() -> manager.awaitResumed(streamId));
+        Thread.sleep(100);
+        assertFalse(delivery.isDone());
+
+        assertTrue(manager.resumeStream(streamId));
+        delivery.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testFailedStreamResumesSessionWithoutDuplicates(@TempDir Path dir) throws Exception {
+        // 首次执行输出部分消息后失败；与真实CLI一样，--resume 只输出新一轮的内容，不回放会话中已有的消息
+        Path argsLog = dir.resolve("args.log");
+        Path cli = dir.resolve("fake-claude.sh");
+        Files.writeString(cli, "#!/bin/sh\n"
+            + "echo \"$*\" >> '" + argsLog + "'\n"
+            + "echo '{\"type\":\"system\",\"subtype\":\"init\",\"session_id\":\"sess-42\"}'\n"
+            + "case \"$*\" in\n"
+            + "  *--resume*) for i in 4 5; do echo '{\"type\":\"text\",\"content\":\"part-'$i'\"}'; done ;;\n"
+            + "  *) for i in 1 2 3; do echo '{\"type\":\"text\",\"content\":\"part-'$i'\"}'; done; exit 1 ;;\n"
+            + "esac\n");
+        assertTrue(cli.toFile().setExecutable(true));
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            QueryService service = new QueryService(new ProcessManager(), new HookService(), ClaudeCodeOptions.builder()
+                .cliPath(cli.toString())
+                .cliEnabled(true)
+                .cliMode(CliMode.BATCH)
+                .blockingExecutor(executor)
+                .build());
+            StreamStateManager manager = service.getStreamStateManager();
+            String streamId = manager.createStream("resume");
+
+            TestSubscriber<Message> subscriber = service.queryResumable(streamId, QueryRequest.builder("long task").build())
+                .test();
+            assertTrue(subscriber.await(10, TimeUnit.SECONDS));
+            subscriber.assertComplete().assertNoErrors();
+
+            assertEquals(List.of("part-1", "part-2", "part-3", "part-4", "part-5"), textContents(subscriber.values()));
+
+            // 续写轮次恢复会话并发送续写提示，不重新发送原提示词
+            List<String> invocations = Files.readAllLines(argsLog);
+            assertEquals(2, invocations.size());
+            assertTrue(invocations.get(1).contains("--resume sess-42"));
+            assertTrue(invocations.get(1).contains("Continue your previous response"));
+            assertFalse(invocations.get(1).contains("long task"));
+
+            StreamStateManager.StreamState state = manager.getStreamState(streamId);
+            assertEquals(StreamStatus.COMPLETED, state.getStatus());
+            assertEquals(1, state.getRetryCount());
+            assertEquals(7, manager.getCheckpoint(streamId).getDeliveredOffset());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testDivergentResumeFailsInsteadOfSplicing(@TempDir Path dir) throws Exception {
+        // 没有输出会话信息就失败，只能重新执行原请求；第二次执行产生了不同的生成，已交付的前缀对不上
+        Path argsLog = dir.resolve("args.log");
+        Path runs = dir.resolve("runs");
+        Path cli = dir.resolve("fake-claude.sh");
+        Files.writeString(cli, "#!/bin/sh\n"
+            + "echo \"$*\" >> '" + argsLog + "'\n"
+            + "if [ -f '" + runs + "' ]; then\n"
+            + "  for i in 1 2 3 4; do echo '{\"type\":\"text\",\"content\":\"other-'$i'\"}'; done\n"
+            + "else\n"
+            + "  touch '" + runs + "'\n"
+            + "  for i in 1 2; do echo '{\"type\":\"text\",\"content\":\"part-'$i'\"}'; done; exit 1\n"
+            + "fi\n");
+        assertTrue(cli.toFile().setExecutable(true));
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            QueryService service = new QueryService(new ProcessManager(), new HookService(), ClaudeCodeOptions.builder()
+                .cliPath(cli.toString())
+                .cliEnabled(true)
+                .cliMode(CliMode.BATCH)
+                .blockingExecutor(executor)
+                .build());
+            StreamStateManager manager = service.getStreamStateManager();
+            String streamId = manager.createStream("diverge");
+
+            TestSubscriber<Message> subscriber = service.queryResumable(streamId, QueryRequest.builder("long task").build())
+                .test();
+            assertTrue(subscriber.await(10, TimeUnit.SECONDS));
+            subscriber.assertError(error -> error instanceof ClaudeCodeException
+                && "STREAM_DIVERGED".equals(((ClaudeCodeException) error).getErrorCode()));
+
+            // 下游只收到第一次执行的输出，不会接上另一次生成的后半段
+            assertEquals(List.of("part-1", "part-2"), contents(subscriber.values()));
+            List<String> invocations = Files.readAllLines(argsLog);
+            assertEquals(2, invocations.size());
+            assertFalse(invocations.get(1).contains("--resume"));
+            assertTrue(invocations.get(1).contains("long task"));
+            assertEquals(StreamStatus.ERROR, manager.getStreamState(streamId).getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Message sessionMessage(String content, String sessionId) {
+        return Message.builder().type(MessageType.SYSTEM).content(content)
+            .addMetadata(Message.SESSION_ID_KEY, sessionId).build();
+    }
+
+    private static List<String> textContents(List<Message> messages) {
+        return messages.stream().filter(message -> message.getType() != MessageType.SYSTEM)
+            .map(Message::getContent).collect(Collectors.toList());
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).collect(Collectors.toList());
+    }
+}